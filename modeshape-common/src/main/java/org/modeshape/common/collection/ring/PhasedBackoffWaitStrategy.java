@@ -0,0 +1,110 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.common.collection.ring;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.modeshape.common.util.CheckArg;
+
+/**
+ * A {@link WaitStrategy} that first spins, then yields and only then blocks the current thread until an entry is available for
+ * consumption. Consumers that keep up with the producers seldom block, and unlike the {@link BlockingWaitStrategy} the producers
+ * only acquire a lock to signal the consumers when at least one of them is actually blocked.
+ */
+public class PhasedBackoffWaitStrategy implements WaitStrategy {
+
+    /**
+     * The default number of times a consumer checks for a new entry before it starts yielding.
+     */
+    public static final int DEFAULT_SPIN_TRIES = 100;
+
+    /**
+     * The default number of times a consumer yields before it blocks.
+     */
+    public static final int DEFAULT_YIELD_TRIES = 100;
+
+    private final int spinTries;
+    private final int yieldTries;
+    private final Lock lock = new ReentrantLock();
+    private final Condition waitCondition = lock.newCondition();
+    private final AtomicInteger blockedCount = new AtomicInteger();
+
+    public PhasedBackoffWaitStrategy() {
+        this(DEFAULT_SPIN_TRIES, DEFAULT_YIELD_TRIES);
+    }
+
+    /**
+     * @param spinTries the number of times a consumer checks for a new entry before it starts yielding; may not be negative
+     * @param yieldTries the number of times a consumer yields before it blocks; may not be negative
+     */
+    public PhasedBackoffWaitStrategy( int spinTries,
+                                      int yieldTries ) {
+        CheckArg.isNonNegative(spinTries, "spinTries");
+        CheckArg.isNonNegative(yieldTries, "yieldTries");
+        this.spinTries = spinTries;
+        this.yieldTries = yieldTries;
+    }
+
+    @Override
+    public long waitFor( long position,
+                         Pointer pointer,
+                         Pointer dependentPointer,
+                         PointerBarrier barrier ) throws InterruptedException {
+        long availablePosition;
+        int remainingTries = spinTries + yieldTries;
+        while ((availablePosition = pointer.get()) < position && !barrier.isComplete()) {
+            if (remainingTries > yieldTries) {
+                --remainingTries;
+            } else if (remainingTries > 0) {
+                --remainingTries;
+                Thread.yield();
+            } else {
+                lock.lock();
+                try {
+                    // Producers check this count after advancing the pointer, so either they see it or we see the new position ...
+                    blockedCount.incrementAndGet();
+                    try {
+                        while (!barrier.isComplete() && (availablePosition = pointer.get()) < position) {
+                            waitCondition.await();
+                        }
+                    } finally {
+                        blockedCount.decrementAndGet();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                return availablePosition;
+            }
+        }
+        return availablePosition;
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+        if (blockedCount.get() == 0) {
+            // Nobody is blocked, so there is no need for the lock ...
+            return;
+        }
+        lock.lock();
+        try {
+            waitCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
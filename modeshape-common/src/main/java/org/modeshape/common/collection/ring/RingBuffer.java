@@ -16,7 +16,9 @@
 
 package org.modeshape.common.collection.ring;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.CountDownLatch;
@@ -303,6 +305,20 @@ public final class RingBuffer<T, C> {
         return !this.consumers.isEmpty();
     }
 
+    /**
+     * Get the number of entries that each of the consumers has yet to consume.
+     *
+     * @return the number of entries (possibly 0) still to be consumed, keyed by consumer; never null
+     */
+    public Map<C, Long> getConsumerLags() {
+        long current = cursor.getCurrent();
+        Map<C, Long> lags = new HashMap<>();
+        for (ConsumerRunner runner : consumers) {
+            lags.put(runner.getConsumer(), Math.max(0L, current - runner.getPointer().get()));
+        }
+        return lags;
+    }
+
     /**
      * Shutdown this ring buffer by preventing any further entries, but allowing all existing entries to be processed by all
      * consumers.
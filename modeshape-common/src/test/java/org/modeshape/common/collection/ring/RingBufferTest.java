@@ -302,6 +302,34 @@ public class RingBufferTest {
         assertEquals(1024, ringBuffer.getBufferSize());
     }
 
+    @Test
+    public void consumersShouldSeeAllEventsInOrderWhenBackingOffBeforeBlocking() throws Exception {
+        Executor executor = Executors.newCachedThreadPool();
+        RingBuffer<Long, MonotonicallyIncreasingConsumer> ringBuffer = RingBufferBuilder.withSingleProducer(executor,
+                                                                                                            LongConsumerAdapter.INSTANCE)
+                                                                                        .ofSize(8)
+                                                                                        .waitUsing(new PhasedBackoffWaitStrategy())
+                                                                                        .build();
+        MonotonicallyIncreasingConsumer consumer1 = new MonotonicallyIncreasingConsumer("first", 0L, 0L, 0);
+        MonotonicallyIncreasingConsumer consumer2 = new MonotonicallyIncreasingConsumer("second", 0L, 0L, 0);
+        ringBuffer.addConsumer(consumer1);
+        ringBuffer.addConsumer(consumer2);
+
+        // Add entries slowly enough that the consumers end up blocking, and quickly enough that they wrap around the buffer ...
+        int count = 10000;
+        for (long value = 0L; value != count; ++value) {
+            ringBuffer.add(value);
+            if (value % 1000 == 0) Thread.sleep(10L);
+        }
+        assertThat(ringBuffer.getConsumerLags().size(), is(2));
+        ringBuffer.shutdown();
+
+        assertThat(consumer1.getLastValue(), is(count - 1L));
+        assertThat(consumer2.getLastValue(), is(count - 1L));
+        assertThat(consumer1.isClosed(), is(true));
+        assertThat(consumer2.isClosed(), is(true));
+    }
+
     protected void print( String message ) {
         if (print) System.out.println(message);
     }
@@ -0,0 +1,241 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+
+/**
+ * A loader of large numbers of new nodes into a workspace. Unlike nodes added through a {@link javax.jcr.Session}, the loaded
+ * nodes are not tracked by any session: they are validated against their node types, written directly into the workspace in
+ * batches (each in its own transaction), and the changes of each batch are published as a single set of events.
+ * <p>
+ * The nodes are supplied as a stream of {@link NodeDescriptor descriptors} in document order, meaning that each node must
+ * follow its parent and all of the nodes below a node must follow that node before any of its next siblings. The loader only
+ * remembers the ancestors of the current node and the number of their children with each name, so the memory it uses does not
+ * depend on how many nodes are loaded.
+ * </p>
+ * <p>
+ * A node with the same name as an earlier sibling becomes its next same-name sibling: the second node described as "a" is
+ * loaded at "a[2]", and the nodes below it are described with paths such as "a[2]/b". The index of the node itself may be given,
+ * but it must then be the index the loader assigns.
+ * </p>
+ * <p>
+ * Compared to the regular JCR API, the bulk loader:
+ * <ul>
+ * <li>checks the permissions, locks and checked-out status only of the node below which the nodes are loaded;</li>
+ * <li>validates each distinct combination of node types, child name and property only once;</li>
+ * <li>does not detect the MIME types of {@code nt:resource} nodes that have no {@code jcr:mimeType} property;</li>
+ * <li>does not auto-create child nodes nor check that mandatory child nodes exist, and does not support {@link javax.jcr.PropertyType#REFERENCE REFERENCE} or
+ * {@link javax.jcr.PropertyType#WEAKREFERENCE WEAKREFERENCE} properties, which can be set afterwards with a session.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * A loader is obtained from {@link Workspace#getBulkLoader()} and uses the credentials of that workspace's session.
+ * </p>
+ *
+ * @since 5.5
+ */
+public interface BulkLoader {
+
+    /**
+     * The number of nodes that are written in one batch (i.e. transaction) if no batch size is given.
+     */
+    int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * Load the supplied nodes below an existing node, writing them in batches of {@value #DEFAULT_BATCH_SIZE} nodes.
+     *
+     * @param parentAbsPath the absolute path of the existing node below which the nodes are loaded; may not be null
+     * @param nodes the descriptors of the new nodes, in document order; may not be null
+     * @return the number of nodes that were loaded
+     * @throws javax.jcr.PathNotFoundException if there is no node at the supplied path, or if the parent of one of the
+     *         descriptors has not been loaded before it
+     * @throws javax.jcr.nodetype.ConstraintViolationException if one of the nodes or its properties is not allowed by the node
+     *         types
+     * @throws javax.jcr.AccessDeniedException if the session is not allowed to add nodes below the existing node
+     * @throws RepositoryException if there is another problem; the batches written before the problem remain in the workspace
+     */
+    long load( String parentAbsPath,
+               Iterator<NodeDescriptor> nodes ) throws RepositoryException;
+
+    /**
+     * Load the supplied nodes below an existing node, writing them in batches of the given size.
+     *
+     * @param parentAbsPath the absolute path of the existing node below which the nodes are loaded; may not be null
+     * @param nodes the descriptors of the new nodes, in document order; may not be null
+     * @param batchSize the number of nodes written in each batch; must be positive
+     * @return the number of nodes that were loaded
+     * @throws javax.jcr.PathNotFoundException if there is no node at the supplied path, or if the parent of one of the
+     *         descriptors has not been loaded before it
+     * @throws javax.jcr.nodetype.ConstraintViolationException if one of the nodes or its properties is not allowed by the node
+     *         types
+     * @throws javax.jcr.AccessDeniedException if the session is not allowed to add nodes below the existing node
+     * @throws RepositoryException if there is another problem; the batches written before the problem remain in the workspace
+     */
+    long load( String parentAbsPath,
+               Iterator<NodeDescriptor> nodes,
+               int batchSize ) throws RepositoryException;
+
+    /**
+     * The description of a single node to be loaded.
+     */
+    final class NodeDescriptor {
+        private final String path;
+        private final String primaryType;
+        private final Set<String> mixinTypes = new LinkedHashSet<>();
+        private final Map<String, Value[]> properties = new LinkedHashMap<>();
+        private final Set<String> multiValuedProperties = new LinkedHashSet<>();
+        private String identifier;
+
+        /**
+         * Describe a new node.
+         *
+         * @param path the path of the new node relative to the node below which the nodes are loaded (e.g., "a" or "a/b");
+         *        may not be null
+         * @param primaryType the name of the primary type of the node; may not be null
+         */
+        public NodeDescriptor( String path,
+                               String primaryType ) {
+            if (path == null) {
+                throw new IllegalArgumentException("The path of a node may not be null");
+            }
+            if (primaryType == null) {
+                throw new IllegalArgumentException("The primary type of a node may not be null");
+            }
+            this.path = path;
+            this.primaryType = primaryType;
+        }
+
+        /**
+         * Add a mixin type to the node.
+         *
+         * @param mixinType the name of the mixin type; may not be null
+         * @return this descriptor; never null
+         */
+        public NodeDescriptor addMixin( String mixinType ) {
+            this.mixinTypes.add(mixinType);
+            return this;
+        }
+
+        /**
+         * Set the identifier of the node. By default, a new identifier is generated.
+         *
+         * @param identifier the identifier; may be null if one should be generated
+         * @return this descriptor; never null
+         */
+        public NodeDescriptor setIdentifier( String identifier ) {
+            this.identifier = identifier;
+            return this;
+        }
+
+        /**
+         * Set a single-valued property on the node.
+         *
+         * @param name the name of the property; may not be null
+         * @param value the value of the property; may not be null
+         * @return this descriptor; never null
+         */
+        public NodeDescriptor setProperty( String name,
+                                           Value value ) {
+            this.properties.put(name, new Value[] {value});
+            this.multiValuedProperties.remove(name);
+            return this;
+        }
+
+        /**
+         * Set a multi-valued property on the node.
+         *
+         * @param name the name of the property; may not be null
+         * @param values the values of the property; may be empty but not null
+         * @return this descriptor; never null
+         */
+        public NodeDescriptor setProperty( String name,
+                                           Value[] values ) {
+            this.properties.put(name, Arrays.copyOf(values, values.length));
+            this.multiValuedProperties.add(name);
+            return this;
+        }
+
+        /**
+         * Get the path of the node, relative to the node below which the nodes are loaded.
+         *
+         * @return the relative path; never null
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Get the name of the primary type of the node.
+         *
+         * @return the primary type; never null
+         */
+        public String getPrimaryType() {
+            return primaryType;
+        }
+
+        /**
+         * Get the names of the mixin types of the node.
+         *
+         * @return the mixin types; never null
+         */
+        public Set<String> getMixinTypes() {
+            return Collections.unmodifiableSet(mixinTypes);
+        }
+
+        /**
+         * Get the identifier of the node.
+         *
+         * @return the identifier, or null if one should be generated
+         */
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * Get the values of the node's properties, keyed by the names of the properties. Single-valued properties have exactly
+         * one value.
+         *
+         * @return the properties; never null
+         */
+        public Map<String, Value[]> getProperties() {
+            return Collections.unmodifiableMap(properties);
+        }
+
+        /**
+         * Determine whether the named property was set as a multi-valued property.
+         *
+         * @param name the name of the property; may not be null
+         * @return true if the property is multi-valued, or false if it is single-valued or not set
+         */
+        public boolean isMultiple( String name ) {
+            return multiValuedProperties.contains(name);
+        }
+
+        @Override
+        public String toString() {
+            return path + " [" + primaryType + (mixinTypes.isEmpty() ? "" : ", " + mixinTypes) + "]";
+        }
+    }
+}
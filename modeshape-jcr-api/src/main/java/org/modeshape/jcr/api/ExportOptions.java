@@ -0,0 +1,69 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.api;
+
+/**
+ * Class which allows a customization of the export of a subtree into the system or document view.
+ *
+ * @see Session#exportSystemView(String, java.io.OutputStream, ExportOptions)
+ * @see Session#exportDocumentView(String, java.io.OutputStream, ExportOptions)
+ * @since 5.5
+ */
+public abstract class ExportOptions {
+
+    /**
+     * Default export options which will be used when an export is performed without an explicit set of options.
+     */
+    public static final ExportOptions DEFAULT = new ExportOptions() {};
+
+    /**
+     * Whether or not the values of binary properties should be left out of the export.
+     *
+     * @return {@code true} if binary values should be skipped; defaults to {@code false}
+     */
+    public boolean skipBinary() {
+        return false;
+    }
+
+    /**
+     * Whether or not only the node at the given path (without its descendants) should be exported.
+     *
+     * @return {@code true} if the descendants should not be exported; defaults to {@code false}
+     */
+    public boolean noRecurse() {
+        return false;
+    }
+
+    /**
+     * Whether or not the XML document should be compressed with GZIP. A compressed export has to be read through a
+     * {@link java.util.zip.GZIPInputStream} when it is imported.
+     *
+     * @return {@code true} if the output should be compressed; defaults to {@code false}
+     */
+    public boolean compress() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[export_options: ");
+        builder.append("skip binary=").append(skipBinary());
+        builder.append(", no recurse=").append(noRecurse());
+        builder.append(", compress=").append(compress());
+        builder.append("]");
+        return builder.toString();
+    }
+}
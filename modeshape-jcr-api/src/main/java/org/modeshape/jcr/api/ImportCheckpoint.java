@@ -0,0 +1,181 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.api;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable and serializable description of the content which a streaming XML import has saved so far, which can be used
+ * to {@link ImportOptions#resumeFrom() resume} an import of the same content after a failure.
+ * <p>
+ * A checkpoint records the number of nodes read from the content, the identifiers of the last saved node and of its ancestors,
+ * and the reference properties which could not yet be set because they refer to nodes which appear later in the content.
+ * </p>
+ *
+ * @see ImportOptions
+ * @since 5.5
+ */
+public final class ImportCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long nodeCount;
+    private final List<String> nodeKeys;
+    private final List<PendingReference> pendingReferences;
+
+    /**
+     * Create a new checkpoint. Checkpoints are created by the repository during an import.
+     *
+     * @param nodeCount the number of nodes read from the content and saved; may not be negative
+     * @param nodeKeys the internal keys of the last saved node and of all its imported ancestors, starting with the topmost
+     *        imported ancestor; may not be null
+     * @param pendingReferences the reference properties which have not yet been set; may not be null
+     */
+    public ImportCheckpoint( long nodeCount,
+                             List<String> nodeKeys,
+                             List<PendingReference> pendingReferences ) {
+        if (nodeCount < 0) {
+            throw new IllegalArgumentException("The number of nodes may not be negative");
+        }
+        this.nodeCount = nodeCount;
+        this.nodeKeys = Collections.unmodifiableList(new ArrayList<>(nodeKeys));
+        this.pendingReferences = Collections.unmodifiableList(new ArrayList<>(pendingReferences));
+    }
+
+    /**
+     * Get the number of nodes which have been read from the content and saved. When an import is resumed, this many nodes are
+     * skipped at the beginning of the content.
+     *
+     * @return the number of nodes; never negative
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Get the internal keys of the last saved node and of all its imported ancestors, ordered by depth so that the key at index
+     * {@code n} is the key of the node at depth {@code n+1} below the node into which the content is imported.
+     *
+     * @return the keys; never null
+     */
+    public List<String> getNodeKeys() {
+        return nodeKeys;
+    }
+
+    /**
+     * Get the reference properties of the saved nodes which have not yet been set, because at least one of the nodes they
+     * refer to has not yet been imported.
+     *
+     * @return the pending references; never null
+     */
+    public List<PendingReference> getPendingReferences() {
+        return pendingReferences;
+    }
+
+    @Override
+    public String toString() {
+        return "[import_checkpoint: node count=" + nodeCount + ", pending references=" + pendingReferences.size() + "]";
+    }
+
+    /**
+     * A reference property of an imported node which is set once all the nodes it refers to have been imported.
+     */
+    public static final class PendingReference implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String nodeKey;
+        private final String propertyName;
+        private final int type;
+        private final boolean multiple;
+        private final String[] values;
+
+        /**
+         * Create a new pending reference.
+         *
+         * @param nodeKey the internal key of the node which owns the property; may not be null
+         * @param propertyName the name of the property; may not be null
+         * @param type the {@link javax.jcr.PropertyType type} of the property; one of the reference types
+         * @param multiple true if the property is multi-valued
+         * @param values the string forms of the values; may not be null
+         */
+        public PendingReference( String nodeKey,
+                                 String propertyName,
+                                 int type,
+                                 boolean multiple,
+                                 String[] values ) {
+            this.nodeKey = nodeKey;
+            this.propertyName = propertyName;
+            this.type = type;
+            this.multiple = multiple;
+            this.values = Arrays.copyOf(values, values.length);
+        }
+
+        /**
+         * Get the internal key of the node which owns the property.
+         *
+         * @return the key; never null
+         */
+        public String getNodeKey() {
+            return nodeKey;
+        }
+
+        /**
+         * Get the name of the property.
+         *
+         * @return the name; never null
+         */
+        public String getPropertyName() {
+            return propertyName;
+        }
+
+        /**
+         * Get the type of the property.
+         *
+         * @return the {@link javax.jcr.PropertyType type}
+         */
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * Determine whether the property is multi-valued.
+         *
+         * @return true if the property is multi-valued
+         */
+        public boolean isMultiple() {
+            return multiple;
+        }
+
+        /**
+         * Get the string forms of the values of the property.
+         *
+         * @return a copy of the values; never null
+         */
+        public String[] getValues() {
+            return Arrays.copyOf(values, values.length);
+        }
+
+        @Override
+        public String toString() {
+            return nodeKey + "/" + propertyName + "=" + Arrays.toString(values);
+        }
+    }
+}
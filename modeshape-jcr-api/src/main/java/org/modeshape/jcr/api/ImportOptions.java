@@ -0,0 +1,90 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.api;
+
+/**
+ * Class which allows a customization of a streaming XML import, which saves the imported content in several transactions
+ * instead of a single one.
+ *
+ * @see Workspace#importXML(String, java.io.InputStream, int, ImportOptions)
+ * @since 5.5
+ */
+public abstract class ImportOptions {
+
+    /**
+     * By default, the imported content is saved every 1000 nodes.
+     */
+    public static final int DEFAULT_NODES_PER_TRANSACTION = 1000;
+
+    /**
+     * By default, the imported content is saved at least every 16 MB of property values.
+     */
+    public static final long DEFAULT_BYTES_PER_TRANSACTION = 16L * 1024L * 1024L;
+
+    /**
+     * Default import options which will be used when a streaming import is performed without an explicit set of options.
+     */
+    public static final ImportOptions DEFAULT = new ImportOptions() {};
+
+    /**
+     * Return the maximum number of imported nodes which are saved in a single transaction.
+     *
+     * @return the number of nodes; defaults to {@value #DEFAULT_NODES_PER_TRANSACTION}
+     */
+    public int nodesPerTransaction() {
+        return DEFAULT_NODES_PER_TRANSACTION;
+    }
+
+    /**
+     * Return the approximate size of the property values (in their serialized form) after which the imported nodes are saved,
+     * even if fewer than {@link #nodesPerTransaction()} nodes have been imported.
+     *
+     * @return the number of bytes; defaults to {@value #DEFAULT_BYTES_PER_TRANSACTION}
+     */
+    public long bytesPerTransaction() {
+        return DEFAULT_BYTES_PER_TRANSACTION;
+    }
+
+    /**
+     * Return the checkpoint of an earlier import of the same content from which the import should be resumed. All the nodes
+     * which were imported (and saved) before that checkpoint are skipped.
+     *
+     * @return the checkpoint, or {@code null} if the import should start at the beginning of the content (the default)
+     */
+    public ImportCheckpoint resumeFrom() {
+        return null;
+    }
+
+    /**
+     * Method called after each transaction of imported content has been saved. The default implementation does nothing, but
+     * subclasses can record the checkpoint so that a failed import can later be {@link #resumeFrom() resumed}.
+     *
+     * @param checkpoint the checkpoint describing all the content which has been saved so far; never {@code null}
+     */
+    public void saved( ImportCheckpoint checkpoint ) {
+        // do nothing by default
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[import_options: ");
+        builder.append("nodes per transaction=").append(nodesPerTransaction());
+        builder.append(", bytes per transaction=").append(bytesPerTransaction());
+        builder.append(", resume from=").append(resumeFrom());
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -15,6 +15,8 @@
  */
 package org.modeshape.jcr.api;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.RepositoryException;
@@ -83,4 +85,40 @@ public interface Session extends javax.jcr.Session {
      */
     String decode( final String localName );
 
+    /**
+     * Serializes the node (and if {@link ExportOptions#noRecurse()} is false, the whole subgraph) at <code>absPath</code> as an
+     * XML stream in the system view format, like {@link #exportSystemView(String, OutputStream, boolean, boolean)}, using the
+     * supplied options. The nodes are read from the workspace in batches and the values of binary properties are encoded in
+     * parallel while the document is written.
+     *
+     * @param absPath The path of the root of the subgraph to be serialized. This must be the path to a node, not a property
+     * @param out The <code>OutputStream</code> to which the XML serialization of the subgraph will be output; it is not closed
+     * @param options the options of the export; may not be null
+     * @throws javax.jcr.PathNotFoundException if no node exists at <code>absPath</code>.
+     * @throws IOException if an error during an I/O operation occurs.
+     * @throws RepositoryException if another error occurs.
+     * @since 5.5
+     */
+    void exportSystemView( String absPath,
+                           OutputStream out,
+                           ExportOptions options ) throws IOException, RepositoryException;
+
+    /**
+     * Serializes the node (and if {@link ExportOptions#noRecurse()} is false, the whole subgraph) at <code>absPath</code> as an
+     * XML stream in the document view format, like {@link #exportDocumentView(String, OutputStream, boolean, boolean)}, using
+     * the supplied options. The nodes are read from the workspace in batches and the values of binary properties are encoded
+     * in parallel while the document is written.
+     *
+     * @param absPath The path of the root of the subgraph to be serialized. This must be the path to a node, not a property
+     * @param out The <code>OutputStream</code> to which the XML serialization of the subgraph will be output; it is not closed
+     * @param options the options of the export; may not be null
+     * @throws javax.jcr.PathNotFoundException if no node exists at <code>absPath</code>.
+     * @throws IOException if an error during an I/O operation occurs.
+     * @throws RepositoryException if another error occurs.
+     * @since 5.5
+     */
+    void exportDocumentView( String absPath,
+                             OutputStream out,
+                             ExportOptions options ) throws IOException, RepositoryException;
+
 }
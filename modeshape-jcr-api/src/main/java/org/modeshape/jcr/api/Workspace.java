@@ -15,6 +15,8 @@
  */
 package org.modeshape.jcr.api;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.concurrent.Future;
 import javax.jcr.AccessDeniedException;
 import javax.jcr.RepositoryException;
@@ -146,4 +148,49 @@ public interface Workspace extends javax.jcr.Workspace {
      * @see FederationManager
      */
     FederationManager getFederationManager() throws RepositoryException;
+
+    /**
+     * Returns a bulk loader which can be used to load large numbers of new nodes into this workspace, without tracking them in
+     * the session.
+     *
+     * @return a {@link BulkLoader} instance; never {@code null}
+     * @throws RepositoryException if anything unexpected fails.
+     * @see BulkLoader
+     * @since 5.5
+     */
+    BulkLoader getBulkLoader() throws RepositoryException;
+
+    /**
+     * Deserializes an XML document and adds the resulting item subgraph as a child of the node at <code>parentAbsPath</code>,
+     * like {@link #importXML(String, InputStream, int)}, except that the imported content is streamed into the workspace and
+     * saved in several transactions of the size given by the options, rather than in a single transaction. Only the nodes that
+     * have not yet been saved are kept in memory, plus the reference properties which refer to nodes that appear later in the
+     * document; these are set as soon as all the nodes they refer to have been imported.
+     * <p>
+     * Because each transaction is committed independently, a failed import leaves the content saved before the failure in
+     * the workspace. After each transaction the {@link ImportOptions#saved(ImportCheckpoint) options are notified} with a
+     * checkpoint, which can be supplied to a later import of the same document to {@link ImportOptions#resumeFrom() resume}
+     * it where it stopped.
+     * </p>
+     *
+     * @param parentAbsPath the absolute path of a node under which (as child) the imported subgraph will be built.
+     * @param in An <code>InputStream</code>.
+     * @param uuidBehavior a four-value flag that governs how incoming UUIDs are handled.
+     * @param options the options of the import; may not be null
+     * @throws IOException if an error during an I/O operation occurs.
+     * @throws javax.jcr.InvalidSerializedDataException if the serialized data being input has an invalid format.
+     * @throws javax.jcr.ItemExistsException if the UUID behavior causes a conflict with an existing node
+     * @throws javax.jcr.nodetype.ConstraintViolationException if the imported content violates the node types
+     * @throws javax.jcr.PathNotFoundException if no node exists at <code>parentAbsPath</code>
+     * @throws javax.jcr.version.VersionException if the node at <code>parentAbsPath</code> is checked-in
+     * @throws javax.jcr.lock.LockException if a lock prevents the addition of the subgraph
+     * @throws AccessDeniedException if the session associated with this workspace does not have sufficient access
+     * @throws RepositoryException if another error occurs.
+     * @see #importXML(String, InputStream, int)
+     * @since 5.5
+     */
+    void importXML( String parentAbsPath,
+                    InputStream in,
+                    int uuidBehavior,
+                    ImportOptions options ) throws IOException, RepositoryException;
 }
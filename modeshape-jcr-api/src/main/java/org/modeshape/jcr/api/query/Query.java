@@ -15,6 +15,7 @@
  */
 package org.modeshape.jcr.api.query;
 
+import java.util.concurrent.TimeUnit;
 import javax.jcr.RepositoryException;
 import javax.jcr.query.InvalidQueryException;
 import javax.jcr.query.QueryResult;
@@ -37,6 +38,21 @@ public interface Query extends javax.jcr.query.Query {
      */
     public void includeSystemContent( boolean includeSystemContent );
 
+    /**
+     * Specify that, before this query is executed, it should wait for the indexes that are updated asynchronously to reflect all
+     * of the changes saved at or before the given time. The query waits no longer than the given timeout, after which it is
+     * executed anyway and its results may not reflect all of these changes. Indexes that are updated synchronously always
+     * reflect all of the saved changes, so queries never wait for them.
+     * 
+     * @param timestamp the time, in milliseconds since the epoch, of the latest change that should be reflected in the indexes;
+     *        zero or a negative number if the query should not wait
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout; may not be null
+     */
+    public void waitForIndexes( long timestamp,
+                                long timeout,
+                                TimeUnit unit );
+
     /**
      * Signal that the query, if currently {@link Query#execute() executing}, should be cancelled and stopped (with an exception).
      * This method does not block until the query is actually stopped.
@@ -67,6 +83,21 @@ public interface Query extends javax.jcr.query.Query {
      */
     public org.modeshape.jcr.api.query.QueryResult explain() throws InvalidQueryException, RepositoryException;
 
+    /**
+     * Executes this query, reads all of its rows, and returns a <code>{@link QueryResult}</code> object that contains no results
+     * (nodes or rows) but does have a query plan in which each operator is annotated with the number of rows and batches it
+     * produced and the time spent producing them.
+     * <p>
+     * If this <code>Query</code> contains a variable (see {@link javax.jcr.query.qom.BindVariableValue BindVariableValue}) which
+     * has not been bound to a value (see {@link Query#bindValue}) then this method throws an <code>InvalidQueryException</code>.
+     * 
+     * @return a <code>QueryResult</code> object
+     * @throws InvalidQueryException if the query contains an unbound variable.
+     * @throws RepositoryException if another error occurs.
+     * @see #explain()
+     */
+    public org.modeshape.jcr.api.query.QueryResult profile() throws InvalidQueryException, RepositoryException;
+
     @Override
     public org.modeshape.jcr.api.query.QueryResult execute() throws InvalidQueryException, RepositoryException;
 }
@@ -16,24 +16,44 @@
 package org.modeshape.jcr;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import javax.jcr.Binary;
 import javax.jcr.ItemVisitor;
 import javax.jcr.NamespaceRegistry;
 import javax.jcr.Node;
+import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
 import org.modeshape.common.annotation.NotThreadSafe;
 import org.modeshape.common.text.TextEncoder;
 import org.modeshape.common.text.XmlNameEncoder;
+import org.modeshape.common.util.Base64;
+import org.modeshape.common.util.IoUtil;
 import org.modeshape.common.xml.StreamingContentHandler;
+import org.modeshape.jcr.api.ExportOptions;
+import org.modeshape.jcr.cache.CachedNode;
+import org.modeshape.jcr.cache.ChildReference;
 import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.document.WorkspaceCache;
+import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.BinaryValue;
 import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.Property;
+import org.modeshape.jcr.value.binary.ExternalBinaryValue;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
@@ -43,6 +63,9 @@ import org.xml.sax.SAXException;
  * exception wrapping (since {@link ItemVisitor} does not allow checked exceptions to be thrown from its visit* methods, and the
  * ability to wrap an {@link OutputStream} with a {@link ContentHandler}.
  * <p />
+ * The children of each exported node are read from the workspace in batches, and the small binary values of each batch are
+ * Base64-encoded by a pool of threads while the preceding nodes are being written, within a bounded amount of memory.
+ * <p />
  * Each exporter is only intended to be used once (by calling <code>exportView</code>) and discarded. This class is <b>NOT</b>
  * thread-safe.
  * 
@@ -64,6 +87,30 @@ abstract class AbstractJcrExporter {
      */
     private static final List<String> UNEXPORTABLE_NAMESPACES = Arrays.asList("", "xml", "xmlns");
 
+    /**
+     * The number of children of a node which are read from the workspace at once.
+     */
+    private static final int CHILDREN_BATCH_SIZE = 100;
+
+    /**
+     * Binary values up to this size are encoded before the nodes which use them are exported; larger values are encoded while
+     * they are written.
+     */
+    private static final long MAX_SIZE_OF_BINARY_ENCODED_AHEAD = 1L << 20;
+
+    /**
+     * The maximum total size of the binary values which are encoded but not yet written, which bounds the memory used by the
+     * encoded values.
+     */
+    private static final long MAX_SIZE_OF_BINARIES_ENCODED_AHEAD = 16L << 20;
+
+    /**
+     * The size of the buffer used when the export is compressed.
+     */
+    private static final int COMPRESSION_BUFFER_SIZE = 1 << 16;
+
+    private static final String ENCODING_THREAD_POOL_NAME = "modeshape-export";
+
     /**
      * The session in which this exporter was created.
      */
@@ -84,6 +131,13 @@ abstract class AbstractJcrExporter {
      */
     private final Set<NodeKey> shareableNodes = new HashSet<NodeKey>();
 
+    /**
+     * The binary values which are being (or have been) encoded ahead of the export of the nodes which use them.
+     */
+    private final Map<BinaryKey, EncodedBinary> encodedBinaries = new HashMap<>();
+
+    private long sizeOfBinariesEncodedAhead;
+
     /**
      * Creates the exporter
      * 
@@ -153,6 +207,17 @@ abstract class AbstractJcrExporter {
         assert exportRootNode != null;
         assert contentHandler != null;
         session.checkLive();
+        try {
+            exportDocument(exportRootNode, contentHandler, skipBinary, noRecurse);
+        } finally {
+            discardEncodedBinaries();
+        }
+    }
+
+    private void exportDocument( Node exportRootNode,
+                                 ContentHandler contentHandler,
+                                 boolean skipBinary,
+                                 boolean noRecurse ) throws RepositoryException, SAXException {
 
         // Export the namespace mappings used in this session
         NamespaceRegistry registry = session.getWorkspace().getNamespaceRegistry();
@@ -204,6 +269,31 @@ abstract class AbstractJcrExporter {
         }
     }
 
+    /**
+     * Exports <code>node</code> (or the subtree rooted at <code>node</code>) into an XML document that is written to
+     * <code>os</code>, optionally compressed with GZIP.
+     * 
+     * @param node the node which should be exported
+     * @param os the {@link OutputStream} to which the XML document will be written; it is not closed
+     * @param options the options of the export; may not be null
+     * @throws RepositoryException if an exception occurs accessing the content repository, generating the XML document, or
+     *         writing it to the output stream <code>os</code>.
+     * @throws IOException if there is a problem writing to the supplied stream
+     */
+    public void exportView( Node node,
+                            OutputStream os,
+                            ExportOptions options ) throws IOException, RepositoryException {
+        if (!options.compress()) {
+            exportView(node, os, options.skipBinary(), options.noRecurse());
+            return;
+        }
+        GZIPOutputStream compressed = new GZIPOutputStream(os, COMPRESSION_BUFFER_SIZE);
+        exportView(node, compressed, options.skipBinary(), options.noRecurse());
+        // finish the compressed stream without closing the supplied stream ...
+        compressed.finish();
+        os.flush();
+    }
+
     /**
      * Exports <code>node</code> (or the subtree rooted at <code>node</code>) into an XML document by invoking SAX events on
      * <code>contentHandler</code>.
@@ -278,4 +368,247 @@ abstract class AbstractJcrExporter {
         // node
         return null;
     }
+
+    /**
+     * Returns the children of <code>node</code> which should be exported. The children are read from the workspace in batches
+     * (rather than one at a time), and the JCR node of each child is released from the session once the next child is requested,
+     * so that exporting a large subtree does not keep all its nodes in the session. Unless binary values are skipped, the small
+     * binary values of each batch of children are encoded in the background, ahead of the export of those children.
+     * 
+     * @param node the node whose children are exported
+     * @param skipBinary if <code>true</code>, indicates that binary properties are not exported
+     * @return the iterator over the children which can be read by the session; never null
+     * @throws RepositoryException if an exception occurs accessing the content repository
+     */
+    protected Iterator<Node> childrenOf( Node node,
+                                         boolean skipBinary ) throws RepositoryException {
+        return new ChildIterator((AbstractJcrNode)node, skipBinary);
+    }
+
+    /**
+     * Returns the Base64 encoding of a binary value, which was either encoded ahead of the export of its node or is encoded now.
+     * 
+     * @param binary the binary value
+     * @return the encoded value; never null
+     * @throws RepositoryException if the binary value cannot be read
+     */
+    protected String encode( Binary binary ) throws RepositoryException {
+        String encoded = encodedAhead(binary);
+        if (encoded != null) {
+            return encoded;
+        }
+        try {
+            return encodeBinary(binary);
+        } catch (IOException ioe) {
+            throw new RepositoryException(ioe);
+        }
+    }
+
+    /**
+     * Returns the Base64 encoding of a binary value if it was encoded ahead of the export of its node.
+     * 
+     * @param binary the binary value
+     * @return the encoded value, or null if the value was not encoded ahead
+     * @throws RepositoryException if the binary value could not be read
+     */
+    protected String encodedAhead( Binary binary ) throws RepositoryException {
+        if (!(binary instanceof BinaryValue)) {
+            return null;
+        }
+        EncodedBinary encoded = encodedBinaries.remove(((BinaryValue)binary).getKey());
+        if (encoded == null) {
+            return null;
+        }
+        sizeOfBinariesEncodedAhead -= encoded.size;
+        try {
+            return encoded.value.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RepositoryException) {
+                throw (RepositoryException)cause;
+            }
+            throw new RepositoryException(cause);
+        }
+    }
+
+    private void encodeAhead( WorkspaceCache workspaceCache,
+                              List<NodeKey> keys,
+                              Map<NodeKey, List<BinaryKey>> encodedByChild ) {
+        for (NodeKey key : keys) {
+            CachedNode child = workspaceCache.getNode(key);
+            if (child == null) {
+                continue;
+            }
+            for (Iterator<Property> properties = child.getProperties(workspaceCache); properties.hasNext();) {
+                for (Object value : properties.next()) {
+                    if (value instanceof BinaryValue && !(value instanceof ExternalBinaryValue)
+                        && encodeAhead((BinaryValue)value)) {
+                        List<BinaryKey> encoded = encodedByChild.get(key);
+                        if (encoded == null) {
+                            encoded = new ArrayList<>();
+                            encodedByChild.put(key, encoded);
+                        }
+                        encoded.add(((BinaryValue)value).getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean encodeAhead( final BinaryValue binary ) {
+        long size = binary.getSize();
+        if (size > MAX_SIZE_OF_BINARY_ENCODED_AHEAD || sizeOfBinariesEncodedAhead + size > MAX_SIZE_OF_BINARIES_ENCODED_AHEAD
+            || encodedBinaries.containsKey(binary.getKey())) {
+            return false;
+        }
+        ExecutorService encoders = session.context().getThreadPool(ENCODING_THREAD_POOL_NAME);
+        Future<String> encoded = encoders.submit(() -> encodeBinary(binary));
+        encodedBinaries.put(binary.getKey(), new EncodedBinary(size, encoded));
+        sizeOfBinariesEncodedAhead += size;
+        return true;
+    }
+
+    /**
+     * Discard the binary values that were encoded ahead for a node but were not written, e.g. because the node was not exported,
+     * so that they no longer count against {@link #MAX_SIZE_OF_BINARIES_ENCODED_AHEAD}.
+     *
+     * @param binaryKeys the keys of the binary values encoded ahead for the node; may be null
+     */
+    private void discardEncodedBinaries( List<BinaryKey> binaryKeys ) {
+        if (binaryKeys == null) {
+            return;
+        }
+        for (BinaryKey binaryKey : binaryKeys) {
+            EncodedBinary encoded = encodedBinaries.remove(binaryKey);
+            if (encoded != null) {
+                encoded.value.cancel(true);
+                sizeOfBinariesEncodedAhead -= encoded.size;
+            }
+        }
+    }
+
+    private void discardEncodedBinaries() {
+        for (EncodedBinary encoded : encodedBinaries.values()) {
+            encoded.value.cancel(true);
+        }
+        encodedBinaries.clear();
+        sizeOfBinariesEncodedAhead = 0;
+    }
+
+    private static String encodeBinary( Binary binary ) throws RepositoryException, IOException {
+        try (InputStream stream = new Base64.InputStream(binary.getStream(), Base64.ENCODE)) {
+            return IoUtil.read(stream);
+        }
+    }
+
+    private static final class EncodedBinary {
+        protected final long size;
+        protected final Future<String> value;
+
+        protected EncodedBinary( long size,
+                                 Future<String> value ) {
+            this.size = size;
+            this.value = value;
+        }
+    }
+
+    private final class ChildIterator implements Iterator<Node> {
+        private final NodeIterator children;
+        private final Iterator<ChildReference> references;
+        private final boolean skipBinary;
+        /**
+         * The keys of the binary values encoded ahead for each prefetched child that has not yet been exported, in the order of
+         * the children.
+         */
+        private final Map<NodeKey, List<BinaryKey>> encodedByChild = new LinkedHashMap<>();
+        private long prefetched;
+        private long returned;
+        private AbstractJcrNode previous;
+
+        protected ChildIterator( AbstractJcrNode parent,
+                                 boolean skipBinary ) throws RepositoryException {
+            // the node iterator checks permissions and returns only those nodes on which there is READ permission
+            this.children = parent.getNodes();
+            this.references = parent.node().getChildReferences(session.cache()).iterator();
+            this.skipBinary = skipBinary;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (children.hasNext()) {
+                return true;
+            }
+            release();
+            // the remaining prefetched children are not readable ...
+            for (List<BinaryKey> binaryKeys : encodedByChild.values()) {
+                discardEncodedBinaries(binaryKeys);
+            }
+            encodedByChild.clear();
+            return false;
+        }
+
+        @Override
+        public Node next() {
+            release();
+            if (returned == prefetched) {
+                prefetch();
+            }
+            Node child = children.nextNode();
+            ++returned;
+            if (child instanceof AbstractJcrNode) {
+                previous = (AbstractJcrNode)child;
+                skipTo(previous.key());
+            }
+            return child;
+        }
+
+        private void skipTo( NodeKey childKey ) {
+            if (!encodedByChild.containsKey(childKey)) {
+                return;
+            }
+            // the prefetched children before this one were skipped because they are not readable ...
+            for (Iterator<NodeKey> keys = encodedByChild.keySet().iterator(); keys.hasNext();) {
+                NodeKey key = keys.next();
+                if (key.equals(childKey)) {
+                    break;
+                }
+                discardEncodedBinaries(encodedByChild.get(key));
+                keys.remove();
+            }
+        }
+
+        private void prefetch() {
+            List<NodeKey> keys = new ArrayList<>(CHILDREN_BATCH_SIZE);
+            while (keys.size() < CHILDREN_BATCH_SIZE && references.hasNext()) {
+                keys.add(references.next().getKey());
+            }
+            if (keys.isEmpty()) {
+                return;
+            }
+            prefetched += keys.size();
+            WorkspaceCache workspaceCache = session.cache().getWorkspace();
+            workspaceCache.prefetch(keys);
+            if (!skipBinary) {
+                encodeAhead(workspaceCache, keys, encodedByChild);
+            }
+        }
+
+        private void release() {
+            if (previous != null) {
+                // the whole subtree of the previous child has been exported, so whatever was encoded for it and not written
+                // (e.g., because the child was filtered out) is no longer needed ...
+                discardEncodedBinaries(encodedByChild.remove(previous.key()));
+                session.releaseCachedNode(previous);
+                previous = null;
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -33,16 +33,20 @@ import javax.jcr.security.AccessControlPolicy;
 import javax.jcr.security.AccessControlPolicyIterator;
 import javax.jcr.security.Privilege;
 import javax.jcr.version.VersionException;
+import org.modeshape.jcr.cache.AccessControlCache;
 import org.modeshape.jcr.cache.CachedNode;
 import org.modeshape.jcr.cache.MutableCachedNode;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.SessionCache;
+import org.modeshape.jcr.cache.document.TransactionalWorkspaceCache;
 import org.modeshape.jcr.security.SecurityContext;
 import org.modeshape.jcr.security.SimplePrincipal;
 import org.modeshape.jcr.security.acl.AccessControlPolicyIteratorImpl;
 import org.modeshape.jcr.security.acl.JcrAccessControlList;
 import org.modeshape.jcr.security.acl.Privileges;
 import org.modeshape.jcr.value.Path;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 /**
  * AccessControlManager implementation. AccessControlManager has been implemented suppose that node is associated with access
@@ -73,6 +77,10 @@ public class AccessControlManagerImpl implements AccessControlManager {
     // default access list granted all permissions to everyone.
     private final JcrAccessControlList defaultACL;
 
+    // the privileges of the entries of the effective ACLs that apply to this session's user
+    private final Cache<AccessControlCache.EffectiveAcl, long[]> applicableEntries = Caffeine.newBuilder().weakKeys()
+                                                                                            .executor(Runnable::run).build();
+
     protected AccessControlManagerImpl( JcrSession session ) {
         this.session = session;
         this.privileges = new Privileges(session);
@@ -311,6 +319,24 @@ public class AccessControlManagerImpl implements AccessControlManager {
 
     protected boolean hasPermission( Path absPath,
                                      String... actions ) {
+        SessionCache sessionCache = session.cache();
+        long required = AccessControlCache.privilegesFor(actions);
+        if (required != AccessControlCache.UNKNOWN && !sessionCache.hasChanges()
+            && !(sessionCache.getWorkspace() instanceof TransactionalWorkspaceCache)) {
+            // Nothing is transient, so use the effective ACLs of the persisted nodes that are shared by all sessions ...
+            try {
+                CachedNode node = session.cachedNode(absPath, false);
+                AccessControlCache.EffectiveAcl acl = session.repository().repositoryCache().accessControlCache()
+                                                             .effectiveAcl(node, sessionCache);
+                if (acl.isCompiled()) {
+                    long[] entries = applicableEntries.get(acl, effectiveAcl -> effectiveAcl.privilegesFor(securityContext()));
+                    return acl.grants(entries, required);
+                }
+            } catch (Exception e) {
+                return true;
+            }
+        }
+
         // convert actions to privileges
         Privilege[] permissions = new Privilege[actions.length];
         for (int i = 0; i < actions.length; i++) {
@@ -18,6 +18,7 @@ package org.modeshape.jcr;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import org.modeshape.common.annotation.NotThreadSafe;
@@ -37,15 +38,18 @@ final class JcrChildNodeIterator implements NodeIterator {
     }
 
     private final NodeResolver resolver;
-    private final Iterator<ChildReference> iterator;
+    private final ChildReferences childReferences;
+    private Iterator<ChildReference> iterator;
     private Node resolvedNode;
     private Iterator<Node> nodeIterator;
     private int ndx;
+    private long referenceNdx;
     private long size;
 
     JcrChildNodeIterator( NodeResolver resolver,
                           Iterator<ChildReference> iterator ) {
         this.resolver = resolver;
+        this.childReferences = null;
         this.iterator = iterator;
         this.size = -1L; // we'll calculate if needed
     }
@@ -54,6 +58,7 @@ final class JcrChildNodeIterator implements NodeIterator {
                           ChildReferences childReferences ) {
         assert size >= 0L;
         this.resolver = resolver;
+        this.childReferences = childReferences;
         this.iterator = childReferences.iterator();
         this.size = childReferences.size();
     }
@@ -101,6 +106,7 @@ final class JcrChildNodeIterator implements NodeIterator {
         //we need to look ahead in the child reference iterator, because the resolver might not return a node
         while (iterator.hasNext() && resolvedNode == null) {
             ChildReference ref = iterator.next();
+            ++referenceNdx;
             resolvedNode = resolver.nodeFrom(ref);
         }
         return resolvedNode != null;
@@ -120,6 +126,7 @@ final class JcrChildNodeIterator implements NodeIterator {
         if (resolvedNode == null) {
             do {
                 ChildReference childRef = iterator.next();
+                ++referenceNdx;
                 child = resolver.nodeFrom(childRef);
             } while (child == null);
         } else {
@@ -138,6 +145,17 @@ final class JcrChildNodeIterator implements NodeIterator {
     @Override
     public void skip( long count ) {
         CheckArg.isNonNegative(count, "count");
+        if (childReferences != null && size >= 0L && nodeIterator == null && resolvedNode == null) {
+            // Start over at the new position without resolving the skipped children ...
+            long position = referenceNdx + count;
+            if (position > size) {
+                throw new NoSuchElementException();
+            }
+            iterator = childReferences.iterator(position);
+            referenceNdx = position;
+            ndx += count;
+            return;
+        }
         while (--count >= 0) {
             nextNode();
         }
@@ -31,6 +31,7 @@ import java.util.Set;
 import javax.jcr.Binary;
 import javax.jcr.ImportUUIDBehavior;
 import javax.jcr.InvalidItemStateException;
+import javax.jcr.InvalidSerializedDataException;
 import javax.jcr.ItemExistsException;
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.PathNotFoundException;
@@ -48,8 +49,12 @@ import org.modeshape.common.text.TextDecoder;
 import org.modeshape.common.text.XmlNameEncoder;
 import org.modeshape.common.util.Base64;
 import org.modeshape.common.util.StringUtil;
+import org.modeshape.jcr.api.ImportCheckpoint;
+import org.modeshape.jcr.api.ImportCheckpoint.PendingReference;
+import org.modeshape.jcr.api.ImportOptions;
 import org.modeshape.jcr.cache.CachedNode;
 import org.modeshape.jcr.cache.CachedNode.ReferenceType;
+import org.modeshape.jcr.cache.ChildReferences;
 import org.modeshape.jcr.cache.MutableCachedNode;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.ReferrerCounts;
@@ -73,6 +78,14 @@ import org.xml.sax.helpers.DefaultHandler;
  * <p>
  * Each content handler is only intended to be used once and discarded. This class is <b>NOT</b> thread-safe.
  * </p>
+ * <p>
+ * When created with {@link ImportOptions}, the handler streams the content into the workspace: the imported nodes are saved
+ * every time the configured number of nodes (or bytes of property values) has been read, after setting all the references
+ * whose targets have already been imported. A save only happens at the end of a node's element, and is postponed while one of
+ * the enclosing nodes still lacks a mandatory child (such as the 'jcr:content' of an 'nt:file'). The remaining references are kept until their targets are imported, and are
+ * recorded in the {@link ImportCheckpoint} passed to the options after each save, so that an import of the same content can be
+ * resumed by skipping the nodes that were already saved.
+ * </p>
  * 
  * @see JcrSession#getImportContentHandler(String, int)
  * @see JcrWorkspace#getImportContentHandler(String, int)
@@ -98,7 +111,6 @@ class JcrContentHandler extends DefaultHandler {
     protected final boolean lifecycleInfoRetained;
     protected final List<AbstractJcrNode> nodesForPostProcessing = new LinkedList<>();
     protected final Map<String, NodeKey> uuidToNodeKeyMapping = new HashMap<>();
-    protected final Set<NodeKey> importedNodeKeys = new HashSet<>();
     protected final Map<NodeKey, String> shareIdsToUUIDMap = new HashMap<>();
     protected final Map<NodeKey, ReferrerCounts> referrersByNodeKey = new HashMap<>();
     protected final LinkedHashMultimap<NodeKey, ReferenceProperty> allReferenceProperties = LinkedHashMultimap.create();
@@ -117,10 +129,14 @@ class JcrContentHandler extends DefaultHandler {
     private final org.modeshape.jcr.api.NamespaceRegistry jcrNamespaceRegistry;
     private final boolean saveWhenCompleted;
     private final String systemWorkspaceKey;
+    private final ImportOptions options;
+    private final ImportCheckpoint resumeFrom;
 
     private AbstractJcrNode currentNode;
     private ContentHandler delegate;
-
+    private long nodeCount;
+    private int nodesSinceSave;
+    private long bytesSinceSave;
 
     JcrContentHandler( JcrSession session,
                        AbstractJcrNode parent,
@@ -128,7 +144,18 @@ class JcrContentHandler extends DefaultHandler {
                        boolean saveWhenCompleted,
                        boolean retentionInfoRetained,
                        boolean lifecycleInfoRetained ) throws PathNotFoundException, RepositoryException {
+        this(session, parent, uuidBehavior, saveWhenCompleted, retentionInfoRetained, lifecycleInfoRetained, null);
+    }
+
+    JcrContentHandler( JcrSession session,
+                       AbstractJcrNode parent,
+                       int uuidBehavior,
+                       boolean saveWhenCompleted,
+                       boolean retentionInfoRetained,
+                       boolean lifecycleInfoRetained,
+                       ImportOptions options ) throws PathNotFoundException, RepositoryException {
         assert session != null;
+        assert options == null || saveWhenCompleted;
         assert uuidBehavior == ImportUUIDBehavior.IMPORT_UUID_CREATE_NEW
                || uuidBehavior == ImportUUIDBehavior.IMPORT_UUID_COLLISION_REMOVE_EXISTING
                || uuidBehavior == ImportUUIDBehavior.IMPORT_UUID_COLLISION_REPLACE_EXISTING
@@ -158,6 +185,25 @@ class JcrContentHandler extends DefaultHandler {
         this.mixinTypesName = JcrLexicon.MIXIN_TYPES.getString(this.namespaces);
         this.uuidName = JcrLexicon.UUID.getString(this.namespaces);
         this.systemWorkspaceKey = session.repository().systemWorkspaceKey();
+        this.options = options;
+        this.resumeFrom = options != null ? options.resumeFrom() : null;
+        if (resumeFrom != null) {
+            // the references which were pending when the checkpoint was made are set once their targets are imported ...
+            for (PendingReference pending : resumeFrom.getPendingReferences()) {
+                String[] strings = pending.getValues();
+                Value[] values = new Value[strings.length];
+                for (int i = 0; i != strings.length; ++i) {
+                    values[i] = valueFor(strings[i], pending.getType());
+                }
+                Name name = nameFor(pending.getPropertyName());
+                NodeKey key = new NodeKey(pending.getNodeKey());
+                if (pending.isMultiple()) {
+                    allReferenceProperties.put(key, new ReferenceProperty(name, values));
+                } else {
+                    allReferenceProperties.put(key, new ReferenceProperty(name, values[0]));
+                }
+            }
+        }
     }
 
     protected final JcrSession session() {
@@ -231,97 +277,227 @@ class JcrContentHandler extends DefaultHandler {
     protected void postProcessNodes() throws SAXException {
         try {
             // first make sure all the necessary reference properties have been set
-            processReferences();
+            processReferences(false);
             
             for (AbstractJcrNode node : nodesForPostProcessing) {
-                MutableCachedNode mutable = node.mutable();
-
-                // ---------------
-                // mix:versionable
-                // ---------------
-                if (node.isNodeType(JcrMixLexicon.VERSIONABLE)) {
-
-                    // Does the versionable node already have a reference to the version history?
-                    // If so, then we ignore it because we'll use our own key ...
-
-                    // Does the versionable node already have a base version?
-                    AbstractJcrProperty baseVersionProp = node.getProperty(JcrLexicon.BASE_VERSION);
-                    if (baseVersionProp != null) {
-                        // we rely on the fact that the base version ref is exported with full key
-                        NodeKeyReference baseVersionRef = (NodeKeyReference)baseVersionProp.getValue().value();
-                        String workspaceKey = baseVersionRef.getNodeKey().getWorkspaceKey();
-                        //we only register the base version if it comes from the system workspace (if it doesn't come from the
-                        //system workspace, it's not valid - e.g. could be coming from an older version of ModeShape)
-                        if (systemWorkspaceKey.equals(workspaceKey)) {
-                            session.setDesiredBaseVersionKey(node.key(), baseVersionRef.getNodeKey());
-                        }
-                    }
-                }
+                postProcess(node);
+            }
+        } catch (RepositoryException e) {
+            throw new EnclosingSAXException(e);
+        }
+    }
 
-                // ---------------
-                // mix:lockable
-                // ---------------
-                if (node.isNodeType(JcrMixLexicon.LOCKABLE) && node.isLocked()) {
-                    // Nodes should not be locked upon import ...
-                    node.unlock();
+    private void postProcess( AbstractJcrNode node ) throws RepositoryException {
+        MutableCachedNode mutable = node.mutable();
+
+        // ---------------
+        // mix:versionable
+        // ---------------
+        if (node.isNodeType(JcrMixLexicon.VERSIONABLE)) {
+
+            // Does the versionable node already have a reference to the version history?
+            // If so, then we ignore it because we'll use our own key ...
+
+            // Does the versionable node already have a base version?
+            AbstractJcrProperty baseVersionProp = node.getProperty(JcrLexicon.BASE_VERSION);
+            if (baseVersionProp != null) {
+                // we rely on the fact that the base version ref is exported with full key
+                NodeKeyReference baseVersionRef = (NodeKeyReference)baseVersionProp.getValue().value();
+                String workspaceKey = baseVersionRef.getNodeKey().getWorkspaceKey();
+                //we only register the base version if it comes from the system workspace (if it doesn't come from the
+                //system workspace, it's not valid - e.g. could be coming from an older version of ModeShape)
+                if (systemWorkspaceKey.equals(workspaceKey)) {
+                    session.setDesiredBaseVersionKey(node.key(), baseVersionRef.getNodeKey());
                 }
+            }
+        }
 
-                // ---------------
-                // mix:lifecycle
-                // ---------------
-                if (node.isNodeType(JcrMixLexicon.LIFECYCLE)) {
-                    if (lifecycleInfoRetained && !isValidReference(node, JcrLexicon.LIFECYCLE_POLICY, false)) {
-                        // The 'jcr:lifecyclePolicy' REFERENCE values is not valid or does not reference an existing node,
-                        // so the 'jcr:lifecyclePolicy' and 'jcr:currentLifecycleState' properties should be removed...
-                        mutable.removeProperty(cache, JcrLexicon.LIFECYCLE_POLICY);
-                        mutable.removeProperty(cache, JcrLexicon.CURRENT_LIFECYCLE_STATE);
-                    }
-                }
+        // ---------------
+        // mix:lockable
+        // ---------------
+        if (node.isNodeType(JcrMixLexicon.LOCKABLE) && node.isLocked()) {
+            // Nodes should not be locked upon import ...
+            node.unlock();
+        }
 
-                // --------------------
-                // mix:managedRetention
-                // --------------------
-                if (node.isNodeType(JcrMixLexicon.MANAGED_RETENTION)) {
-                    if (retentionInfoRetained && !isValidReference(node, JcrLexicon.RETENTION_POLICY, false)) {
-                        // The 'jcr:retentionPolicy' REFERENCE values is not valid or does not reference an existing node,
-                        // so the 'jcr:retentionPolicy', 'jcr:hold' and 'jcr:isDeep' properties should be removed ...
-                        mutable.removeProperty(cache, JcrLexicon.HOLD);
-                        mutable.removeProperty(cache, JcrLexicon.IS_DEEP);
-                        mutable.removeProperty(cache, JcrLexicon.RETENTION_POLICY);
-                    }
+        // ---------------
+        // mix:lifecycle
+        // ---------------
+        if (node.isNodeType(JcrMixLexicon.LIFECYCLE)) {
+            if (lifecycleInfoRetained && !isValidReference(node, JcrLexicon.LIFECYCLE_POLICY, false)) {
+                // The 'jcr:lifecyclePolicy' REFERENCE values is not valid or does not reference an existing node,
+                // so the 'jcr:lifecyclePolicy' and 'jcr:currentLifecycleState' properties should be removed...
+                mutable.removeProperty(cache, JcrLexicon.LIFECYCLE_POLICY);
+                mutable.removeProperty(cache, JcrLexicon.CURRENT_LIFECYCLE_STATE);
+            }
+        }
 
-                }
+        // --------------------
+        // mix:managedRetention
+        // --------------------
+        if (node.isNodeType(JcrMixLexicon.MANAGED_RETENTION)) {
+            if (retentionInfoRetained && !isValidReference(node, JcrLexicon.RETENTION_POLICY, false)) {
+                // The 'jcr:retentionPolicy' REFERENCE values is not valid or does not reference an existing node,
+                // so the 'jcr:retentionPolicy', 'jcr:hold' and 'jcr:isDeep' properties should be removed ...
+                mutable.removeProperty(cache, JcrLexicon.HOLD);
+                mutable.removeProperty(cache, JcrLexicon.IS_DEEP);
+                mutable.removeProperty(cache, JcrLexicon.RETENTION_POLICY);
+            }
+
+        }
+
+        // --------------------
+        // mix:share
+        // --------------------
+        if (node.isNodeType(ModeShapeLexicon.SHARE)) {
+            // get the actual key of the shareable node
+            String shareableNodeUUID = shareIdsToUUIDMap.get(node.key());
+            assert shareableNodeUUID != null;
+            NodeKey shareableNodeKey = uuidToNodeKeyMapping.get(shareableNodeUUID);
+            assert shareableNodeKey != null;
+
+            // unlink the current key from its parent references
+            NodeKey parentKey = mutable.getParentKey(cache);
+            MutableCachedNode parent = cache.mutable(parentKey);
+            parent.removeChild(cache, node.key());
+
+            // re-link it with the correct key - that of the shareable node
+            parent.linkChild(cache, shareableNodeKey, node.name());
+        }
+    }
 
-                // --------------------
-                // mix:share
-                // --------------------
-                if (node.isNodeType(ModeShapeLexicon.SHARE)) {
-                    // get the actual key of the shareable node
-                    String shareableNodeUUID = shareIdsToUUIDMap.get(node.key());
-                    assert shareableNodeUUID != null;
-                    NodeKey shareableNodeKey = uuidToNodeKeyMapping.get(shareableNodeUUID);
-                    assert shareableNodeKey != null;
-
-                    // unlink the current key from its parent references
-                    NodeKey parentKey = mutable.getParentKey(cache);
-                    MutableCachedNode parent = cache.mutable(parentKey);
-                    parent.removeChild(cache, node.key());
-
-                    // re-link it with the correct key - that of the shareable node
-                    parent.linkChild(cache, shareableNodeKey, node.name());
+    /**
+     * Called after each node has been created.
+     *
+     * @param handler the handler of the node which was just created; may not be null
+     */
+    protected void nodeImported( NodeHandler handler ) {
+        ++nodesSinceSave;
+    }
+
+    /**
+     * Called at the end of each node's element, to save the imported content when streaming and enough of it has been read. The
+     * children of a node are only known at the end of its element, so this is the earliest point where the node can be saved.
+     *
+     * @param handler the handler of the node whose element just ended; may not be null
+     * @throws SAXException if the imported content cannot be saved
+     */
+    protected void nodeEnded( NodeHandler handler ) throws SAXException {
+        if (options == null) {
+            return;
+        }
+        if (nodesSinceSave < options.nodesPerTransaction() && bytesSinceSave < options.bytesPerTransaction()) {
+            return;
+        }
+        if (!mandatoryChildrenImported(handler.parentHandler())) {
+            // one of the enclosing nodes would fail validation, so keep everything in the session until its children arrive ...
+            return;
+        }
+        for (String shareableNodeUUID : shareIdsToUUIDMap.values()) {
+            if (!uuidToNodeKeyMapping.containsKey(shareableNodeUUID)) {
+                // a share refers to a shareable node which hasn't been imported yet, and until then the share's parent
+                // refers to a placeholder key, so keep everything in the session ...
+                return;
+            }
+        }
+        try {
+            // set all the references that we can, and post-process the nodes before saving them ...
+            processReferences(true);
+            for (AbstractJcrNode node : nodesForPostProcessing) {
+                postProcess(node);
+            }
+            nodesForPostProcessing.clear();
+            shareIdsToUUIDMap.clear();
+            session.save();
+            session.releaseCachedNodes();
+            nodesSinceSave = 0;
+            bytesSinceSave = 0;
+            options.saved(checkpoint(handler));
+        } catch (RepositoryException e) {
+            throw new EnclosingSAXException(e);
+        }
+    }
+
+    private boolean mandatoryChildrenImported( NodeHandler handler ) throws SAXException {
+        NodeTypes nodeTypes = this.nodeTypes.nodeTypes();
+        try {
+            for (NodeHandler ancestor = handler; ancestor != null; ancestor = ancestor.parentHandler()) {
+                if (!(ancestor instanceof BasicNodeHandler)) {
+                    // existing nodes have already been validated ...
+                    continue;
+                }
+                AbstractJcrNode node = ancestor.node();
+                if (!node.isNew()) {
+                    continue;
+                }
+                Name primaryType = node.getPrimaryTypeName();
+                Set<Name> mixinTypes = node.getMixinTypeNames();
+                if (!nodeTypes.hasMandatoryChildNodeDefinitions(primaryType, mixinTypes)) {
+                    continue;
+                }
+                ChildReferences children = node.node().getChildReferences(cache);
+                for (JcrNodeDefinition defn : nodeTypes.getMandatoryChildNodeDefinitions(primaryType, mixinTypes)) {
+                    if (children.getChild(defn.getInternalName()) == null) {
+                        return false;
+                    }
                 }
             }
+            return true;
         } catch (RepositoryException e) {
             throw new EnclosingSAXException(e);
         }
     }
 
-    private void processReferences() throws RepositoryException {
+    private ImportCheckpoint checkpoint( NodeHandler handler ) throws SAXException {
+        LinkedList<String> nodeKeys = new LinkedList<>();
+        for (NodeHandler ancestor = handler; ancestor.parentHandler() != null; ancestor = ancestor.parentHandler()) {
+            nodeKeys.addFirst(ancestor.node().key().toString());
+        }
+        List<PendingReference> pendingReferences = new ArrayList<>();
+        for (Map.Entry<NodeKey, ReferenceProperty> entry : allReferenceProperties.entries()) {
+            ReferenceProperty property = entry.getValue();
+            Value[] values = property.values();
+            String[] strings = new String[values.length];
+            for (int i = 0; i != values.length; ++i) {
+                Object value = ((JcrValue)values[i]).value();
+                // use the full key of the referenced node, since it was resolved against the parent of the referrer ...
+                strings[i] = value instanceof NodeKeyReference ? ((NodeKeyReference)value).getNodeKey().toString() : stringFor(value);
+            }
+            pendingReferences.add(new PendingReference(entry.getKey().toString(), property.name().getString(), property.type(),
+                                                       property.isMultiple(), strings));
+        }
+        return new ImportCheckpoint(nodeCount, nodeKeys, pendingReferences);
+    }
+
+    private boolean canBeSetBeforeAllNodesAreImported( ReferenceProperty referenceProperty ) {
+        if (isInternal(referenceProperty.name())) {
+            // these are needed for post-processing, and never refer to other imported nodes ...
+            return true;
+        }
+        if (uuidBehavior == ImportUUIDBehavior.IMPORT_UUID_COLLISION_REMOVE_EXISTING
+            || uuidBehavior == ImportUUIDBehavior.IMPORT_UUID_COLLISION_REPLACE_EXISTING) {
+            // the referenced node may still be removed later in the import ...
+            return false;
+        }
+        for (Value value : referenceProperty.values()) {
+            Object reference = ((JcrValue)value).value();
+            if (reference instanceof NodeKeyReference && cache.getNode(((NodeKeyReference)reference).getNodeKey()) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void processReferences( boolean onlyResolvedReferences ) throws RepositoryException {
         // if there were any reference properties imported, they can only be set on the corresponding nodes *after* all
-        // the graph has been imported
-        for (Map.Entry<NodeKey, ReferenceProperty> entry : this.allReferenceProperties.entries()) {
-            AbstractJcrNode node = session.node(entry.getKey(), null);
+        // the nodes they refer to have been imported
+        for (Iterator<Map.Entry<NodeKey, ReferenceProperty>> iter = this.allReferenceProperties.entries().iterator(); iter.hasNext();) {
+            Map.Entry<NodeKey, ReferenceProperty> entry = iter.next();
             ReferenceProperty referenceProperty = entry.getValue();
+            if (onlyResolvedReferences && !canBeSetBeforeAllNodesAreImported(referenceProperty)) {
+                continue;
+            }
+            AbstractJcrNode node = session.node(entry.getKey(), null);
             AbstractJcrProperty property = null;
             // set the reference property without validating it first
             if (!referenceProperty.isMultiple()) {
@@ -343,6 +519,7 @@ class JcrContentHandler extends DefaultHandler {
                     throw new ConstraintViolationException(JcrI18n.constraintViolatedOnReference.text(name, path, defn));
                 }
             }
+            iter.remove();
         }
         
         // Restore the back references on the nodes which have been removed/replaced by the import and which have referrers
@@ -370,6 +547,7 @@ class JcrContentHandler extends DefaultHandler {
                 }
             }
         }
+        referrersByNodeKey.clear();
     }
 
     protected boolean isValidReference( AbstractJcrNode node,
@@ -634,8 +812,11 @@ class JcrContentHandler extends DefaultHandler {
 
         @Override
         public AbstractJcrNode node() throws SAXException {
-            if (node == null) create();
-            assert node != null;
+            if (node == null) {
+                create();
+                assert node != null;
+                nodeImported(this);
+            }
             return node;
         }
 
@@ -653,6 +834,7 @@ class JcrContentHandler extends DefaultHandler {
             if (forceMultiValued) {
                 this.multiValuedPropertyNames.add(name);
             }
+            bytesSinceSave += value.length();
 
             try {
                 if (node != null) {
@@ -813,7 +995,10 @@ class JcrContentHandler extends DefaultHandler {
                     }
 
                     // store the node key that we created for this UUID, so we can create shares
-                    uuidToNodeKeyMapping.put(uuid, key);
+                    // (when streaming, this is done only for shareable nodes once they're created, to bound the memory)
+                    if (options == null) {
+                        uuidToNodeKeyMapping.put(uuid, key);
+                    }
 
                     if (shareableNodeAlreadyExists && key != null) {
                         parent.mutable().linkChild(cache, key, nodeName);
@@ -907,7 +1092,9 @@ class JcrContentHandler extends DefaultHandler {
                 }
 
                 node = child;
-                importedNodeKeys.add(node.key());
+                if (options != null && uuid != null && child.isShareable()) {
+                    uuidToNodeKeyMapping.put(uuid, key);
+                }
 
                 if (postProcessed) {
                     // This node needs to be post-processed ...
@@ -1014,11 +1201,66 @@ class JcrContentHandler extends DefaultHandler {
                                int uuidBehavior ) throws SAXException;
     }
 
+    /**
+     * The handler of a node which was imported and saved before the {@link ImportCheckpoint} from which an import is resumed.
+     * The node is only looked up when the nodes imported after the checkpoint need it as their parent.
+     */
+    protected class SkippedNodeHandler extends NodeHandler {
+        private final Name nodeName;
+        private final NodeHandler parentHandler;
+        private AbstractJcrNode node;
+
+        protected SkippedNodeHandler( Name name,
+                                      NodeHandler parentHandler ) {
+            this.nodeName = name;
+            this.parentHandler = parentHandler;
+        }
+
+        @Override
+        protected String name() {
+            return stringFor(nodeName);
+        }
+
+        @Override
+        public AbstractJcrNode node() throws SAXException {
+            if (node == null) {
+                int depth = 0;
+                for (NodeHandler handler = this; handler.parentHandler() != null; handler = handler.parentHandler()) {
+                    ++depth;
+                }
+                List<String> nodeKeys = resumeFrom.getNodeKeys();
+                try {
+                    if (depth <= nodeKeys.size()) {
+                        AbstractJcrNode existing = session().node(new NodeKey(nodeKeys.get(depth - 1)), null);
+                        if (nodeName.equals(existing.name())) {
+                            node = existing;
+                        }
+                    }
+                } catch (ItemNotFoundException e) {
+                    // the node was removed since the checkpoint was made ...
+                } catch (RepositoryException e) {
+                    throw new EnclosingSAXException(e);
+                }
+                if (node == null) {
+                    String msg = JcrI18n.importCheckpointDoesNotMatchContent.text(toString(), resumeFrom);
+                    throw new EnclosingSAXException(new InvalidSerializedDataException(msg));
+                }
+            }
+            return node;
+        }
+
+        @Override
+        public NodeHandler parentHandler() {
+            return parentHandler;
+        }
+    }
+
     protected class StandardNodeHandlerFactory implements NodeHandlerFactory {
         @Override
         public NodeHandler createFor( Name name,
                                       NodeHandler parentHandler,
                                       int uuidBehavior ) throws SAXException {
+            ++nodeCount;
             if (parentHandler instanceof IgnoreBranchHandler || parentHandler.ignoreAllChildren()) {
                 return new IgnoreBranchHandler(parentHandler);
             }
@@ -1034,6 +1276,10 @@ class JcrContentHandler extends DefaultHandler {
                 // Always do this, regardless of where the "jcr:system" branch is located ...
                 return new JcrSystemHandler(parentHandler);
             }
+            if (resumeFrom != null && nodeCount <= resumeFrom.getNodeCount()) {
+                // this node was already imported before the checkpoint ...
+                return new SkippedNodeHandler(name, parentHandler);
+            }
             return new BasicNodeHandler(name, parentHandler, uuidBehavior);
         }
     }
@@ -1114,6 +1360,7 @@ class JcrContentHandler extends DefaultHandler {
             switch (localName) {
                 case "node":
                     current.finish(); // make sure the node is created
+                    nodeEnded(current);
                     current = current.parentHandler();
                     break;
                 case "value":
@@ -1197,6 +1444,7 @@ class JcrContentHandler extends DefaultHandler {
                                 String localName,
                                 String name ) throws SAXException {
             current.finish();
+            nodeEnded(current);
             current = current.parentHandler();
         }
 
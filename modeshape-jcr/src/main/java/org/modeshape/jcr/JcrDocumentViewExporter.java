@@ -15,7 +15,6 @@
  */
 package org.modeshape.jcr;
 
-import java.io.IOException;
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
 import java.util.Arrays;
@@ -24,7 +23,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 import javax.jcr.Node;
-import javax.jcr.NodeIterator;
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
 import javax.jcr.PropertyType;
@@ -34,8 +32,6 @@ import org.modeshape.common.annotation.NotThreadSafe;
 import org.modeshape.common.text.TextDecoder;
 import org.modeshape.common.text.TextEncoder;
 import org.modeshape.common.text.XmlNameEncoder;
-import org.modeshape.common.util.Base64;
-import org.modeshape.common.util.IoUtil;
 import org.modeshape.jcr.value.Name;
 import org.modeshape.jcr.value.ValueFactories;
 import org.modeshape.jcr.value.ValueFactory;
@@ -140,10 +136,10 @@ class JcrDocumentViewExporter extends AbstractJcrExporter {
         // Write out the element ...
         startElement(contentHandler, name, atts);
         if (!noRecurse) {
-            //the node iterator should check permissions and return only those nodes on which there is READ permission
-            NodeIterator nodes = node.getNodes();
+            //the iterator should check permissions and return only those nodes on which there is READ permission
+            Iterator<Node> nodes = childrenOf(node, skipBinary);
             while (nodes.hasNext()) {
-                Node child = nodes.nextNode();
+                Node child = nodes.next();
                 //MODE-2171 Ignore any ACL nodes
                 if (!child.isNodeType(ModeShapeLexicon.ACCESS_LIST_NODE_TYPE_STRING)) {
                     exportNode(child, contentHandler, skipBinary, noRecurse);
@@ -218,12 +214,7 @@ class JcrDocumentViewExporter extends AbstractJcrExporter {
         }
 
         if (PropertyType.BINARY == propertyType) {
-            try {
-                Base64.InputStream is = new Base64.InputStream(value.getBinary().getStream(), Base64.ENCODE);
-                return IoUtil.read(is);
-            } catch (IOException ioe) {
-                throw new RepositoryException(ioe);
-            }
+            return encode(value.getBinary());
         } else {
             return VALUE_ENCODER.encode(value.getString());
         }
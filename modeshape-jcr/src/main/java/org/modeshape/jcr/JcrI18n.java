@@ -42,7 +42,9 @@ public final class JcrI18n {
     public static I18n errorShuttingDownIndexProvider;
     public static I18n indexProviderMissingPlanner;
     public static I18n errorNotifyingNodeTypesListener;
+    public static I18n errorNotifyingEventListener;
     public static I18n errorIndexing;
+    public static I18n errorIndexingText;
     public static I18n cannotReindexJournalNotEnabled;
     public static I18n warnIncrementalIndexingJournalNotEnabled;
     public static I18n warnIncrementalIndexingJournalNotStarted;
@@ -79,7 +81,12 @@ public final class JcrI18n {
     public static I18n unableToInitializeAuthenticationProvider;
     public static I18n errorInAuthenticationProvider;
     public static I18n unableToInitializeSequencer;
+    public static I18n unableToOpenSequencingQueue;
+    public static I18n sequencingQueueIsFull;
     public static I18n unableToInitializeTextExtractor;
+    public static I18n unableToOpenExtractedTextCache;
+    public static I18n unableToOpenReindexingCheckpoints;
+    public static I18n resumingReindexing;
     public static I18n unableToInitializeConnector;
     public static I18n unableToInitializeIndexProvider;
     public static I18n requiredFieldNotSetInConnector;
@@ -170,6 +177,13 @@ public final class JcrI18n {
     public static I18n operationNotSupportedForUnorderedCollections;
     public static I18n invalidUnorderedCollectionType;
     public static I18n warnCorruptedChildParentRef;
+    public static I18n bulkLoadRequiresSavedInternalParent;
+    public static I18n bulkLoadedNodeParentNotLoaded;
+    public static I18n bulkLoadedNodeHasWrongIndex;
+    public static I18n bulkLoadedNodeUsedExistingKey;
+    public static I18n bulkLoadDoesNotSupportReferences;
+    public static I18n bulkLoadDoesNotSupportVersionableOrShareableNodes;
+    public static I18n importCheckpointDoesNotMatchContent;
     
 
     public static I18n cannotRemoveParentNodeOfTarget;
@@ -233,6 +247,8 @@ public final class JcrI18n {
     public static I18n setQueryContainsResultSetsWithDifferentFullTextSearch;
     public static I18n setQueryContainsResultSetsWithDifferentNumberOfColumns;
     public static I18n problemsWithQuery;
+    public static I18n slowQuery;
+    public static I18n slowQueryExecution;
 
     // Type registration messages
     public static I18n invalidNodeTypeName;
@@ -370,6 +386,7 @@ public final class JcrI18n {
     public static I18n errorWhileShuttingDownRepositoryInJndi;
     public static I18n nodeModifiedBySessionWasRemovedByAnotherSession;
     public static I18n nodeCreatedBySessionUsedExistingKey;
+    public static I18n unorderedCollectionChangedByAnotherSession;
 
     public static I18n failedWhileRollingBackDestroyToRuntimeError;
     public static I18n unexpectedException;
@@ -439,6 +456,7 @@ public final class JcrI18n {
 
     public static I18n cannotStartJournal;
     public static I18n cannotStopJournal;
+    public static I18n cannotWriteJournalRecords;
     public static I18n journalHasNotCompletedReconciliation;
 
     public static I18n indexProviderNameRequired;
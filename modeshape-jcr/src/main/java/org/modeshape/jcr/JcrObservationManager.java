@@ -33,11 +33,18 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.jcr.AccessDeniedException;
 import javax.jcr.RangeIterator;
 import javax.jcr.RepositoryException;
@@ -111,6 +118,11 @@ final class JcrObservationManager implements ObservationManager {
     static final String ORDER_DEST_KEY = "destChildRelPath";
     static final String ORDER_SRC_KEY = "srcChildRelPath";
 
+    /**
+     * The maximum number of batches of events that may be waiting to be delivered to a single listener.
+     */
+    static final int MAX_PENDING_EVENT_BATCHES = 1024;
+
     /**
      * The associated session.
      */
@@ -126,6 +138,17 @@ final class JcrObservationManager implements ObservationManager {
      */
     private final Set<JcrListenerAdapter> listeners;
 
+    /**
+     * The single listener registered with the repository observable on behalf of all of this session's JCR listeners. It is only
+     * registered while there is at least one JCR listener.
+     */
+    private final ListenerDispatcher dispatcher;
+
+    /**
+     * The executor on which each JCR listener is notified of the events routed to it by the {@link #dispatcher}.
+     */
+    private final Executor deliveryExecutor;
+
     /**
      * Various factories
      */
@@ -136,18 +159,24 @@ final class JcrObservationManager implements ObservationManager {
     /**
      * @param session the owning session (never <code>null</code>)
      * @param repositoryObservable the repository observable used to register JCR listeners (never <code>null</code>)
-     * @throws IllegalArgumentException if either parameter is <code>null</code>
+     * @param deliveryExecutor the executor used to notify the JCR listeners (never <code>null</code>); it should not bound the
+     *        number of threads, since a listener that does not return occupies one of them
+     * @throws IllegalArgumentException if any parameter is <code>null</code>
      */
     JcrObservationManager( JcrSession session,
-                           Observable repositoryObservable ) {
+                           Observable repositoryObservable,
+                           Executor deliveryExecutor ) {
         CheckArg.isNotNull(session, "session");
         CheckArg.isNotNull(repositoryObservable, "repositoryObservable");
+        CheckArg.isNotNull(deliveryExecutor, "deliveryExecutor");
 
         this.session = session;
         this.repositoryObservable = repositoryObservable;
+        this.deliveryExecutor = deliveryExecutor;
 
         this.listeners = Collections.newSetFromMap(new ConcurrentHashMap<JcrListenerAdapter, Boolean>());
-        
+        this.dispatcher = new ListenerDispatcher();
+
         this.strings = session.stringFactory();
         this.paths = session.pathFactory();
         this.names = session.nameFactory();
@@ -166,8 +195,15 @@ final class JcrObservationManager implements ObservationManager {
 
         // create wrapper and register
         JcrListenerAdapter adapter = new JcrListenerAdapter(listener, eventTypes, absPath, isDeep, uuid, nodeTypeName, noLocal);
-        if (this.repositoryObservable.register(adapter)) {
+        synchronized (this.dispatcher) {
+            if (this.listeners.contains(adapter)) {
+                return;
+            }
+            if (this.listeners.isEmpty() && !this.repositoryObservable.register(this.dispatcher)) {
+                return;
+            }
             this.listeners.add(adapter);
+            this.dispatcher.reindex(this.listeners);
         }
     }
 
@@ -188,24 +224,35 @@ final class JcrObservationManager implements ObservationManager {
      * Remove all of the listeners. This is typically called when the {@link JcrSession#logout() session logs out}.
      */
     void removeAllEventListeners() {
-        for (JcrListenerAdapter adapter : this.listeners) {
-            assert (adapter != null);
-            this.repositoryObservable.unregister(adapter);
+        synchronized (this.dispatcher) {
+            if (!this.listeners.isEmpty()) {
+                this.repositoryObservable.unregister(this.dispatcher);
+            }
+            for (JcrListenerAdapter adapter : this.listeners) {
+                adapter.close();
+            }
+            this.listeners.clear();
+            this.dispatcher.reindex(this.listeners);
         }
-        this.listeners.clear();
     }
 
     @Override
     public void removeEventListener( EventListener listener ) throws RepositoryException {
         checkSession(); // make sure session is still active
         CheckArg.isNotNull(listener, "listener");
-        for (Iterator<JcrListenerAdapter> adapterIterator = listeners.iterator(); adapterIterator.hasNext(); ) {
-            JcrListenerAdapter adapter = adapterIterator.next();
-            assert (adapter != null);
-            if (adapter.delegate.equals(listener)) {
-                this.repositoryObservable.unregister(adapter);
-                adapterIterator.remove();
-                break;
+        synchronized (this.dispatcher) {
+            for (Iterator<JcrListenerAdapter> adapterIterator = listeners.iterator(); adapterIterator.hasNext(); ) {
+                JcrListenerAdapter adapter = adapterIterator.next();
+                assert (adapter != null);
+                if (adapter.delegate.equals(listener)) {
+                    adapterIterator.remove();
+                    adapter.close();
+                    if (this.listeners.isEmpty()) {
+                        this.repositoryObservable.unregister(this.dispatcher);
+                    }
+                    this.dispatcher.reindex(this.listeners);
+                    break;
+                }
             }
         }
     }
@@ -251,10 +298,18 @@ final class JcrObservationManager implements ObservationManager {
 
     /**
      * The <code>JcrListener</code> class wraps JCR {@link EventListener} and is responsible for converting
-     * {@link org.modeshape.jcr.cache.change.Change events} into JCR {@link Event events}.
+     * {@link org.modeshape.jcr.cache.change.Change events} into JCR {@link Event events}. The adapters are not registered with the
+     * repository observable; instead, the {@link ListenerDispatcher} routes each change only to the adapters whose filters may
+     * accept it.
+     * <p>
+     * Each adapter has its own queue of pending events, which is drained on the {@link JcrObservationManager#deliveryExecutor}
+     * by at most one thread at a time, so that every listener sees its events in order and a slow listener does not delay the
+     * other listeners. The queue holds at most {@link JcrObservationManager#MAX_PENDING_EVENT_BATCHES} batches; once a listener falls that far behind,
+     * the dispatcher waits for it just as the change bus waits for a slow consumer.
+     * </p>
      */
-    @NotThreadSafe
-    protected final class JcrListenerAdapter implements ChangeSetListener {
+    @ThreadSafe
+    protected final class JcrListenerAdapter {
 
         /**
          * The JCR event listener.
@@ -262,6 +317,9 @@ final class JcrObservationManager implements ObservationManager {
         protected final EventListener delegate;
 
         private final ChangeSetConverter changeSetConverter;
+        private final BlockingQueue<List<Event>> pending = new LinkedBlockingQueue<>(MAX_PENDING_EVENT_BATCHES);
+        private final AtomicBoolean delivering = new AtomicBoolean();
+        private volatile boolean closed;
 
         /**
          * @param delegate the JCR listener
@@ -285,14 +343,66 @@ final class JcrObservationManager implements ObservationManager {
             this.changeSetConverter = new ChangeSetConverter(absPath, eventTypes, isDeep, nodeTypeNames, noLocal, uuids);
         }
 
-        @Override
-        public void notify( ChangeSet changeSet ) {
-            Collection<Event> events = changeSetConverter.convert(changeSet);
+        /**
+         * Queue the supplied events for delivery to the delegate. This blocks only when the delegate already has
+         * {@link JcrObservationManager#MAX_PENDING_EVENT_BATCHES} batches of events waiting.
+         *
+         * @param events the events; may not be null
+         */
+        protected void enqueue( List<Event> events ) {
+            if (events.isEmpty() || closed) {
+                return;
+            }
+            try {
+                pending.put(events);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            scheduleDelivery();
+        }
+
+        /**
+         * Stop notifying the delegate and discard the events that have not yet been delivered.
+         */
+        protected void close() {
+            closed = true;
+            pending.clear();
+        }
 
-            // notify delegate
-            if (!events.isEmpty()) {
-                this.delegate.onEvent(new JcrEventIterator(events));
+        private void scheduleDelivery() {
+            if (closed || pending.isEmpty() || !delivering.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                deliveryExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the repository is shutting down ...
+                delivering.set(false);
+                pending.clear();
+            }
+        }
+
+        protected void deliver() {
+            try {
+                List<Event> events;
+                while (!closed && (events = pending.poll()) != null) {
+                    try {
+                        this.delegate.onEvent(new JcrEventIterator(events));
+                    } catch (RuntimeException e) {
+                        LOGGER.error(e, JcrI18n.errorNotifyingEventListener, this, e.getMessage());
+                    }
+                }
+            } finally {
+                delivering.set(false);
             }
+            // pick up the events that were queued after the loop found the queue empty ...
+            scheduleDelivery();
         }
 
         @Override
@@ -720,6 +830,11 @@ final class JcrObservationManager implements ObservationManager {
          */
         private final int eventTypes;
 
+        /**
+         * The parsed form of the <code>absPath</code>, or <code>null</code> if all node paths should be handled.
+         */
+        private final Path matchPath;
+
         /**
          * A flag indicating if events of child nodes of the <code>absPath</code> should be processed.
          */
@@ -751,6 +866,7 @@ final class JcrObservationManager implements ObservationManager {
                                       boolean noLocal,
                                       String[] uuids ) {
             this.absPath = absPath;
+            this.matchPath = StringUtil.isBlank(absPath) ? null : pathFactory().create(absPath);
             this.eventTypes = eventTypes;
             this.isDeep = isDeep;
             if (nodeTypeNames == null) {
@@ -779,44 +895,54 @@ final class JcrObservationManager implements ObservationManager {
         protected List<Event> convert( ChangeSet changeSet ) {
             List<Event> events = new ArrayList<>();
 
-            if (shouldRejectChangeSet(changeSet)) {
+            if (!acceptsChangeSet(changeSet)) {
                 return events;
             }
 
-            String userData = changeSet.getUserData().get(OBSERVATION_USER_DATA_KEY);
-            JcrEventBundle bundle = new JcrEventBundle(changeSet.getTimestamp(), changeSet.getUserId(), userData);
-
+            JcrEventBundle bundle = bundleFor(changeSet);
             for (Change change : changeSet) {
-                processChange(events, bundle, change);
+                if (!(change instanceof AbstractNodeChange)) {
+                    continue;
+                }
+                ObservedChange observedChange = new ObservedChange((AbstractNodeChange)change);
+                if (accepts(observedChange)) {
+                    processChange(events, bundle, observedChange);
+                }
             }
 
             return events;
         }
 
-        private boolean shouldRejectChangeSet( ChangeSet changeSet ) {
-            return !acceptBasedOnOriginatingSession(changeSet) || !acceptBasedOnOriginatingWorkspace(changeSet);
+        protected boolean acceptsChangeSet( ChangeSet changeSet ) {
+            return acceptBasedOnOriginatingSession(changeSet) && acceptBasedOnOriginatingWorkspace(changeSet);
         }
 
-        private void processChange( List<Event> events,
-                                    JcrEventBundle bundle,
-                                    Change change ) {
-            if (!(change instanceof AbstractNodeChange)) {
-                return;
-            }
-            AbstractNodeChange nodeChange = (AbstractNodeChange)change;
+        /**
+         * Determine whether this converter produces events for the supplied change. The checks that are the same for all
+         * listeners (e.g., the permission check and the lookup of the parent's node types) are done at most once per change,
+         * since their results are kept by the {@link ObservedChange}.
+         *
+         * @param change the change being processed; may not be null
+         * @return <code>true</code> if the change passes all of this converter's filters
+         */
+        protected boolean accepts( ObservedChange change ) {
+            return (eventTypes & change.eventTypes()) != 0 && acceptBasedOnUuid(change) && acceptBasedOnPath(change)
+                   && change.isReadable() && !change.isSystemLockChange() && acceptBasedOnNodeTypeName(change);
+        }
+
+        protected void processChange( List<Event> events,
+                                      JcrEventBundle bundle,
+                                      ObservedChange change ) {
+            AbstractNodeChange nodeChange = change.change;
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Processing change: " + nodeChange);
             }
 
-            if (shouldRejectChange(nodeChange)) {
-                return;
-            }
-
             // process event making sure we have the right event type
             Path newPath = nodeChange.getPath();
-            String nodeId = nodeIdentifier(nodeChange.getKey());
-            NodeType primaryType = nodeType(nodeChange.getPrimaryType());
-            Set<NodeType> mixinTypes = nodeTypes(nodeChange.getMixinTypes());
+            String nodeId = change.nodeIdentifier();
+            NodeType primaryType = change.primaryType();
+            Set<NodeType> mixinTypes = change.mixinTypes();
 
             // node moved
             if (nodeChange instanceof NodeMoved) {
@@ -963,51 +1089,10 @@ final class JcrObservationManager implements ObservationManager {
             }
         }
 
-        private boolean shouldRejectChange( AbstractNodeChange nodeChange ) {
-            return !acceptBasedOnUuid(nodeChange) || !acceptBasedOnPath(nodeChange) || !acceptBasedOnPermission(nodeChange)
-                   || !acceptIfLockChange(nodeChange) || !acceptBasedOnNodeTypeName(nodeChange);
-        }
-
-        /**
-         * In case of changes involving locks from the system workspace, the TCK expects that the only property changes be for
-         * lock owner and lock isDeep, which will be fired from the locked node. Therefore, we should exclude property
-         * notifications from the lock node from the system workspace.
-         * 
-         * @param nodeChange the internal event
-         * @return true if the change should be accepted/propagated
-         */
-        private boolean acceptIfLockChange( AbstractNodeChange nodeChange ) {
-            if (!(nodeChange instanceof PropertyAdded || nodeChange instanceof PropertyRemoved || nodeChange instanceof PropertyChanged)) {
-                return true;
-            }
-            Path path = nodeChange.getPath();
-            if (path.size() < 2) {
-                return true;
-            }
-            Name firstSegmentName = path.subpath(0, 1).getLastSegment().getName();
-            boolean isSystemLockChange = JcrLexicon.SYSTEM.equals(firstSegmentName)
-                                         && ModeShapeLexicon.LOCKS.equals(path.getParent().getLastSegment().getName());
-            return !isSystemLockChange;
-        }
-
         private boolean eventListenedFor( int eventType ) {
             return (this.eventTypes & eventType) == eventType;
         }
 
-        /**
-         * @param nodeChange the change being processed
-         * @return <code>true</code> if the {@link JcrSession#checkPermission(org.modeshape.jcr.value.Path, String...)} returns
-         *         true for a {@link ModeShapePermissions#READ} permission on the node from the change
-         */
-        private boolean acceptBasedOnPermission( AbstractNodeChange nodeChange ) {
-            try {
-                session.checkPermission(parentNodePathOfChange(nodeChange), ModeShapePermissions.READ);
-                return true;
-            } catch (AccessDeniedException e) {
-                return false;
-            }
-        }
-
         private boolean acceptBasedOnOriginatingWorkspace( ChangeSet changeSet ) {
             boolean sameWorkspace = getWorkspaceName().equalsIgnoreCase(changeSet.getWorkspaceName());
             boolean isSystemWorkspace = getSystemWorkspaceName().equalsIgnoreCase(changeSet.getWorkspaceName());
@@ -1026,7 +1111,7 @@ final class JcrObservationManager implements ObservationManager {
          * @param change the change being processed
          * @return <code>true</code> if all node types should be processed or if changed node type name matches a specified type
          */
-        private boolean acceptBasedOnNodeTypeName( AbstractNodeChange change ) {
+        private boolean acceptBasedOnNodeTypeName( ObservedChange change ) {
             // JSR 283#12.5.3.4.3
             if (nodeTypeNames != null && nodeTypeNames.length == 0) {
                 return false;
@@ -1034,42 +1119,22 @@ final class JcrObservationManager implements ObservationManager {
             if (nodeTypeNames == null) {
                 return true;
             }
-            Name parentPrimaryType = null;
-            Set<Name> parentMixinTypes = null;
-            if (change instanceof NodeRemoved) {
-                // if we're dealing with a node that was removed, the parent may have also been removed, so we need to check
-                // whether we have the type information in the event
-                parentPrimaryType = ((NodeRemoved) change).getParentPrimaryType();
-                parentMixinTypes = ((NodeRemoved) change).getParentMixinTypes(); 
-            }
-
+            Name parentPrimaryType = change.parentPrimaryType();
             if (parentPrimaryType == null) {
-                // we don't have the type information yet, so we need to load the parent
-                try {
-                    AbstractJcrNode parentNode = null;
-                    if (change instanceof AbstractPropertyChange) {
-                        // we can optimize this case, because we can get the parent node directly via key
-                        parentNode = session.node(change.getKey(), null);
-                    } else {
-                        Path parentPath = parentNodePathOfChange(change);
-                        parentNode = session.node(parentPath);
-                    }
-                    parentPrimaryType = parentNode.getPrimaryTypeName();
-                    parentMixinTypes = parentNode.getMixinTypeNames();
-                } catch (RepositoryException e) {   
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug(e, JcrI18n.cannotPerformNodeTypeCheck.text(parentNodePathOfChange(change),
-                                                                                this.nodeTypeNames));
-                    }
-                    return false;
+                // we don't have the type information, so we can't do the filtering
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(change.parentTypesFailure(), JcrI18n.cannotPerformNodeTypeCheck.text(change.parentPath(),
+                                                                                                       this.nodeTypeNames));
                 }
+                return false;
             }
             // we have the parent type information, so we can do the filtering
-            assert parentPrimaryType != null;
             NodeTypes nodeTypes = nodeTypes();
             if (nodeTypes.isTypeOrSubtype(nodeTypeNames, parentPrimaryType)) {
                 return true;
-            } else if (parentMixinTypes != null) {
+            }
+            Set<Name> parentMixinTypes = change.parentMixinTypes();
+            if (parentMixinTypes != null) {
                 for (Name parentMixin : parentMixinTypes) {
                     if (nodeTypes.isTypeOrSubtype(nodeTypeNames, parentMixin)) {
                         return true;                        
@@ -1083,11 +1148,9 @@ final class JcrObservationManager implements ObservationManager {
          * @param change the change being processed
          * @return <code>true</code> if there is no absolute path or if change path matches or optionally is a deep match
          */
-        private boolean acceptBasedOnPath( AbstractNodeChange change ) {
-            if (!StringUtil.isBlank(absPath)) {
-                Path matchPath = session.pathFactory().create(this.absPath);
-                Path parentPath = parentNodePathOfChange(change);
-
+        private boolean acceptBasedOnPath( ObservedChange change ) {
+            if (matchPath != null) {
+                Path parentPath = change.parentPath();
                 return this.isDeep ? matchPath.isAtOrAbove(parentPath) : matchPath.equals(parentPath);
             }
             return true;
@@ -1097,19 +1160,12 @@ final class JcrObservationManager implements ObservationManager {
          * @param change the change being processed
          * @return <code>true</code> if there are no UUIDs to match or change UUID matches
          */
-        private boolean acceptBasedOnUuid( AbstractNodeChange change ) {
+        private boolean acceptBasedOnUuid( ObservedChange change ) {
             // JSR_283#12.5.3.4.2
-            return this.uuids == null || (!this.uuids.isEmpty() && this.uuids.contains(nodeIdentifier(change.getKey())));
+            return this.uuids == null || (!this.uuids.isEmpty() && this.uuids.contains(change.nodeIdentifier()));
         }
 
-        private Path parentNodePathOfChange( AbstractNodeChange change ) {
-            Path changePath = change.getPath();
-            if (change instanceof AbstractPropertyChange) {
-                return changePath;
-            }
-            return changePath.isRoot() ? changePath : changePath.getParent();
-        }
-        
+
         private String stringFor( Path path ) {
             return strings.create(path);
         }
@@ -1145,11 +1201,94 @@ final class JcrObservationManager implements ObservationManager {
             return session.nodeIdentifier(key);
         }
 
-        private NodeType nodeType( Name name ) {
-            return session.repository().nodeTypeManager().getNodeTypes().getNodeType(name);
+        private NodeTypes nodeTypes() {
+            return session.nodeTypeManager().nodeTypes();
+        }
+    }
+
+    protected static JcrEventBundle bundleFor( ChangeSet changeSet ) {
+        String userData = changeSet.getUserData().get(OBSERVATION_USER_DATA_KEY);
+        return new JcrEventBundle(changeSet.getTimestamp(), changeSet.getUserId(), userData);
+    }
+
+    /**
+     * A single change that is being matched against the filters of one or more listeners. The information that all listeners
+     * need (the parent path, the node identifier and node types, whether the session can read the node, and the node types of the
+     * parent) is computed lazily and at most once, regardless of how many listeners look at the change.
+     */
+    @NotThreadSafe
+    protected final class ObservedChange {
+
+        protected final AbstractNodeChange change;
+        private Path parentPath;
+        private String nodeId;
+        private Boolean readable;
+        private boolean parentTypesResolved;
+        private Name parentPrimaryType;
+        private Set<Name> parentMixinTypes;
+        private RepositoryException parentTypesFailure;
+
+        protected ObservedChange( AbstractNodeChange change ) {
+            this.change = change;
         }
 
-        private Set<NodeType> nodeTypes( Set<Name> names ) {
+        /**
+         * Get the JCR event types that may be produced for this change.
+         *
+         * @return the bitmask of event types; 0 if this kind of change never produces an event
+         */
+        protected int eventTypes() {
+            if (change instanceof NodeMoved || change instanceof NodeRenamed || change instanceof NodeReordered) {
+                return Event.NODE_MOVED | Event.NODE_ADDED | Event.NODE_REMOVED;
+            } else if (change instanceof NodeAdded) {
+                return Event.NODE_ADDED;
+            } else if (change instanceof NodeRemoved) {
+                return Event.NODE_REMOVED;
+            } else if (change instanceof PropertyChanged) {
+                return Event.PROPERTY_CHANGED;
+            } else if (change instanceof PropertyAdded) {
+                return Event.PROPERTY_ADDED;
+            } else if (change instanceof PropertyRemoved) {
+                return Event.PROPERTY_REMOVED;
+            } else if (change instanceof NodeSequenced) {
+                return NODE_SEQUENCED;
+            } else if (change instanceof NodeSequencingFailure) {
+                return NODE_SEQUENCING_FAILURE;
+            }
+            return 0;
+        }
+
+        /**
+         * Get the path of the node to which the event applies: the changed node itself for property changes, or the parent of the
+         * changed node for all other changes.
+         *
+         * @return the path; never null
+         */
+        protected Path parentPath() {
+            if (parentPath == null) {
+                Path changePath = change.getPath();
+                if (change instanceof AbstractPropertyChange || changePath.isRoot()) {
+                    parentPath = changePath;
+                } else {
+                    parentPath = changePath.getParent();
+                }
+            }
+            return parentPath;
+        }
+
+        protected String nodeIdentifier() {
+            if (nodeId == null) {
+                nodeId = session.nodeIdentifier(change.getKey());
+            }
+            return nodeId;
+        }
+
+        protected NodeType primaryType() {
+            return session.repository().nodeTypeManager().getNodeTypes().getNodeType(change.getPrimaryType());
+        }
+
+        protected Set<NodeType> mixinTypes() {
+            Set<Name> names = change.getMixinTypes();
             NodeTypes nodeTypes = session.repository().nodeTypeManager().getNodeTypes();
             Set<NodeType> result = new HashSet<>(names.size());
             for (Name name : names) {
@@ -1157,9 +1296,351 @@ final class JcrObservationManager implements ObservationManager {
             }
             return result;
         }
-        
-        private NodeTypes nodeTypes() {
-            return session.nodeTypeManager().nodeTypes();
+
+        /**
+         * @return <code>true</code> if the {@link JcrSession#checkPermission(org.modeshape.jcr.value.Path, String...)} returns
+         *         true for a {@link ModeShapePermissions#READ} permission on the node from the change
+         */
+        protected boolean isReadable() {
+            if (readable == null) {
+                try {
+                    session.checkPermission(parentPath(), ModeShapePermissions.READ);
+                    readable = Boolean.TRUE;
+                } catch (AccessDeniedException e) {
+                    readable = Boolean.FALSE;
+                }
+            }
+            return readable;
+        }
+
+        /**
+         * In case of changes involving locks from the system workspace, the TCK expects that the only property changes be for
+         * lock owner and lock isDeep, which will be fired from the locked node. Therefore, we should exclude property
+         * notifications from the lock node from the system workspace.
+         * 
+         * @return true if the change is a property change on a lock node in the system workspace
+         */
+        protected boolean isSystemLockChange() {
+            if (!(change instanceof PropertyAdded || change instanceof PropertyRemoved || change instanceof PropertyChanged)) {
+                return false;
+            }
+            Path path = change.getPath();
+            if (path.size() < 2) {
+                return false;
+            }
+            Name firstSegmentName = path.subpath(0, 1).getLastSegment().getName();
+            return JcrLexicon.SYSTEM.equals(firstSegmentName)
+                   && ModeShapeLexicon.LOCKS.equals(path.getParent().getLastSegment().getName());
+        }
+
+        /**
+         * @return the name of the primary type of the {@link #parentPath() parent node}, or null if it could not be determined
+         */
+        protected Name parentPrimaryType() {
+            resolveParentTypes();
+            return parentPrimaryType;
+        }
+
+        protected Set<Name> parentMixinTypes() {
+            resolveParentTypes();
+            return parentMixinTypes;
+        }
+
+        protected RepositoryException parentTypesFailure() {
+            return parentTypesFailure;
+        }
+
+        private void resolveParentTypes() {
+            if (parentTypesResolved) {
+                return;
+            }
+            parentTypesResolved = true;
+            if (change instanceof NodeRemoved) {
+                // if we're dealing with a node that was removed, the parent may have also been removed, so we need to check
+                // whether we have the type information in the event
+                parentPrimaryType = ((NodeRemoved)change).getParentPrimaryType();
+                parentMixinTypes = ((NodeRemoved)change).getParentMixinTypes();
+            }
+            if (parentPrimaryType == null) {
+                // we don't have the type information yet, so we need to load the parent
+                try {
+                    AbstractJcrNode parentNode = null;
+                    if (change instanceof AbstractPropertyChange) {
+                        // we can optimize this case, because we can get the parent node directly via key
+                        parentNode = session.node(change.getKey(), null);
+                    } else {
+                        parentNode = session.node(parentPath());
+                    }
+                    parentPrimaryType = parentNode.getPrimaryTypeName();
+                    parentMixinTypes = parentNode.getMixinTypeNames();
+                } catch (RepositoryException e) {
+                    parentTypesFailure = e;
+                    parentPrimaryType = null;
+                    parentMixinTypes = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * The listener that is registered with the repository observable on behalf of all of the {@link JcrListenerAdapter}s of this
+     * session. Rather than having every adapter examine every change, the dispatcher indexes the adapters' filters (by node
+     * identifier, by path prefix, by the node types of the parent, and by event type) and only asks the adapters whose filters
+     * may match a change to convert it. The per-change work that is independent of the listeners is shared via
+     * {@link ObservedChange}, and the resulting events are handed to each adapter's own queue so that the dispatcher never waits
+     * for a listener to process them.
+     */
+    @ThreadSafe
+    protected final class ListenerDispatcher implements ChangeSetListener {
+
+        private volatile ListenerIndex index = new ListenerIndex(Collections.<JcrListenerAdapter>emptySet());
+
+        /**
+         * Rebuild the index after the set of listeners has changed. Registration is rare, so the index is immutable and simply
+         * replaced.
+         *
+         * @param adapters the current adapters; may not be null
+         */
+        protected void reindex( Collection<JcrListenerAdapter> adapters ) {
+            this.index = new ListenerIndex(adapters);
+        }
+
+        @Override
+        public void notify( ChangeSet changeSet ) {
+            ListenerIndex index = this.index;
+            if (index.isEmpty()) {
+                return;
+            }
+            NodeTypes nodeTypes = session.nodeTypeManager().nodeTypes();
+            JcrEventBundle bundle = null;
+            Map<JcrListenerAdapter, Boolean> acceptsChangeSet = new HashMap<>();
+            Map<JcrListenerAdapter, List<Event>> eventsByAdapter = new LinkedHashMap<>();
+            Set<JcrListenerAdapter> candidates = new LinkedHashSet<>();
+            for (Change change : changeSet) {
+                if (!(change instanceof AbstractNodeChange)) {
+                    continue;
+                }
+                ObservedChange observedChange = new ObservedChange((AbstractNodeChange)change);
+                if ((index.eventTypes & observedChange.eventTypes()) == 0) {
+                    continue;
+                }
+                candidates.clear();
+                index.collectCandidates(observedChange, nodeTypes, candidates);
+                for (JcrListenerAdapter adapter : candidates) {
+                    ChangeSetConverter converter = adapter.changeSetConverter;
+                    Boolean accepted = acceptsChangeSet.get(adapter);
+                    if (accepted == null) {
+                        accepted = converter.acceptsChangeSet(changeSet);
+                        acceptsChangeSet.put(adapter, accepted);
+                    }
+                    if (!accepted || !converter.accepts(observedChange)) {
+                        continue;
+                    }
+                    if (bundle == null) {
+                        bundle = bundleFor(changeSet);
+                    }
+                    List<Event> events = eventsByAdapter.get(adapter);
+                    if (events == null) {
+                        events = new ArrayList<>();
+                        eventsByAdapter.put(adapter, events);
+                    }
+                    converter.processChange(events, bundle, observedChange);
+                }
+            }
+            for (Map.Entry<JcrListenerAdapter, List<Event>> entry : eventsByAdapter.entrySet()) {
+                entry.getKey().enqueue(entry.getValue());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Observation dispatcher for session " + session.sessionId();
+        }
+    }
+
+    /**
+     * An immutable index of the filters of a set of {@link JcrListenerAdapter}s. Each adapter is placed in a single kind of
+     * bucket: the adapters with UUID filters are indexed by identifier, those with absolute path filters are placed in a trie of
+     * path segments, those with node type filters are indexed by node type name, and all others are always considered. Every
+     * bucket also records the union of its adapters' event types, so a bucket is skipped entirely for changes none of its
+     * adapters listen for. The index only selects the candidates; each candidate still applies all of its filters.
+     */
+    @Immutable
+    protected static final class ListenerIndex {
+
+        protected final int eventTypes;
+        private final Bucket unindexed = new Bucket();
+        private final Map<String, Bucket> byIdentifier = new HashMap<>();
+        private final PathTrieNode pathRoot = new PathTrieNode();
+        private final Map<Name, Bucket> byNodeType = new HashMap<>();
+        private final int nodeTypeEventTypes;
+        private final boolean empty;
+
+        protected ListenerIndex( Collection<JcrListenerAdapter> adapters ) {
+            int eventTypes = 0;
+            int nodeTypeEventTypes = 0;
+            boolean empty = true;
+            for (JcrListenerAdapter adapter : adapters) {
+                ChangeSetConverter converter = adapter.changeSetConverter;
+                if (converter.uuids != null && converter.uuids.isEmpty()
+                    || converter.nodeTypeNames != null && converter.nodeTypeNames.length == 0) {
+                    // JSR_283#12.5.3.4.2 and #12.5.3.4.3: this listener never receives any events
+                    continue;
+                }
+                empty = false;
+                eventTypes |= converter.eventTypes;
+                if (converter.uuids != null) {
+                    for (String uuid : converter.uuids) {
+                        bucketFor(byIdentifier, uuid).add(adapter);
+                    }
+                } else if (converter.matchPath != null && converter.matchPath.isAbsolute()) {
+                    PathTrieNode node = pathRoot;
+                    for (Path.Segment segment : converter.matchPath) {
+                        node = node.childFor(segment);
+                    }
+                    (converter.isDeep ? node.deep : node.exact).add(adapter);
+                } else if (converter.nodeTypeNames != null) {
+                    for (Name nodeTypeName : converter.nodeTypeNames) {
+                        bucketFor(byNodeType, nodeTypeName).add(adapter);
+                    }
+                    nodeTypeEventTypes |= converter.eventTypes;
+                } else {
+                    unindexed.add(adapter);
+                }
+            }
+            this.eventTypes = eventTypes;
+            this.nodeTypeEventTypes = nodeTypeEventTypes;
+            this.empty = empty;
+        }
+
+        private static <K> Bucket bucketFor( Map<K, Bucket> buckets,
+                                             K key ) {
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket();
+                buckets.put(key, bucket);
+            }
+            return bucket;
+        }
+
+        protected boolean isEmpty() {
+            return empty;
+        }
+
+        /**
+         * Add to the supplied set the adapters whose filters may accept the change.
+         *
+         * @param change the change; may not be null
+         * @param nodeTypes the node types used to find the supertypes of the parent's node types; may not be null
+         * @param candidates the set to which the candidates are added; may not be null
+         */
+        protected void collectCandidates( ObservedChange change,
+                                          NodeTypes nodeTypes,
+                                          Set<JcrListenerAdapter> candidates ) {
+            int changeTypes = change.eventTypes();
+            unindexed.addTo(candidates, changeTypes);
+            if (!byIdentifier.isEmpty()) {
+                Bucket bucket = byIdentifier.get(change.nodeIdentifier());
+                if (bucket != null) {
+                    bucket.addTo(candidates, changeTypes);
+                }
+            }
+            if ((nodeTypeEventTypes & changeTypes) != 0) {
+                collectNodeTypeCandidates(change, nodeTypes, changeTypes, candidates);
+            }
+            PathTrieNode node = pathRoot;
+            if (node.isEmpty()) {
+                return;
+            }
+            Path path = change.parentPath();
+            node.deep.addTo(candidates, changeTypes);
+            if (path.isRoot()) {
+                node.exact.addTo(candidates, changeTypes);
+                return;
+            }
+            int remaining = path.size();
+            for (Path.Segment segment : path) {
+                node = node.children.get(segment);
+                if (node == null) {
+                    return;
+                }
+                node.deep.addTo(candidates, changeTypes);
+                if (--remaining == 0) {
+                    node.exact.addTo(candidates, changeTypes);
+                }
+            }
+        }
+
+        private void collectNodeTypeCandidates( ObservedChange change,
+                                                NodeTypes nodeTypes,
+                                                int changeTypes,
+                                                Set<JcrListenerAdapter> candidates ) {
+            Name parentPrimaryType = change.parentPrimaryType();
+            if (parentPrimaryType == null) {
+                // the node type filter of every candidate would reject the change anyway
+                return;
+            }
+            collectNodeTypeCandidates(nodeTypes.getNodeType(parentPrimaryType), changeTypes, candidates);
+            Set<Name> parentMixinTypes = change.parentMixinTypes();
+            if (parentMixinTypes != null) {
+                for (Name parentMixin : parentMixinTypes) {
+                    collectNodeTypeCandidates(nodeTypes.getNodeType(parentMixin), changeTypes, candidates);
+                }
+            }
+        }
+
+        private void collectNodeTypeCandidates( JcrNodeType nodeType,
+                                                int changeTypes,
+                                                Set<JcrListenerAdapter> candidates ) {
+            if (nodeType == null) {
+                return;
+            }
+            // a listener for a node type also listens for all of its subtypes ...
+            for (JcrNodeType typeOrSupertype : nodeType.getTypeAndSupertypes()) {
+                Bucket bucket = byNodeType.get(typeOrSupertype.getInternalName());
+                if (bucket != null) {
+                    bucket.addTo(candidates, changeTypes);
+                }
+            }
+        }
+    }
+
+    /**
+     * The adapters in one bucket of a {@link ListenerIndex}, together with the union of the event types they listen for.
+     */
+    protected static final class Bucket {
+        private final List<JcrListenerAdapter> adapters = new ArrayList<>();
+        private int eventTypes;
+
+        protected void add( JcrListenerAdapter adapter ) {
+            adapters.add(adapter);
+            eventTypes |= adapter.changeSetConverter.eventTypes;
+        }
+
+        protected void addTo( Set<JcrListenerAdapter> candidates,
+                              int changeTypes ) {
+            if ((eventTypes & changeTypes) != 0) {
+                candidates.addAll(adapters);
+            }
+        }
+    }
+
+    protected static final class PathTrieNode {
+        protected final Map<Path.Segment, PathTrieNode> children = new HashMap<>();
+        protected final Bucket exact = new Bucket();
+        protected final Bucket deep = new Bucket();
+
+        protected PathTrieNode childFor( Path.Segment segment ) {
+            PathTrieNode child = children.get(segment);
+            if (child == null) {
+                child = new PathTrieNode();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        protected boolean isEmpty() {
+            return children.isEmpty() && exact.adapters.isEmpty() && deep.adapters.isEmpty();
         }
     }
 
@@ -296,6 +296,20 @@ class JcrQueryManager implements QueryManager {
                                       nodeTypes, hints, variables);
         }
 
+        @Override
+        public boolean waitForIndexes( long timestamp,
+                                       long timeout,
+                                       TimeUnit unit ) throws RepositoryException {
+            session.checkLive();
+            RepositoryQueryManager queryManager = session.repository().runningState().queryManager();
+            try {
+                return queryManager.getIndexManager().waitForIndexes(session.workspaceName(), timestamp, timeout, unit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RepositoryException(e);
+            }
+        }
+
         @Override
         public ExecutionContext getExecutionContext() {
             return session.context();
@@ -417,6 +431,31 @@ class JcrQueryManager implements QueryManager {
             session.repository().statistics().recordDuration(DurationMetric.QUERY_EXECUTION_TIME, nanos, unit, payload);
         }
 
+        @Override
+        public long getSlowQueryThresholdInMillis() {
+            return session.repository().runningState().slowQueryThresholdInMillis();
+        }
+
+        @Override
+        public boolean sampleQueryForProfiling() {
+            return session.repository().runningState().sampleQueryForProfiling();
+        }
+
+        @Override
+        public void recordSlowQuery( long executionTime,
+                                     long fetchTime,
+                                     TimeUnit unit,
+                                     String query,
+                                     String language,
+                                     String plan ) {
+            if (plan != null) {
+                LOGGER.warn(JcrI18n.slowQuery, language, unit.toMillis(executionTime), unit.toMillis(fetchTime),
+                            session.workspaceName(), query, plan);
+            } else {
+                LOGGER.warn(JcrI18n.slowQueryExecution, language, unit.toMillis(executionTime), session.workspaceName(), query);
+            }
+        }
+
     }
 
     protected static class SessionTypeSystem extends JcrTypeSystem {
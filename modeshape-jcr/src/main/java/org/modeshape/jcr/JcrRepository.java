@@ -40,6 +40,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -68,6 +69,9 @@ import org.modeshape.common.annotation.Immutable;
 import org.modeshape.common.collection.Problem;
 import org.modeshape.common.collection.Problems;
 import org.modeshape.common.collection.SimpleProblems;
+import org.modeshape.common.collection.ring.BlockingWaitStrategy;
+import org.modeshape.common.collection.ring.PhasedBackoffWaitStrategy;
+import org.modeshape.common.collection.ring.WaitStrategy;
 import org.modeshape.common.i18n.I18n;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.NamedThreadFactory;
@@ -103,12 +107,14 @@ import org.modeshape.jcr.federation.FederatedDocumentStore;
 import org.modeshape.jcr.journal.ChangeJournal;
 import org.modeshape.jcr.journal.ClusteredJournal;
 import org.modeshape.jcr.journal.LocalJournal;
+import org.modeshape.jcr.journal.SegmentedJournal;
 import org.modeshape.jcr.locking.DbLockingService;
 import org.modeshape.jcr.locking.JGroupsLockingService;
 import org.modeshape.jcr.locking.LockingService;
 import org.modeshape.jcr.locking.StandaloneLockingService;
 import org.modeshape.jcr.mimetype.MimeTypeDetector;
 import org.modeshape.jcr.mimetype.NullMimeTypeDetector;
+import org.modeshape.jcr.query.BufferManager.MemoryBudget;
 import org.modeshape.jcr.query.parse.FullTextSearchParser;
 import org.modeshape.jcr.query.parse.JcrQomQueryParser;
 import org.modeshape.jcr.query.parse.JcrSql2QueryParser;
@@ -463,6 +469,10 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
         return runningState().changeBus();
     }
 
+    protected final ExecutorService changeDispatchingQueue() {
+        return runningState().changeDispatchingQueue();
+    }
+
     protected final String repositoryKey() {
         return runningState().repositoryKey();
     }
@@ -475,6 +485,17 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
         return running;
     }
 
+    /**
+     * Create a new budget for the query buffers of a single session.
+     *
+     * @return the new budget; never null
+     */
+    final MemoryBudget newSessionQueryBufferBudget() {
+        RunningState running = runningState.get();
+        // Sessions created while the repository is still starting are not bounded ...
+        return running != null ? running.newSessionQueryBufferBudget() : MemoryBudget.UNBOUNDED;
+    }
+
     protected final boolean hasWorkspace( String workspaceName ) {
         return repositoryCache().getWorkspaceNames().contains(workspaceName);
     }
@@ -931,6 +952,11 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
         private final ChangeJournal journal;
         private final ClusteringService clusteringService;
         private final LockingService lockingService;
+        private final MemoryBudget queryBufferBudget;
+        private final long maxBufferedRowsPerSession;
+        private final long slowQueryThresholdInMillis;
+        private final int slowQueryProfilingInterval;
+        private final AtomicLong queriesSinceProfiled = new AtomicLong();
 
         private Transaction existingUserTransaction;
         private RepositoryCache cache;
@@ -953,6 +979,13 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
             }
             ExecutionContext tempContext = new ExecutionContext();
 
+            // Set up the limits for the query buffers ...
+            RepositoryConfiguration.Querying querying = config.getQuerying();
+            this.queryBufferBudget = new MemoryBudget(querying.getMaxBufferedRows(), null);
+            this.maxBufferedRowsPerSession = querying.getMaxBufferedRowsPerSession();
+            this.slowQueryThresholdInMillis = querying.getSlowQueryThresholdInMillis();
+            this.slowQueryProfilingInterval = querying.getSlowQueryProfilingInterval();
+
             // Set up monitoring (doing this early in the process so it is available to other components to use) ...
             if (other != null && !change.monitoringChanged) {
                 this.statistics = other.statistics;
@@ -1079,7 +1112,12 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                     // Create clustering service and event bus
                     this.changeDispatchingQueue = this.context().getCachedTreadPool("modeshape-event-dispatcher", 
                                                                                     Integer.MAX_VALUE);
-                    ChangeBus localBus = new RepositoryChangeBus(name(), changeDispatchingQueue, statistics(), config.getEventBusSize());
+                    boolean blockingWait = RepositoryConfiguration.FieldValue.EVENT_BUS_WAIT_STRATEGY_BLOCKING.equalsIgnoreCase(
+                            config.getEventBusWaitStrategy());
+                    WaitStrategy eventWaitStrategy = blockingWait ? new BlockingWaitStrategy() : new PhasedBackoffWaitStrategy();
+                    ChangeBus localBus = new RepositoryChangeBus(name(), changeDispatchingQueue, statistics(),
+                                                                 config.getEventBusSize(), eventWaitStrategy,
+                                                                 config.getEventBusBatchSize());
                     this.changeBus = clusteringService != null ? new ClusteredChangeBus(localBus, clusteringService) : localBus;
                     this.changeBus.start();
 
@@ -1087,8 +1125,18 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                     RepositoryConfiguration.Journaling journaling = config.getJournaling();
                     if (journaling.isEnabled()) {
                         boolean asyncWritesEnabled = journaling.asyncWritesEnabled();
-                        LocalJournal localJournal = new LocalJournal(journaling.location(), asyncWritesEnabled,
-                                                                     journaling.maxDaysToKeepRecords());
+                        LocalJournal localJournal = null;
+                        if (journaling.isSegmented()) {
+                            localJournal = new SegmentedJournal(journaling.location(), asyncWritesEnabled,
+                                                                journaling.maxDaysToKeepRecords(),
+                                                                journaling.maxRecordsPerCommit(),
+                                                                journaling.maxCommitDelayInMillis(), journaling.segmentSize());
+                        } else {
+                            localJournal = new LocalJournal(journaling.location(), asyncWritesEnabled,
+                                                            journaling.maxDaysToKeepRecords(),
+                                                            journaling.maxRecordsPerCommit(),
+                                                            journaling.maxCommitDelayInMillis());
+                        }
                         this.journal = clusteringService != null ? new ClusteredJournal(localJournal, clusteringService) : localJournal;
                         this.journal.start();
                         if (asyncWritesEnabled) {
@@ -1313,6 +1361,9 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                 // Have the query manager tell the providers to initialize the indexes. This may cause a background reindexing ...
                 queryManager().reindex();
 
+                // Now that the repository is running, run any sequencing work that was pending when it was last shut down ...
+                sequencers.resumePendingWork();
+
                 // Register the background processes.
                 // Do this last since we want the repository running before these are started ...
                 GarbageCollection gcConfig = config.getGarbageCollection();
@@ -1341,12 +1392,16 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                     long optIntervalInHours = optConfig.getIntervalInHours();
                     int targetCount = optConfig.getChildCountTarget();
                     int tolerance = optConfig.getChildCountTolerance();
+                    // Optimize the changed blocks of children on each save; the periodic task repairs the rest ...
+                    cache.setChildrenBlockSize(targetCount, tolerance);
                     assert optInitialTimeInMillis >= 0;
                     long optIntervalInMillis = TimeUnit.MILLISECONDS.convert(optIntervalInHours, TimeUnit.HOURS);
                     ScheduledExecutorService optService = this.context.getScheduledThreadPool(threadPoolName);
                     OptimizationTask optTask = new OptimizationTask(JcrRepository.this, targetCount, tolerance);
                     backgroundProcesses.add(optService.scheduleAtFixedRate(optTask, optInitialTimeInMillis, optIntervalInMillis,
                                                                            TimeUnit.MILLISECONDS));
+                } else {
+                    cache.setChildrenBlockSize(0, 0);
                 }
 
                 if (journal != null) {
@@ -1392,6 +1447,34 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
             return journal;
         }
 
+        /**
+         * Create a new budget for the query buffers of a single session. The new budget is nested within the repository-wide
+         * budget.
+         *
+         * @return the new budget; never null
+         */
+        final MemoryBudget newSessionQueryBufferBudget() {
+            return new MemoryBudget(maxBufferedRowsPerSession, queryBufferBudget);
+        }
+
+        /**
+         * Get the number of milliseconds above which queries are considered slow.
+         *
+         * @return the threshold, or a negative number if slow queries are not to be detected
+         */
+        final long slowQueryThresholdInMillis() {
+            return slowQueryThresholdInMillis;
+        }
+
+        /**
+         * Determine whether the next query is one of the sample of queries that are profiled to report the plans of slow queries.
+         *
+         * @return true if the query should be profiled, or false otherwise
+         */
+        final boolean sampleQueryForProfiling() {
+            return slowQueryProfilingInterval > 0 && queriesSinceProfiled.incrementAndGet() % slowQueryProfilingInterval == 0;
+        }
+
         final String journalId() {
             return journal != null ? journal.journalId() : null;
         }
@@ -1467,6 +1550,10 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
             return changeBus;
         }
 
+        protected final ExecutorService changeDispatchingQueue() {
+            return changeDispatchingQueue;
+        }
+
         final Connectors connectors() {
             return connectors;
         }
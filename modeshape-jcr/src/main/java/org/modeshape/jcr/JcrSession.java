@@ -73,6 +73,7 @@ import org.modeshape.jcr.JcrRepository.RunningState;
 import org.modeshape.jcr.JcrSharedNodeCache.SharedSet;
 import org.modeshape.jcr.NodeTypes.NodeDefinitionSet;
 import org.modeshape.jcr.api.Binary;
+import org.modeshape.jcr.api.ExportOptions;
 import org.modeshape.jcr.api.ValueFactory;
 import org.modeshape.jcr.api.monitor.DurationMetric;
 import org.modeshape.jcr.api.monitor.ValueMetric;
@@ -95,6 +96,7 @@ import org.modeshape.jcr.cache.SiblingCounter;
 import org.modeshape.jcr.cache.WorkspaceNotFoundException;
 import org.modeshape.jcr.cache.WrappedException;
 import org.modeshape.jcr.cache.document.WorkspaceCache;
+import org.modeshape.jcr.cache.document.WorkspacePathCache;
 import org.modeshape.jcr.query.BufferManager;
 import org.modeshape.jcr.security.AdvancedAuthorizationProvider;
 import org.modeshape.jcr.security.AuthorizationProvider;
@@ -256,7 +258,7 @@ public class JcrSession implements org.modeshape.jcr.api.Session {
 
     final synchronized BufferManager bufferManager() {
         if (bufferMgr == null) {
-            bufferMgr = new BufferManager(this.context);
+            bufferMgr = new BufferManager(this.context, repository.newSessionQueryBufferBudget());
         }
         return bufferMgr;
     }
@@ -465,6 +467,16 @@ public class JcrSession implements org.modeshape.jcr.api.Session {
         jcrNodes.remove(node.key(), node);
     }
 
+    /**
+     * Release all of the cached {@link AbstractJcrNode} objects, so that long-running operations which save this session many
+     * times (like streaming imports) do not retain the objects of all the nodes they saved. The nodes are simply re-created
+     * when they are needed again.
+     */
+    protected void releaseCachedNodes() {
+        jcrNodes.clear();
+        jcrNodes.put(rootNode.key(), rootNode);
+    }
+
     /**
      * Obtain the {@link Node JCR Node} object for the node with the supplied key.
      *
@@ -623,6 +635,47 @@ public class JcrSession implements org.modeshape.jcr.api.Session {
                                  CachedNode node,
                                  Path path,
                                  String... actions ) throws PathNotFoundException, AccessDeniedException, RepositoryException {
+        if (path.isAbsolute() && !path.isRoot() && path.isNormalized() && !path.isIdentifier()
+            && node.getKey().equals(cache.getRootKey()) && !cache.hasChanges()) {
+            // The session has no transient changes, so use the keys of the persisted nodes that are shared by all sessions ...
+            WorkspacePathCache pathCache = cache.getWorkspace().pathCache();
+            if (pathCache != null) {
+                return cachedNode(cache, pathCache, node, path);
+            }
+        }
+        return resolve(cache, node, path, actions);
+    }
+
+    private CachedNode cachedNode( SessionCache cache,
+                                   WorkspacePathCache pathCache,
+                                   CachedNode root,
+                                   Path absolutePath ) throws PathNotFoundException, RepositoryException {
+        if (pathCache.isMissing(absolutePath)) {
+            throw new PathNotFoundException(JcrI18n.nodeNotFound.text(stringFactory().create(absolutePath), workspaceName()));
+        }
+        NodeKey key = pathCache.get(absolutePath);
+        if (key != null) {
+            CachedNode node = cache.getNode(key);
+            if (node != null) return node;
+        }
+        long version = pathCache.version();
+        try {
+            CachedNode node = resolve(cache, root, absolutePath);
+            pathCache.put(absolutePath, node.getKey(), version);
+            return node;
+        } catch (PathNotFoundException e) {
+            if (!repository().runningState().connectors().hasConnectors()) {
+                // Projections and external content can appear without any structural changes to the workspace ...
+                pathCache.putMissing(absolutePath, version);
+            }
+            throw e;
+        }
+    }
+
+    private CachedNode resolve( SessionCache cache,
+                                CachedNode node,
+                                Path path,
+                                String... actions ) throws PathNotFoundException, AccessDeniedException, RepositoryException {
         // We treat the path as a relative path, but the algorithm actually works for absolute, too. So don't enforce.
         for (Segment segment : path) {
             if (segment.isSelfReference()) continue;
@@ -1762,6 +1815,30 @@ public class JcrSession implements org.modeshape.jcr.api.Session {
         exporter.exportView(exportRootNode, out, skipBinary, noRecurse);
     }
 
+    @Override
+    public void exportSystemView( String absPath,
+                                  OutputStream out,
+                                  ExportOptions options ) throws IOException, PathNotFoundException, RepositoryException {
+        CheckArg.isNotNull(absPath, "absPath");
+        CheckArg.isNotNull(out, "out");
+        CheckArg.isNotNull(options, "options");
+        Node exportRootNode = getNode(absPath);
+        AbstractJcrExporter exporter = new JcrSystemViewExporter(this);
+        exporter.exportView(exportRootNode, out, options);
+    }
+
+    @Override
+    public void exportDocumentView( String absPath,
+                                    OutputStream out,
+                                    ExportOptions options ) throws IOException, PathNotFoundException, RepositoryException {
+        CheckArg.isNotNull(absPath, "absPath");
+        CheckArg.isNotNull(out, "out");
+        CheckArg.isNotNull(options, "options");
+        Node exportRootNode = getNode(absPath);
+        AbstractJcrExporter exporter = new JcrDocumentViewExporter(this);
+        exporter.exportView(exportRootNode, out, options);
+    }
+
     @Override
     public String getNamespacePrefix( String uri ) throws RepositoryException {
         checkLive();
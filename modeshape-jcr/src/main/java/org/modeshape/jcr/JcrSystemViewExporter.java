@@ -18,12 +18,12 @@ package org.modeshape.jcr;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import javax.jcr.Binary;
 import javax.jcr.NamespaceException;
 import javax.jcr.NamespaceRegistry;
 import javax.jcr.Node;
-import javax.jcr.NodeIterator;
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
 import javax.jcr.PropertyType;
@@ -51,7 +51,7 @@ class JcrSystemViewExporter extends AbstractJcrExporter {
     /**
      * Buffer size for reading Base64-encoded binary streams for export.
      */
-    private static final int BASE_64_BUFFER_SIZE = 1024;
+    private static final int BASE_64_BUFFER_SIZE = 8192;
 
     /**
      * The list of the special JCR properties that must be exported first for each node. These properties must be exported in list
@@ -147,10 +147,10 @@ class JcrSystemViewExporter extends AbstractJcrExporter {
             }
 
             if (!noRecurse) {
-                // the node iterator should check permissions and return only those nodes on which there is READ permission
-                NodeIterator nodes = node.getNodes();
+                // the iterator should check permissions and return only those nodes on which there is READ permission
+                Iterator<Node> nodes = childrenOf(node, skipBinary);
                 while (nodes.hasNext()) {
-                    Node child = nodes.nextNode();
+                    Node child = nodes.next();
                     //MODE-2171 Ignore any ACL nodes
                     if (!child.isNodeType(ModeShapeLexicon.ACCESS_LIST_NODE_TYPE_STRING)) {
                         exportNode(child, contentHandler, skipBinary, noRecurse, false);
@@ -264,18 +264,23 @@ class JcrSystemViewExporter extends AbstractJcrExporter {
             // Per section 6.5 of the 1.0.1 spec, we need to emit one empty-value tag for each value if the property is
             // multi-valued and skipBinary is true
             if (!skipBinary) {
-                byte[] bytes = new byte[BASE_64_BUFFER_SIZE];
-                int len;
-
                 Binary binary = value.getBinary();
                 try {
-                    InputStream stream = new Base64.InputStream(binary.getStream(), Base64.ENCODE);
-                    try {
-                        while (-1 != (len = stream.read(bytes))) {
-                            contentHandler.characters(new String(bytes, 0, len).toCharArray(), 0, len);
+                    // the value may have been encoded in the background before this node was exported ...
+                    String encoded = encodedAhead(binary);
+                    if (encoded != null) {
+                        contentHandler.characters(encoded.toCharArray(), 0, encoded.length());
+                    } else {
+                        byte[] bytes = new byte[BASE_64_BUFFER_SIZE];
+                        int len;
+                        InputStream stream = new Base64.InputStream(binary.getStream(), Base64.ENCODE);
+                        try {
+                            while (-1 != (len = stream.read(bytes))) {
+                                contentHandler.characters(new String(bytes, 0, len).toCharArray(), 0, len);
+                            }
+                        } finally {
+                            stream.close();
                         }
-                    } finally {
-                        stream.close();
                     }
                 } catch (IOException ioe) {
                     throw new RepositoryException(ioe);
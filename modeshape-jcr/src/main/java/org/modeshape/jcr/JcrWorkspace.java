@@ -45,6 +45,8 @@ import javax.jcr.version.VersionException;
 import org.modeshape.common.annotation.ThreadSafe;
 import org.modeshape.common.util.CheckArg;
 import org.modeshape.jcr.JcrContentHandler.EnclosingSAXException;
+import org.modeshape.jcr.api.BulkLoader;
+import org.modeshape.jcr.api.ImportOptions;
 import org.modeshape.jcr.api.federation.FederationManager;
 import org.modeshape.jcr.api.index.IndexManager;
 import org.modeshape.jcr.cache.CachedNode;
@@ -650,7 +652,8 @@ class JcrWorkspace implements org.modeshape.jcr.api.Workspace {
             try {
                 lock.lock();
                 if (observationManager == null) {
-                    observationManager = new JcrObservationManager(session, repository().changeBus());
+                    observationManager = new JcrObservationManager(session, repository().changeBus(),
+                                                                   repository().changeDispatchingQueue());
                 }
             } finally {
                 lock.unlock();
@@ -703,7 +706,12 @@ class JcrWorkspace implements org.modeshape.jcr.api.Workspace {
 
         CheckArg.isNotNull(parentAbsPath, "parentAbsPath");
         session.checkLive();
+        return createImportContentHandler(parentAbsPath, uuidBehavior, null);
+    }
 
+    private JcrContentHandler createImportContentHandler( String parentAbsPath,
+                                                          int uuidBehavior,
+                                                          ImportOptions options ) throws RepositoryException {
         // Create a new session, since we don't want to mess with the current session and because we'll save right
         // when finished reading the document ...
         JcrSession session = this.session.spawnSession(false);
@@ -718,7 +726,8 @@ class JcrWorkspace implements org.modeshape.jcr.api.Workspace {
         Repository repo = getSession().getRepository();
         boolean retainLifecycleInfo = repo.getDescriptorValue(Repository.OPTION_LIFECYCLE_SUPPORTED).getBoolean();
         boolean retainRetentionInfo = repo.getDescriptorValue(Repository.OPTION_RETENTION_SUPPORTED).getBoolean();
-        return new JcrContentHandler(session, parent, uuidBehavior, saveWhenFinished, retainRetentionInfo, retainLifecycleInfo);
+        return new JcrContentHandler(session, parent, uuidBehavior, saveWhenFinished, retainRetentionInfo, retainLifecycleInfo,
+                                     options);
     }
 
     @Override
@@ -730,11 +739,29 @@ class JcrWorkspace implements org.modeshape.jcr.api.Workspace {
         CheckArg.isNotNull(parentAbsPath, "parentAbsPath");
         CheckArg.isNotNull(in, "in");
         session.checkLive();
+        importContent(parentAbsPath, in, uuidBehavior, null);
+    }
+
+    @Override
+    public void importXML( String parentAbsPath,
+                           InputStream in,
+                           int uuidBehavior,
+                           ImportOptions options ) throws IOException, RepositoryException {
+        CheckArg.isNotNull(parentAbsPath, "parentAbsPath");
+        CheckArg.isNotNull(in, "in");
+        CheckArg.isNotNull(options, "options");
+        session.checkLive();
+        importContent(parentAbsPath, in, uuidBehavior, options);
+    }
 
+    private void importContent( String parentAbsPath,
+                                InputStream in,
+                                int uuidBehavior,
+                                ImportOptions options ) throws IOException, RepositoryException {
         boolean error = false;
         try {
             XMLReader parser = XMLReaderFactory.createXMLReader();
-            parser.setContentHandler(getImportContentHandler(parentAbsPath, uuidBehavior));
+            parser.setContentHandler(createImportContentHandler(parentAbsPath, uuidBehavior, options));
             parser.parse(new InputSource(in));
         } catch (EnclosingSAXException ese) {
             Exception cause = ese.getException();
@@ -971,4 +998,10 @@ class JcrWorkspace implements org.modeshape.jcr.api.Workspace {
         return federationManager;
     }
 
+    @Override
+    public BulkLoader getBulkLoader() throws RepositoryException {
+        session.checkLive();
+        return new ModeShapeBulkLoader(session);
+    }
+
 }
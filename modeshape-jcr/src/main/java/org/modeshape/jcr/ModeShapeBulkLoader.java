@@ -0,0 +1,529 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.modeshape.jcr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.ValueFormatException;
+import javax.jcr.lock.LockException;
+import javax.jcr.nodetype.ConstraintViolationException;
+import javax.jcr.nodetype.NoSuchNodeTypeException;
+import javax.jcr.version.VersionException;
+import org.modeshape.common.annotation.NotThreadSafe;
+import org.modeshape.common.i18n.I18n;
+import org.modeshape.common.util.CheckArg;
+import org.modeshape.jcr.NodeTypes.NodeDefinitionSet;
+import org.modeshape.jcr.api.BulkLoader;
+import org.modeshape.jcr.api.value.DateTime;
+import org.modeshape.jcr.cache.DocumentAlreadyExistsException;
+import org.modeshape.jcr.cache.DocumentNotFoundException;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.SiblingCounter;
+import org.modeshape.jcr.cache.document.BulkNodeWriter;
+import org.modeshape.jcr.value.BinaryValue;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.NameFactory;
+import org.modeshape.jcr.value.Path;
+import org.modeshape.jcr.value.PathFactory;
+import org.modeshape.jcr.value.Property;
+import org.modeshape.jcr.value.PropertyFactory;
+
+/**
+ * Implementation of the {@link BulkLoader} interface, which validates the descriptors of the new nodes against the node types
+ * of the session and hands them to a {@link BulkNodeWriter}. The results of validating each distinct combination of node types
+ * (and of the child node and property definitions used with it) are cached for the duration of a single load.
+ */
+@NotThreadSafe
+public class ModeShapeBulkLoader implements BulkLoader {
+
+    private final JcrSession session;
+
+    protected ModeShapeBulkLoader( JcrSession session ) {
+        this.session = session;
+    }
+
+    @Override
+    public long load( String parentAbsPath,
+                      Iterator<NodeDescriptor> nodes ) throws RepositoryException {
+        return load(parentAbsPath, nodes, DEFAULT_BATCH_SIZE);
+    }
+
+    @Override
+    public long load( String parentAbsPath,
+                      Iterator<NodeDescriptor> nodes,
+                      int batchSize ) throws RepositoryException {
+        CheckArg.isNotNull(parentAbsPath, "parentAbsPath");
+        CheckArg.isNotNull(nodes, "nodes");
+        CheckArg.isPositive(batchSize, "batchSize");
+        session.checkLive();
+
+        AbstractJcrNode parent = session.getNode(parentAbsPath);
+        if (parent.isNew() || parent.isExternal()) {
+            throw new RepositoryException(JcrI18n.bulkLoadRequiresSavedInternalParent.text(parentAbsPath));
+        }
+        session.checkPermission(parent, ModeShapePermissions.ADD_NODE, ModeShapePermissions.SET_PROPERTY);
+        if (parent.isLockedByAnotherSession()) {
+            throw new LockException(JcrI18n.lockTokenNotHeld.text(parent.location()));
+        }
+        if (!parent.isCheckedOut()) {
+            throw new VersionException(JcrI18n.nodeIsCheckedIn.text(parent.getPath()));
+        }
+
+        BulkNodeWriter writer = session.repository().repositoryCache().createBulkWriter(session.context(),
+                                                                                        session.workspaceName());
+        Load load = new Load(parent, writer);
+        long count = 0L;
+        while (nodes.hasNext()) {
+            load.add(nodes.next());
+            ++count;
+            if (writer.size() >= batchSize) {
+                load.write();
+            }
+        }
+        load.write();
+        return count;
+    }
+
+    /**
+     * The state of a single load, which remembers only the ancestors of the current node and the cached validation results.
+     */
+    private final class Load {
+        private final Path rootPath;
+        private final BulkNodeWriter writer;
+        private final NodeTypes nodeTypes = session.nodeTypes();
+        private final NameFactory names = session.nameFactory();
+        private final PathFactory paths = session.pathFactory();
+        private final PropertyFactory properties = session.propertyFactory();
+        private final Map<List<Object>, TypeInfo> typeInfos = new HashMap<>();
+        private final LinkedList<LoadedNode> ancestors = new LinkedList<>();
+        private final DateTime now = session.context().getValueFactories().getDateFactory().create();
+        private final String userId = session.getUserID();
+
+        protected Load( AbstractJcrNode parent,
+                         BulkNodeWriter writer ) throws RepositoryException {
+            this.rootPath = parent.path();
+            this.writer = writer;
+            TypeInfo rootTypes = typeInfo(parent.getPrimaryTypeName(), parent.getMixinTypeNames(), rootPath);
+            SiblingCounter existingChildren = SiblingCounter.create(parent.node(), session.cache());
+            this.ancestors.add(new LoadedNode(parent.key(), rootPath, rootTypes, existingChildren));
+        }
+
+        protected void add( NodeDescriptor descriptor ) throws RepositoryException {
+            Path relativePath = paths.create(descriptor.getPath());
+            if (relativePath.isAbsolute() || relativePath.isRoot() || !relativePath.isNormalized()) {
+                throw new RepositoryException(JcrI18n.invalidRelativePath.text(descriptor.getPath()));
+            }
+            Path path = paths.create(rootPath, relativePath);
+
+            // Find the parent, which must be the load root or one of the ancestors of the previous node ...
+            while (ancestors.size() > relativePath.size()) {
+                ancestors.removeLast();
+            }
+            LoadedNode parent = ancestors.getLast();
+            if (!parent.path.equals(path.getParent())) {
+                throw new PathNotFoundException(JcrI18n.bulkLoadedNodeParentNotLoaded.text(session.readable(path),
+                                                                                          session.readable(rootPath)));
+            }
+
+            // The index of a same-name sibling follows from the children loaded (or existing) before it ...
+            Path.Segment segment = path.getLastSegment();
+            int index = parent.nextIndex(segment.getName());
+            if (segment.hasIndex() && segment.getIndex() != index) {
+                throw new PathNotFoundException(JcrI18n.bulkLoadedNodeHasWrongIndex.text(descriptor.getPath(),
+                                                                                        session.readable(parent.path), index));
+            }
+            if (index != segment.getIndex()) {
+                path = paths.create(parent.path, segment.getName(), index);
+            }
+
+            Name primaryType = names.create(descriptor.getPrimaryType());
+            Set<Name> mixinTypes = Collections.emptySet();
+            if (!descriptor.getMixinTypes().isEmpty()) {
+                mixinTypes = new LinkedHashSet<>();
+                for (String mixinType : descriptor.getMixinTypes()) {
+                    mixinTypes.add(names.create(mixinType));
+                }
+            }
+            TypeInfo types = typeInfo(primaryType, mixinTypes, path);
+            parent.types.validateChild(path, primaryType, index > 1);
+
+            String identifier = descriptor.getIdentifier();
+            NodeKey key = identifier != null ? session.cache().createNodeKeyWithIdentifier(identifier) : session.cache()
+                                                                                                            .createNodeKey();
+            List<Property> props = new ArrayList<>();
+            props.add(types.primaryTypeProperty);
+            if (types.mixinTypesProperty != null) {
+                props.add(types.mixinTypesProperty);
+            }
+            Set<Name> propertyNames = new HashSet<>();
+            for (Map.Entry<String, Value[]> entry : descriptor.getProperties().entrySet()) {
+                Name name = names.create(entry.getKey());
+                props.add(types.property(path, name, entry.getValue(), descriptor.isMultiple(entry.getKey())));
+                propertyNames.add(name);
+            }
+            for (Property defaultProperty : types.defaultProperties) {
+                addIfAbsent(props, propertyNames, defaultProperty);
+            }
+            if (types.referenceable) {
+                props.add(properties.create(JcrLexicon.UUID, session.nodeIdentifier(key)));
+                propertyNames.add(JcrLexicon.UUID);
+            }
+            if (types.created) {
+                addIfAbsent(props, propertyNames, properties.create(JcrLexicon.CREATED, now));
+                addIfAbsent(props, propertyNames, properties.create(JcrLexicon.CREATED_BY, userId));
+            }
+            if (types.lastModified) {
+                addIfAbsent(props, propertyNames, properties.create(JcrLexicon.LAST_MODIFIED, now));
+                addIfAbsent(props, propertyNames, properties.create(JcrLexicon.LAST_MODIFIED_BY, userId));
+            }
+            if (types.etag) {
+                props.add(properties.create(JcrLexicon.ETAG, etag(props)));
+            }
+            for (JcrPropertyDefinition defn : types.mandatoryProperties) {
+                if (!propertyNames.contains(defn.getInternalName())) {
+                    String typeName = defn.getDeclaringNodeType().getName();
+                    throw new ConstraintViolationException(JcrI18n.missingMandatoryProperty.text(defn.getName(), typeName,
+                                                                                                 session.readable(path)));
+                }
+            }
+
+            writer.add(key, parent.key, path, primaryType, mixinTypes, props, types.bucketIdLength);
+            ancestors.add(new LoadedNode(key, path, types, SiblingCounter.noSiblings()));
+        }
+
+        private void addIfAbsent( List<Property> props,
+                                  Set<Name> propertyNames,
+                                  Property property ) {
+            if (propertyNames.add(property.getName())) {
+                props.add(property);
+            }
+        }
+
+        private String etag( List<Property> props ) {
+            // concatenate the SHA-1 hashes of the BINARY values, in property name order so that it is repeatable ...
+            List<Property> sorted = new ArrayList<>(props);
+            Collections.sort(sorted);
+            StringBuilder sb = new StringBuilder();
+            for (Property prop : sorted) {
+                for (Object value : prop) {
+                    if (value instanceof BinaryValue) {
+                        sb.append(((BinaryValue)value).getHexHash());
+                    }
+                }
+            }
+            return sb.toString();
+        }
+
+        protected void write() throws RepositoryException {
+            try {
+                writer.write();
+            } catch (DocumentNotFoundException e) {
+                throw new InvalidItemStateException(JcrI18n.nodeModifiedBySessionWasRemovedByAnotherSession.text(e.getKey()), e);
+            } catch (DocumentAlreadyExistsException e) {
+                throw new InvalidItemStateException(JcrI18n.bulkLoadedNodeUsedExistingKey.text(session.readable(rootPath),
+                                                                                              e.getKey()), e);
+            } catch (RuntimeException e) {
+                throw new RepositoryException(e.getMessage(), e);
+            }
+        }
+
+        private TypeInfo typeInfo( Name primaryType,
+                                   Set<Name> mixinTypes,
+                                   Path path ) throws RepositoryException {
+            List<Object> key = Arrays.<Object>asList(primaryType, mixinTypes);
+            TypeInfo info = typeInfos.get(key);
+            if (info == null) {
+                info = new TypeInfo(this, primaryType, mixinTypes, path);
+                typeInfos.put(key, info);
+            }
+            return info;
+        }
+    }
+
+    /**
+     * The validation results for nodes with a specific primary type and mixin types.
+     */
+    private final class TypeInfo {
+        private final Load load;
+        private final Name primaryType;
+        private final Set<Name> mixinTypes;
+        protected final Property primaryTypeProperty;
+        protected final Property mixinTypesProperty;
+        protected final Collection<Property> defaultProperties;
+        protected final List<JcrPropertyDefinition> mandatoryProperties = new ArrayList<>();
+        protected final boolean referenceable;
+        protected final boolean created;
+        protected final boolean lastModified;
+        protected final boolean etag;
+        protected final int bucketIdLength;
+        private final Set<List<Object>> allowedChildren = new HashSet<>();
+        private final Map<List<Object>, JcrPropertyDefinition> propertyDefinitions = new HashMap<>();
+
+        protected TypeInfo( Load load,
+                            Name primaryType,
+                            Set<Name> mixinTypes,
+                            Path path ) throws RepositoryException {
+            this.load = load;
+            this.primaryType = primaryType;
+            this.mixinTypes = mixinTypes;
+            NodeTypes nodeTypes = load.nodeTypes;
+            String workspaceName = session.workspaceName();
+
+            JcrNodeType type = nodeTypes.getNodeType(primaryType);
+            if (type == null) {
+                I18n msg = JcrI18n.unableToCreateNodeWithPrimaryTypeThatDoesNotExist;
+                throw new NoSuchNodeTypeException(msg.text(primaryType, session.readable(path), workspaceName));
+            }
+            if (type.isMixin()) {
+                throw new ConstraintViolationException(JcrI18n.cannotUseMixinTypeAsPrimaryType.text(type.getName()));
+            }
+            if (type.isAbstract() || ModeShapeLexicon.SHARE.equals(primaryType)) {
+                throw new ConstraintViolationException(JcrI18n.primaryTypeCannotBeAbstract.text(type.getName()));
+            }
+            List<Name> typeNames = new ArrayList<>();
+            typeNames.add(primaryType);
+            for (Name mixinType : mixinTypes) {
+                JcrNodeType mixin = nodeTypes.getNodeType(mixinType);
+                if (mixin == null) {
+                    throw new NoSuchNodeTypeException(JcrI18n.typeNotFound.text(mixinType));
+                }
+                if (!mixin.isMixin()) {
+                    throw new ConstraintViolationException(JcrI18n.cannotAddMixin.text(mixinType));
+                }
+                typeNames.add(mixinType);
+            }
+            if (nodeTypes.isVersionable(primaryType, mixinTypes) || nodeTypes.isShareable(primaryType, mixinTypes)) {
+                I18n msg = JcrI18n.bulkLoadDoesNotSupportVersionableOrShareableNodes;
+                throw new ConstraintViolationException(msg.text(session.readable(path)));
+            }
+
+            PropertyFactory properties = load.properties;
+            this.primaryTypeProperty = properties.create(JcrLexicon.PRIMARY_TYPE, primaryType);
+            this.mixinTypesProperty = mixinTypes.isEmpty() ? null : properties.create(JcrLexicon.MIXIN_TYPES,
+                                                                                       mixinTypes.toArray());
+            // The auto-created properties and the mandatory properties with default values ...
+            Map<Name, Property> defaults = new LinkedHashMap<>();
+            for (Name typeName : typeNames) {
+                for (JcrPropertyDefinition defn : nodeTypes.getAutoCreatedPropertyDefinitions(typeName)) {
+                    addDefault(defaults, defn);
+                }
+            }
+            for (JcrPropertyDefinition defn : nodeTypes.getMandatoryPropertyDefinitions(primaryType, mixinTypes)) {
+                if (defn.isResidual()) {
+                    continue;
+                }
+                if (!addDefault(defaults, defn) && !defaults.containsKey(defn.getInternalName())) {
+                    mandatoryProperties.add(defn);
+                }
+            }
+            this.defaultProperties = defaults.values();
+            this.referenceable = nodeTypes.isReferenceable(primaryType, mixinTypes);
+            this.created = nodeTypes.isCreated(primaryType, mixinTypes);
+            this.lastModified = nodeTypes.isLastModified(primaryType, mixinTypes);
+            this.etag = nodeTypes.isETag(primaryType, mixinTypes);
+            if (nodeTypes.isUnorderedCollection(primaryType, mixinTypes)) {
+                this.bucketIdLength = nodeTypes.getBucketIdLengthForUnorderedCollection(primaryType, mixinTypes);
+            } else {
+                this.bucketIdLength = 0;
+            }
+        }
+
+        private boolean addDefault( Map<Name, Property> defaults,
+                                    JcrPropertyDefinition defn ) {
+            if (!defn.hasDefaultValues()) {
+                return false;
+            }
+            Name propName = defn.getInternalName();
+            if (!defaults.containsKey(propName)) {
+                Object[] defaultValues = defn.getRawDefaultValues();
+                PropertyFactory properties = load.properties;
+                if (defn.isMultiple()) {
+                    defaults.put(propName, properties.create(propName, defaultValues));
+                } else {
+                    defaults.put(propName, properties.create(propName, defaultValues[0]));
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Validate that a node of this type allows a child with the given name and primary type. Only whether the child has
+         * same-name siblings matters, not how many, so the result only depends on the name, type and that flag and can be cached.
+         */
+        protected void validateChild( Path childPath,
+                                      Name childPrimaryType,
+                                      boolean hasSiblings ) throws RepositoryException {
+            Name childName = childPath.getLastSegment().getName();
+            List<Object> key = Arrays.<Object>asList(childName, childPrimaryType, hasSiblings);
+            if (allowedChildren.contains(key)) {
+                return;
+            }
+            NodeDefinitionSet childDefns = load.nodeTypes.findChildNodeDefinitions(primaryType, mixinTypes);
+            SiblingCounter siblings = hasSiblings ? SiblingCounter.oneSibling() : SiblingCounter.noSiblings();
+            if (childDefns.findBestDefinitionForChild(childName, childPrimaryType, true, siblings) == null) {
+                String repoName = session.repository().repositoryName();
+                childDefns.determineReasonForMismatch(childName, childPrimaryType, true, siblings, primaryType, mixinTypes,
+                                                      childPath.getParent(), session.workspaceName(), repoName,
+                                                      session.context());
+            }
+            allowedChildren.add(key);
+        }
+
+        /**
+         * Create the property with the supplied values, converted to the type required by the property definition. The
+         * definition is looked up once per name, type and cardinality; only the values of definitions with constraints are
+         * checked individually.
+         */
+        protected Property property( Path path,
+                                     Name name,
+                                     Value[] values,
+                                     boolean multiple ) throws RepositoryException {
+            List<JcrValue> jcrValues = new ArrayList<>(values.length);
+            int valueType = PropertyType.UNDEFINED;
+            for (Value value : values) {
+                JcrValue jcrValue = (JcrValue)value;
+                if (jcrValue == null) {
+                    continue;
+                }
+                if (jcrValue.value() == null) {
+                    throw new ValueFormatException(JcrI18n.valueMayNotContainNull.text(session.stringFactory().create(name)));
+                }
+                if (valueType == PropertyType.UNDEFINED) {
+                    valueType = jcrValue.getType();
+                } else if (valueType != jcrValue.getType()) {
+                    I18n msg = JcrI18n.allPropertyValuesMustHaveSameType;
+                    throw new ValueFormatException(msg.text(session.stringFactory().create(name), jcrValues,
+                                                            PropertyType.nameFromValue(valueType), session.readable(path),
+                                                            session.workspaceName()));
+                }
+                jcrValues.add(jcrValue);
+            }
+            if (!multiple && jcrValues.isEmpty()) {
+                throw new ValueFormatException(JcrI18n.valueMayNotContainNull.text(session.stringFactory().create(name)));
+            }
+            JcrValue[] valueArray = jcrValues.toArray(new JcrValue[jcrValues.size()]);
+
+            List<Object> key = Arrays.<Object>asList(name, valueType, multiple);
+            JcrPropertyDefinition defn = propertyDefinitions.get(key);
+            if (defn == null && !propertyDefinitions.containsKey(key)) {
+                defn = findDefinition(name, valueArray, multiple, false);
+                propertyDefinitions.put(key, defn);
+            }
+            if (defn == null) {
+                I18n msg = JcrI18n.noPropertyDefinition;
+                throw new ConstraintViolationException(msg.text(session.stringFactory().create(name), session.readable(path),
+                                                                primaryType, mixinTypes));
+            }
+            int requiredType = defn.getRequiredType() == PropertyType.UNDEFINED ? valueType : defn.getRequiredType();
+            if (requiredType == PropertyType.REFERENCE || requiredType == PropertyType.WEAKREFERENCE
+                || requiredType == org.modeshape.jcr.api.PropertyType.SIMPLE_REFERENCE) {
+                I18n msg = JcrI18n.bulkLoadDoesNotSupportReferences;
+                throw new ConstraintViolationException(msg.text(session.stringFactory().create(name), session.readable(path)));
+            }
+            if (defn.getValueConstraints().length != 0 && !defn.canCastToTypeAndSatisfyConstraints(valueArray, session)) {
+                // The first definition doesn't allow these values, so look for another one that does ...
+                JcrPropertyDefinition other = findDefinition(name, valueArray, multiple, true);
+                if (other == null) {
+                    I18n msg = JcrI18n.valueViolatesConstraintsOnDefinition;
+                    throw new ConstraintViolationException(msg.text(session.stringFactory().create(name), jcrValues,
+                                                                    session.readable(path), defn.getName(),
+                                                                    defn.getDeclaringNodeType().getName()));
+                }
+                defn = other;
+                requiredType = defn.getRequiredType() == PropertyType.UNDEFINED ? valueType : defn.getRequiredType();
+            }
+
+            Object[] rawValues = new Object[valueArray.length];
+            for (int i = 0; i != valueArray.length; ++i) {
+                JcrValue value = valueArray[i];
+                rawValues[i] = (value.getType() == requiredType ? value : value.asType(requiredType)).value();
+            }
+            PropertyFactory properties = load.properties;
+            return multiple ? properties.create(name, rawValues) : properties.create(name, rawValues[0]);
+        }
+
+        private JcrPropertyDefinition findDefinition( Name name,
+                                                      JcrValue[] values,
+                                                      boolean multiple,
+                                                      boolean checkTypeAndConstraints ) {
+            NodeTypes nodeTypes = load.nodeTypes;
+            if (multiple) {
+                return nodeTypes.findPropertyDefinition(session, primaryType, mixinTypes, name, values, true,
+                                                        checkTypeAndConstraints);
+            }
+            return nodeTypes.findPropertyDefinition(session, primaryType, mixinTypes, name, values[0], false, true,
+                                                    checkTypeAndConstraints);
+        }
+    }
+
+    /**
+     * A node that is an ancestor of the node being loaded, with the number of children of each name that it has so far. The names
+     * are counted only for nodes that may have same-name siblings; unordered collections never do.
+     */
+    private static final class LoadedNode {
+        protected final NodeKey key;
+        protected final Path path;
+        protected final TypeInfo types;
+        private final SiblingCounter existingChildren;
+        private Map<Name, Integer> childCounts;
+
+        protected LoadedNode( NodeKey key,
+                              Path path,
+                              TypeInfo types,
+                              SiblingCounter existingChildren ) {
+            this.key = key;
+            this.path = path;
+            this.types = types;
+            this.existingChildren = existingChildren;
+        }
+
+        /**
+         * Count a new child with the given name, and return its same-name sibling index.
+         *
+         * @param childName the name of the new child; may not be null
+         * @return the 1-based index of the new child among its siblings with the same name
+         */
+        protected int nextIndex( Name childName ) {
+            if (types.bucketIdLength > 0) {
+                return 1;
+            }
+            if (childCounts == null) {
+                childCounts = new HashMap<>();
+            }
+            Integer count = childCounts.get(childName);
+            int index = (count != null ? count : existingChildren.countSiblingsNamed(childName)) + 1;
+            childCounts.put(childName, index);
+            return index;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.CheckArg;
+import org.modeshape.jmx.ReindexingMXBean;
+
+/**
+ * Records the progress of the full reindexing of workspaces, so that a reindexing that is interrupted (by a restart, a failure or
+ * a shutdown) resumes from its latest checkpoint rather than starting over. Each reindexing crawls the content of a workspace for
+ * a set of index providers in a deterministic depth-first order, so its progress is described by the keys of the nodes on the path
+ * from the workspace's root to the latest node whose changes were committed to the indexes.
+ * <p>
+ * This also throttles the reindexing to a maximum number of nodes per second and exposes the progress of the reindexing via JMX.
+ * </p>
+ */
+@ThreadSafe
+final class ReindexingCheckpoints implements ReindexingMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(ReindexingCheckpoints.class);
+    private static final String CHECKPOINTS_FIELD = "checkpoints";
+    private static final String SEPARATOR = "\n";
+
+    private final String repositoryName;
+    private final int checkpointInterval;
+    private final DB db;
+    private final Map<String, List<String>> checkpoints;
+    private final ConcurrentMap<String, Run> running = new ConcurrentHashMap<>();
+    private volatile int maxNodesPerSecond;
+    private volatile ObjectName beanName;
+
+    /**
+     * @param repository the running repository; may not be null
+     * @param checkpointInterval the number of nodes reindexed between two checkpoints; must be positive
+     * @param maxNodesPerSecond the maximum number of nodes reindexed per second, or 0 if reindexing is not throttled
+     * @param storeLocation the folder where the checkpoints should be recorded; may be null if the checkpoints should only be
+     *        kept in memory
+     */
+    ReindexingCheckpoints( JcrRepository.RunningState repository,
+                           int checkpointInterval,
+                           int maxNodesPerSecond,
+                           String storeLocation ) {
+        CheckArg.isPositive(checkpointInterval, "checkpointInterval");
+        CheckArg.isNonNegative(maxNodesPerSecond, "maxNodesPerSecond");
+        this.repositoryName = repository.name();
+        this.checkpointInterval = checkpointInterval;
+        this.maxNodesPerSecond = maxNodesPerSecond;
+        DB db = null;
+        if (storeLocation != null) {
+            try {
+                File folder = new File(storeLocation);
+                if (!folder.exists() && !folder.mkdirs()) {
+                    throw new IllegalStateException("Unable to create the folder " + folder.getAbsolutePath());
+                }
+                db = DBMaker.newFileDB(new File(folder, CHECKPOINTS_FIELD)).checksumEnable().closeOnJvmShutdown().make();
+            } catch (RuntimeException e) {
+                repository.error(e, JcrI18n.unableToOpenReindexingCheckpoints, storeLocation, repositoryName, e.getMessage());
+                if (db != null) db.close();
+                db = null;
+            }
+        }
+        if (db == null) {
+            db = DBMaker.newHeapDB().transactionDisable().make();
+        }
+        this.db = db;
+        this.checkpoints = db.createHashMap(CHECKPOINTS_FIELD).keySerializer(Serializer.STRING).makeOrGet();
+    }
+
+    /**
+     * Start the reindexing of the given workspace for the given providers, resuming from the latest checkpoint of a previous
+     * reindexing of the same workspace for the same providers and index definitions if there is one.
+     *
+     * @param workspaceName the name of the workspace; may not be null
+     * @param providerNames the names of the index providers whose indexes are being reindexed; may not be null
+     * @param definitions a signature of the definitions of the indexes being reindexed; may not be null
+     * @param resume true if the reindexing should resume from the latest checkpoint, or false if it should start over
+     * @return the run that records the progress of the reindexing, or null if the same reindexing is already running
+     */
+    Run start( String workspaceName,
+               Set<String> providerNames,
+               String definitions,
+               boolean resume ) {
+        String key = keyFor(workspaceName, providerNames);
+        Run run = new Run(key, workspaceName, definitions);
+        if (running.putIfAbsent(key, run) != null) {
+            LOGGER.debug("Workspace '{0}' in repository '{1}' is already being reindexed", workspaceName, repositoryName);
+            return null;
+        }
+        List<String> checkpoint = resume ? checkpoints.get(key) : null;
+        if (checkpoint != null && !checkpoint.isEmpty() && checkpoint.get(0).equals(definitions)) {
+            LOGGER.info(JcrI18n.resumingReindexing, workspaceName, repositoryName);
+            run.resumeFrom = Collections.unmodifiableList(checkpoint.subList(1, checkpoint.size()));
+        } else {
+            // Record that the reindexing has started, so that it is resumed even if it's interrupted before its first checkpoint
+            run.checkpoint(Collections.<String>emptyList());
+        }
+        return run;
+    }
+
+    /**
+     * Get the reindexing that were interrupted and that are not running, each as a pair of the workspace name and the names of
+     * the index providers. Whether each can be resumed depends upon whether the index definitions have changed since.
+     *
+     * @return the interrupted reindexing; never null but possibly empty
+     */
+    List<Map.Entry<String, Set<String>>> interrupted() {
+        List<Map.Entry<String, Set<String>>> result = new ArrayList<>();
+        for (String key : checkpoints.keySet()) {
+            if (running.containsKey(key)) continue;
+            String[] parts = key.split(SEPARATOR, 2);
+            Set<String> providerNames = new TreeSet<>();
+            if (parts.length > 1 && !parts[1].isEmpty()) {
+                Collections.addAll(providerNames, parts[1].split(","));
+            }
+            result.add(new AbstractMap.SimpleImmutableEntry<>(parts[0], providerNames));
+        }
+        return result;
+    }
+
+    /**
+     * Discard the checkpoint of an interrupted reindexing that can no longer be resumed.
+     *
+     * @param workspaceName the name of the workspace; may not be null
+     * @param providerNames the names of the index providers; may not be null
+     */
+    void discard( String workspaceName,
+                  Set<String> providerNames ) {
+        if (db.isClosed()) return;
+        checkpoints.remove(keyFor(workspaceName, providerNames));
+        db.commit();
+    }
+
+    /**
+     * Register the JMX bean that exposes the progress of the reindexing.
+     */
+    void registerMBean() {
+        try {
+            Hashtable<String, String> props = new Hashtable<String, String>();
+            props.put("name", repositoryName);
+            props.put("type", "Reindexing");
+            beanName = new ObjectName("org.modeshape", props);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new StandardMBean(this, ReindexingMXBean.class, true), beanName);
+        } catch (InstanceAlreadyExistsException e) {
+            LOGGER.warn(JcrI18n.mBeanAlreadyRegistered, beanName);
+        } catch (Exception e) {
+            LOGGER.error(e, JcrI18n.cannotRegisterMBean, beanName);
+        }
+    }
+
+    void shutdown() {
+        if (beanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(beanName);
+            } catch (InstanceNotFoundException e) {
+                LOGGER.debug("JMX bean {0} not found", beanName);
+            } catch (Exception e) {
+                LOGGER.error(e, JcrI18n.cannotUnRegisterMBean, beanName);
+            }
+        }
+        if (!db.isClosed()) db.close();
+    }
+
+    private static String keyFor( String workspaceName,
+                                  Set<String> providerNames ) {
+        return workspaceName + SEPARATOR + String.join(",", new TreeSet<>(providerNames));
+    }
+
+    @Override
+    public List<String> getReindexingWorkspaces() {
+        List<String> result = new ArrayList<>();
+        for (Run run : running.values()) {
+            result.add(run.workspaceName);
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> getInterruptedWorkspaces() {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> interrupted : interrupted()) {
+            result.add(interrupted.getKey());
+        }
+        return result;
+    }
+
+    @Override
+    public long getNodesReindexed() {
+        long result = 0L;
+        for (Run run : running.values()) {
+            result += run.count;
+        }
+        return result;
+    }
+
+    @Override
+    public double getNodesPerSecond() {
+        double result = 0.0d;
+        for (Run run : running.values()) {
+            long elapsed = Math.abs(System.nanoTime() - run.startedNanos);
+            if (elapsed > 0L) result += run.count * (double)TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+        return result;
+    }
+
+    @Override
+    public double getPercentComplete() {
+        if (running.isEmpty()) return 0.0d;
+        double total = 0.0d;
+        for (Run run : running.values()) {
+            total += run.fractionComplete;
+        }
+        return 100.0d * total / running.size();
+    }
+
+    @Override
+    public long getEstimatedSecondsRemaining() {
+        long result = -1L;
+        for (Run run : running.values()) {
+            double fraction = run.fractionComplete - run.fractionAtStart;
+            if (fraction <= 0.0d) return -1L;
+            long elapsed = TimeUnit.NANOSECONDS.toSeconds(Math.abs(System.nanoTime() - run.startedNanos));
+            result = Math.max(result, (long)(elapsed * (1.0d - run.fractionComplete) / fraction));
+        }
+        return result;
+    }
+
+    @Override
+    public int getMaxNodesPerSecond() {
+        return maxNodesPerSecond;
+    }
+
+    @Override
+    public void setMaxNodesPerSecond( int maxNodesPerSecond ) {
+        CheckArg.isNonNegative(maxNodesPerSecond, "maxNodesPerSecond");
+        this.maxNodesPerSecond = maxNodesPerSecond;
+    }
+
+    /**
+     * The progress of the reindexing of one workspace. Only the thread that reindexes the workspace changes it.
+     */
+    final class Run {
+        private final String key;
+        private final String definitions;
+        protected final String workspaceName;
+        protected final long startedNanos = System.nanoTime();
+        private List<String> resumeFrom = Collections.emptyList();
+        protected volatile long count;
+        protected volatile double fractionComplete;
+        protected volatile double fractionAtStart = -1.0d;
+        private long throttledSinceNanos = startedNanos;
+        private long throttledSinceCount;
+        private int throttledAt;
+
+        protected Run( String key,
+                       String workspaceName,
+                       String definitions ) {
+            this.key = key;
+            this.workspaceName = workspaceName;
+            this.definitions = definitions;
+        }
+
+        /**
+         * Get the keys of the nodes on the path from the root (excluded) to the latest node reindexed before the previous
+         * reindexing was interrupted. All of the nodes that precede this node in depth-first order have been reindexed.
+         *
+         * @return the keys of the nodes; never null but empty if the reindexing starts from the beginning
+         */
+        List<String> resumeFrom() {
+            return resumeFrom;
+        }
+
+        /**
+         * Record that another node has been reindexed, waiting if the reindexing is faster than allowed.
+         *
+         * @param fractionComplete the estimated fraction of the content reindexed so far, between 0 and 1
+         * @return true if a checkpoint should be recorded, or false otherwise
+         * @throws InterruptedException if the thread was interrupted, in which case the reindexing should stop
+         */
+        boolean reindexed( double fractionComplete ) throws InterruptedException {
+            if (Thread.interrupted()) throw new InterruptedException();
+            long count = ++this.count;
+            this.fractionComplete = fractionComplete;
+            if (fractionAtStart < 0.0d) fractionAtStart = fractionComplete;
+            int max = maxNodesPerSecond;
+            if (max != throttledAt) {
+                // The limit has changed, so start measuring the rate again ...
+                throttledAt = max;
+                throttledSinceNanos = System.nanoTime();
+                throttledSinceCount = count;
+            } else if (max > 0) {
+                long expected = (count - throttledSinceCount) * TimeUnit.SECONDS.toNanos(1) / max;
+                long ahead = expected - Math.abs(System.nanoTime() - throttledSinceNanos);
+                if (ahead >= TimeUnit.MILLISECONDS.toNanos(1)) {
+                    TimeUnit.NANOSECONDS.sleep(ahead);
+                }
+            }
+            return count % checkpointInterval == 0;
+        }
+
+        /**
+         * Record a checkpoint. The changes of all of the nodes reindexed so far must have been committed to the indexes.
+         *
+         * @param position the keys of the nodes on the path from the root (excluded) to the latest node reindexed; may not be
+         *        null
+         */
+        void checkpoint( List<String> position ) {
+            if (db.isClosed()) return;
+            List<String> checkpoint = new ArrayList<>(position.size() + 1);
+            checkpoint.add(definitions);
+            checkpoint.addAll(position);
+            checkpoints.put(key, checkpoint);
+            db.commit();
+        }
+
+        /**
+         * Record that the reindexing has stopped.
+         *
+         * @param completed true if all of the content of the workspace has been reindexed, or false if the reindexing was
+         *        interrupted and should resume from its latest checkpoint
+         */
+        void finish( boolean completed ) {
+            running.remove(key, this);
+            if (completed && !db.isClosed()) {
+                checkpoints.remove(key);
+                db.commit();
+            }
+        }
+    }
+}
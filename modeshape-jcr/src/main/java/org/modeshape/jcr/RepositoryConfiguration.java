@@ -231,6 +231,16 @@ public class RepositoryConfiguration {
          */
         public static final String EVENT_BUS_SIZE = "eventBusSize";
 
+        /**
+         * The name for the field whose value is the strategy used by the listeners of the event bus to wait for new events
+         */
+        public static final String EVENT_BUS_WAIT_STRATEGY = "eventBusWaitStrategy";
+
+        /**
+         * The name for the field whose value is the maximum number of events passed to a listener of the event bus at once
+         */
+        public static final String EVENT_BUS_BATCH_SIZE = "eventBusBatchSize";
+
         /**
          * The name for the optional field specifying whether the monitoring system is enabled or disabled.
          */
@@ -432,6 +442,9 @@ public class RepositoryConfiguration {
         public static final String REINDEXING = "reindexing";
         public static final String REINDEXING_ASYNC = "async";
         public static final String REINDEXING_MODE = "mode";
+        public static final String REINDEXING_CHECKPOINT_LOCATION = "checkpointLocation";
+        public static final String REINDEXING_CHECKPOINT_INTERVAL = "checkpointInterval";
+        public static final String REINDEXING_MAX_NODES_PER_SECOND = "maxNodesPerSecond";
         public static final String ADDRESS = "address";
         public static final String DATABASE = "database";
         public static final String HOST = "host";
@@ -458,6 +471,58 @@ public class RepositoryConfiguration {
          * The name of the field which allows the configuration of the maximum number of threads that can be spawned by a pool
          */
         public static final String MAX_POOL_SIZE = "maxPoolSize";
+
+        /**
+         * The name of the field under "sequencing" for the folder where the pending sequencing work is recorded, so that it is
+         * resumed after a restart.
+         */
+        public static final String QUEUE_LOCATION = "queueLocation";
+
+        /**
+         * The name of the field under "sequencing" or "textExtraction" for the maximum number of pending work items kept in
+         * memory.
+         */
+        public static final String MAX_QUEUE_SIZE = "maxQueueSize";
+
+        /**
+         * The name of the field under "sequencing" for the maximum number of items a single sequencer can process at once.
+         */
+        public static final String MAX_CONCURRENT_PER_SEQUENCER = "maxConcurrentPerSequencer";
+
+        /**
+         * The name of the field under "textExtraction" for the maximum number of binaries of the same MIME type whose text can be
+         * extracted at once.
+         */
+        public static final String MAX_CONCURRENT_PER_MIME_TYPE = "maxConcurrentPerMimeType";
+
+        /**
+         * The name of the field under "textExtraction" for the folder where the text extracted from binaries that are not
+         * persisted in the binary store is cached.
+         */
+        public static final String CACHE_LOCATION = "cacheLocation";
+
+        /**
+         * The name of the field under "textExtraction" for the maximum number of extracted texts that are cached for binaries
+         * that are not persisted in the binary store.
+         */
+        public static final String MAX_CACHE_SIZE = "maxCacheSize";
+
+        /**
+         * The name of the field under "sequencing" for the number of times a failed sequencing work item is run again.
+         */
+        public static final String MAX_RETRIES = "maxRetries";
+
+        /**
+         * The name of the field under "sequencing" for the maximum number of work items whose output is saved together in one
+         * session. A value of 1 saves the output of each work item separately.
+         */
+        public static final String OUTPUT_BATCH_SIZE = "outputBatchSize";
+
+        /**
+         * The name of the field under "sequencing" for the maximum number of milliseconds the output of a batch of work items is
+         * kept in the session before it is saved.
+         */
+        public static final String OUTPUT_BATCH_DELAY_IN_MILLIS = "outputBatchDelayInMillis";
         
         /**
          * The name of the journaling schema field.
@@ -483,6 +548,61 @@ public class RepositoryConfiguration {
          * Whether asynchronous writes into the journal should be enabled or not.
          */
         public static final String ASYNC_WRITES_ENABLED = "asyncWritesEnabled";
+
+        /**
+         * The maximum number of records that the journal writes to disk with a single commit.
+         */
+        public static final String MAX_RECORDS_PER_COMMIT = "maxRecordsPerCommit";
+
+        /**
+         * The number of milliseconds the journal writer waits for additional records before committing the records it has.
+         */
+        public static final String MAX_COMMIT_DELAY_IN_MILLIS = "maxCommitDelayInMillis";
+
+        /**
+         * The format in which the journal stores its records: either "mapdb" or "segmented".
+         */
+        public static final String JOURNAL_FORMAT = "format";
+
+        /**
+         * The size in megabytes of each file of a "segmented" journal.
+         */
+        public static final String SEGMENT_SIZE_IN_MB = "segmentSizeInMB";
+
+        /**
+         * The name for the field whose value is a document containing the query-related settings.
+         */
+        public static final String QUERY = "query";
+
+        /**
+         * The name for the field under "query" specifying the maximum number of rows that all of the in-memory query buffers in
+         * the repository may hold at the same time.
+         */
+        public static final String MAX_BUFFERED_ROWS = "maxBufferedRows";
+
+        /**
+         * The name for the field under "query" specifying the maximum number of rows that the in-memory query buffers of a single
+         * session may hold at the same time.
+         */
+        public static final String MAX_BUFFERED_ROWS_PER_SESSION = "maxBufferedRowsPerSession";
+
+        /**
+         * The name for the field under "query" specifying the maximum number of threads that may be used to evaluate the
+         * independent branches of queries (e.g., the operands of a UNION or the sides of a join) in parallel.
+         */
+        public static final String PARALLELISM = "parallelism";
+
+        /**
+         * The name for the field under "query" specifying the number of milliseconds above which a query is considered slow. Slow
+         * queries are logged.
+         */
+        public static final String SLOW_QUERY_THRESHOLD_IN_MILLIS = "slowQueryThresholdInMillis";
+
+        /**
+         * The name for the field under "query" specifying that one in every so many queries is profiled when slow queries are
+         * detected, so that the plans of those queries can be logged with the statistics of each operator.
+         */
+        public static final String SLOW_QUERY_PROFILING_INTERVAL = "slowQueryProfilingInterval";
     }
 
     public static class Default {
@@ -522,6 +642,16 @@ public class RepositoryConfiguration {
          */
         public static final int EVENT_BUS_SIZE = RingBufferBuilder.DEFAULT_BUFFER_SIZE;
 
+        /**
+         * The default value of the {@link FieldName#EVENT_BUS_WAIT_STRATEGY} field is '{@value}'
+         */
+        public static final String EVENT_BUS_WAIT_STRATEGY = FieldValue.EVENT_BUS_WAIT_STRATEGY_PHASED;
+
+        /**
+         * The default value of the {@link FieldName#EVENT_BUS_BATCH_SIZE} field is '{@value}'
+         */
+        public static final int EVENT_BUS_BATCH_SIZE = 64;
+
         /**
          * The default value of the {@link FieldName#JAAS_POLICY_NAME} field is '{@value} '.
          */
@@ -560,6 +690,21 @@ public class RepositoryConfiguration {
         // by default journal entries are kept indefinitely
         public static final int MAX_DAYS_TO_KEEP_RECORDS = -1;
         public static final boolean ASYNC_WRITES_ENABLED = false;
+        public static final int MAX_RECORDS_PER_COMMIT = 1000;
+        // by default the journal commits as soon as there are no more pending records
+        public static final long MAX_COMMIT_DELAY_IN_MILLIS = 0L;
+        public static final String JOURNAL_FORMAT = "mapdb";
+        public static final int SEGMENT_SIZE_IN_MB = 16;
+
+        // by default the query buffers are not bounded
+        public static final long MAX_BUFFERED_ROWS = -1L;
+        public static final long MAX_BUFFERED_ROWS_PER_SESSION = -1L;
+        // by default all parts of a query are evaluated on the caller's thread
+        public static final int QUERY_PARALLELISM = 0;
+        public static final String QUERY_POOL = "modeshape-query";
+        // by default slow queries are not detected, and queries are only profiled when requested
+        public static final long SLOW_QUERY_THRESHOLD_IN_MILLIS = -1L;
+        public static final int SLOW_QUERY_PROFILING_INTERVAL = 0;
 
         public static final String KIND = IndexKind.VALUE.name();
         public static final String NODE_TYPE = "nt:base";
@@ -567,7 +712,15 @@ public class RepositoryConfiguration {
         public static final String WORKSPACES = "*";
 
         public static final int SEQUENCING_MAX_POOL_SIZE = 10;
+        public static final int SEQUENCING_MAX_QUEUE_SIZE = 10000;
+        public static final int SEQUENCING_MAX_RETRIES = 0;
+        public static final int SEQUENCING_OUTPUT_BATCH_SIZE = 1;
+        public static final long SEQUENCING_OUTPUT_BATCH_DELAY_IN_MILLIS = 1000L;
         public static final int TEXT_EXTRACTION_MAX_POOL_SIZE = 5;
+        public static final int TEXT_EXTRACTION_MAX_QUEUE_SIZE = 1000;
+        public static final int TEXT_EXTRACTION_MAX_CACHE_SIZE = 10000;
+        public static final int REINDEXING_CHECKPOINT_INTERVAL = 10000;
+        public static final int REINDEXING_MAX_NODES_PER_SECOND = 0;
     }
 
     public static final class FieldValue {
@@ -592,6 +745,9 @@ public class RepositoryConfiguration {
         
         public static final String LOCKING_JGROUPS  = "jgroups";
         public static final String LOCKING_DB  = "db";
+
+        public static final String EVENT_BUS_WAIT_STRATEGY_BLOCKING = "blocking";
+        public static final String EVENT_BUS_WAIT_STRATEGY_PHASED = "phased";
     }
 
     protected static final Set<List<String>> DEPRECATED_FIELDS = Collections.emptySet();
@@ -971,6 +1127,15 @@ public class RepositoryConfiguration {
         return new Journaling(doc.getDocument(FieldName.JOURNALING));
     }
 
+    /**
+     * Returns the query configuration
+     *
+     * @return a {@link Querying} instance, never {@code null}
+     */
+    public Querying getQuerying() {
+        return new Querying(doc.getDocument(FieldName.QUERY));
+    }
+
     /**
      * Returns the initial content configuration for this repository configuration
      *
@@ -1290,6 +1455,26 @@ public class RepositoryConfiguration {
         return doc.getInteger(FieldName.EVENT_BUS_SIZE, Default.EVENT_BUS_SIZE);
     }
 
+    /**
+     * Get the strategy used by the listeners of the event bus to wait for new events: either
+     * {@link FieldValue#EVENT_BUS_WAIT_STRATEGY_PHASED "phased"} (spin, then yield, then block) or
+     * {@link FieldValue#EVENT_BUS_WAIT_STRATEGY_BLOCKING "blocking"} (block right away).
+     *
+     * @return the name of the wait strategy; never null
+     */
+    public String getEventBusWaitStrategy() {
+        return doc.getString(FieldName.EVENT_BUS_WAIT_STRATEGY, Default.EVENT_BUS_WAIT_STRATEGY);
+    }
+
+    /**
+     * Get the maximum number of events passed to a listener of the event bus at once, when the listener has fallen behind.
+     *
+     * @return the maximum batch size; always positive
+     */
+    public int getEventBusBatchSize() {
+        return Math.max(1, doc.getInteger(FieldName.EVENT_BUS_BATCH_SIZE, Default.EVENT_BUS_BATCH_SIZE));
+    }
+
     /**
      * Get the name of the workspace that should be used for sessions where the client does not specify the name of the workspace.
      *
@@ -1806,6 +1991,39 @@ public class RepositoryConfiguration {
             String reindexingMode = reindexing == null ? defaultMode : reindexing.getString(FieldName.REINDEXING_MODE, defaultMode);
             return ReindexingMode.valueOf(reindexingMode.toUpperCase());
         }
+
+        /**
+         * Get the folder where the progress of full reindexing is recorded, so that reindexing interrupted by a restart resumes
+         * from where it stopped.
+         *
+         * @return the folder, or null if the progress is only kept in memory
+         */
+        public String getCheckpointLocation() {
+            return reindexing == null ? null : reindexing.getString(FieldName.REINDEXING_CHECKPOINT_LOCATION);
+        }
+
+        /**
+         * Get the number of nodes reindexed between two checkpoints, which is also how often the changes are committed to the
+         * indexes during a full reindexing.
+         *
+         * @return the number of nodes; always positive
+         */
+        public int getCheckpointInterval() {
+            if (reindexing == null) return Default.REINDEXING_CHECKPOINT_INTERVAL;
+            return Math.max(1, reindexing.getInteger(FieldName.REINDEXING_CHECKPOINT_INTERVAL, Default.REINDEXING_CHECKPOINT_INTERVAL));
+        }
+
+        /**
+         * Get the maximum number of nodes reindexed per second by a full reindexing, so that it does not compete too much with
+         * the other work of the repository.
+         *
+         * @return the maximum number of nodes per second, or 0 if reindexing is not throttled
+         */
+        public int getMaxNodesPerSecond() {
+            if (reindexing == null) return Default.REINDEXING_MAX_NODES_PER_SECOND;
+            return Math.max(0, reindexing.getInteger(FieldName.REINDEXING_MAX_NODES_PER_SECOND,
+                                                     Default.REINDEXING_MAX_NODES_PER_SECOND));
+        }
     }
 
     /**
@@ -1843,6 +2061,48 @@ public class RepositoryConfiguration {
             return textExtracting.getInteger(FieldName.MAX_POOL_SIZE, Default.TEXT_EXTRACTION_MAX_POOL_SIZE);
         }
 
+        /**
+         * Get the maximum number of binaries waiting for their text to be extracted. When the queue is full, the text is extracted
+         * in the thread that asks for it.
+         *
+         * @return the maximum queue size; always positive
+         */
+        public int getMaxQueueSize() {
+            return Math.max(1, textExtracting.getInteger(FieldName.MAX_QUEUE_SIZE, Default.TEXT_EXTRACTION_MAX_QUEUE_SIZE));
+        }
+
+        /**
+         * Get the maximum number of binaries with the same MIME type whose text can be extracted at the same time, so that slow
+         * formats do not take all of the threads.
+         *
+         * @return the maximum number of concurrent extractions per MIME type; always positive and never larger than
+         *         {@link #getMaxPoolSize()}
+         */
+        public int getMaxConcurrentPerMimeType() {
+            int maxPoolSize = Math.max(1, getMaxPoolSize());
+            int max = textExtracting.getInteger(FieldName.MAX_CONCURRENT_PER_MIME_TYPE, maxPoolSize);
+            return max > 0 ? Math.min(max, maxPoolSize) : maxPoolSize;
+        }
+
+        /**
+         * Get the folder where the text extracted from binaries that are not persisted in the binary store (because they are
+         * smaller than the minimum binary size) is cached, so that it survives a restart.
+         *
+         * @return the cache location, or null if the cache should only be kept in memory
+         */
+        public String getCacheLocation() {
+            return textExtracting.getString(FieldName.CACHE_LOCATION);
+        }
+
+        /**
+         * Get the maximum number of extracted texts that are cached for binaries that are not persisted in the binary store.
+         *
+         * @return the maximum cache size; 0 if these texts should not be cached
+         */
+        public int getMaxCacheSize() {
+            return Math.max(0, textExtracting.getInteger(FieldName.MAX_CACHE_SIZE, Default.TEXT_EXTRACTION_MAX_CACHE_SIZE));
+        }
+
 
         /**
          * Get the ordered list of text extractors. All text extractors are configured with this list.
@@ -2041,6 +2301,67 @@ public class RepositoryConfiguration {
             return sequencing.getInteger(FieldName.MAX_POOL_SIZE, Default.SEQUENCING_MAX_POOL_SIZE);
         }
 
+        /**
+         * Get the folder where the pending sequencing work should be recorded, so that it is resumed after a restart.
+         *
+         * @return the folder, or null if the pending work should only be kept in memory
+         */
+        public String getQueueLocation() {
+            return sequencing.getString(FieldName.QUEUE_LOCATION);
+        }
+
+        /**
+         * Get the maximum number of pending sequencing work items that are kept in memory. When the queue is full, additional work
+         * is only kept in the {@link #getQueueLocation() queue location} or, if there is none, is not sequenced.
+         *
+         * @return the maximum queue size; always positive
+         */
+        public int getMaxQueueSize() {
+            return Math.max(1, sequencing.getInteger(FieldName.MAX_QUEUE_SIZE, Default.SEQUENCING_MAX_QUEUE_SIZE));
+        }
+
+        /**
+         * Get the maximum number of work items that a single sequencer can process at the same time.
+         *
+         * @return the maximum number of concurrent items per sequencer; always positive and never larger than
+         *         {@link #getMaxPoolSize()}
+         */
+        public int getMaxConcurrentPerSequencer() {
+            int maxPoolSize = Math.max(1, getMaxPoolSize());
+            int max = sequencing.getInteger(FieldName.MAX_CONCURRENT_PER_SEQUENCER, maxPoolSize);
+            return max > 0 ? Math.min(max, maxPoolSize) : maxPoolSize;
+        }
+
+        /**
+         * Get the number of times a failed sequencing work item is run again.
+         *
+         * @return the number of retries; never negative
+         */
+        public int getMaxRetries() {
+            return Math.max(0, sequencing.getInteger(FieldName.MAX_RETRIES, Default.SEQUENCING_MAX_RETRIES));
+        }
+
+        /**
+         * Get the maximum number of work items targeting the same output workspace whose output is saved together in one
+         * session.
+         *
+         * @return the batch size; 1 if the output of each work item is saved separately
+         */
+        public int getOutputBatchSize() {
+            return Math.max(1, sequencing.getInteger(FieldName.OUTPUT_BATCH_SIZE, Default.SEQUENCING_OUTPUT_BATCH_SIZE));
+        }
+
+        /**
+         * Get the maximum number of milliseconds that the output of a batch of work items is kept in the session before it is
+         * saved, even if the batch is not complete.
+         *
+         * @return the maximum delay in milliseconds; never negative
+         */
+        public long getOutputBatchDelayInMillis() {
+            return Math.max(0L, sequencing.getLong(FieldName.OUTPUT_BATCH_DELAY_IN_MILLIS,
+                                                   Default.SEQUENCING_OUTPUT_BATCH_DELAY_IN_MILLIS));
+        }
+
         /**
          * Get the ordered list of sequencers. All sequencers are configured with this list.
          *
@@ -2353,6 +2674,47 @@ public class RepositoryConfiguration {
             return this.journalingDoc.getBoolean(FieldName.ASYNC_WRITES_ENABLED, Default.ASYNC_WRITES_ENABLED);
         }
 
+        /**
+         * The maximum number of records that are written to disk with a single commit. All the records that are added while the
+         * journal is committing are written together with the next commit, up to this number.
+         *
+         * @return the maximum number of records per commit; always positive
+         */
+        public int maxRecordsPerCommit() {
+            return Math.max(1, this.journalingDoc.getInteger(FieldName.MAX_RECORDS_PER_COMMIT, Default.MAX_RECORDS_PER_COMMIT));
+        }
+
+        /**
+         * The number of milliseconds that the journal waits for additional records before committing the records it already has.
+         * Larger values result in fewer commits when there are many concurrent saves, but increase the latency of each save.
+         *
+         * @return the delay in milliseconds; never negative
+         */
+        public long maxCommitDelayInMillis() {
+            return Math.max(0L, this.journalingDoc.getLong(FieldName.MAX_COMMIT_DELAY_IN_MILLIS,
+                                                           Default.MAX_COMMIT_DELAY_IN_MILLIS));
+        }
+
+        /**
+         * Whether the journal should store its records in fixed-size, memory-mapped segment files rather than in a single MapDB
+         * file.
+         *
+         * @return true if the "segmented" format is configured
+         */
+        public boolean isSegmented() {
+            return "segmented".equalsIgnoreCase(this.journalingDoc.getString(FieldName.JOURNAL_FORMAT, Default.JOURNAL_FORMAT));
+        }
+
+        /**
+         * The size of each file of a segmented journal.
+         *
+         * @return the size in bytes; always positive
+         */
+        public int segmentSize() {
+            int sizeInMB = this.journalingDoc.getInteger(FieldName.SEGMENT_SIZE_IN_MB, Default.SEGMENT_SIZE_IN_MB);
+            return (int)Math.min(Integer.MAX_VALUE, Math.max(1, sizeInMB) * 1024L * 1024L);
+        }
+
         /**
          * Get the name of the thread pool that should be used for garbage collection journal entries.
          *
@@ -2381,6 +2743,81 @@ public class RepositoryConfiguration {
         }
     }
 
+    /**
+     * The query-related configuration information.
+     */
+    @Immutable
+    public class Querying {
+
+        private final Document queryDoc;
+
+        protected Querying( Document queryDoc ) {
+            this.queryDoc = queryDoc != null ? queryDoc : EMPTY;
+        }
+
+        /**
+         * Get the maximum number of rows that all of the in-memory query buffers (used for sorting, joins, DISTINCT, etc.) in the
+         * repository may hold at the same time. Buffers that would exceed this limit are moved to temporary files.
+         *
+         * @return the maximum number of rows, or a negative number if there is no limit
+         */
+        public long getMaxBufferedRows() {
+            return queryDoc.getLong(FieldName.MAX_BUFFERED_ROWS, Default.MAX_BUFFERED_ROWS);
+        }
+
+        /**
+         * Get the maximum number of rows that the in-memory query buffers of a single session may hold at the same time. Buffers
+         * that would exceed this limit are moved to temporary files.
+         *
+         * @return the maximum number of rows, or a negative number if there is no limit
+         */
+        public long getMaxBufferedRowsPerSession() {
+            return queryDoc.getLong(FieldName.MAX_BUFFERED_ROWS_PER_SESSION, Default.MAX_BUFFERED_ROWS_PER_SESSION);
+        }
+
+        /**
+         * Get the maximum number of threads that the repository may use to evaluate the independent branches of queries (e.g., the
+         * operands of a UNION, INTERSECT or EXCEPT, or the two sides of a join) in parallel with each other.
+         *
+         * @return the maximum number of threads; 0 if all parts of a query are to be evaluated on the caller's thread
+         */
+        public int getParallelism() {
+            return Math.max(0, queryDoc.getInteger(FieldName.PARALLELISM, Default.QUERY_PARALLELISM));
+        }
+
+        /**
+         * Get the name of the thread pool used to evaluate query branches in parallel. Thread pools are named globally within a
+         * single ModeShape engine.
+         *
+         * @return the thread pool name; never null
+         */
+        public String getThreadPoolName() {
+            return queryDoc.getString(FieldName.THREAD_POOL, Default.QUERY_POOL);
+        }
+
+        /**
+         * Get the number of milliseconds that a query may take before it is considered slow and logged. The time taken by
+         * {@link #getSlowQueryProfilingInterval() profiled} queries includes the time spent reading their rows; for all other
+         * queries only the time spent executing them is known.
+         *
+         * @return the threshold in milliseconds, or a negative number if slow queries are not to be detected
+         */
+        public long getSlowQueryThresholdInMillis() {
+            return queryDoc.getLong(FieldName.SLOW_QUERY_THRESHOLD_IN_MILLIS, Default.SLOW_QUERY_THRESHOLD_IN_MILLIS);
+        }
+
+        /**
+         * Get the interval at which queries are profiled when {@link #getSlowQueryThresholdInMillis() slow queries} are detected.
+         * For example, a value of 100 means that one in every 100 queries is profiled. Profiling records the rows and time of
+         * every operator in the plan, which is logged when the query is slow.
+         *
+         * @return the interval, or 0 if queries are only profiled when explicitly requested
+         */
+        public int getSlowQueryProfilingInterval() {
+            return queryDoc.getInteger(FieldName.SLOW_QUERY_PROFILING_INTERVAL, Default.SLOW_QUERY_PROFILING_INTERVAL);
+        }
+    }
+
     protected List<Component> readComponents( Document doc,
                                               String fieldName,
                                               String aliasFieldName,
@@ -62,6 +62,7 @@ public final class RepositoryI18n {
     public static I18n unableToChangeExecutionContextWhileRunning;
     public static I18n unableToStartSequencingServiceWithoutExecutionContext;
     public static I18n errorWhileSequencingNode;
+    public static I18n errorWhileSequencingNodeWillRetry;
     public static I18n errorWhileSequencingNodeIntoWorkspace;
     public static I18n sequencersMayNotChangeThePrimaryTypeOfTheSelectedNode;
     public static I18n problemsWhileSequencingNode;
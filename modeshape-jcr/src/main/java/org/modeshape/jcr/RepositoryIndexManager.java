@@ -30,6 +30,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
@@ -394,6 +395,32 @@ class RepositoryIndexManager implements IndexManager, NodeTypes.Listener {
         return result;
     }
 
+    /**
+     * Wait until the asynchronously-updated indexes of the given workspace reflect all of the changes saved at or before the given
+     * time.
+     *
+     * @param workspaceName the name of the workspace; may not be null
+     * @param timestamp the time, in milliseconds since the epoch, of the latest change that should be reflected in the indexes
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout; may not be null
+     * @return true if the indexes reflect these changes, or false if the timeout elapsed before they did
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    protected boolean waitForIndexes( String workspaceName,
+                                      long timestamp,
+                                      long timeout,
+                                      TimeUnit unit ) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (IndexProvider provider : getProviders()) {
+            if (!provider.waitForIndexes(workspaceName, timestamp, deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                logger.debug("The indexes of provider '{0}' in workspace '{1}' did not catch up with the changes saved through {2} "
+                             + "within {3} {4}", provider.getName(), workspaceName, timestamp, timeout, unit);
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public Set<String> getProviderNames() {
         return Collections.unmodifiableSet(new HashSet<>(providers.keySet()));
@@ -15,8 +15,11 @@
  */
 package org.modeshape.jcr;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -70,6 +73,7 @@ import org.modeshape.jcr.spi.index.provider.IndexProvider;
 import org.modeshape.jcr.spi.index.provider.ManagedIndex;
 import org.modeshape.jcr.value.Path;
 import org.modeshape.jcr.value.Path.Segment;
+import org.modeshape.jcr.value.PathFactory;
 
 /**
  * The query manager a the repository. Each instance lazily starts up the {@link QueryEngine}, which can be expensive.
@@ -83,6 +87,7 @@ class RepositoryQueryManager implements ChangeSetListener {
     private final RepositoryConfiguration repoConfig;
     private final RepositoryConfiguration.Reindexing reindexingCfg;
     private final RepositoryIndexManager indexManager;
+    private final ReindexingCheckpoints checkpoints;
     private final Lock engineInitLock = new ReentrantLock();
     @GuardedBy( "engineInitLock" )
     private volatile QueryEngine queryEngine;
@@ -99,6 +104,11 @@ class RepositoryQueryManager implements ChangeSetListener {
         this.repoConfig = config;
         this.reindexingCfg = reindexingCfg;
         this.indexManager = new RepositoryIndexManager(runningState, config);
+        this.checkpoints = new ReindexingCheckpoints(runningState, reindexingCfg.getCheckpointInterval(),
+                                                     reindexingCfg.getMaxNodesPerSecond(), reindexingCfg.getCheckpointLocation());
+        if (config.getMonitoring().enabled()) {
+            this.checkpoints.registerMBean();
+        }
     }
 
     synchronized void initialize() {
@@ -142,6 +152,7 @@ class RepositoryQueryManager implements ChangeSetListener {
             }
         }
         indexManager.shutdown();
+        checkpoints.shutdown();
     }
 
     void stopReindexing() {
@@ -281,9 +292,11 @@ class RepositoryQueryManager implements ChangeSetListener {
                 } else {
                     if (!async) {
                         reindexIncrementally(journal);
+                        resumeInterruptedReindexing();
                     } else {
                         asyncReindexingResult = indexingExecutorService.submit(() -> {
                             reindexIncrementally(journal);
+                            resumeInterruptedReindexing();
                             return null;
                         }); 
                     }
@@ -342,7 +355,7 @@ class RepositoryQueryManager implements ChangeSetListener {
      */
     protected void reindexIfNeeded( boolean async, final boolean includeSystemContent ) {
         final ScanningRequest request = toBeScanned.drain();
-        if (!request.isEmpty()) {
+        if (!request.isEmpty() || !checkpoints.interrupted().isEmpty()) {
             final RepositoryCache repoCache = runningState.repositoryCache();
             scan(async, () -> {
                 // Scan each of the workspace-path pairs ...
@@ -375,8 +388,12 @@ class RepositoryQueryManager implements ChangeSetListener {
                             boolean scanSystemContent = includeSystemContent ||
                                                         repoCache.getSystemWorkspaceName().equals(workspaceName);
                             updateIndexesStatus(workspaceName, IndexManager.IndexStatus.ENABLED, IndexManager.IndexStatus.REINDEXING);
-                            if (reindexContent(workspaceName, workspaceCache, node, Integer.MAX_VALUE, scanSystemContent, 
-                                               writer)) {
+                            if (path.isRoot() && !repoCache.getSystemWorkspaceName().equals(workspaceName)) {
+                                // Reindex the whole workspace so that it resumes from a checkpoint if interrupted ...
+                                reindexWorkspace(workspaceName, workspaceCache, scanSystemContent, request.providerNames(),
+                                                 writer, true);
+                            } else if (reindexContent(workspaceName, workspaceCache, node, Integer.MAX_VALUE, scanSystemContent,
+                                                      writer)) {
                                 commitChanges(workspaceName);
                             }
                             updateIndexesStatus(workspaceName, IndexManager.IndexStatus.REINDEXING, IndexManager.IndexStatus.ENABLED);
@@ -384,6 +401,7 @@ class RepositoryQueryManager implements ChangeSetListener {
                     }
                 };
                 request.onEachPathInWorkspace(op);
+                resumeInterruptedReindexing();
                 return null;
             });
         }
@@ -473,11 +491,8 @@ class RepositoryQueryManager implements ChangeSetListener {
             // change the status of the indexes to reindexing
             updateIndexesStatus(workspaceName, IndexManager.IndexStatus.ENABLED, IndexManager.IndexStatus.REINDEXING);
             NodeCache workspaceCache = repoCache.getWorkspaceCache(workspaceName);
-            CachedNode rootNode = workspaceCache.getNode(workspaceCache.getRootKey());
             logger.debug("Starting reindex of workspace '{0}' content in '{1}' repository.", runningState.name(), workspaceName);
-            if (reindexContent(workspaceName, workspaceCache, rootNode, Integer.MAX_VALUE, false, indexes)) {
-                commitChanges(workspaceName);
-            }
+            reindexWorkspace(workspaceName, workspaceCache, false, indexManager.getProviderNames(), indexes, false);
             logger.debug("Completed reindex of workspace '{0}' content in '{1}' repository.", runningState.name(), workspaceName);
             updateIndexesStatus(workspaceName, IndexManager.IndexStatus.REINDEXING, IndexManager.IndexStatus.ENABLED);
         }
@@ -532,7 +547,9 @@ class RepositoryQueryManager implements ChangeSetListener {
             }
         } else {
             // It's just a regular node in the workspace ...
-            if (reindexContent(workspaceName, cache, node, depth, path.isRoot(), getIndexWriter())) {
+            if (path.isRoot() && depth == Integer.MAX_VALUE) {
+                reindexWorkspace(workspaceName, cache, true, indexManager.getProviderNames(), getIndexWriter(), false);
+            } else if (reindexContent(workspaceName, cache, node, depth, path.isRoot(), getIndexWriter())) {
                 commitChanges(workspaceName);
             }
         }
@@ -704,6 +721,215 @@ class RepositoryQueryManager implements ChangeSetListener {
         return indexesUpdated;
     }
     
+    /**
+     * Crawl and index all of the content of a workspace in depth-first order, committing the changes to the indexes and recording
+     * a checkpoint every so often. A crawl that is interrupted (by a restart, a failure or a shutdown) resumes from its latest
+     * checkpoint rather than starting over.
+     *
+     * @param workspaceName the name of the workspace; may not be null
+     * @param cache the cache of the workspace; may not be null
+     * @param reindexSystemContent true if the system content should also be indexed
+     * @param providerNames the names of the providers whose indexes are updated by the writer; may not be null
+     * @param indexes the index writer that should be used; may not be null
+     * @param resume true if the crawl should resume from the latest checkpoint of a previous crawl, or false if it should start
+     *        over
+     * @return true if all of the content has been indexed, or false if the crawl was interrupted
+     */
+    protected boolean reindexWorkspace( String workspaceName,
+                                        NodeCache cache,
+                                        boolean reindexSystemContent,
+                                        Set<String> providerNames,
+                                        IndexWriter indexes,
+                                        boolean resume ) {
+        if (indexes.canBeSkipped()) {
+            return true;
+        }
+        ReindexingCheckpoints.Run run = checkpoints.start(workspaceName, providerNames, indexDefinitionsOf(providerNames), resume);
+        if (run == null) {
+            // The same crawl is already running, perhaps for other index definitions, so crawl without any checkpoint ...
+            CachedNode root = cache.getNode(cache.getRootKey());
+            if (reindexContent(workspaceName, cache, root, Integer.MAX_VALUE, reindexSystemContent, indexes)) {
+                commitChanges(workspaceName);
+            }
+            return true;
+        }
+        boolean completed = false;
+        try {
+            PathFactory pathFactory = runningState.context().getValueFactories().getPathFactory();
+            String systemWorkspaceKey = runningState.systemWorkspaceKey();
+            CachedNode root = cache.getNode(cache.getRootKey());
+            boolean commitRequired = reindexContent(workspaceName, cache, root, 1, false, indexes);
+            Deque<ReindexingFrame> frames = new ArrayDeque<>();
+            frames.push(new ReindexingFrame(root, Path.ROOT_PATH, cache));
+
+            // Skip the subgraphs that were indexed before the latest checkpoint ...
+            for (String key : run.resumeFrom()) {
+                ReindexingFrame frame = frames.peek();
+                ChildReference ref = frame.skipTo(key);
+                if (ref == null) {
+                    // The node no longer exists, so index all of the children of its parent again ...
+                    frame.restart();
+                    break;
+                }
+                CachedNode node = cache.getNode(ref);
+                if (node == null) break;
+                frames.push(new ReindexingFrame(node, pathFactory.create(frame.path, ref.getSegment()), cache));
+            }
+
+            while (!frames.isEmpty()) {
+                ReindexingFrame frame = frames.peek();
+                ChildReference ref = frame.next();
+                if (ref == null) {
+                    // All of the children of this node have been indexed ...
+                    frames.pop();
+                    continue;
+                }
+                NodeKey key = ref.getKey();
+                if (frames.size() == 1 && key.getWorkspaceKey().equals(systemWorkspaceKey)) {
+                    // This is the "/jcr:system" node, which is indexed as part of the system workspace ...
+                    CachedNode systemNode = cache.getNode(key);
+                    if (reindexSystemContent && systemNode != null) {
+                        commitRequired |= reindexSystemContent(systemNode, Integer.MAX_VALUE, indexes);
+                    }
+                    continue;
+                }
+                CachedNode node = cache.getNode(key);
+                if (node == null || node.isExcludedFromSearch(cache)) {
+                    continue;
+                }
+                Path nodePath = pathFactory.create(frame.path, ref.getSegment());
+                if (indexLogger.isTraceEnabled()) {
+                    String path = runningState.context().getValueFactories().getStringFactory().create(nodePath);
+                    indexLogger.debug("Reindexing node '{0}' in workspace '{1}' of repository '{2}': {3}", path, workspaceName,
+                                      runningState.name(), node);
+                }
+                commitRequired |= indexes.add(workspaceName, key, nodePath, node.getPrimaryType(cache), node.getMixinTypes(cache),
+                                              node.getPropertiesByName(cache));
+                frames.push(new ReindexingFrame(node, nodePath, cache));
+                if (run.reindexed(fractionComplete(frames))) {
+                    if (commitRequired) {
+                        commitChanges(workspaceName);
+                        commitRequired = false;
+                    }
+                    run.checkpoint(positionOf(frames));
+                }
+            }
+            if (commitRequired) {
+                commitChanges(workspaceName);
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.debug("Reindexing of workspace '{0}' in repository '{1}' was interrupted", workspaceName, runningState.name());
+        } finally {
+            run.finish(completed);
+        }
+        return completed;
+    }
+
+    /**
+     * Resume each reindexing of a workspace that was interrupted before it completed, for instance by a restart.
+     */
+    protected void resumeInterruptedReindexing() {
+        RepositoryCache repoCache = runningState.repositoryCache();
+        for (Map.Entry<String, Set<String>> interrupted : checkpoints.interrupted()) {
+            String workspaceName = interrupted.getKey();
+            Set<String> providerNames = interrupted.getValue();
+            NodeCache workspaceCache = repoCache.getWorkspaceCache(workspaceName);
+            IndexWriter writer = indexManager.getIndexWriterForProviders(providerNames);
+            if (workspaceCache == null || writer.canBeSkipped()) {
+                // The workspace or the indexes no longer exist ...
+                checkpoints.discard(workspaceName, providerNames);
+                continue;
+            }
+            updateIndexesStatus(workspaceName, IndexManager.IndexStatus.ENABLED, IndexManager.IndexStatus.REINDEXING);
+            try {
+                reindexWorkspace(workspaceName, workspaceCache, false, providerNames, writer, true);
+            } finally {
+                updateIndexesStatus(workspaceName, IndexManager.IndexStatus.REINDEXING, IndexManager.IndexStatus.ENABLED);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+    }
+
+    private String indexDefinitionsOf( Set<String> providerNames ) {
+        // A checkpoint only applies to the very same index definitions ...
+        List<String> defns = new ArrayList<>();
+        for (IndexDefinition defn : indexManager.getIndexDefinitions().values()) {
+            if (providerNames.contains(defn.getProviderName())) {
+                defns.add(defn.toString());
+            }
+        }
+        Collections.sort(defns);
+        return String.join("\n", defns);
+    }
+
+    private static double fractionComplete( Deque<ReindexingFrame> frames ) {
+        // Estimate the fraction from the position among the children of each node on the path to the current node ...
+        double fraction = 0.0d;
+        double scale = 1.0d;
+        for (Iterator<ReindexingFrame> iter = frames.descendingIterator(); iter.hasNext();) {
+            ReindexingFrame frame = iter.next();
+            if (frame.size <= 0L) break;
+            fraction += scale * Math.max(0L, frame.index - 1L) / frame.size;
+            scale /= frame.size;
+        }
+        return Math.min(1.0d, fraction);
+    }
+
+    private static List<String> positionOf( Deque<ReindexingFrame> frames ) {
+        List<String> keys = new ArrayList<>(frames.size());
+        Iterator<ReindexingFrame> iter = frames.descendingIterator();
+        iter.next(); // skip the root
+        while (iter.hasNext()) {
+            keys.add(iter.next().node.getKey().toString());
+        }
+        return keys;
+    }
+
+    /**
+     * A node whose children are being indexed by {@link RepositoryQueryManager#reindexWorkspace}.
+     */
+    private static final class ReindexingFrame {
+        protected final CachedNode node;
+        protected final Path path;
+        protected final long size;
+        private final ChildReferences children;
+        private Iterator<ChildReference> iterator;
+        protected long index;
+
+        protected ReindexingFrame( CachedNode node,
+                                   Path path,
+                                   NodeCache cache ) {
+            this.node = node;
+            this.path = path;
+            this.children = node.getChildReferences(cache);
+            this.size = children.size();
+            this.iterator = children.iterator();
+        }
+
+        protected ChildReference next() {
+            if (!iterator.hasNext()) return null;
+            ++index;
+            return iterator.next();
+        }
+
+        protected ChildReference skipTo( String key ) {
+            ChildReference ref = null;
+            while ((ref = next()) != null) {
+                if (ref.getKey().toString().equals(key)) return ref;
+            }
+            return null;
+        }
+
+        protected void restart() {
+            iterator = children.iterator();
+            index = 0L;
+        }
+    }
+
     protected void updateIndexesStatus( String workspaceName, final IndexManager.IndexStatus currentStatus, final IndexManager.IndexStatus newStatus ) {
         for (IndexProvider indexProvider : indexManager.getProviders()) {
             indexProvider.onEachIndexInWorkspace(workspaceName, new IndexProvider.ManagedIndexOperation() {
@@ -24,13 +24,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import javax.jcr.NamespaceRegistry;
@@ -43,7 +43,6 @@ import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.HashCode;
 import org.modeshape.common.util.Reflection;
 import org.modeshape.jcr.RepositoryConfiguration.Component;
-import org.modeshape.jcr.api.monitor.ValueMetric;
 import org.modeshape.jcr.api.sequencer.Sequencer;
 import org.modeshape.jcr.api.value.DateTime;
 import org.modeshape.jcr.cache.NodeKey;
@@ -57,6 +56,7 @@ import org.modeshape.jcr.cache.change.WorkspaceRemoved;
 import org.modeshape.jcr.sequencer.InvalidSequencerPathExpression;
 import org.modeshape.jcr.sequencer.SequencerPathExpression;
 import org.modeshape.jcr.sequencer.SequencerPathExpression.Matcher;
+import org.modeshape.jcr.sequencer.SequencerPathExpressionIndex;
 import org.modeshape.jcr.value.Name;
 import org.modeshape.jcr.value.Path;
 import org.modeshape.jcr.value.ValueFactory;
@@ -84,7 +84,7 @@ public class Sequencers implements ChangeSetListener {
     private final Collection<Component> components;
     private final Lock configChangeLock = new ReentrantLock();
     private final Map<UUID, Collection<SequencerPathExpression>> pathExpressionsBySequencerId;
-    private volatile Map<String, Collection<SequencingConfiguration>> configByWorkspaceName;
+    private volatile Map<String, SequencerPathExpressionIndex<SequencingConfiguration>> configByWorkspaceName;
     private final String systemWorkspaceKey;
     private final String processId;
     private final ValueFactory<String> stringFactory;
@@ -114,7 +114,13 @@ public class Sequencers implements ChangeSetListener {
             int maxThreadCount = sequencing.getMaxPoolSize();
             String threadPoolName = sequencing.getThreadPoolName();
             this.sequencingExecutor = repository.context().getCachedTreadPool(threadPoolName, maxThreadCount);
-            this.workQueue = new SequencingWorkQueue();
+            // the changes to the queue's store are committed by the repository's background thread pool ...
+            String backgroundPoolName = config.getGarbageCollection().getThreadPoolName();
+            ScheduledExecutorService committer = repository.context().getScheduledThreadPool(backgroundPoolName);
+            this.workQueue = new SequencingWorkQueue(repository, sequencingExecutor, committer, Math.max(1, maxThreadCount),
+                                                     sequencing.getMaxConcurrentPerSequencer(), sequencing.getMaxQueueSize(),
+                                                     sequencing.getMaxRetries(), sequencing.getOutputBatchSize(),
+                                                     sequencing.getOutputBatchDelayInMillis(), sequencing.getQueueLocation());
             this.processId = repository.context().getProcessId();
             ExecutionContext context = this.repository.context();
             this.stringFactory = context.getValueFactories().getStringFactory();
@@ -275,14 +281,16 @@ public class Sequencers implements ChangeSetListener {
             // No sequencers for the system workspace!
             return;
         }
-        Collection<SequencingConfiguration> configs = new LinkedList<SequencingConfiguration>();
+        // Compile the path expressions of all the sequencers that apply to this workspace, so they're matched at once ...
+        org.modeshape.jcr.value.NamespaceRegistry namespaces = repository.context().getNamespaceRegistry();
+        SequencerPathExpressionIndex<SequencingConfiguration> configs = new SequencerPathExpressionIndex<>(namespaces);
         // Go through the sequencers to see which apply to this workspace ...
         for (Sequencer sequencer : sequencersById.values()) {
             boolean updated = false;
             for (SequencerPathExpression expression : pathExpressionsBySequencerId.get(sequencer.getUniqueId())) {
                 if (expression.appliesToWorkspace(workspaceName)) {
                     updated = true;
-                    configs.add(new SequencingConfiguration(expression, sequencer));
+                    configs.add(expression, new SequencingConfiguration(expression, sequencer));
                 }
             }
             if (DEBUG && updated) {
@@ -295,8 +303,8 @@ public class Sequencers implements ChangeSetListener {
         try {
             configChangeLock.lock();
             // Make a copy of the existing map ...
-            Map<String, Collection<SequencingConfiguration>> configByWorkspaceName = new HashMap<String, Collection<SequencingConfiguration>>(
-                                                                                                                                              this.configByWorkspaceName);
+            Map<String, SequencerPathExpressionIndex<SequencingConfiguration>> configByWorkspaceName = new HashMap<>(
+                                                                                                                     this.configByWorkspaceName);
             // Insert the new information ...
             configByWorkspaceName.put(workspaceName, configs);
             // Replace the exisiting map (which is used without a lock) ...
@@ -316,8 +324,8 @@ public class Sequencers implements ChangeSetListener {
         try {
             configChangeLock.lock();
             // Make a copy of the existing map ...
-            Map<String, Collection<SequencingConfiguration>> configByWorkspaceName = new HashMap<String, Collection<SequencingConfiguration>>(
-                                                                                                                                              this.configByWorkspaceName);
+            Map<String, SequencerPathExpressionIndex<SequencingConfiguration>> configByWorkspaceName = new HashMap<>(
+                                                                                                                     this.configByWorkspaceName);
             // Insert the new information ...
             if (configByWorkspaceName.remove(workspaceName) != null) {
                 // Replace the exisiting map (which is used without a lock) ...
@@ -344,23 +352,29 @@ public class Sequencers implements ChangeSetListener {
         }
     }
 
+    /**
+     * Start running the sequencing work that was still pending when the repository was last shut down. This is called once the
+     * repository is running.
+     */
+    protected final void resumePendingWork() {
+        if (workQueue != null && acceptsWork) {
+            workQueue.resume();
+        }
+    }
+
     protected final RepositoryStatistics statistics() {
         return repository.statistics();
     }
 
-    protected void submitWork( SequencingConfiguration sequencingConfig,
-                               Matcher matcher,
-                               String inputWorkspaceName,
-                               String propertyName,
-                               String userId ) {
-        if (!acceptsWork) return;
+    protected SequencingWorkItem createWork( SequencingConfiguration sequencingConfig,
+                                             Matcher matcher,
+                                             String inputWorkspaceName,
+                                             String propertyName,
+                                             String userId ) {
         // Convert the input path (which has a '@' to denote a property) to a standard JCR path ...
-        SequencingWorkItem workItem = new SequencingWorkItem(sequencingConfig.getSequencer().getUniqueId(), userId,
-                                                             inputWorkspaceName, matcher.getSelectedPath(),
-                                                             matcher.getJcrInputPath(), matcher.getOutputPath(),
-                                                             matcher.getOutputWorkspaceName(), propertyName);
-        statistics().increment(ValueMetric.SEQUENCER_QUEUE_SIZE);
-        workQueue.submit(workItem);
+        return new SequencingWorkItem(sequencingConfig.getSequencer().getUniqueId(), userId, inputWorkspaceName,
+                                      matcher.getSelectedPath(), matcher.getJcrInputPath(), matcher.getOutputPath(),
+                                      matcher.getOutputWorkspaceName(), propertyName);
     }
 
     protected Sequencer getSequencer( UUID id ) {
@@ -435,12 +449,14 @@ public class Sequencers implements ChangeSetListener {
         }
 
         final String workspaceName = changeSet.getWorkspaceName();
-        final Collection<SequencingConfiguration> configs = this.configByWorkspaceName.get(workspaceName);
+        final SequencerPathExpressionIndex<SequencingConfiguration> configs = this.configByWorkspaceName.get(workspaceName);
         if (configs == null) {
             // No sequencers apply to this workspace ...
             return;
         }
 
+        // Collect the work for all of the changes, so that it is submitted (and recorded) at once ...
+        final List<SequencingWorkItem> work = new ArrayList<>();
         try {
             // Now process the changes ...
             for (Change change : changeSet) {
@@ -448,10 +464,11 @@ public class Sequencers implements ChangeSetListener {
                 if (change instanceof PropertyAdded) {
                     PropertyAdded added = (PropertyAdded)change;
                     Path nodePath = added.getPathToNode();
-                    String strPath = stringFactory.create(nodePath);
                     Name propName = added.getProperty().getName();
-                    // Check if the property is sequencable ...
-                    for (SequencingConfiguration config : configs) {
+                    String strPath = null;
+                    // Check if the property is sequencable, using only the configurations whose expressions may match ...
+                    for (SequencingConfiguration config : configs.candidates(nodePath, propName)) {
+                        if (strPath == null) strPath = stringFactory.create(nodePath);
                         Matcher matcher = config.matches(strPath, propName);
                         if (!matcher.matches()) {
                             if (TRACE) {
@@ -467,15 +484,17 @@ public class Sequencers implements ChangeSetListener {
                                          config.getPathExpression());
                         }
                         // The property should be sequenced ...
-                        submitWork(config, matcher, workspaceName, stringFactory.create(propName), changeSet.getUserId());
+                        work.add(createWork(config, matcher, workspaceName, stringFactory.create(propName),
+                                            changeSet.getUserId()));
                     }
                 } else if (change instanceof PropertyChanged) {
                     PropertyChanged changed = (PropertyChanged)change;
                     Path nodePath = changed.getPathToNode();
-                    String strPath = stringFactory.create(nodePath);
                     Name propName = changed.getNewProperty().getName();
-                    // Check if the property is sequencable ...
-                    for (SequencingConfiguration config : configs) {
+                    String strPath = null;
+                    // Check if the property is sequencable, using only the configurations whose expressions may match ...
+                    for (SequencingConfiguration config : configs.candidates(nodePath, propName)) {
+                        if (strPath == null) strPath = stringFactory.create(nodePath);
                         Matcher matcher = config.matches(strPath, propName);
                         if (!matcher.matches()) {
                             if (TRACE) {
@@ -491,7 +510,8 @@ public class Sequencers implements ChangeSetListener {
                                          config.getPathExpression());
                         }
                         // The property should be sequenced ...
-                        submitWork(config, matcher, workspaceName, stringFactory.create(propName), changeSet.getUserId());
+                        work.add(createWork(config, matcher, workspaceName, stringFactory.create(propName),
+                                            changeSet.getUserId()));
                     }
                 }
                 // It's possible we should also be looking at other types of events (like property removed or
@@ -506,32 +526,28 @@ public class Sequencers implements ChangeSetListener {
                     workspaceRemoved(removed.getWorkspaceName());
                 }
             }
+            if (acceptsWork && !work.isEmpty()) {
+                workQueue.submit(work);
+            }
         } catch (Throwable e) {
             LOGGER.error(e, JcrI18n.errorCleaningUpLocks, repository.name());
         }
     }
 
     protected static interface WorkQueue {
-        void submit( SequencingWorkItem work );
-
-        void shutdown();
-    }
-
-    protected final class SequencingWorkQueue implements WorkQueue {
-        private final List<Future<?>> results = new ArrayList<Future<?>>();
+        /**
+         * Submit the work items, which are run asynchronously. This may block if there is too much pending work.
+         *
+         * @param work the work items; may not be null
+         */
+        void submit( Collection<SequencingWorkItem> work );
 
-        @Override
-        public void submit( SequencingWorkItem work ) {
-            results.add(sequencingExecutor.submit(new SequencingRunner(repository, work)));
-        }
+        /**
+         * Start running any work that was pending when the repository was last shut down.
+         */
+        void resume();
 
-        @Override
-        public void shutdown() {
-            for (Future<?> workItem : results) {
-                workItem.cancel(true);
-            }
-            results.clear();
-        }
+        void shutdown();
     }
 
     /**
@@ -702,8 +718,9 @@ public class Sequencers implements ChangeSetListener {
                 if (!this.sequencerId.equals(that.sequencerId)) return false;
                 if (!this.inputWorkspaceName.equals(that.inputWorkspaceName)) return false;
                 if (!this.inputPath.equals(that.inputPath)) return false;
-                if (!this.outputPath.equals(that.outputWorkspaceName)) return false;
-                if (!this.outputWorkspaceName.equals(that.outputWorkspaceName)) return false;
+                if (!this.changedPropertyName.equals(that.changedPropertyName)) return false;
+                if (!this.outputPath.equals(that.outputPath)) return false;
+                if (!Objects.equals(this.outputWorkspaceName, that.outputWorkspaceName)) return false;
                 return true;
             }
             return false;
@@ -0,0 +1,158 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.jcr.RepositoryException;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.jcr.JcrRepository.RunningState;
+import org.modeshape.jcr.Sequencers.SequencingWorkItem;
+import org.modeshape.jcr.api.monitor.ValueMetric;
+
+/**
+ * Runs several sequencing work items with the same input and output workspaces using a single output session, which is saved
+ * after a number of items have been sequenced or after some time has elapsed (whichever comes first).
+ * <p>
+ * A failure of one item does not affect the other items of the batch: when a sequencer fails, the unsaved changes of the session
+ * are discarded and the other items whose output was discarded are sequenced again; when the save of several items fails, each
+ * of these items is sequenced and saved separately. Each item that fails gets its own sequencing failure event.
+ * </p>
+ */
+final class SequencingBatchRunner implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger("org.modeshape.jcr.sequencing.runner");
+
+    private final RunningState repository;
+    private final List<SequencingRunner> runners;
+    private final int batchSize;
+    private final long maxDelayInNanos;
+
+    /**
+     * @param repository the running repository; may not be null
+     * @param runners the runners of the work items, which must all have the same input and output workspaces; may not be empty
+     * @param batchSize the maximum number of items whose output is saved at once; must be positive
+     * @param maxDelayInMillis the maximum number of milliseconds the output is kept before being saved
+     */
+    protected SequencingBatchRunner( RunningState repository,
+                                     List<SequencingRunner> runners,
+                                     int batchSize,
+                                     long maxDelayInMillis ) {
+        assert !runners.isEmpty();
+        this.repository = repository;
+        this.runners = runners;
+        this.batchSize = batchSize;
+        this.maxDelayInNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayInMillis);
+    }
+
+    @Override
+    public void run() {
+        SequencingWorkItem work = runners.get(0).work();
+        JcrSession inputSession = null;
+        JcrSession outputSession = null;
+        Deque<SequencingRunner> remaining = new ArrayDeque<>(runners);
+        try {
+            // Create the required session(s), which are shared by all of the items ...
+            inputSession = repository.loginInternalSession(work.getInputWorkspaceName());
+            if (work.getOutputWorkspaceName() != null && !work.getOutputWorkspaceName().equals(work.getInputWorkspaceName())) {
+                outputSession = repository.loginInternalSession(work.getOutputWorkspaceName());
+            } else {
+                outputSession = inputSession;
+            }
+
+            List<SequencingRunner.Output> unsaved = new ArrayList<>();
+            long firstUnsaved = 0L;
+            while (!remaining.isEmpty()) {
+                if (!repository.sequencers().acceptsWork()) {
+                    throw new InterruptedException();
+                }
+                SequencingRunner runner = remaining.pollFirst();
+                try {
+                    SequencingRunner.Output output = runner.sequence(inputSession, outputSession);
+                    if (output != null) {
+                        if (unsaved.isEmpty()) firstUnsaved = System.nanoTime();
+                        unsaved.add(output);
+                    }
+                } catch (Throwable t) {
+                    // Discard the partial output of this item, which also discards the output of the preceding unsaved items;
+                    // these are sequenced again ...
+                    outputSession.refresh(false);
+                    runner.handleFailure(t);
+                    for (int i = unsaved.size() - 1; i >= 0; --i) {
+                        remaining.addFirst(unsaved.get(i).runner);
+                    }
+                    unsaved.clear();
+                    continue;
+                }
+                if (!unsaved.isEmpty()
+                    && (unsaved.size() >= batchSize || Math.abs(System.nanoTime() - firstUnsaved) >= maxDelayInNanos)) {
+                    save(unsaved, inputSession, outputSession);
+                    unsaved.clear();
+                }
+            }
+            if (!unsaved.isEmpty()) {
+                save(unsaved, inputSession, outputSession);
+            }
+        } catch (Throwable t) {
+            // The sessions could not be created or the repository is being shut down ...
+            for (SequencingRunner runner : remaining) {
+                runner.handleFailure(t);
+            }
+        } finally {
+            repository.statistics().increment(ValueMetric.SEQUENCED_COUNT, runners.size());
+            if (inputSession != null && inputSession.isLive()) inputSession.logout();
+            if (outputSession != null && outputSession != inputSession && outputSession.isLive()) outputSession.logout();
+        }
+    }
+
+    private void save( List<SequencingRunner.Output> unsaved,
+                       JcrSession inputSession,
+                       JcrSession outputSession ) throws RepositoryException {
+        try {
+            LOGGER.trace("Saving the output of {0} sequencing work items in repository '{1}'", unsaved.size(), repository.name());
+            outputSession.save();
+        } catch (Throwable t) {
+            outputSession.refresh(false);
+            if (unsaved.size() == 1) {
+                unsaved.get(0).runner.handleFailure(t);
+                return;
+            }
+            // Find out which of the items can't be saved by sequencing and saving each of them separately ...
+            LOGGER.debug("Unable to save the output of {0} sequencing work items together; saving them separately: {1}",
+                         unsaved.size(), t.getMessage());
+            for (SequencingRunner.Output output : unsaved) {
+                SequencingRunner runner = output.runner;
+                try {
+                    SequencingRunner.Output retried = runner.sequence(inputSession, outputSession);
+                    if (retried != null) {
+                        outputSession.save();
+                        runner.saved(retried);
+                    }
+                } catch (Throwable e) {
+                    outputSession.refresh(false);
+                    runner.handleFailure(e);
+                }
+            }
+            return;
+        }
+        for (SequencingRunner.Output output : unsaved) {
+            output.runner.saved(output);
+        }
+    }
+}
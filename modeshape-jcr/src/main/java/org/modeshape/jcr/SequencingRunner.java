@@ -59,20 +59,62 @@ final class SequencingRunner implements Runnable {
 
     private final RunningState repository;
     private final SequencingWorkItem work;
+    private final boolean finalAttempt;
+    private volatile boolean failed;
+    private String sequencerName;
+    private JcrSession inputSession;
+    private AbstractJcrNode sequencedNode;
 
     protected SequencingRunner( RunningState repository,
                                 SequencingWorkItem work ) {
+        this(repository, work, true);
+    }
+
+    /**
+     * @param repository the running repository; may not be null
+     * @param work the work to be done; may not be null
+     * @param finalAttempt true if the work will not be run again should it fail, or false if a failure should only be logged
+     *        as a warning and should not fire a sequencing failure event
+     */
+    protected SequencingRunner( RunningState repository,
+                                SequencingWorkItem work,
+                                boolean finalAttempt ) {
         this.repository = repository;
         this.work = work;
+        this.finalAttempt = finalAttempt;
+    }
+
+    /**
+     * Determine whether the sequencing failed, in which case it may be tried again.
+     *
+     * @return true if the sequencing failed for any reason other than the repository being shut down
+     */
+    protected boolean failed() {
+        return failed;
+    }
+
+    /**
+     * Determine whether a failure of this work is final, or whether the work will be run again.
+     *
+     * @return true if the work will not be run again should it fail
+     */
+    protected boolean isFinalAttempt() {
+        return finalAttempt;
+    }
+
+    /**
+     * Get the work that is done by this runner.
+     *
+     * @return the work; never null
+     */
+    protected SequencingWorkItem work() {
+        return work;
     }
 
     @Override
     public void run() {
         JcrSession inputSession = null;
         JcrSession outputSession = null;
-        final RepositoryStatistics stats = repository.statistics();
-        Sequencer sequencer = null;
-        String sequencerName = null;
         try {
             // Create the required session(s) ...
             inputSession = repository.loginInternalSession(work.getInputWorkspaceName());
@@ -82,172 +124,220 @@ final class SequencingRunner implements Runnable {
                 outputSession = inputSession;
             }
 
-            // Get the sequencer ...
-            sequencer = repository.sequencers().getSequencer(work.getSequencerId());
-            if (sequencer == null) {
-                if (DEBUG) {
-                    LOGGER.debug("Unable to find sequencer with ID '{0}' in repository '{1}'; skipping input '{3}:{2}' and output '{5}:{4}'",
-                                 work.getSequencerId(), repository.name(), work.getInputPath(), work.getInputWorkspaceName(),
-                                 work.getOutputPath(), work.getOutputWorkspaceName());
-                }
-                return;
+            Output output = sequence(inputSession, outputSession);
+            if (output != null) {
+                LOGGER.trace("Saving session used by {0}", output.logMsg);
+                outputSession.save();
+                saved(output);
             }
-            sequencerName = sequencer.getName();
-
-            String logMsg = null;
-            if (TRACE || DEBUG) {
-                logMsg = StringUtil.createString("sequencer '{0}' in repository '{1}' with input '{3}:{2}' to produce '{5}:{4}'",
-                                                 sequencerName,
-                                                 repository.name(),
-                                                 work.getInputPath(),
-                                                 work.getInputWorkspaceName(),
-                                                 work.getOutputPath(),
-                                                 work.getOutputWorkspaceName() != null ? work.getOutputWorkspaceName() : work.getInputWorkspaceName());
-                LOGGER.debug("Running {0}", logMsg);
+        } catch (Throwable t) {
+            handleFailure(t);
+        } finally {
+            repository.statistics().increment(ValueMetric.SEQUENCED_COUNT);
+            if (inputSession != null && inputSession.isLive()) inputSession.logout();
+            if (outputSession != null && outputSession != inputSession && outputSession.isLive()) outputSession.logout();
+        }
+    }
+
+    /**
+     * Run the sequencer and write its output into the supplied output session, without saving it. This can be called again
+     * after the output session has been refreshed (e.g., if saving the output failed).
+     *
+     * @param inputSession the session used to read the input; may not be null
+     * @param outputSession the session into which the output should be written; may be the same as the input session
+     * @return the output that has yet to be saved, or null if there is nothing to save (e.g., the sequencer could not be found
+     *         or did not accept the input)
+     * @throws Exception if there is a problem while sequencing
+     */
+    protected Output sequence( JcrSession inputSession,
+                               JcrSession outputSession ) throws Exception {
+        this.sequencedNode = null;
+        this.inputSession = inputSession;
+
+        // Get the sequencer ...
+        Sequencer sequencer = repository.sequencers().getSequencer(work.getSequencerId());
+        if (sequencer == null) {
+            if (DEBUG) {
+                LOGGER.debug("Unable to find sequencer with ID '{0}' in repository '{1}'; skipping input '{3}:{2}' and output '{5}:{4}'",
+                             work.getSequencerId(), repository.name(), work.getInputPath(), work.getInputWorkspaceName(),
+                             work.getOutputPath(), work.getOutputWorkspaceName());
             }
+            return null;
+        }
+        sequencerName = sequencer.getName();
+
+        String logMsg = null;
+        if (TRACE || DEBUG) {
+            logMsg = StringUtil.createString("sequencer '{0}' in repository '{1}' with input '{3}:{2}' to produce '{5}:{4}'",
+                                             sequencerName,
+                                             repository.name(),
+                                             work.getInputPath(),
+                                             work.getInputWorkspaceName(),
+                                             work.getOutputPath(),
+                                             work.getOutputWorkspaceName() != null ? work.getOutputWorkspaceName() : work.getInputWorkspaceName());
+            LOGGER.debug("Running {0}", logMsg);
+        }
 
-            // Find the selected node ...
-            AbstractJcrNode selectedNode = inputSession.getNode(work.getSelectedPath());
+        // Find the selected node ...
+        AbstractJcrNode selectedNode = inputSession.getNode(work.getSelectedPath());
+
+        // Find the input that has changed and is to be sequenced ...
+        Item inputItem = inputSession.getItem(work.getInputPath());
+        Property changedProperty = null;
+        if (inputItem instanceof Property) {
+            changedProperty = (Property)inputItem;
+        } else {
+            Node changedNode = (Node)inputItem;
+            // now look for a property that was changed or added ...
+            changedProperty = changedNode.getProperty(work.getChangedPropertyName());
+        }
+        assert changedProperty != null;
 
-            // Find the input that has changed and is to be sequenced ...
-            Item inputItem = inputSession.getItem(work.getInputPath());
-            Property changedProperty = null;
-            if (inputItem instanceof Property) {
-                changedProperty = (Property)inputItem;
-            } else {
-                Node changedNode = (Node)inputItem;
-                // now look for a property that was changed or added ...
-                changedProperty = changedNode.getProperty(work.getChangedPropertyName());
-            }
-            assert changedProperty != null;
+        if (sequencer.hasAcceptedMimeTypes()) {
+            // Get the MIME type, first by looking at the changed property's parent node
+            // (or grand-parent node if parent is 'jcr:content') ...
+            String mimeType = getInputMimeType(changedProperty);
 
-            if (sequencer.hasAcceptedMimeTypes()) {
-                // Get the MIME type, first by looking at the changed property's parent node
-                // (or grand-parent node if parent is 'jcr:content') ...
-                String mimeType = getInputMimeType(changedProperty);
+            // See if the sequencer accepts the MIME type ...
+            if (mimeType != null && !sequencer.isAccepted(mimeType)) {
+                LOGGER.debug("Skipping sequencing because MIME type of input doesn't match expectations for {0}", logMsg);
+                return null; // nope
+            }
+        }
 
-                // See if the sequencer accepts the MIME type ...
-                if (mimeType != null && !sequencer.isAccepted(mimeType)) {
-                    LOGGER.debug("Skipping sequencing because MIME type of input doesn't match expectations for {0}", logMsg);
-                    return; // nope
-                }
+        AbstractJcrNode outputNode = null;
+        String primaryType = null;
+        if (work.getSelectedPath().equals(work.getOutputPath())) {
+            // The output is to go directly under the sequenced node ...
+            outputNode = selectedNode.getName().equals(JcrConstants.JCR_CONTENT) ? selectedNode.getParent() : selectedNode;
+            primaryType = selectedNode.getPrimaryNodeType().getName();
+        } else {
+            // Find the parent of the output if it exists, or create the node(s) along the path if not ...
+            AbstractJcrNode parentOfOutput = null;
+            try {
+                parentOfOutput = outputSession.getNode(work.getOutputPath());
+            } catch (PathNotFoundException e) {
+                LOGGER.trace("Creating missing output path for {0}", logMsg);
+                JcrTools tools = new JcrTools();
+                parentOfOutput = (AbstractJcrNode)tools.findOrCreateNode(outputSession, work.getOutputPath());
             }
 
-            AbstractJcrNode outputNode = null;
-            String primaryType = null;
-            if (work.getSelectedPath().equals(work.getOutputPath())) {
-                // The output is to go directly under the sequenced node ...
-                outputNode = selectedNode.getName().equals(JcrConstants.JCR_CONTENT) ? selectedNode.getParent() : selectedNode;
-                primaryType = selectedNode.getPrimaryNodeType().getName();
+            // Now determine the name of top node in the output, using the last segment of the selected path ...
+            String outputNodeName = computeOutputNodeName(selectedNode);
+
+            // Remove any existing output (from a prior sequencing run on this same input) ...
+            removeExistingOutputNodes(parentOfOutput, outputNodeName, work.getSelectedPath(), logMsg);
+
+            // Create the output node
+            if (parentOfOutput.isNew() && parentOfOutput.getName().equals(outputNodeName)) {
+                // avoid creating a duplicate path with the same name
+                outputNode = parentOfOutput;
             } else {
-                // Find the parent of the output if it exists, or create the node(s) along the path if not ...
-                AbstractJcrNode parentOfOutput = null;
-                try {
-                    parentOfOutput = outputSession.getNode(work.getOutputPath());
-                } catch (PathNotFoundException e) {
-                    LOGGER.trace("Creating missing output path for {0}", logMsg);
-                    JcrTools tools = new JcrTools();
-                    parentOfOutput = (AbstractJcrNode)tools.findOrCreateNode(outputSession, work.getOutputPath());
+                if (TRACE) {
+                    LOGGER.trace("Creating output node '{0}' under parent '{1}' for {2}", outputNodeName,
+                                 parentOfOutput.getPath(), logMsg);
                 }
+                outputNode = parentOfOutput.addNode(outputNodeName, JcrConstants.NT_UNSTRUCTURED);
+            }
 
-                // Now determine the name of top node in the output, using the last segment of the selected path ...
-                String outputNodeName = computeOutputNodeName(selectedNode);
+            // and make sure the output node has the 'mode:derived' mixin ...
+            outputNode.addMixin(DERIVED_NODE_TYPE_NAME);
+            outputNode.setProperty(DERIVED_FROM_PROPERTY_NAME, work.getSelectedPath());
+        }
 
-                // Remove any existing output (from a prior sequencing run on this same input) ...
-                removeExistingOutputNodes(parentOfOutput, outputNodeName, work.getSelectedPath(), logMsg);
+        // Execute the sequencer ...
+        DateTime now = outputSession.dateFactory().create();
+        Sequencer.Context context = new SequencingContext(now, outputSession.getValueFactory());
+        if (!inputSession.isLive() || (inputSession != outputSession && !outputSession.isLive())) {
+            return null;
+        }
+        final long start = System.nanoTime();
+        this.sequencedNode = selectedNode;
+        LOGGER.trace("Executing {0}", logMsg);
+        if (!sequencer.execute(changedProperty, outputNode, context)) {
+            return null;
+        }
+        LOGGER.trace("Completed executing {0}", logMsg);
 
-                // Create the output node
-                if (parentOfOutput.isNew() && parentOfOutput.getName().equals(outputNodeName)) {
-                    // avoid creating a duplicate path with the same name
-                    outputNode = parentOfOutput;
-                } else {
-                    if (TRACE) {
-                        LOGGER.trace("Creating output node '{0}' under parent '{1}' for {2}", outputNodeName,
-                                     parentOfOutput.getPath(), logMsg);
-                    }
-                    outputNode = parentOfOutput.addNode(outputNodeName, JcrConstants.NT_UNSTRUCTURED);
-                }
+        // Make sure that the sequencer did not change the primary type of the selected node ..
+        if (selectedNode == outputNode && !selectedNode.getPrimaryNodeType().getName().equals(primaryType)) {
+            String msg = RepositoryI18n.sequencersMayNotChangeThePrimaryTypeOfTheSelectedNode.text();
+            throw new RepositoryException(msg);
+        }
 
-                // and make sure the output node has the 'mode:derived' mixin ...
-                outputNode.addMixin(DERIVED_NODE_TYPE_NAME);
-                outputNode.setProperty(DERIVED_FROM_PROPERTY_NAME, work.getSelectedPath());
-            }
+        // find the new nodes created by the sequencing before saving, so we can properly fire the events
+        List<AbstractJcrNode> outputNodes = findOutputNodes(outputNode);
 
-            // Execute the sequencer ...
-            DateTime now = outputSession.dateFactory().create();
-            Sequencer.Context context = new SequencingContext(now, outputSession.getValueFactory());
-            if (inputSession.isLive() && (inputSession == outputSession || outputSession.isLive())) {
-                final long start = System.nanoTime();
-
-                try {
-                    LOGGER.trace("Executing {0}", logMsg);
-                    if (sequencer.execute(changedProperty, outputNode, context)) {
-                        LOGGER.trace("Completed executing {0}", logMsg);
-
-                        // Make sure that the sequencer did not change the primary type of the selected node ..
-                        if (selectedNode == outputNode && !selectedNode.getPrimaryNodeType().getName().equals(primaryType)) {
-                            String msg = RepositoryI18n.sequencersMayNotChangeThePrimaryTypeOfTheSelectedNode.text();
-                            throw new RepositoryException(msg);
-                        }
-
-                        // find the new nodes created by the sequencing before saving, so we can properly fire the events
-                        List<AbstractJcrNode> outputNodes = findOutputNodes(outputNode);
-
-                        // set the createdBy property (if it applies) to the user which triggered the sequencing, not the context
-                        // of the saving session
-                        setCreatedByIfNecessary(outputSession, outputNodes);
-
-                        // outputSession
-                        LOGGER.trace("Saving session used by {0}", logMsg);
-                        outputSession.save();
-                        
-                        long durationInNanos = Math.abs(System.nanoTime() - start);
-                        Map<String, String> payload = new HashMap<String, String>();
-                        payload.put("sequencerName", sequencer.getClass().getName());
-                        payload.put("sequencedPath", changedProperty.getPath());
-                        payload.put("outputPath", outputNode.getPath());
-                        stats.recordDuration(DurationMetric.SEQUENCER_EXECUTION_TIME, durationInNanos, TimeUnit.NANOSECONDS,
-                                             payload);
-
-                        // fire the sequencing event after save (hopefully by this time the transaction has been committed)
-                        // and after the metrics have been updated
-                        LOGGER.trace("Firing events resulting from {0}", logMsg);
-                        fireSequencingEvent(selectedNode, outputNodes, outputSession, sequencerName);
-                    }
-                } catch (Throwable t) {
-                    try {
-                        fireSequencingFailureEvent(selectedNode, inputSession, t, sequencerName);
-                    } catch (Exception e) {
-                        LOGGER.debug(e, "Error while trying to fire sequencing failure event");
-                    }
-                    // let it bubble down, because we still want to log it and update the stats
-                    throw t;
-                }
+        // set the createdBy property (if it applies) to the user which triggered the sequencing, not the context
+        // of the saving session
+        setCreatedByIfNecessary(outputSession, outputNodes);
+
+        return new Output(this, outputSession, selectedNode, outputNodes, outputNode.getPath(), changedProperty.getPath(),
+                          sequencer.getClass().getName(), start, logMsg);
+    }
+
+    /**
+     * Record the metrics and fire the events for output that was {@link #sequence(JcrSession, JcrSession) produced} by this
+     * runner and which has been saved.
+     *
+     * @param output the saved output; may not be null
+     * @throws RepositoryException if there is a problem firing the events
+     */
+    protected void saved( Output output ) throws RepositoryException {
+        assert output.runner == this;
+        try {
+            long durationInNanos = Math.abs(System.nanoTime() - output.start);
+            Map<String, String> payload = new HashMap<String, String>();
+            payload.put("sequencerName", output.sequencerClassName);
+            payload.put("sequencedPath", output.sequencedPath);
+            payload.put("outputPath", output.outputPath);
+            repository.statistics().recordDuration(DurationMetric.SEQUENCER_EXECUTION_TIME, durationInNanos,
+                                                   TimeUnit.NANOSECONDS, payload);
+
+            // fire the sequencing event after save (hopefully by this time the transaction has been committed)
+            // and after the metrics have been updated
+            LOGGER.trace("Firing events resulting from {0}", output.logMsg);
+            fireSequencingEvent(output.selectedNode, output.outputNodes, output.outputSession, sequencerName);
+        } catch (RepositoryException | RuntimeException e) {
+            handleFailure(e);
+        }
+    }
+
+    /**
+     * Handle a failure of this runner's work, which has not been saved. If the sequencer was executed, a sequencing failure
+     * event is fired unless the work will be run again.
+     *
+     * @param t the failure; may not be null
+     */
+    protected void handleFailure( Throwable t ) {
+        if (sequencedNode != null && finalAttempt) {
+            try {
+                fireSequencingFailureEvent(sequencedNode, inputSession, t, sequencerName);
+            } catch (Exception e) {
+                LOGGER.debug(e, "Error while trying to fire sequencing failure event");
             }
-        } catch (InterruptedException ie) {
+        }
+        if (t instanceof InterruptedException) {
             // most likely the repository is being shut down and is asking the runnable to interrupt
             Thread.interrupted();
-            LOGGER.warn(RepositoryI18n.shutdownWhileSequencing, work.getInputPath(), ie.getMessage());
-        } catch (Throwable t) {
-            if (!repository.sequencers().acceptsWork()) {
-                // the repository has already been shut down, so we'll just log a warning
-                LOGGER.warn(RepositoryI18n.shutdownWhileSequencing, work.getInputPath(), t.getMessage());
+            LOGGER.warn(RepositoryI18n.shutdownWhileSequencing, work.getInputPath(), t.getMessage());
+        } else if (!repository.sequencers().acceptsWork()) {
+            // the repository has already been shut down, so we'll just log a warning
+            LOGGER.warn(RepositoryI18n.shutdownWhileSequencing, work.getInputPath(), t.getMessage());
+        } else if (!finalAttempt) {
+            failed = true;
+            LOGGER.warn(RepositoryI18n.errorWhileSequencingNodeWillRetry, sequencerName, repository.name(), work.getInputPath(),
+                        work.getInputWorkspaceName(), t.getMessage());
+        } else {
+            failed = true;
+            if (work.getOutputWorkspaceName() != null) {
+                LOGGER.error(t, RepositoryI18n.errorWhileSequencingNodeIntoWorkspace, sequencerName, repository.name(),
+                             work.getInputPath(), work.getInputWorkspaceName(), work.getOutputPath(),
+                             work.getOutputWorkspaceName());
             } else {
-                if (work.getOutputWorkspaceName() != null) {
-                    LOGGER.error(t, RepositoryI18n.errorWhileSequencingNodeIntoWorkspace, sequencerName, repository.name(),
-                                 work.getInputPath(), work.getInputWorkspaceName(), work.getOutputPath(),
-                                 work.getOutputWorkspaceName());
-                } else {
-                    LOGGER.error(t, RepositoryI18n.errorWhileSequencingNode, sequencerName, repository.name(),
-                                 work.getInputPath(),
-                                 work.getInputWorkspaceName(), work.getOutputPath());
-                }
+                LOGGER.error(t, RepositoryI18n.errorWhileSequencingNode, sequencerName, repository.name(), work.getInputPath(),
+                             work.getInputWorkspaceName(), work.getOutputPath());
             }
-        } finally {
-            stats.increment(ValueMetric.SEQUENCED_COUNT);
-            stats.decrement(ValueMetric.SEQUENCER_QUEUE_SIZE);
-            if (inputSession != null && inputSession.isLive()) inputSession.logout();
-            if (outputSession != null && outputSession != inputSession && outputSession.isLive()) outputSession.logout();
         }
     }
 
@@ -435,4 +525,39 @@ final class SequencingRunner implements Runnable {
         }
 
     }
+
+    /**
+     * The output of a single work item that has been written into the output session, but not yet saved.
+     */
+    protected static final class Output {
+        protected final SequencingRunner runner;
+        protected final JcrSession outputSession;
+        protected final AbstractJcrNode selectedNode;
+        protected final List<AbstractJcrNode> outputNodes;
+        protected final String outputPath;
+        protected final String sequencedPath;
+        protected final String sequencerClassName;
+        protected final long start;
+        protected final String logMsg;
+
+        protected Output( SequencingRunner runner,
+                          JcrSession outputSession,
+                          AbstractJcrNode selectedNode,
+                          List<AbstractJcrNode> outputNodes,
+                          String outputPath,
+                          String sequencedPath,
+                          String sequencerClassName,
+                          long start,
+                          String logMsg ) {
+            this.runner = runner;
+            this.outputSession = outputSession;
+            this.selectedNode = selectedNode;
+            this.outputNodes = outputNodes;
+            this.outputPath = outputPath;
+            this.sequencedPath = sequencedPath;
+            this.sequencerClassName = sequencerClassName;
+            this.start = start;
+            this.logMsg = logMsg;
+        }
+    }
 }
@@ -0,0 +1,523 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.mapdb.BTreeKeySerializer;
+import org.mapdb.BTreeMap;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.CheckArg;
+import org.modeshape.jcr.Sequencers.SequencingWorkItem;
+import org.modeshape.jcr.api.monitor.ValueMetric;
+
+/**
+ * The queue of the sequencing work that is waiting to be run by the sequencing thread pool. The queue:
+ * <ul>
+ * <li>holds at most a configured number of items in memory. When it is full, the additional items are only kept in the local
+ * store (if there is one) and are loaded as the items in memory are run; otherwise the additional items are rejected, since
+ * blocking the submitters (i.e., the thread that processes the repository's change events) would also stall the sequencers
+ * that save their output;</li>
+ * <li>ignores an item that is identical to one that is still waiting to be run, such as when the same property is changed
+ * several times in a row;</li>
+ * <li>never runs more than the size of the thread pool at once, nor more than a configured number of items for the same
+ * sequencer;</li>
+ * <li>optionally runs a failed item again, a configured number of times;</li>
+ * <li>optionally runs several items of the same sequencer that have the same input and output workspaces together, so that
+ * their output is saved in fewer, larger {@link SequencingBatchRunner batches}; and</li>
+ * <li>optionally records the items in a local store until they have been run, so that the work that is pending when the process
+ * stops is {@link #resume() resumed} when the repository is restarted. The changes to the store are committed in the
+ * background, at most once every {@value #COMMIT_DELAY_IN_MILLIS} milliseconds.</li>
+ * </ul>
+ */
+@ThreadSafe
+final class SequencingWorkQueue implements Sequencers.WorkQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(SequencingWorkQueue.class);
+    private static final String ITEMS_FIELD = "sequencing-work";
+
+    /**
+     * The time the changes to the store are left uncommitted, so that the changes made in the meantime are committed together.
+     */
+    static final long COMMIT_DELAY_IN_MILLIS = 100L;
+
+    private final JcrRepository.RunningState repository;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService committer;
+    private final int maxQueueSize;
+    private final int maxRunning;
+    private final int maxRunningPerSequencer;
+    private final int maxRetries;
+    private final int outputBatchSize;
+    private final long outputBatchDelayInMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<SequencingWorkItem, Entry> pending = new HashMap<>();
+    private final Map<UUID, ArrayDeque<Entry>> pendingBySequencer = new LinkedHashMap<>();
+    private final Map<UUID, Integer> runningBySequencer = new HashMap<>();
+    private final Map<Entry, Future<?>> running = new HashMap<>();
+    private final DB db;
+    private final BTreeMap<Long, SequencingWorkItem> stored;
+    private long nextId;
+    private long loadedUpTo = -1L;
+    private int spilled;
+    private int restored;
+    private boolean commitScheduled;
+    private boolean resumed;
+    private boolean shutdown;
+
+    /**
+     * Create a new queue.
+     *
+     * @param repository the running repository; may not be null
+     * @param executor the executor used to run the sequencers; may not be null
+     * @param committer the executor used to commit the changes to the store; may not be null
+     * @param maxRunning the maximum number of items that can be run at the same time, which should not be larger than the
+     *        executor's maximum number of threads; must be positive
+     * @param maxRunningPerSequencer the maximum number of items for the same sequencer that can be run at the same time; must be
+     *        positive
+     * @param maxQueueSize the maximum number of items that can be waiting in memory; must be positive
+     * @param maxRetries the number of times a failed item is run again; 0 if failed items should not be run again
+     * @param outputBatchSize the maximum number of items whose output is saved together; 1 if the output of each item should be
+     *        saved separately
+     * @param outputBatchDelayInMillis the maximum number of milliseconds the output of a batch is kept before it is saved
+     * @param storeLocation the folder where the pending items should be recorded; may be null if the pending items should only
+     *        be kept in memory
+     */
+    SequencingWorkQueue( JcrRepository.RunningState repository,
+                         ExecutorService executor,
+                         ScheduledExecutorService committer,
+                         int maxRunning,
+                         int maxRunningPerSequencer,
+                         int maxQueueSize,
+                         int maxRetries,
+                         int outputBatchSize,
+                         long outputBatchDelayInMillis,
+                         String storeLocation ) {
+        CheckArg.isPositive(maxRunning, "maxRunning");
+        CheckArg.isPositive(maxRunningPerSequencer, "maxRunningPerSequencer");
+        CheckArg.isPositive(maxQueueSize, "maxQueueSize");
+        CheckArg.isNonNegative(maxRetries, "maxRetries");
+        CheckArg.isPositive(outputBatchSize, "outputBatchSize");
+        CheckArg.isNonNegative(outputBatchDelayInMillis, "outputBatchDelayInMillis");
+        this.repository = repository;
+        this.executor = executor;
+        this.committer = committer;
+        this.maxRunning = maxRunning;
+        this.maxRunningPerSequencer = Math.min(maxRunning, maxRunningPerSequencer);
+        this.maxQueueSize = maxQueueSize;
+        this.maxRetries = maxRetries;
+        this.outputBatchSize = outputBatchSize;
+        this.outputBatchDelayInMillis = outputBatchDelayInMillis;
+        DB db = null;
+        BTreeMap<Long, SequencingWorkItem> stored = null;
+        if (storeLocation != null) {
+            try {
+                File folder = new File(storeLocation);
+                if (!folder.exists() && !folder.mkdirs()) {
+                    throw new IllegalStateException("Unable to create the folder " + folder.getAbsolutePath());
+                }
+                db = DBMaker.newFileDB(new File(folder, ITEMS_FIELD)).checksumEnable().closeOnJvmShutdown().make();
+                stored = db.createTreeMap(ITEMS_FIELD).keySerializer(BTreeKeySerializer.ZERO_OR_POSITIVE_LONG).makeOrGet();
+                this.nextId = stored.isEmpty() ? 0L : stored.lastKey() + 1;
+                // the items left from before a restart are loaded when the queue is resumed ...
+                this.spilled = stored.size();
+                this.restored = this.spilled;
+            } catch (RuntimeException e) {
+                repository.error(e, JcrI18n.unableToOpenSequencingQueue, storeLocation, repository.name(), e.getMessage());
+                if (db != null) db.close();
+                db = null;
+                stored = null;
+            }
+        }
+        this.db = db;
+        this.stored = stored;
+    }
+
+    @Override
+    public void submit( Collection<SequencingWorkItem> items ) {
+        if (items.isEmpty()) return;
+        int accepted = 0;
+        int rejected = 0;
+        lock.lock();
+        try {
+            for (SequencingWorkItem item : items) {
+                if (shutdown) break;
+                if (pending.containsKey(item)) {
+                    // The same input is already waiting to be sequenced into the same output, so there's nothing to add ...
+                    LOGGER.trace("Ignoring duplicate sequencing work: {0}", item);
+                    continue;
+                }
+                if (stored == null && pending.size() >= maxQueueSize) {
+                    // There is nowhere else to keep it ...
+                    ++rejected;
+                    continue;
+                }
+                long id = nextId++;
+                if (stored != null) {
+                    stored.put(id, item);
+                    if (spilled == 0 && pending.size() < maxQueueSize) {
+                        enqueue(new Entry(id, item));
+                        loadedUpTo = id;
+                    } else {
+                        // leave it in the store until there is room in memory ...
+                        ++spilled;
+                    }
+                } else {
+                    enqueue(new Entry(id, item));
+                }
+                ++accepted;
+            }
+            if (accepted > 0) {
+                if (stored != null) storeChanged();
+                repository.statistics().increment(ValueMetric.SEQUENCER_QUEUE_SIZE, accepted);
+                dispatch();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (rejected > 0) {
+            repository.warn(JcrI18n.sequencingQueueIsFull, repository.name(), maxQueueSize, rejected);
+        }
+    }
+
+    @Override
+    public void resume() {
+        lock.lock();
+        try {
+            if (resumed) return;
+            resumed = true;
+            if (restored > 0) {
+                LOGGER.debug("Resuming {0} sequencing work items in repository '{1}'", restored, repository.name());
+                repository.statistics().increment(ValueMetric.SEQUENCER_QUEUE_SIZE, restored);
+            }
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Load into memory the oldest items that are only in the store, as long as there is room.
+     */
+    private void refill() {
+        assert lock.isHeldByCurrentThread();
+        if (spilled == 0 || !resumed || shutdown) return;
+        Iterator<Map.Entry<Long, SequencingWorkItem>> iter = stored.tailMap(loadedUpTo, false).entrySet().iterator();
+        while (pending.size() < maxQueueSize && iter.hasNext()) {
+            Map.Entry<Long, SequencingWorkItem> storedItem = iter.next();
+            loadedUpTo = storedItem.getKey();
+            --spilled;
+            SequencingWorkItem item = storedItem.getValue();
+            if (pending.containsKey(item)) {
+                iter.remove();
+                repository.statistics().decrement(ValueMetric.SEQUENCER_QUEUE_SIZE);
+                continue;
+            }
+            enqueue(new Entry(storedItem.getKey(), item));
+        }
+        if (!iter.hasNext()) {
+            spilled = 0;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            for (Future<?> future : running.values()) {
+                future.cancel(true);
+            }
+            running.clear();
+            pending.clear();
+            pendingBySequencer.clear();
+            runningBySequencer.clear();
+            if (db != null) {
+                synchronized (db) {
+                    if (!db.isClosed()) {
+                        // The items that have not been run are still in the store, and will be resumed after a restart ...
+                        db.commit();
+                        db.close();
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue( Entry entry ) {
+        assert lock.isHeldByCurrentThread();
+        pending.put(entry.item, entry);
+        UUID sequencerId = entry.item.getSequencerId();
+        ArrayDeque<Entry> queue = pendingBySequencer.get(sequencerId);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            pendingBySequencer.put(sequencerId, queue);
+        }
+        queue.addLast(entry);
+    }
+
+    /**
+     * Start running as many of the pending items as the limits allow. The sequencers are visited in turn, so that the items of one
+     * sequencer do not delay those of the others.
+     */
+    private void dispatch() {
+        assert lock.isHeldByCurrentThread();
+        refill();
+        boolean started = true;
+        while (started && !shutdown && running.size() < maxRunning) {
+            started = false;
+            for (Iterator<Map.Entry<UUID, ArrayDeque<Entry>>> iter = pendingBySequencer.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry<UUID, ArrayDeque<Entry>> sequencerQueue = iter.next();
+                UUID sequencerId = sequencerQueue.getKey();
+                ArrayDeque<Entry> queue = sequencerQueue.getValue();
+                if (queue.isEmpty()) {
+                    iter.remove();
+                    continue;
+                }
+                if (running.size() >= maxRunning) break;
+                Integer runningCount = runningBySequencer.get(sequencerId);
+                if (runningCount != null && runningCount >= maxRunningPerSequencer) continue;
+                List<Entry> batch = batchStartingWith(queue.peekFirst(), queue);
+                Future<?> future = null;
+                try {
+                    future = executor.submit(() -> run(batch));
+                } catch (RejectedExecutionException e) {
+                    // All threads of the (possibly shared) pool are busy; our threads take the next items themselves when they
+                    // complete their current ones, and this is tried again when more work is submitted ...
+                    LOGGER.debug("The sequencing thread pool is busy; {0} items are waiting", pending.size());
+                    return;
+                }
+                started(batch, queue, future);
+                started = true;
+            }
+        }
+    }
+
+    /**
+     * Take the next batch of pending items that can be run in place of a batch that just completed, by the same thread. The
+     * thread of a completed batch is still busy until it returns to the pool, so the pool would reject any new task submitted
+     * from that thread; rather than submitting the next batch, the thread simply runs it.
+     *
+     * @param worker the future of the task that ran the completed batch; may not be null
+     * @return the next batch, or null if there is none that can be run now
+     */
+    private List<Entry> takeNextBatch( Future<?> worker ) {
+        assert lock.isHeldByCurrentThread();
+        refill();
+        if (shutdown || running.size() >= maxRunning) return null;
+        for (Iterator<Map.Entry<UUID, ArrayDeque<Entry>>> iter = pendingBySequencer.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<UUID, ArrayDeque<Entry>> sequencerQueue = iter.next();
+            ArrayDeque<Entry> queue = sequencerQueue.getValue();
+            if (queue.isEmpty()) {
+                iter.remove();
+                continue;
+            }
+            Integer runningCount = runningBySequencer.get(sequencerQueue.getKey());
+            if (runningCount != null && runningCount >= maxRunningPerSequencer) continue;
+            List<Entry> batch = batchStartingWith(queue.peekFirst(), queue);
+            started(batch, queue, worker);
+            return batch;
+        }
+        return null;
+    }
+
+    private void started( List<Entry> batch,
+                          ArrayDeque<Entry> queue,
+                          Future<?> future ) {
+        for (Entry batched : batch) {
+            // the batch is always at the head of the queue ...
+            queue.pollFirst();
+            pending.remove(batched.item);
+        }
+        Entry first = batch.get(0);
+        running.put(first, future);
+        UUID sequencerId = first.item.getSequencerId();
+        Integer runningCount = runningBySequencer.get(sequencerId);
+        runningBySequencer.put(sequencerId, runningCount == null ? 1 : runningCount + 1);
+        if (spilled > 0 && pending.size() < maxQueueSize) refill();
+    }
+
+    /**
+     * Collect the items that should be run along with the first pending item of a sequencer: when batching is enabled, these are
+     * the items immediately following it which have the same input and output workspaces.
+     */
+    private List<Entry> batchStartingWith( Entry first,
+                                           ArrayDeque<Entry> queue ) {
+        if (outputBatchSize == 1 || queue.size() == 1) return Collections.singletonList(first);
+        List<Entry> batch = new ArrayList<>(Math.min(outputBatchSize, queue.size()));
+        String inputWorkspace = first.item.getInputWorkspaceName();
+        String outputWorkspace = outputWorkspaceOf(first.item);
+        for (Entry entry : queue) {
+            if (batch.size() >= outputBatchSize || !inputWorkspace.equals(entry.item.getInputWorkspaceName())
+                || !outputWorkspace.equals(outputWorkspaceOf(entry.item))) {
+                break;
+            }
+            batch.add(entry);
+        }
+        return batch;
+    }
+
+    private static String outputWorkspaceOf( SequencingWorkItem item ) {
+        String outputWorkspace = item.getOutputWorkspaceName();
+        return outputWorkspace != null ? outputWorkspace : item.getInputWorkspaceName();
+    }
+
+    private void run( List<Entry> batch ) {
+        // Keep running the pending items on this thread for as long as there are some ...
+        while (batch != null) {
+            List<SequencingRunner> runners = new ArrayList<>(batch.size());
+            for (Entry entry : batch) {
+                runners.add(new SequencingRunner(repository, entry.item, entry.attempts >= maxRetries));
+            }
+            boolean finished = false;
+            try {
+                if (runners.size() == 1) {
+                    runners.get(0).run();
+                } else {
+                    new SequencingBatchRunner(repository, runners, outputBatchSize, outputBatchDelayInMillis).run();
+                }
+                finished = true;
+            } finally {
+                batch = completed(batch, runners, finished);
+            }
+        }
+    }
+
+    /**
+     * Record that the items of a batch have been run, and find the items that the same thread should run next.
+     *
+     * @param batch the items that have been run; may not be null
+     * @param runners the runners of the items; may not be null
+     * @param continueRunning true if the thread can run more items, or false if it is ending because of an unexpected exception
+     * @return the items the thread should run next, or null if the thread should return to the pool
+     */
+    private List<Entry> completed( List<Entry> batch,
+                                   List<SequencingRunner> runners,
+                                   boolean continueRunning ) {
+        lock.lock();
+        try {
+            if (shutdown) return null;
+            Future<?> worker = running.remove(batch.get(0));
+            UUID sequencerId = batch.get(0).item.getSequencerId();
+            Integer runningCount = runningBySequencer.get(sequencerId);
+            if (runningCount != null && runningCount > 1) {
+                runningBySequencer.put(sequencerId, runningCount - 1);
+            } else {
+                runningBySequencer.remove(sequencerId);
+            }
+            for (int i = 0; i != batch.size(); ++i) {
+                Entry entry = batch.get(i);
+                SequencingRunner runner = runners.get(i);
+                boolean retry = runner.failed() && !runner.isFinalAttempt();
+                if (retry && !pending.containsKey(entry.item)) {
+                    // Run it again after the work that is already waiting ...
+                    entry.attempts++;
+                    enqueue(entry);
+                } else {
+                    if (stored != null) {
+                        // At worst the item is run again after a crash before this is committed ...
+                        stored.remove(entry.id);
+                        storeChanged();
+                    }
+                    repository.statistics().decrement(ValueMetric.SEQUENCER_QUEUE_SIZE);
+                }
+            }
+            List<Entry> next = continueRunning && worker != null ? takeNextBatch(worker) : null;
+            // and start any other items that can now run on other threads ...
+            dispatch();
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Make sure the changes to the store are committed soon. The commit is done in the background, so that the submitters do not
+     * wait for the store to be written, and covers all the changes made until then.
+     */
+    private void storeChanged() {
+        assert lock.isHeldByCurrentThread();
+        if (commitScheduled || shutdown) return;
+        try {
+            committer.schedule(this::commitStore, COMMIT_DELAY_IN_MILLIS, TimeUnit.MILLISECONDS);
+            commitScheduled = true;
+        } catch (RejectedExecutionException e) {
+            // The repository is being shut down, and the changes are committed when the queue is shut down ...
+            LOGGER.debug("Unable to schedule the commit of the sequencing queue in repository '{0}'", repository.name());
+        }
+    }
+
+    private void commitStore() {
+        lock.lock();
+        try {
+            // any change made from now on needs another commit ...
+            commitScheduled = false;
+        } finally {
+            lock.unlock();
+        }
+        synchronized (db) {
+            if (!db.isClosed()) {
+                db.commit();
+            }
+        }
+    }
+
+    /**
+     * Get the number of items that are waiting to be run.
+     *
+     * @return the number of pending items
+     */
+    int pendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        protected final long id;
+        protected final SequencingWorkItem item;
+        protected int attempts;
+
+        protected Entry( long id,
+                         SequencingWorkItem item ) {
+            this.id = id;
+            this.item = item;
+        }
+    }
+}
@@ -15,13 +15,29 @@
  */
 package org.modeshape.jcr;
 
+import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import org.modeshape.common.annotation.Immutable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.modeshape.common.annotation.ThreadSafe;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.CheckArg;
 import org.modeshape.common.util.StringUtil;
@@ -34,96 +50,402 @@ import org.modeshape.jcr.value.binary.AbstractBinaryStore;
 import org.modeshape.jcr.value.binary.InMemoryBinaryValue;
 
 /**
- * Facility for managing {@link TextExtractor} instances and submitting text extraction work
+ * Facility for managing {@link TextExtractor} instances and submitting text extraction work.
+ * <p>
+ * Binaries waiting for their text to be extracted are queued by MIME type, and the MIME types are visited in turn so that a slow
+ * format cannot take all of the threads. A binary whose text is already being extracted is not extracted again; the callers
+ * share the same {@link CompletableFuture result}. When the queue is full, the text is extracted in the calling thread.
+ * </p>
+ * <p>
+ * The text extracted from binaries persisted in a binary store is stored in that binary store. The text extracted from
+ * {@link InMemoryBinaryValue small binaries}, which are never persisted in a binary store, is kept in a bounded cache keyed by
+ * the content hash; this cache is kept on disk when a cache location is configured.
+ * </p>
  */
-@Immutable
+@ThreadSafe
 public final class TextExtractors {
 
     private static final Logger LOGGER = Logger.getLogger(TextExtractors.class);
 
+    private static final String CACHE_NAME = "extractedText";
+    private static final int CACHE_COMMIT_INTERVAL = 100;
+    /**
+     * How long to wait for the text which another thread is extracting from the same small binary.
+     */
+    private static final long SHARED_EXTRACTION_WAIT_IN_SECONDS = 10L;
+    /**
+     * The marker cached for binaries from which no text could be extracted.
+     */
+    private static final String NO_TEXT = "";
+
     private final List<TextExtractor> extractors;
     private final ExecutorService extractingQueue;
-    private final List<Future<?>> extractionResults;
-    private final ConcurrentHashMap<BinaryKey, CountDownLatch> workerLatches;
+    private final int maxRunning;
+    private final int maxRunningPerMimeType;
+    private final int maxQueueSize;
+    private final ConcurrentMap<BinaryKey, Extraction> extractions = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, ArrayDeque<Extraction>> pendingByMimeType = new LinkedHashMap<>();
+    private final Map<String, Integer> runningByMimeType = new HashMap<>();
+    private final Map<Extraction, Future<?>> running = new HashMap<>();
+    private int pendingCount;
+    private final DB cacheDb;
+    private final Map<String, String> cachedText;
+    private final AtomicInteger uncommittedCacheChanges = new AtomicInteger();
     private volatile boolean active;
 
     public TextExtractors( ExecutorService extractingQueue,
                            List<TextExtractor> extractors ) {
-        this.extractingQueue = extractingQueue;
-        this.workerLatches = new ConcurrentHashMap<>();
-        this.extractionResults = new ArrayList<>();
-        this.extractors = extractors;
-        this.active = true;
+        this(extractingQueue, extractors, RepositoryConfiguration.Default.TEXT_EXTRACTION_MAX_POOL_SIZE,
+             RepositoryConfiguration.Default.TEXT_EXTRACTION_MAX_POOL_SIZE,
+             RepositoryConfiguration.Default.TEXT_EXTRACTION_MAX_QUEUE_SIZE,
+             openCache(null, RepositoryConfiguration.Default.TEXT_EXTRACTION_MAX_CACHE_SIZE));
     }
 
     protected TextExtractors( JcrRepository.RunningState repository,
                               RepositoryConfiguration.TextExtraction extracting ) {
         this(repository.context().getCachedTreadPool(extracting.getThreadPoolName(), extracting.getMaxPoolSize()),
-             getConfiguredExtractors(repository, extracting));
+             getConfiguredExtractors(repository, extracting), Math.max(1, extracting.getMaxPoolSize()),
+             extracting.getMaxConcurrentPerMimeType(), extracting.getMaxQueueSize(), openCache(repository, extracting));
+    }
+
+    private TextExtractors( ExecutorService extractingQueue,
+                            List<TextExtractor> extractors,
+                            int maxRunning,
+                            int maxRunningPerMimeType,
+                            int maxQueueSize,
+                            DB cacheDb ) {
+        this.extractingQueue = extractingQueue;
+        this.extractors = extractors;
+        this.maxRunning = maxRunning;
+        this.maxRunningPerMimeType = Math.min(maxRunning, maxRunningPerMimeType);
+        this.maxQueueSize = maxQueueSize;
+        this.cacheDb = cacheDb;
+        this.cachedText = cacheDb != null ? cacheDb.getHashMap(CACHE_NAME) : null;
+        this.active = true;
+    }
+
+    private static DB openCache( JcrRepository.RunningState repository,
+                                 RepositoryConfiguration.TextExtraction extracting ) {
+        String location = extracting.getCacheLocation();
+        int maxSize = extracting.getMaxCacheSize();
+        if (location == null || maxSize == 0) {
+            return openCache(null, maxSize);
+        }
+        try {
+            return openCache(new File(location), maxSize);
+        } catch (RuntimeException e) {
+            repository.error(e, JcrI18n.unableToOpenExtractedTextCache, location, repository.name(), e.getMessage());
+            return openCache(null, maxSize);
+        }
+    }
+
+    private static DB openCache( File folder,
+                                 int maxSize ) {
+        if (maxSize == 0) return null;
+        DB db = null;
+        if (folder == null) {
+            db = DBMaker.newHeapDB().transactionDisable().make();
+        } else {
+            if (!folder.exists() && !folder.mkdirs()) {
+                throw new IllegalStateException("Unable to create the folder " + folder.getAbsolutePath());
+            }
+            db = DBMaker.newFileDB(new File(folder, CACHE_NAME)).checksumEnable().closeOnJvmShutdown().make();
+        }
+        try {
+            db.createHashMap(CACHE_NAME).keySerializer(Serializer.STRING).valueSerializer(Serializer.STRING).expireMaxSize(maxSize)
+              .makeOrGet();
+            return db;
+        } catch (RuntimeException e) {
+            db.close();
+            throw e;
+        }
     }
 
     public void shutdown() {
         this.active = false;
+        List<Extraction> cancelled = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Future<?> future : running.values()) {
+                future.cancel(true);
+            }
+            cancelled.addAll(running.keySet());
+            running.clear();
+            for (ArrayDeque<Extraction> queue : pendingByMimeType.values()) {
+                cancelled.addAll(queue);
+            }
+            pendingByMimeType.clear();
+            runningByMimeType.clear();
+            pendingCount = 0;
+        } finally {
+            lock.unlock();
+        }
+        // don't leave anybody waiting for text that will never be extracted ...
+        for (Extraction extraction : cancelled) {
+            extraction.complete(null);
+        }
         this.extractors.clear();
         this.extractingQueue.shutdown();
-        for (Future<?> extractionResult : extractionResults) {
-            extractionResult.cancel(true);
+        if (cacheDb != null) {
+            synchronized (cacheDb) {
+                if (!cacheDb.isClosed()) {
+                    cacheDb.commit();
+                    cacheDb.close();
+                }
+            }
         }
-        extractionResults.clear();
     }
 
     public boolean extractionEnabled() {
         return active && !extractors.isEmpty();
     }
 
+    /**
+     * Extract the text of a binary value which is not persisted in a binary store. The text is extracted in the calling thread,
+     * unless it has already been extracted from a binary with the same content.
+     *
+     * @param inMemoryBinaryValue the binary value; may not be null
+     * @param context the extraction context; may not be null
+     * @return the extracted text, or null if no text could be extracted
+     */
     public String extract( InMemoryBinaryValue inMemoryBinaryValue,
                            TextExtractor.Context context ) {
         if (!extractionEnabled()) {
             return null;
         }
+        String cacheKey = inMemoryBinaryValue.getKey().toString();
+        String cached = cachedText(cacheKey);
+        if (cached != null) {
+            return NO_TEXT.equals(cached) ? null : cached;
+        }
+        Extraction extraction = new Extraction(null, inMemoryBinaryValue, context);
+        Extraction existing = extractions.putIfAbsent(inMemoryBinaryValue.getKey(), extraction);
+        if (existing != null) {
+            // Another thread is extracting the text of the same content, and small binaries are quick to extract ...
+            return textOf(existing);
+        }
+        extraction.run();
+        return extraction.result.getNow(null);
+    }
+
+    private String textOf( Extraction extraction ) {
+        try {
+            return extraction.result.get(SHARED_EXTRACTION_WAIT_IN_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.debug("Timed out waiting for the text of {0} being extracted by another thread", extraction.binaryValue.getKey());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            LOGGER.debug(e, "Unable to get the text of {0}", extraction.binaryValue.getKey());
+            return null;
+        }
+    }
+
+    /**
+     * Submit the extraction of the text of a binary value which is persisted in the given store. The extracted text is stored in
+     * the binary store.
+     *
+     * @param store the binary store in which the binary is persisted and where the extracted text should be stored; may not be
+     *        null
+     * @param binaryValue the binary value; may not be null
+     * @param context the extraction context; may not be null
+     * @return the future extracted text, which is null if no text could be extracted; never null
+     */
+    public CompletableFuture<String> extract( AbstractBinaryStore store,
+                                              BinaryValue binaryValue,
+                                              TextExtractor.Context context ) {
+        CheckArg.isNotNull(binaryValue, "binaryValue");
+        if (!extractionEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (binaryValue instanceof InMemoryBinaryValue) {
+            return CompletableFuture.completedFuture(extract((InMemoryBinaryValue)binaryValue, context));
+        }
+        Extraction extraction = new Extraction(store, binaryValue, context);
+        Extraction existing = extractions.putIfAbsent(binaryValue.getKey(), extraction);
+        if (existing != null) {
+            // The text of this binary is already being extracted ...
+            return existing.result;
+        }
+        if (extraction.extractor == null) {
+            // None of the extractors supports this MIME type, so there is nothing to wait for ...
+            extraction.complete(null);
+        } else if (!enqueue(extraction)) {
+            LOGGER.debug("The text extraction queue is full; extracting the text of {0} in the calling thread", binaryValue.getKey());
+            extraction.run();
+        }
+        return extraction.result;
+    }
+
+    private String cachedText( String key ) {
+        if (cachedText == null) return null;
+        try {
+            return cachedText.get(key);
+        } catch (IllegalAccessError | IllegalStateException e) {
+            // the cache has been closed ...
+            return null;
+        }
+    }
+
+    private void cacheText( String key,
+                            String text ) {
+        if (cachedText == null) return;
+        try {
+            cachedText.put(key, text);
+            if (uncommittedCacheChanges.incrementAndGet() >= CACHE_COMMIT_INTERVAL) {
+                synchronized (cacheDb) {
+                    if (uncommittedCacheChanges.get() >= CACHE_COMMIT_INTERVAL && !cacheDb.isClosed()) {
+                        uncommittedCacheChanges.set(0);
+                        cacheDb.commit();
+                    }
+                }
+            }
+        } catch (IllegalAccessError | IllegalStateException e) {
+            // the cache has been closed ...
+            LOGGER.debug("Unable to cache the text extracted from {0}: {1}", key, e.getMessage());
+        }
+    }
+
+    private boolean enqueue( Extraction extraction ) {
+        lock.lock();
         try {
-            String mimeType = inMemoryBinaryValue.getMimeType();
-            TextExtractorOutput output = new TextExtractorOutput();
-            // Run through the extractors and have them extract the text - the first one which accepts the mime-type will win
-            for (TextExtractor extractor : extractors) {
-                if (!extractor.supportsMimeType(mimeType)) {
+            if (!active) {
+                extraction.complete(null);
+                return true;
+            }
+            if (pendingCount >= maxQueueSize) {
+                return false;
+            }
+            ArrayDeque<Extraction> queue = pendingByMimeType.get(extraction.mimeType);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                pendingByMimeType.put(extraction.mimeType, queue);
+            }
+            queue.addLast(extraction);
+            ++pendingCount;
+            dispatch();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start as many of the pending extractions as the limits allow. The MIME types are visited in turn, so that the binaries of
+     * one type do not delay those of the others.
+     */
+    private void dispatch() {
+        assert lock.isHeldByCurrentThread();
+        boolean started = true;
+        while (started && active && running.size() < maxRunning) {
+            started = false;
+            for (Iterator<Map.Entry<String, ArrayDeque<Extraction>>> iter = pendingByMimeType.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry<String, ArrayDeque<Extraction>> mimeTypeQueue = iter.next();
+                String mimeType = mimeTypeQueue.getKey();
+                ArrayDeque<Extraction> queue = mimeTypeQueue.getValue();
+                if (queue.isEmpty()) {
+                    iter.remove();
                     continue;
                 }
-                extractor.extractFrom(inMemoryBinaryValue, output, context);
-                break;
+                if (running.size() >= maxRunning) break;
+                Integer runningCount = runningByMimeType.get(mimeType);
+                if (runningCount != null && runningCount >= maxRunningPerMimeType) continue;
+                Extraction extraction = queue.peekFirst();
+                Future<?> future = null;
+                try {
+                    future = extractingQueue.submit(() -> runQueued(extraction));
+                } catch (RejectedExecutionException e) {
+                    // All threads of the (possibly shared) pool are busy; this is tried again when one of our extractions
+                    // completes or when more work is submitted ...
+                    LOGGER.debug("The text extraction thread pool is busy; {0} binaries are waiting", pendingCount);
+                    return;
+                }
+                started(queue, future);
+                started = true;
             }
+        }
+    }
+
+    private Extraction started( ArrayDeque<Extraction> queue,
+                                Future<?> future ) {
+        Extraction extraction = queue.pollFirst();
+        --pendingCount;
+        running.put(extraction, future);
+        Integer runningCount = runningByMimeType.get(extraction.mimeType);
+        runningByMimeType.put(extraction.mimeType, runningCount == null ? 1 : runningCount + 1);
+        return extraction;
+    }
 
-            return output.getText();
-        } catch (Exception e) {
-            LOGGER.error(e, JcrI18n.errorExtractingTextFromBinary, inMemoryBinaryValue.getHexHash(), e.getLocalizedMessage());
+    /**
+     * Run a dispatched extraction and then, in the same thread, the pending extractions which the limits allow. A pool thread
+     * which is running an extraction cannot hand the next one to the pool, since the pool may have no other thread to run it.
+     */
+    private void runQueued( Extraction first ) {
+        Extraction extraction = first;
+        while (extraction != null) {
+            try {
+                extraction.run();
+            } finally {
+                extraction = completed(extraction);
+            }
         }
-        return null;
     }
 
-    public CountDownLatch extract( AbstractBinaryStore store,
-                                   BinaryValue binaryValue,
-                                   TextExtractor.Context context ) {
-        if (!extractionEnabled()) {
-            return null;
+    private Extraction completed( Extraction extraction ) {
+        lock.lock();
+        try {
+            Future<?> worker = running.remove(extraction);
+            if (worker == null) {
+                // shut down ...
+                return null;
+            }
+            Integer runningCount = runningByMimeType.get(extraction.mimeType);
+            if (runningCount != null && runningCount > 1) {
+                runningByMimeType.put(extraction.mimeType, runningCount - 1);
+            } else {
+                runningByMimeType.remove(extraction.mimeType);
+            }
+            Extraction next = active ? takeNext(worker) : null;
+            dispatch();
+            return next;
+        } finally {
+            lock.unlock();
         }
-        if (binaryValue instanceof InMemoryBinaryValue) {
-            // We never extract the text for binary values this way ...
-            return null;
+    }
+
+    /**
+     * Take the first pending extraction of a MIME type which is below its limit, to be run by the given worker.
+     */
+    private Extraction takeNext( Future<?> worker ) {
+        assert lock.isHeldByCurrentThread();
+        for (Iterator<Map.Entry<String, ArrayDeque<Extraction>>> iter = pendingByMimeType.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<String, ArrayDeque<Extraction>> mimeTypeQueue = iter.next();
+            ArrayDeque<Extraction> queue = mimeTypeQueue.getValue();
+            if (queue.isEmpty()) {
+                iter.remove();
+                continue;
+            }
+            Integer runningCount = runningByMimeType.get(mimeTypeQueue.getKey());
+            if (runningCount != null && runningCount >= maxRunningPerMimeType) continue;
+            // visit the other MIME types first the next time ...
+            iter.remove();
+            if (queue.size() > 1) pendingByMimeType.put(mimeTypeQueue.getKey(), queue);
+            return started(queue, worker);
         }
-        CheckArg.isNotNull(binaryValue, "binaryValue");
-        CountDownLatch latch = getWorkerLatch(binaryValue.getKey(), true);
-        extractionResults.add(extractingQueue.submit(new Worker(store, binaryValue, context, latch)));
-        return latch;
+        return null;
     }
 
-    public CountDownLatch getWorkerLatch( BinaryKey binaryKey,
-                                          boolean createIfMissing ) {
-        if (createIfMissing) {
-            CountDownLatch latch = new CountDownLatch(1);
-            CountDownLatch existingLatch = workerLatches.putIfAbsent(binaryKey, latch);
-            return existingLatch != null ? existingLatch : latch;
+    private TextExtractor extractorFor( String mimeType ) {
+        // The first extractor which accepts the mime-type will win ...
+        for (TextExtractor extractor : extractors) {
+            if (extractor.supportsMimeType(mimeType)) {
+                return extractor;
+            }
         }
-        return workerLatches.get(binaryKey);
+        return null;
     }
 
     private static List<TextExtractor> getConfiguredExtractors( JcrRepository.RunningState repository,
@@ -145,52 +467,65 @@ public final class TextExtractors {
     }
 
     /**
-     * A unit of work which extracts text from a binary value, stores that text in a store and notifies a latch that the
-     * extraction operation has finished.
+     * The extraction of the text of one binary value, whose result is shared by everybody asking for the text of that binary
+     * while the extraction is in progress. The extracted text is stored in the binary store or, for binaries which are not
+     * persisted in a store, in the cache.
      */
-    protected final class Worker implements Runnable {
+    protected final class Extraction implements Runnable {
         private final BinaryValue binaryValue;
         private final TextExtractor.Context context;
         private final AbstractBinaryStore store;
-        private final CountDownLatch latch;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final String mimeType;
+        private final TextExtractor extractor;
 
-        protected Worker( AbstractBinaryStore store,
-                          BinaryValue binaryValue,
-                          TextExtractor.Context context,
-                          CountDownLatch latch ) {
+        protected Extraction( AbstractBinaryStore store,
+                              BinaryValue binaryValue,
+                              TextExtractor.Context context ) {
             this.store = store;
             this.binaryValue = binaryValue;
             this.context = context;
-            this.latch = latch;
+            String mimeType = null;
+            try {
+                mimeType = binaryValue.getMimeType();
+            } catch (Throwable t) {
+                LOGGER.debug(t, "Unable to determine the MIME type of {0}", binaryValue.getKey());
+            }
+            this.mimeType = mimeType != null ? mimeType : "";
+            this.extractor = extractorFor(this.mimeType);
         }
 
         @SuppressWarnings( "synthetic-access" )
         @Override
         public void run() {
             if (!active) {
+                complete(null);
                 return;
             }
+            String text = null;
             try {
                 // only extract text if there isn't a stored value for the binary key (note that any changes in the binary will
                 // produce a different key)
-                if (store.getExtractedText(binaryValue) != null) {
-                    return;
-                }
-
-                String mimeType = binaryValue.getMimeType();
-                TextExtractorOutput output = new TextExtractorOutput();
-                // Run through the extractors and have them extract the text - the first one which accepts the mime-type will win
-                for (TextExtractor extractor : extractors) {
-                    if (!extractor.supportsMimeType(mimeType)) {
-                        continue;
+                if (store != null) {
+                    text = store.getExtractedText(binaryValue);
+                    if (text != null) {
+                        return;
                     }
+                }
+                if (extractor != null) {
+                    TextExtractorOutput output = new TextExtractorOutput();
                     extractor.extractFrom(binaryValue, output, context);
-                    break;
+                    text = output.getText();
                 }
-
-                String extractedText = output.getText();
-                if (!StringUtil.isBlank(extractedText)) {
-                    store.storeExtractedText(binaryValue, extractedText);
+                if (StringUtil.isBlank(text)) {
+                    text = null;
+                }
+                if (store != null) {
+                    if (text != null) {
+                        store.storeExtractedText(binaryValue, text);
+                    }
+                } else {
+                    cacheText(binaryValue.getKey().toString(), text != null ? text : NO_TEXT);
                 }
             } catch (InterruptedException ie) {
                 Thread.interrupted();
@@ -202,9 +537,15 @@ public final class TextExtractors {
                     LOGGER.error(t, JcrI18n.errorExtractingTextFromBinary, binaryValue.getHexHash(), t.getLocalizedMessage());
                 }
             } finally {
-                // decrement the latch regardless of success/failure to avoid blocking, as extraction is not retried
-                latch.countDown();
+                // complete regardless of success/failure to avoid blocking, as extraction is not retried
+                complete(text);
             }
         }
+
+        @SuppressWarnings( "synthetic-access" )
+        protected void complete( String text ) {
+            extractions.remove(binaryValue.getKey(), this);
+            result.complete(text);
+        }
     }
 }
@@ -45,7 +45,8 @@ public interface ChangeBus extends ChangeSetListener, Observable {
     public boolean hasObservers();
 
     /**
-     * Register the supplied observer which will be always notified in the same thread as the bus instance.
+     * Register the supplied observer which will be always notified in the same thread as the bus instance, before the changes
+     * are passed to the observers {@link #register registered} to be notified asynchronously.
      * This method does nothing if the observer reference is null.
      *
      * @param observer the observer to be added; may be null
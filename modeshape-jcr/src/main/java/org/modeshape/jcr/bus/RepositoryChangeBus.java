@@ -16,13 +16,21 @@
 
 package org.modeshape.jcr.bus;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import org.modeshape.common.collection.ring.PhasedBackoffWaitStrategy;
 import org.modeshape.common.collection.ring.RingBuffer;
+import org.modeshape.common.collection.ring.WaitStrategy;
+import org.modeshape.common.util.CheckArg;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.jcr.RepositoryStatistics;
 import org.modeshape.jcr.api.monitor.ValueMetric;
@@ -31,6 +39,10 @@ import org.modeshape.jcr.cache.change.ChangeSetListener;
 
 /**
  * Change bus implementation around a {@link org.modeshape.common.collection.ring.RingBuffer}
+ * <p>
+ * Each asynchronous listener consumes the change sets in its own thread. When a listener falls behind, all of the change sets
+ * available to it (up to a maximum batch size) are passed to it in a single {@link ChangeSetListener#notify(List)} call.
+ * </p>
  * 
  * @author Randall Hauch (rhauch@redhat.com)
  * @author Horia Chiorean (hchiorean@redhat.com)
@@ -38,6 +50,7 @@ import org.modeshape.jcr.cache.change.ChangeSetListener;
 public final class RepositoryChangeBus implements ChangeBus {
 
     public static final int DEFAULT_RING_BUFFER_SIZE = 1 << 10; // 1024
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
 
     protected static final Logger LOGGER = Logger.getLogger(RepositoryChangeBus.class);
     
@@ -80,12 +93,36 @@ public final class RepositoryChangeBus implements ChangeBus {
                                 ExecutorService executor,
                                 RepositoryStatistics statistics,
                                 int bufferSize) {
+        this(repositoryName, executor, statistics, bufferSize, new PhasedBackoffWaitStrategy(), DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a new change bus
+     * 
+     * @param repositoryName the repository name; may not be null
+     * @param executor the {@link java.util.concurrent.ExecutorService} which will be used internally to submit workers to
+     *        dispatching events to listeners.
+     * @param statistics a {@link RepositoryStatistics} instance used to record various metrics; may be null 
+     * @param bufferSize the total size of the ring buffer
+     * @param waitStrategy the strategy the listeners use to wait for new change sets; may not be null
+     * @param maxBatchSize the maximum number of change sets passed to a listener at once; 1 if the listeners should always be
+     *        notified of one change set at a time
+     */
+    public RepositoryChangeBus( String repositoryName,
+                                ExecutorService executor,
+                                RepositoryStatistics statistics,
+                                int bufferSize,
+                                WaitStrategy waitStrategy,
+                                int maxBatchSize ) {
+        CheckArg.isNotNull(waitStrategy, "waitStrategy");
+        CheckArg.isPositive(maxBatchSize, "maxBatchSize");
         this.ringBuffer = RepositoryRingBufferBuilder.withMultipleProducers(executor, 
-                                                                            new ChangeSetListenerConsumerAdapter(),
+                                                                            new ChangeSetListenerConsumerAdapter(maxBatchSize),
                                                                             statistics)
                                                      .ofSize(bufferSize)
                                                      .named(repositoryName)
                                                      .garbageCollect(true)
+                                                     .waitUsing(waitStrategy)
                                                      .build();
         this.statistics = statistics;
     }
@@ -96,6 +133,15 @@ public final class RepositoryChangeBus implements ChangeBus {
         return !inThreadListeners.isEmpty() || ringBuffer.hasConsumers();
     }
 
+    /**
+     * Get the number of change sets that each of the asynchronous listeners has yet to process.
+     *
+     * @return the number of change sets (possibly 0) still to be processed, keyed by listener; never null
+     */
+    public Map<ChangeSetListener, Long> getListenerLags() {
+        return ringBuffer.getConsumerLags();
+    }
+
     @Override
     public boolean register( ChangeSetListener observer ) {
         if (observer == null || shutdown.get()) return false;
@@ -176,15 +222,9 @@ public final class RepositoryChangeBus implements ChangeBus {
             throw new IllegalStateException("Change bus has been already shut down, should not have any more observers");
         }
 
-        // Add the change set into the buffer so it can be processed by the asynchronous listeners ...
-        ringBuffer.add(changeSet);
-
-        if (statistics != null) {
-            // Increment the statistics
-            statistics.increment(ValueMetric.EVENT_COUNT);
-        }
-        
-        // And process all of the in-thread listeners ...
+        // Process all of the in-thread listeners before any asynchronous listener can see the changes, so that the in-thread
+        // listeners can keep track of what the asynchronous ones have yet to process ...
+        RuntimeException failure = null;
         for (ChangeSetListener listener : inThreadListeners) {
             try {
                 listener.notify(changeSet);
@@ -192,25 +232,62 @@ public final class RepositoryChangeBus implements ChangeBus {
                 if (shutdown.get()) {
                     // The repository has been shutdown, so we have to ignore these changes
                 } else {
-                    throw e;
+                    failure = e;
+                    break;
                 }
             }
         }
+
+        // Add the change set into the buffer so it can be processed by the asynchronous listeners ...
+        ringBuffer.add(changeSet);
+
+        if (statistics != null) {
+            // Increment the statistics
+            statistics.increment(ValueMetric.EVENT_COUNT);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
     }
 
     protected class ChangeSetListenerConsumerAdapter implements RingBuffer.ConsumerAdapter<ChangeSet, ChangeSetListener> {
+        private final int maxBatchSize;
+        /**
+         * The change sets not yet passed to each listener; each list is only used by the thread of its listener.
+         */
+        private final ConcurrentMap<ChangeSetListener, List<ChangeSet>> batches = new ConcurrentHashMap<>();
+
+        protected ChangeSetListenerConsumerAdapter( int maxBatchSize ) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
         @Override
         public boolean consume( ChangeSetListener consumer,
                                 ChangeSet event,
                                 long position,
                                 long maxPosition ) {
-            consumer.notify(event);
+            List<ChangeSet> batch = batches.get(consumer);
+            if (batch == null) {
+                if (position == maxPosition || maxBatchSize == 1) {
+                    // This is the only available change set ...
+                    consumer.notify(event);
+                    return true;
+                }
+                batch = new ArrayList<>(Math.min(maxBatchSize, (int)Math.min(Integer.MAX_VALUE, maxPosition - position + 1)));
+                batches.put(consumer, batch);
+            }
+            batch.add(event);
+            if (position == maxPosition || batch.size() >= maxBatchSize) {
+                batches.remove(consumer);
+                consumer.notify(batch);
+            }
             return true;
         }
 
         @Override
         public void close( ChangeSetListener consumer ) {
-            // nothing to do here
+            batches.remove(consumer);
         }
 
         @Override
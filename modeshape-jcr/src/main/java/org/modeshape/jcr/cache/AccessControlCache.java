@@ -0,0 +1,364 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.jcr.security.Privilege;
+import org.modeshape.common.annotation.Immutable;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.jcr.ModeShapeLexicon;
+import org.modeshape.jcr.ModeShapePermissions;
+import org.modeshape.jcr.cache.change.AbstractNodeChange;
+import org.modeshape.jcr.cache.change.Change;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetListener;
+import org.modeshape.jcr.cache.change.NodeAdded;
+import org.modeshape.jcr.cache.change.NodeMoved;
+import org.modeshape.jcr.cache.change.NodeRemoved;
+import org.modeshape.jcr.cache.change.RepositoryMetadataChanged;
+import org.modeshape.jcr.cache.change.WorkspaceRemoved;
+import org.modeshape.jcr.security.SecurityContext;
+import org.modeshape.jcr.security.SimplePrincipal;
+import org.modeshape.jcr.value.Path;
+
+/**
+ * A repository-wide cache of the effective access control lists of the persisted nodes, keyed by node key. The effective ACL of
+ * a node is the ACL of the nearest node at or above it that has a non-empty ACL, and its privileges are compiled into bit masks
+ * so that checking permissions does not need to walk up the ancestors or look at the {@code mode:acl} content.
+ * <p>
+ * The cache listens to the changes made in the repository, and is cleared whenever {@code mode:acl} content is changed or nodes
+ * are moved, since either may change which ACL governs any number of nodes.
+ * </p>
+ */
+@ThreadSafe
+public final class AccessControlCache implements ChangeSetListener {
+
+    /**
+     * The value used for privileges or actions that are not known, and which therefore cannot be checked with bit masks.
+     */
+    public static final long UNKNOWN = -1L;
+
+    private static final Map<String, Long> MASKS_BY_PRIVILEGE_NAME = new HashMap<>();
+    private static final Map<String, Long> MASKS_BY_ACTION = new HashMap<>();
+
+    static {
+        String[] leafPrivileges = {Privilege.JCR_ADD_CHILD_NODES, Privilege.JCR_LIFECYCLE_MANAGEMENT, Privilege.JCR_LOCK_MANAGEMENT,
+            Privilege.JCR_MODIFY_ACCESS_CONTROL, Privilege.JCR_MODIFY_PROPERTIES, Privilege.JCR_NODE_TYPE_MANAGEMENT,
+            Privilege.JCR_READ, Privilege.JCR_READ_ACCESS_CONTROL, Privilege.JCR_REMOVE_CHILD_NODES, Privilege.JCR_REMOVE_NODE,
+            Privilege.JCR_RETENTION_MANAGEMENT, Privilege.JCR_VERSION_MANAGEMENT};
+        long all = 0L;
+        for (int i = 0; i != leafPrivileges.length; ++i) {
+            long mask = 1L << i;
+            MASKS_BY_PRIVILEGE_NAME.put(localName(leafPrivileges[i]), mask);
+            all |= mask;
+        }
+        MASKS_BY_PRIVILEGE_NAME.put(localName(Privilege.JCR_WRITE), mask(Privilege.JCR_MODIFY_PROPERTIES)
+                                                                    | mask(Privilege.JCR_ADD_CHILD_NODES)
+                                                                    | mask(Privilege.JCR_REMOVE_NODE)
+                                                                    | mask(Privilege.JCR_REMOVE_CHILD_NODES));
+        MASKS_BY_PRIVILEGE_NAME.put(localName(Privilege.JCR_ALL), all);
+
+        // These are the same actions as those known by the Privileges of each session ...
+        MASKS_BY_ACTION.put(ModeShapePermissions.ADD_NODE, mask(Privilege.JCR_ADD_CHILD_NODES));
+        MASKS_BY_ACTION.put(ModeShapePermissions.MODIFY_ACCESS_CONTROL, mask(Privilege.JCR_MODIFY_ACCESS_CONTROL));
+        MASKS_BY_ACTION.put(ModeShapePermissions.SET_PROPERTY, mask(Privilege.JCR_MODIFY_PROPERTIES));
+        MASKS_BY_ACTION.put(ModeShapePermissions.REGISTER_TYPE, mask(Privilege.JCR_NODE_TYPE_MANAGEMENT));
+        MASKS_BY_ACTION.put(ModeShapePermissions.READ, mask(Privilege.JCR_READ));
+        MASKS_BY_ACTION.put(ModeShapePermissions.READ_ACCESS_CONTROL, mask(Privilege.JCR_READ_ACCESS_CONTROL));
+        MASKS_BY_ACTION.put(ModeShapePermissions.REMOVE_CHILD_NODES, mask(Privilege.JCR_REMOVE_CHILD_NODES));
+        MASKS_BY_ACTION.put(ModeShapePermissions.REMOVE, mask(Privilege.JCR_REMOVE_NODE));
+    }
+
+    private static String localName( String expandedName ) {
+        return expandedName.substring(expandedName.indexOf('}') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static long mask( String expandedName ) {
+        return MASKS_BY_PRIVILEGE_NAME.get(localName(expandedName));
+    }
+
+    /**
+     * Get the bit mask of the privileges required by the supplied {@link ModeShapePermissions actions}.
+     *
+     * @param actions the actions; may not be null
+     * @return the bit mask of the required privileges, or {@link #UNKNOWN} if any of the actions does not map to a privilege
+     */
+    public static long privilegesFor( String... actions ) {
+        long required = 0L;
+        for (String action : actions) {
+            Long mask = MASKS_BY_ACTION.get(action);
+            if (mask == null) return UNKNOWN;
+            required |= mask;
+        }
+        return required;
+    }
+
+    /**
+     * Get the bit mask of the privilege with the supplied name, which is either the qualified name using the "jcr" prefix or
+     * the expanded name.
+     *
+     * @param name the name of the privilege; may not be null
+     * @return the bit mask, or {@link #UNKNOWN} if the privilege is not known
+     */
+    private static long privilegeFor( String name ) {
+        String localName;
+        if (name.contains("}")) {
+            localName = name.substring(name.indexOf('}') + 1);
+        } else if (name.startsWith("jcr:")) {
+            localName = name.substring(4);
+        } else {
+            return UNKNOWN;
+        }
+        Long mask = MASKS_BY_PRIVILEGE_NAME.get(localName.toLowerCase(Locale.ROOT));
+        return mask != null ? mask : UNKNOWN;
+    }
+
+    private final ConcurrentMap<NodeKey, EffectiveAcl> aclsByNodeKey;
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Create a new cache.
+     *
+     * @param aclsByNodeKey the (bounded) map used to store the effective ACL of each node; may not be null
+     */
+    public AccessControlCache( ConcurrentMap<NodeKey, EffectiveAcl> aclsByNodeKey ) {
+        assert aclsByNodeKey != null;
+        this.aclsByNodeKey = aclsByNodeKey;
+    }
+
+    /**
+     * Get the effective ACL of the supplied node, which must not have any transient changes.
+     *
+     * @param node the node; may not be null
+     * @param cache the cache from which the node and its ancestors are read, which must not have any transient changes; may not
+     *        be null
+     * @return the effective ACL of the node; never null
+     */
+    public EffectiveAcl effectiveAcl( CachedNode node,
+                                      NodeCache cache ) {
+        // The ancestors of shared (e.g., system) nodes depend upon the workspace, so only this workspace's nodes are cached ...
+        String workspaceKey = cache.getRootKey().getWorkspaceKey();
+        long version = this.version.get();
+        // Walk up the hierarchy until we find a cached ACL or a set of non-empty permissions, or reach the root or a missing parent
+        List<NodeKey> governed = new ArrayList<>();
+        Map<String, Set<String>> permissions = null;
+        EffectiveAcl acl = null;
+        while (node != null) {
+            NodeKey key = node.getKey();
+            if (workspaceKey.equals(key.getWorkspaceKey())) {
+                acl = aclsByNodeKey.get(key);
+                if (acl != null) {
+                    break;
+                }
+                governed.add(key);
+            }
+            permissions = node.getPermissions(cache);
+            if (permissions != null && !permissions.isEmpty()) {
+                break;
+            }
+            NodeKey parentKey = node.getParentKey(cache);
+            node = parentKey != null ? cache.getNode(parentKey) : null;
+        }
+        if (acl == null) {
+            acl = node != null ? new EffectiveAcl(node.getKey(), permissions) : EffectiveAcl.DEFAULT;
+        }
+        if (governed.isEmpty()) {
+            return acl;
+        }
+        for (NodeKey key : governed) {
+            aclsByNodeKey.put(key, acl);
+        }
+        if (this.version.get() != version) {
+            // The ACLs may have been read from content that has since been changed ...
+            for (NodeKey key : governed) {
+                aclsByNodeKey.remove(key, acl);
+            }
+        }
+        return acl;
+    }
+
+    /**
+     * Remove all of the effective ACLs from this cache.
+     */
+    public void clear() {
+        version.incrementAndGet();
+        aclsByNodeKey.clear();
+    }
+
+    @Override
+    public void notify( ChangeSet changeSet ) {
+        for (Change change : changeSet) {
+            if (change instanceof NodeMoved || change instanceof RepositoryMetadataChanged || change instanceof WorkspaceRemoved) {
+                clear();
+                return;
+            }
+            if (change instanceof AbstractNodeChange) {
+                if (isAccessControlContent(((AbstractNodeChange)change).getPath())) {
+                    clear();
+                    return;
+                }
+                if (change instanceof NodeAdded || change instanceof NodeRemoved) {
+                    // A node with the same key may later be added under a different ACL ...
+                    version.incrementAndGet();
+                    aclsByNodeKey.remove(((AbstractNodeChange)change).getKey());
+                }
+            }
+        }
+    }
+
+    private static boolean isAccessControlContent( Path path ) {
+        if (path == null) {
+            return false;
+        }
+        for (Path.Segment segment : path) {
+            if (segment.getName().equals(ModeShapeLexicon.ACCESS_LIST_NODE_NAME)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The effective access control list of one or more nodes, with the privileges of each principal compiled into a bit mask.
+     */
+    @Immutable
+    public static final class EffectiveAcl {
+
+        /**
+         * The ACL used when no node has an ACL, and which grants all privileges to everyone.
+         */
+        private static final EffectiveAcl DEFAULT = new EffectiveAcl(null, null);
+
+        private final NodeKey governingKey;
+        private final Map<String, Long> privilegesByPrincipal;
+        private final boolean compiled;
+
+        private EffectiveAcl( NodeKey governingKey,
+                                Map<String, Set<String>> permissions ) {
+            this.governingKey = governingKey;
+            Map<String, Long> privilegesByPrincipal = new HashMap<>();
+            boolean compiled = true;
+            if (permissions != null) {
+                for (Map.Entry<String, Set<String>> entry : permissions.entrySet()) {
+                    long mask = entry.getValue().isEmpty() ? UNKNOWN : 0L;
+                    for (String privilegeName : entry.getValue()) {
+                        long privilege = privilegeFor(privilegeName);
+                        if (privilege == UNKNOWN) {
+                            mask = UNKNOWN;
+                            break;
+                        }
+                        mask |= privilege;
+                    }
+                    if (mask == UNKNOWN || "unknown".equals(entry.getKey())) {
+                        // This ACL can only be evaluated by the access control manager ...
+                        compiled = false;
+                        break;
+                    }
+                    privilegesByPrincipal.put(entry.getKey(), mask);
+                }
+            }
+            this.privilegesByPrincipal = Collections.unmodifiableMap(privilegesByPrincipal);
+            this.compiled = compiled;
+        }
+
+        /**
+         * Get the key of the node whose ACL this is.
+         *
+         * @return the node key, or null if no node has an ACL and all privileges are granted to everyone
+         */
+        public NodeKey getGoverningKey() {
+            return governingKey;
+        }
+
+        /**
+         * Determine whether the privileges of this ACL have been compiled into bit masks. An ACL that uses privileges or
+         * principals that are not known is not compiled.
+         *
+         * @return true if the ACL is compiled, or false otherwise
+         */
+        public boolean isCompiled() {
+            return compiled;
+        }
+
+        /**
+         * Determine whether this ACL grants all privileges to everyone.
+         *
+         * @return true if this ACL has no entries
+         */
+        public boolean isEmpty() {
+            return privilegesByPrincipal.isEmpty();
+        }
+
+        /**
+         * Get the bit masks of the entries of this ACL that apply to the user with the supplied security context.
+         *
+         * @param context the security context; may not be null
+         * @return the bit masks of the privileges of each applicable entry; never null but possibly empty
+         */
+        public long[] privilegesFor( SecurityContext context ) {
+            String userName = context.getUserName();
+            if (userName != null && userName.startsWith("<") && userName.endsWith(">")) {
+                userName = userName.substring(1, userName.length() - 1);
+            }
+            long[] masks = new long[privilegesByPrincipal.size()];
+            int count = 0;
+            for (Map.Entry<String, Long> entry : privilegesByPrincipal.entrySet()) {
+                String principal = entry.getKey();
+                if (SimplePrincipal.EVERYONE.getName().equals(principal) || principal.equals(userName)
+                    || context.hasRole(principal)) {
+                    masks[count++] = entry.getValue();
+                }
+            }
+            long[] result = new long[count];
+            System.arraycopy(masks, 0, result, 0, count);
+            return result;
+        }
+
+        /**
+         * Determine whether the entries with the supplied privileges grant all of the required privileges. Like the access
+         * control lists, a single entry must grant all of the required privileges.
+         *
+         * @param entries the bit masks of the applicable entries, as returned by {@link #privilegesFor(SecurityContext)}
+         * @param required the bit mask of the required privileges
+         * @return true if the privileges are granted, or false otherwise
+         */
+        public boolean grants( long[] entries,
+                               long required ) {
+            if (isEmpty()) {
+                return true;
+            }
+            for (long entry : entries) {
+                if ((entry & required) == required) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "EffectiveACL[" + governingKey + ", " + privilegesByPrincipal + "]";
+        }
+    }
+}
@@ -167,6 +167,16 @@ public interface ChildReferences extends Iterable<ChildReference> {
     @Override
     Iterator<ChildReference> iterator();
 
+    /**
+     * Get an iterator over the children, starting with the child at the supplied position. This is equivalent to skipping the
+     * first <code>offset</code> children of {@link #iterator()}, but may be much cheaper when there are large numbers of
+     * children.
+     *
+     * @param offset the number of children to skip; may not be negative
+     * @return the iterator; never null
+     */
+    Iterator<ChildReference> iterator( long offset );
+
     /**
      * Get an iterator over all of the children that have {@link Segment#getName() names} (excluding same-name-sibling indexes)
      * matching at least one of the supplied patterns.
@@ -51,6 +51,7 @@ import org.modeshape.jcr.cache.change.RecordingChanges;
 import org.modeshape.jcr.cache.change.RepositoryMetadataChanged;
 import org.modeshape.jcr.cache.change.WorkspaceAdded;
 import org.modeshape.jcr.cache.change.WorkspaceRemoved;
+import org.modeshape.jcr.cache.document.BulkNodeWriter;
 import org.modeshape.jcr.cache.document.DocumentOptimizer;
 import org.modeshape.jcr.cache.document.DocumentStore;
 import org.modeshape.jcr.cache.document.DocumentTranslator;
@@ -59,6 +60,7 @@ import org.modeshape.jcr.cache.document.LocalDocumentStore.DocumentOperationResu
 import org.modeshape.jcr.cache.document.ReadOnlySessionCache;
 import org.modeshape.jcr.cache.document.TransactionalWorkspaceCaches;
 import org.modeshape.jcr.cache.document.WorkspaceCache;
+import org.modeshape.jcr.cache.document.WorkspacePathCache;
 import org.modeshape.jcr.cache.document.WritableSessionCache;
 import org.modeshape.jcr.federation.FederatedDocumentStore;
 import org.modeshape.jcr.spi.federation.Connector;
@@ -103,6 +105,7 @@ public class RepositoryCache {
     private final ConcurrentHashMap<String, WorkspaceCache> workspaceCachesByName;
     private final AtomicLong minimumStringLengthForBinaryStorage = new AtomicLong();
     private final AtomicBoolean accessControlEnabled = new AtomicBoolean(false);
+    private final AccessControlCache accessControlCache;
     private final String name;
     private final String repoKey;
     private final String sourceKey;
@@ -283,6 +286,10 @@ public class RepositoryCache {
 
         this.changeBus = changeBus;
         this.changeBus.registerInThread(new ChangesToWorkspacesListener());
+        this.accessControlCache = new AccessControlCache(Caffeine.newBuilder().maximumSize(workspaceCacheSize)
+                                                                 .executor(Runnable::run)
+                                                                 .<NodeKey, AccessControlCache.EffectiveAcl>build().asMap());
+        this.changeBus.registerInThread(this.accessControlCache);
 
         // Make sure the system workspace is configured to have a 'jcr:system' node ...
         SessionCache systemSession = createSession(context, systemWorkspaceName, false);
@@ -408,6 +415,15 @@ public class RepositoryCache {
     public final boolean isAccessControlEnabled() {
         return accessControlEnabled.get();
     }
+
+    /**
+     * Get the repository-wide cache of the effective access control lists of the persisted nodes.
+     *
+     * @return the access control cache; never null
+     */
+    public final AccessControlCache accessControlCache() {
+        return accessControlCache;
+    }
     
     protected LocalDocumentStore localStore() {
         return documentStore.localStore();
@@ -697,7 +713,7 @@ public class RepositoryCache {
 
             WorkspaceCache result = new WorkspaceCache(context, getKey(), name, systemWorkspaceCache,
                                                        documentStore, translator, rootKey, nodeCache,
-                                                       changeBus, repositoryEnvironment());
+                                                       changeBus, repositoryEnvironment(), pathCacheForWorkspace());
 
             if (documentStore.storeIfAbsent(rootKeyString, rootDoc) == null) {
                 // we are the first node to perform the initialization (in a cluster), so we need to link the system node
@@ -734,6 +750,11 @@ public class RepositoryCache {
         return Caffeine.newBuilder().maximumSize(workspaceCacheSize).executor(Runnable::run).build();
     }
 
+    protected WorkspacePathCache pathCacheForWorkspace() {
+        // the paths (including those at which there are no nodes) are bounded just like the nodes
+        return new WorkspacePathCache(workspaceCacheSize, sourceKey, context().getValueFactories().getPathFactory());
+    }
+
     public final DocumentTranslator getDocumentTranslator() {
         return this.translator;
     }
@@ -946,7 +967,36 @@ public class RepositoryCache {
     }
 
     /**
-     * Optimize the children in the supplied node document
+     * Create a writer that stores large numbers of new nodes in the named workspace directly, without the change tracking of a
+     * session.
+     *
+     * @param context the context of the user writing the nodes; may not be null
+     * @param workspaceName the name of the workspace; may not be null
+     * @return the new writer; never null
+     * @throws WorkspaceNotFoundException if no such workspace exists
+     */
+    public BulkNodeWriter createBulkWriter( ExecutionContext context,
+                                            String workspaceName ) {
+        return new BulkNodeWriter(context, workspace(workspaceName), repositoryEnvironment);
+    }
+
+    /**
+     * Set the number of children that each block of children should have, so that the blocks that are changed when sessions save
+     * are split or merged as soon as they have too many or too few children. The blocks that are not changed are left for
+     * {@link #optimizeChildren(int, int)}.
+     *
+     * @param targetCountPerBlock the target number of children per block, or 0 if the blocks are not to be optimized when saved
+     * @param tolerance the allowed tolerance between the target and actual number of children per block
+     */
+    public void setChildrenBlockSize( int targetCountPerBlock,
+                                      int tolerance ) {
+        translator.setChildrenBlockSize(targetCountPerBlock, tolerance);
+    }
+
+    /**
+     * Optimize the children in all of the node documents. Since the blocks of children that are changed are also optimized when
+     * sessions save (see {@link #setChildrenBlockSize(int, int)}), this mostly repairs the blocks that were written before and
+     * (re)builds the indexes over the blocks.
      * <p>
      * Note that this method changes the underlying db as well as the given document, so *it must* be called either from a
      * transactional context or it must be followed by a session.save call, otherwise there might be inconsistencies between what
@@ -15,6 +15,8 @@
  */
 package org.modeshape.jcr.cache.change;
 
+import java.util.List;
+
 /**
  * Internal listener interface.
  */
@@ -26,4 +28,29 @@ public interface ChangeSetListener {
      * @param changeSet a {@code non-null} {@link ChangeSet}
      */
     void notify( ChangeSet changeSet );
+
+    /**
+     * Notifies a listener of several consecutive change sets at once, so that listeners which can process the changes more
+     * efficiently in bulk (for example by committing once) can do so. The default implementation notifies this listener of each
+     * change set in turn and, if some of them fail, rethrows the first failure once all of them have been processed.
+     *
+     * @param changeSets the {@code non-null} and non-empty list of {@link ChangeSet}s, in the order they were made
+     */
+    default void notify( List<ChangeSet> changeSets ) {
+        RuntimeException failure = null;
+        for (ChangeSet changeSet : changeSets) {
+            try {
+                notify(changeSet);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
 }
@@ -66,6 +66,15 @@ public abstract class AbstractChildReferences implements ChildReferences {
         return iterator(defaultContext());
     }
 
+    @Override
+    public Iterator<ChildReference> iterator( long offset ) {
+        Iterator<ChildReference> iter = iterator();
+        while (offset-- > 0 && iter.hasNext()) {
+            iter.next();
+        }
+        return iter;
+    }
+
     @Override
     public Iterator<ChildReference> iterator( Name name,
                                               Context context ) {
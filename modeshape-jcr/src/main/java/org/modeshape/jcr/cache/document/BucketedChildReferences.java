@@ -55,6 +55,8 @@ final class BucketedChildReferences extends AbstractChildReferences {
     private final DocumentTranslator translator;
     private final Map<BucketId, Bucket> rangeBucketsById;
     private final Set<BucketId> bucketIds; 
+    private final boolean hasStripes;
+    private volatile Stripes stripes;
     
     protected BucketedChildReferences( Document parent, DocumentTranslator translator ) {
         // the power of 16 which indicates how many buckets
@@ -76,11 +78,26 @@ final class BucketedChildReferences extends AbstractChildReferences {
             }
         }
         this.rangeBucketsById = new LinkedHashMap<>(bucketIds.size());
+        this.hasStripes = translator.hasBucketStripes(parent);
     }
 
     @Override
     public long size() {
-        return size;
+        return hasStripes ? size + stripes().size : size;
+    }
+
+    protected Set<BucketId> bucketIds() {
+        return hasStripes ? stripes().bucketIds : bucketIds;
+    }
+
+    private Stripes stripes() {
+        // the stripes are only needed when counting or iterating over all the children, so load them lazily
+        Stripes result = stripes;
+        if (result == null) {
+            result = new Stripes(translator.loadBucketStripes(parentKey), bucketIds);
+            stripes = result;
+        }
+        return result;
     }
     
     @Override
@@ -134,7 +151,7 @@ final class BucketedChildReferences extends AbstractChildReferences {
     public ChildReference getChild( NodeKey key, Context context ) {
        
         ChildReference ref = null;
-        for (BucketId bucketId : bucketIds) {
+        for (BucketId bucketId : bucketIds()) {
             Bucket bucket = loadBucket(bucketId);
             ref = bucket != null ? bucket.childReferenceFor(key) : null;
             if (ref != null) {
@@ -158,7 +175,7 @@ final class BucketedChildReferences extends AbstractChildReferences {
 
     @Override
     public Iterator<NodeKey> getAllKeys() {
-        final Iterator<BucketId> bucketIdsIterator = bucketIds.iterator();  
+        final Iterator<BucketId> bucketIdsIterator = bucketIds().iterator();  
         return bucketsIterator(null, bucketIdsIterator, new ChildReferenceExtractor<NodeKey>() {
             @Override
             public NodeKey extractFrom( ChildReference ref ) {
@@ -176,7 +193,7 @@ final class BucketedChildReferences extends AbstractChildReferences {
 
     @Override
     public Iterator<ChildReference> iterator( final Context context ) {
-        return bucketsIterator(context, bucketIds.iterator(), new ChildReferenceExtractor<ChildReference>() {
+        return bucketsIterator(context, bucketIds().iterator(), new ChildReferenceExtractor<ChildReference>() {
             @Override
             public ChildReference extractFrom( ChildReference ref ) {
                 return ref;
@@ -287,6 +304,35 @@ final class BucketedChildReferences extends AbstractChildReferences {
         }
     }
 
+    /**
+     * The buckets and the number of the children which other sessions have appended to an unordered collection without changing
+     * the collection's document, as recorded in the stripes of the collection.
+     */
+    private static final class Stripes {
+        private final long size;
+        private final Set<BucketId> bucketIds;
+
+        protected Stripes( List<Document> stripeDocs,
+                           Set<BucketId> parentBucketIds ) {
+            long size = 0;
+            Set<BucketId> bucketIds = new HashSet<>(parentBucketIds);
+            for (Document stripeDoc : stripeDocs) {
+                Long stripeSize = stripeDoc.getLong(DocumentConstants.SIZE);
+                if (stripeSize != null) {
+                    size += stripeSize;
+                }
+                List<?> stripeBucketIds = stripeDoc.getArray(DocumentConstants.BUCKETS);
+                if (stripeBucketIds != null) {
+                    for (Object bucketId : stripeBucketIds) {
+                        bucketIds.add(new BucketId(bucketId.toString()));
+                    }
+                }
+            }
+            this.size = size;
+            this.bucketIds = bucketIds;
+        }
+    }
+
     protected static class Bucket implements Iterable<NodeKey> {
         private final BucketId id;
         private final Map<NodeKey, String> childNamesByKey;
@@ -0,0 +1,312 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache.document;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.modeshape.common.annotation.NotThreadSafe;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.JcrI18n;
+import org.modeshape.jcr.RepositoryEnvironment;
+import org.modeshape.jcr.TimeoutException;
+import org.modeshape.jcr.cache.DocumentAlreadyExistsException;
+import org.modeshape.jcr.cache.DocumentNotFoundException;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.RecordingChanges;
+import org.modeshape.jcr.txn.Transactions;
+import org.modeshape.jcr.txn.Transactions.Transaction;
+import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.BinaryValue;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.Path;
+import org.modeshape.jcr.value.Property;
+import org.modeshape.jcr.value.binary.BinaryStore;
+import org.modeshape.jcr.value.binary.BinaryStoreException;
+import org.modeshape.jcr.value.binary.ExternalBinaryValue;
+import org.modeshape.jcr.value.binary.InMemoryBinaryValue;
+import org.modeshape.schematic.Schematic;
+import org.modeshape.schematic.document.EditableDocument;
+
+/**
+ * A writer of large numbers of new nodes, which stores their documents directly in the {@link DocumentStore} without the change
+ * tracking of a {@link WritableSessionCache}. The new nodes are {@link #add added} to a batch that is kept in memory, and the
+ * whole batch is {@link #write() written} in a single transaction that builds the children of each parent (including the
+ * buckets of unordered collections) in memory, locks only the existing parents to which children are appended, and publishes a
+ * single {@link ChangeSet} describing all of the new nodes.
+ * <p>
+ * The caller is responsible for validating the nodes against their node types and for adding parents before their children.
+ * </p>
+ */
+@NotThreadSafe
+public class BulkNodeWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(BulkNodeWriter.class);
+    private static final int LOCK_ATTEMPTS = 3;
+
+    private final ExecutionContext context;
+    private final WorkspaceCache workspaceCache;
+    private final RepositoryEnvironment repositoryEnvironment;
+    private final Map<NodeKey, NewNode> nodes = new LinkedHashMap<>();
+
+    /**
+     * Create a writer of new nodes into the supplied workspace.
+     *
+     * @param context the context of the user writing the nodes; may not be null
+     * @param workspaceCache the cache of the workspace; may not be null
+     * @param repositoryEnvironment the environment of the repository; may not be null
+     */
+    public BulkNodeWriter( ExecutionContext context,
+                           WorkspaceCache workspaceCache,
+                           RepositoryEnvironment repositoryEnvironment ) {
+        this.context = context;
+        this.workspaceCache = workspaceCache;
+        this.repositoryEnvironment = repositoryEnvironment;
+    }
+
+    /**
+     * Add a new node to the current batch. The parent must either exist in the workspace or have been added before.
+     *
+     * @param key the key of the new node; may not be null
+     * @param parentKey the key of the parent; may not be null
+     * @param path the path of the new node; may not be null
+     * @param primaryType the name of the primary type of the new node; may not be null
+     * @param mixinTypes the names of the mixin types of the new node; may be empty but not null
+     * @param properties the properties of the new node, including its primary and mixin types; may not be null
+     * @param bucketIdLength the length of the ids of the buckets of the new node if it is an unordered collection, or 0
+     *        otherwise
+     */
+    public void add( NodeKey key,
+                     NodeKey parentKey,
+                     Path path,
+                     Name primaryType,
+                     Set<Name> mixinTypes,
+                     Collection<Property> properties,
+                     int bucketIdLength ) {
+        nodes.put(key, new NewNode(key, parentKey, path, primaryType, mixinTypes, properties, bucketIdLength));
+    }
+
+    /**
+     * Get the number of new nodes in the current batch.
+     *
+     * @return the number of nodes that have been added but not yet written
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Write all the new nodes of the current batch in a single transaction, and start a new batch.
+     *
+     * @return the changes describing the new nodes, or null if the batch was empty
+     * @throws TimeoutException if the existing parents of the new nodes could not be locked
+     * @throws DocumentNotFoundException if one of the existing parents has been removed
+     * @throws DocumentAlreadyExistsException if one of the new nodes has the key of an existing node
+     */
+    public ChangeSet write() {
+        if (nodes.isEmpty()) {
+            return null;
+        }
+        DocumentStore documentStore = workspaceCache.documentStore();
+        DocumentTranslator translator = workspaceCache.translator();
+
+        // Build the children of all the parents in memory, and find the documents that have to be locked ...
+        Map<NodeKey, MutableChildReferences> childrenByParent = new LinkedHashMap<>();
+        Set<String> keysToLock = new TreeSet<>();
+        for (NewNode node : nodes.values()) {
+            MutableChildReferences children = childrenByParent.get(node.parentKey);
+            if (children == null) {
+                children = new MutableChildReferences();
+                childrenByParent.put(node.parentKey, children);
+                if (!nodes.containsKey(node.parentKey)) {
+                    keysToLock.add(node.parentKey.toString());
+                }
+            }
+            children.append(node.key, node.path.getLastSegment().getName());
+            for (Property property : node.properties) {
+                for (Object value : property) {
+                    if (isStoredBinary(value)) {
+                        String sha1 = ((BinaryValue)value).getHexHash();
+                        keysToLock.add(translator.keyForBinaryReferenceDocument(sha1, node.key.toString()));
+                    }
+                }
+            }
+        }
+
+        RecordingChanges changes = new RecordingChanges(context.getId(), context.getProcessId(),
+                                                        workspaceCache.getRepositoryKey(), workspaceCache.getWorkspaceName(),
+                                                        repositoryEnvironment.journalId());
+        Transactions txns = repositoryEnvironment.getTransactions();
+        Transaction txn = null;
+        try {
+            txn = txns.begin();
+            lock(documentStore, keysToLock);
+            Set<BinaryKey> usedBinaryKeys = new HashSet<>();
+            Set<NodeKey> changedNodes = new HashSet<>(nodes.keySet());
+
+            // Append the children of the existing parents ...
+            for (Map.Entry<NodeKey, MutableChildReferences> entry : childrenByParent.entrySet()) {
+                NodeKey parentKey = entry.getKey();
+                if (nodes.containsKey(parentKey)) {
+                    continue;
+                }
+                String parentKeyStr = parentKey.toString();
+                EditableDocument parentDoc = documentStore.edit(parentKeyStr, false);
+                if (parentDoc == null) {
+                    // the parent was removed by someone else since the nodes were added ...
+                    throw new DocumentNotFoundException(parentKeyStr);
+                }
+                appendChildren(documentStore, translator, parentDoc, entry.getValue());
+                changedNodes.add(parentKey);
+            }
+
+            // Then create the documents of the new nodes ...
+            for (NewNode node : nodes.values()) {
+                String keyStr = node.key.toString();
+                EditableDocument doc = Schematic.newDocument();
+                translator.setKey(doc, node.key);
+                translator.setParents(doc, node.parentKey, null, null);
+                if (node.bucketIdLength > 0) {
+                    translator.addInternalProperties(doc, Collections.<String, Object>singletonMap(DocumentConstants.BUCKET_ID_LENGTH,
+                                                                                                   node.bucketIdLength));
+                }
+                Map<Name, Property> properties = new HashMap<>();
+                for (Property property : node.properties) {
+                    translator.setProperty(doc, property, null, usedBinaryKeys);
+                    properties.put(property.getName(), property);
+                }
+                MutableChildReferences children = childrenByParent.get(node.key);
+                if (children != null) {
+                    appendChildren(documentStore, translator, doc, children);
+                }
+                if (documentStore.storeIfAbsent(keyStr, doc) != null) {
+                    throw new DocumentAlreadyExistsException(keyStr);
+                }
+                changes.nodeCreated(node.key, node.parentKey, node.path, node.primaryType, node.mixinTypes, properties);
+            }
+
+            for (BinaryKey binaryKey : usedBinaryKeys) {
+                changes.binaryValueUsed(binaryKey);
+            }
+            if (!usedBinaryKeys.isEmpty()) {
+                txn.uponCommit(markAsUsed(usedBinaryKeys));
+            }
+            changes.setChangedNodes(changedNodes);
+            changes.freeze(context.getSecurityContext().getUserName(), context.getData(),
+                           context.getValueFactories().getDateFactory().create());
+            txn.commit();
+        } catch (RuntimeException e) {
+            rollback(txn);
+            throw e;
+        } catch (Exception e) {
+            rollback(txn);
+            throw new RuntimeException(e);
+        }
+        LOGGER.debug("Wrote {0} new nodes in workspace '{1}'", nodes.size(), workspaceCache.getWorkspaceName());
+        nodes.clear();
+
+        txns.updateCache(workspaceCache, changes, txn);
+        return changes;
+    }
+
+    private void appendChildren( DocumentStore documentStore,
+                                 DocumentTranslator translator,
+                                 EditableDocument parentDoc,
+                                 MutableChildReferences children ) {
+        Integer bucketIdLength = parentDoc.getInteger(DocumentConstants.BUCKET_ID_LENGTH);
+        if (bucketIdLength == null) {
+            translator.changeChildren(parentDoc, null, children);
+            return;
+        }
+        // other sessions may be appending to the buckets without locking the unordered collection ...
+        String parentKey = translator.getKey(parentDoc);
+        lock(documentStore, translator.bucketKeys(parentKey, bucketIdLength, children));
+        translator.addChildrenToBuckets(parentDoc, children);
+    }
+
+    private void lock( DocumentStore documentStore,
+                       Set<String> keys ) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        for (int attempt = 0; attempt != LOCK_ATTEMPTS; ++attempt) {
+            if (documentStore.lockDocuments(keys)) {
+                return;
+            }
+        }
+        throw new TimeoutException("Timeout while attempting to lock the keys " + keys + " after " + LOCK_ATTEMPTS
+                                   + " attempts.");
+    }
+
+    private void rollback( Transaction txn ) {
+        if (txn == null) {
+            return;
+        }
+        try {
+            txn.rollback();
+        } catch (Exception e) {
+            LOGGER.debug(e, "Error while rolling back transaction " + txn);
+        }
+    }
+
+    private Transactions.TransactionFunction markAsUsed( final Set<BinaryKey> usedBinaryKeys ) {
+        final BinaryStore binaryStore = context.getBinaryStore();
+        return () -> {
+            try {
+                binaryStore.markAsUsed(usedBinaryKeys);
+            } catch (BinaryStoreException e) {
+                LOGGER.error(e, JcrI18n.errorMarkingBinaryValuesUsed, e.getMessage());
+            }
+        };
+    }
+
+    private static boolean isStoredBinary( Object value ) {
+        return value instanceof BinaryValue && !(value instanceof InMemoryBinaryValue) && !(value instanceof ExternalBinaryValue);
+    }
+
+    private static final class NewNode {
+        protected final NodeKey key;
+        protected final NodeKey parentKey;
+        protected final Path path;
+        protected final Name primaryType;
+        protected final Set<Name> mixinTypes;
+        protected final Collection<Property> properties;
+        protected final int bucketIdLength;
+
+        protected NewNode( NodeKey key,
+                           NodeKey parentKey,
+                           Path path,
+                           Name primaryType,
+                           Set<Name> mixinTypes,
+                           Collection<Property> properties,
+                           int bucketIdLength ) {
+            this.key = key;
+            this.parentKey = parentKey;
+            this.path = path;
+            this.primaryType = primaryType;
+            this.mixinTypes = mixinTypes;
+            this.properties = properties;
+            this.bucketIdLength = bucketIdLength;
+        }
+    }
+}
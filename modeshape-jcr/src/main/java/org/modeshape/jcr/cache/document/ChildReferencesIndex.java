@@ -0,0 +1,476 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache.document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.modeshape.common.annotation.Immutable;
+import org.modeshape.schematic.Schematic;
+import org.modeshape.schematic.SchematicEntry;
+import org.modeshape.schematic.document.Document;
+import org.modeshape.schematic.document.EditableArray;
+import org.modeshape.schematic.document.EditableDocument;
+
+/**
+ * A persistent index over the blocks of child references of a node whose children have been split into multiple blocks by the
+ * {@link DocumentOptimizer}. The index is used to find a child by name and same-name-sibling index, or the child at a given
+ * position, by loading only the block that contains it instead of walking the whole chain of blocks.
+ * <p>
+ * The index is made up of a directory document, which holds the key and size of each block (in order), and a number of shard
+ * documents, which each map some of the names of the children to the blocks containing children with that name (in order). The
+ * index is {@link #rebuild(String, EditableDocument) rebuilt} whenever the blocks are optimized, and is {@link Changes updated}
+ * whenever children are added to, removed from or renamed in the existing blocks. Like the blocks, the index documents are only
+ * ever changed while holding the lock of the node's document.
+ * </p>
+ */
+public class ChildReferencesIndex implements DocumentConstants {
+
+    /**
+     * The targeted number of names in each shard, which determines the number of shards when the index is rebuilt.
+     */
+    protected static final int NAMES_PER_SHARD = 1000;
+
+    /**
+     * The maximum number of shards of an index.
+     */
+    protected static final int MAX_SHARDS = 4096;
+
+    /**
+     * The result of a lookup for a child that does not exist.
+     */
+    public static final Position NOT_FOUND = new Position(null, -1L);
+
+    private static final String BLOCKS = "blocks";
+    private static final String BLOCK = "block";
+
+    private final DocumentStore documentStore;
+
+    public ChildReferencesIndex( DocumentStore documentStore ) {
+        this.documentStore = documentStore;
+        assert this.documentStore != null;
+    }
+
+    /**
+     * Get the key of the directory document of the index over the children of the node with the supplied key.
+     *
+     * @param nodeKey the key of the node; may not be null
+     * @return the key of the directory document; never null
+     */
+    public static String indexKey( String nodeKey ) {
+        return nodeKey + "/childIndex";
+    }
+
+    protected static String shardKey( String nodeKey,
+                                      int shard ) {
+        return indexKey(nodeKey) + "/" + shard;
+    }
+
+    protected static int shard( String name,
+                                int shards ) {
+        return (name.hashCode() & Integer.MAX_VALUE) % shards;
+    }
+
+    /**
+     * Get the number of shards of the index over the children in the supplied node document.
+     *
+     * @param document the node document; may not be null
+     * @return the number of shards, or 0 if the children are not indexed
+     */
+    public static int shards( Document document ) {
+        Document info = document.getDocument(CHILDREN_INFO);
+        return info != null ? info.getInteger(CHILDREN_INDEX_SHARDS, 0) : 0;
+    }
+
+    /**
+     * Rebuild the index over the children of the supplied node document by walking all of its blocks of children, or remove the
+     * index if all the children are in the node document.
+     *
+     * @param nodeKey the key of the node; may not be null
+     * @param document the node document, which records the number of shards of the index; may not be null
+     * @return true if the index or the node document was changed, or false otherwise
+     */
+    public boolean rebuild( String nodeKey,
+                            EditableDocument document ) {
+        EditableDocument info = document.getDocument(CHILDREN_INFO);
+        if (info == null || !info.containsField(NEXT_BLOCK)) {
+            // All of the children are in the node document, so there is nothing to index ...
+            return remove(nodeKey, document);
+        }
+        int oldShards = shards(document);
+        int shards = (int)Math.min(MAX_SHARDS, Math.max(1L, info.getLong(COUNT, 0L) / NAMES_PER_SHARD));
+        List<EditableDocument> shardDocs = new ArrayList<>(shards);
+        for (int shard = 0; shard != shards; ++shard) {
+            shardDocs.add(Schematic.newDocument());
+        }
+
+        EditableArray blocks = Schematic.newArray();
+        String blockKey = nodeKey;
+        Document block = document;
+        while (block != null) {
+            blocks.add(Schematic.newDocument(BLOCK, blockKey, COUNT, sizeOf(block)));
+            for (Map.Entry<String, Long> nameCount : nameCounts(block).entrySet()) {
+                String name = nameCount.getKey();
+                shardDocs.get(shard(name, shards)).getOrCreateArray(name)
+                         .add(Schematic.newDocument(BLOCK, blockKey, COUNT, nameCount.getValue()));
+            }
+            Document blockInfo = block.getDocument(CHILDREN_INFO);
+            blockKey = blockInfo != null ? blockInfo.getString(NEXT_BLOCK) : null;
+            block = blockKey != null ? documentStore.getChildrenBlock(blockKey) : null;
+        }
+
+        documentStore.localStore().put(indexKey(nodeKey), Schematic.newDocument(BLOCKS, blocks));
+        for (int shard = 0; shard != shards; ++shard) {
+            documentStore.localStore().put(shardKey(nodeKey, shard), shardDocs.get(shard));
+        }
+        for (int shard = shards; shard < oldShards; ++shard) {
+            documentStore.remove(shardKey(nodeKey, shard));
+        }
+        info.setNumber(CHILDREN_INDEX_SHARDS, shards);
+        return true;
+    }
+
+    /**
+     * Remove the index over the children of the supplied node document, if there is one.
+     *
+     * @param nodeKey the key of the node; may not be null
+     * @param document the node document; may not be null
+     * @return true if the index was removed, or false if there was no index
+     */
+    public boolean remove( String nodeKey,
+                           EditableDocument document ) {
+        int shards = shards(document);
+        if (shards == 0) {
+            return false;
+        }
+        removeDocuments(nodeKey, shards);
+        document.getDocument(CHILDREN_INFO).remove(CHILDREN_INDEX_SHARDS);
+        return true;
+    }
+
+    /**
+     * Remove the index over the children of the node with the supplied key, which is being removed.
+     *
+     * @param nodeKey the key of the node; may not be null
+     */
+    public void remove( String nodeKey ) {
+        SchematicEntry entry = documentStore.get(nodeKey);
+        if (entry != null) {
+            removeDocuments(nodeKey, shards(entry.content()));
+        }
+    }
+
+    private void removeDocuments( String nodeKey,
+                                  int shards ) {
+        if (shards == 0) {
+            return;
+        }
+        documentStore.remove(indexKey(nodeKey));
+        for (int shard = 0; shard != shards; ++shard) {
+            documentStore.remove(shardKey(nodeKey, shard));
+        }
+    }
+
+    /**
+     * Find the block that contains the child with the supplied name and same-name-sibling index.
+     *
+     * @param nodeKey the key of the node; may not be null
+     * @param shards the number of shards of the index; must be positive
+     * @param name the name of the child, in the form stored in the blocks; may not be null
+     * @param snsIndex the same-name-sibling index of the child
+     * @return the key of the block and the 0-based index of the child among the children with that name in the block,
+     *         {@link #NOT_FOUND} if there is no such child, or null if the index is not available
+     */
+    public Position findChild( String nodeKey,
+                               int shards,
+                               String name,
+                               int snsIndex ) {
+        SchematicEntry shard = documentStore.get(shardKey(nodeKey, shard(name, shards)));
+        if (shard == null) {
+            return null;
+        }
+        return find(shard.content().getArray(name), snsIndex - 1L);
+    }
+
+    /**
+     * Get the number of children with the supplied name.
+     *
+     * @param nodeKey the key of the node; may not be null
+     * @param shards the number of shards of the index; must be positive
+     * @param name the name of the children, in the form stored in the blocks; may not be null
+     * @return the number of children, or -1 if the index is not available
+     */
+    public long childCount( String nodeKey,
+                            int shards,
+                            String name ) {
+        SchematicEntry shard = documentStore.get(shardKey(nodeKey, shard(name, shards)));
+        if (shard == null) {
+            return -1L;
+        }
+        List<?> entries = shard.content().getArray(name);
+        long count = 0L;
+        if (entries != null) {
+            for (Object entry : entries) {
+                count += ((Document)entry).getLong(COUNT, 0L);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Find the block that contains the child at the supplied position.
+     *
+     * @param nodeKey the key of the node; may not be null
+     * @param position the 0-based position of the child among all children
+     * @return the key of the block and the 0-based position of the child in the block, {@link #NOT_FOUND} if there are not as
+     *         many children, or null if the index is not available
+     */
+    public Position findPosition( String nodeKey,
+                                  long position ) {
+        SchematicEntry directory = documentStore.get(indexKey(nodeKey));
+        if (directory == null) {
+            return null;
+        }
+        return find(directory.content().getArray(BLOCKS), position);
+    }
+
+    private Position find( List<?> entries,
+                           long index ) {
+        if (entries == null || index < 0L) {
+            return NOT_FOUND;
+        }
+        for (Object value : entries) {
+            Document entry = (Document)value;
+            long count = entry.getLong(COUNT, 0L);
+            if (index < count) {
+                return new Position(entry.getString(BLOCK), index);
+            }
+            index -= count;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Create an object that records the blocks of children of a node before they are changed, so that the index can be
+     * updated after the changes have been made.
+     *
+     * @param nodeKey the key of the node; may not be null
+     * @param shards the number of shards of the index; must be positive
+     * @return the changes; never null
+     */
+    public Changes changes( String nodeKey,
+                            int shards ) {
+        return new Changes(nodeKey, shards);
+    }
+
+    protected static Map<String, Long> nameCounts( Document block ) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        List<?> children = block.getArray(CHILDREN);
+        if (children != null) {
+            for (Object value : children) {
+                String name = value instanceof Document ? ((Document)value).getString(NAME) : null;
+                if (name != null) {
+                    counts.merge(name, 1L, Long::sum);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static long sizeOf( Document block ) {
+        List<?> children = block.getArray(CHILDREN);
+        return children != null ? children.size() : 0L;
+    }
+
+    /**
+     * The location of a child in the blocks of children.
+     */
+    @Immutable
+    public static final class Position {
+        /**
+         * The key of the block, which is the key of the node for the children stored in the node document.
+         */
+        public final String blockKey;
+        /**
+         * The 0-based index of the child in the block.
+         */
+        public final long index;
+
+        protected Position( String blockKey,
+                            long index ) {
+            this.blockKey = blockKey;
+            this.index = index;
+        }
+
+        @Override
+        public String toString() {
+            return "block: " + blockKey + "; index: " + index;
+        }
+    }
+
+    /**
+     * The blocks of children that are being changed.
+     */
+    public final class Changes {
+        private final String nodeKey;
+        private final int shards;
+        private final Map<String, Document> blocks = new LinkedHashMap<>();
+        private final Map<String, Map<String, Long>> countsBefore = new HashMap<>();
+        private final Map<String, List<String>> addedAfter = new HashMap<>();
+        private final Set<String> removed = new HashSet<>();
+
+        protected Changes( String nodeKey,
+                           int shards ) {
+            this.nodeKey = nodeKey;
+            this.shards = shards;
+        }
+
+        /**
+         * Record the current children of a block that is about to be changed.
+         *
+         * @param blockKey the key of the block, which is the key of the node for the node document; may not be null
+         * @param block the block document that will be changed; may not be null
+         */
+        public void changing( String blockKey,
+                              Document block ) {
+            if (!blocks.containsKey(blockKey)) {
+                blocks.put(blockKey, block);
+                countsBefore.put(blockKey, nameCounts(block));
+            }
+        }
+
+        /**
+         * Record a new block that was created when a block was split.
+         *
+         * @param previousBlockKey the key of the block that the new block follows; may not be null
+         * @param blockKey the key of the new block; may not be null
+         * @param block the new block document; may not be null
+         */
+        public void added( String previousBlockKey,
+                           String blockKey,
+                           Document block ) {
+            blocks.put(blockKey, block);
+            countsBefore.put(blockKey, Collections.emptyMap());
+            addedAfter.computeIfAbsent(previousBlockKey, key -> new ArrayList<>()).add(blockKey);
+        }
+
+        /**
+         * Record a block that is being removed because it was merged into the previous block.
+         *
+         * @param blockKey the key of the block; may not be null
+         * @param block the block document before it is removed; may not be null
+         */
+        public void removing( String blockKey,
+                              Document block ) {
+            changing(blockKey, block);
+            removed.add(blockKey);
+        }
+
+        /**
+         * Update the index with the changes that have been made to the recorded blocks.
+         */
+        public void apply() {
+            if (blocks.isEmpty()) {
+                return;
+            }
+            EditableDocument directory = documentStore.edit(indexKey(nodeKey), false);
+            if (directory == null) {
+                // The index is missing, so the blocks will be used until the next optimization rebuilds it ...
+                return;
+            }
+
+            // Update the sizes of the changed blocks, and remember the order of all blocks ...
+            Map<String, Integer> positions = new HashMap<>();
+            EditableArray blockEntries = Schematic.newArray();
+            for (Object value : directory.getArray(BLOCKS)) {
+                Document entry = (Document)value;
+                addBlockEntry(entry.getString(BLOCK), entry.getLong(COUNT, 0L), blockEntries, positions);
+            }
+            directory.setArray(BLOCKS, blockEntries);
+
+            // Find the new number of children with each changed name in each block, grouped by shard ...
+            Map<Integer, Map<String, Map<String, Long>>> countsByShard = new HashMap<>();
+            for (Map.Entry<String, Document> block : blocks.entrySet()) {
+                String blockKey = block.getKey();
+                Map<String, Long> before = countsBefore.get(blockKey);
+                Map<String, Long> after = removed.contains(blockKey) ? Collections.emptyMap() : nameCounts(block.getValue());
+                Set<String> names = new HashSet<>(before.keySet());
+                names.addAll(after.keySet());
+                for (String name : names) {
+                    long count = after.getOrDefault(name, 0L);
+                    if (count != before.getOrDefault(name, 0L)) {
+                        countsByShard.computeIfAbsent(shard(name, shards), shard -> new HashMap<>())
+                                     .computeIfAbsent(name, n -> new HashMap<>())
+                                     .put(blockKey, count);
+                    }
+                }
+            }
+
+            for (Map.Entry<Integer, Map<String, Map<String, Long>>> shardCounts : countsByShard.entrySet()) {
+                EditableDocument shard = documentStore.edit(shardKey(nodeKey, shardCounts.getKey()), true);
+                for (Map.Entry<String, Map<String, Long>> nameCounts : shardCounts.getValue().entrySet()) {
+                    String name = nameCounts.getKey();
+                    Map<String, Long> countsByBlock = new HashMap<>();
+                    List<?> entries = shard.getArray(name);
+                    if (entries != null) {
+                        for (Object value : entries) {
+                            Document entry = (Document)value;
+                            countsByBlock.put(entry.getString(BLOCK), entry.getLong(COUNT, 0L));
+                        }
+                    }
+                    countsByBlock.putAll(nameCounts.getValue());
+                    countsByBlock.values().removeIf(count -> count <= 0L);
+                    if (countsByBlock.isEmpty()) {
+                        shard.remove(name);
+                        continue;
+                    }
+                    // The same-name-siblings are numbered in the order of the blocks ...
+                    List<String> blockKeys = new ArrayList<>(countsByBlock.keySet());
+                    blockKeys.sort(Comparator.comparingInt(key -> positions.getOrDefault(key, Integer.MAX_VALUE)));
+                    EditableArray newEntries = Schematic.newArray(blockKeys.size());
+                    for (String blockKey : blockKeys) {
+                        newEntries.add(Schematic.newDocument(BLOCK, blockKey, COUNT, countsByBlock.get(blockKey)));
+                    }
+                    shard.setArray(name, newEntries);
+                }
+            }
+        }
+
+        private void addBlockEntry( String blockKey,
+                                    long count,
+                                    EditableArray blockEntries,
+                                    Map<String, Integer> positions ) {
+            if (!removed.contains(blockKey)) {
+                Document block = blocks.get(blockKey);
+                positions.put(blockKey, positions.size());
+                blockEntries.add(Schematic.newDocument(BLOCK, blockKey, COUNT, block != null ? sizeOf(block) : count));
+            }
+            // The blocks split from this block follow it ...
+            List<String> addedBlockKeys = addedAfter.get(blockKey);
+            if (addedBlockKeys != null) {
+                for (String addedBlockKey : addedBlockKeys) {
+                    addBlockEntry(addedBlockKey, 0L, blockEntries, positions);
+                }
+            }
+        }
+    }
+}
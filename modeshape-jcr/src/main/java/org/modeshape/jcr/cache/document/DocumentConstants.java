@@ -49,4 +49,7 @@ public interface DocumentConstants {
     public static final String BUCKET_ID_LENGTH = "$bucketIdLen";
     public static final String SIZE = "$size";
     public static final String BUCKETS = "$buckets";
+    public static final String BUCKET_STRIPES = "$bucketStripes";
+    public static final String REFERRER_SHARDS = "$shards";
+    public static final String CHILDREN_INDEX_SHARDS = "$indexShards";
 }
@@ -15,8 +15,11 @@
  */
 package org.modeshape.jcr.cache.document;
 
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.schematic.Schematic;
@@ -31,14 +34,17 @@ import org.modeshape.schematic.document.EditableDocument;
 public class DocumentOptimizer implements DocumentConstants {
 
     private final DocumentStore documentStore;
+    private final ChildReferencesIndex childReferencesIndex;
 
     public DocumentOptimizer( DocumentStore documentStore ) {
         this.documentStore = documentStore;
         assert this.documentStore != null;
+        this.childReferencesIndex = new ChildReferencesIndex(documentStore);
     }
     
     /**
-     * Optimize the children in the supplied node document
+     * Optimize the children in the supplied node document, and rebuild the {@link ChildReferencesIndex index} over the blocks of
+     * children when they are changed (or have not yet been indexed).
      * <p>
      * Note that this method changes the underlying db as well as the given document, so *it must* be called either from a
      * transactional context or it must be followed by a session.save call, otherwise there might be inconsistencies between what
@@ -61,6 +67,10 @@ public class DocumentOptimizer implements DocumentConstants {
                 return false;
             }
         }
+        if (isBlockOfChildren(document)) {
+            // The blocks are optimized along with the document of the node that owns them ...
+            return false;
+        }
         EditableArray children = document.getArray(CHILDREN);
         if (children == null) {
             // There are no children to optimize
@@ -99,7 +109,11 @@ public class DocumentOptimizer implements DocumentConstants {
                 boolean isFirst = doc == document;
                 if (count > (targetCountPerBlock + tolerance)) {
                     // This block is too big, so we should split it into multiple blocks...
-                    splitChildren(docKey, doc, children, targetCountPerBlock, tolerance, isFirst, nextKey);
+                    Map<String, Document> newBlocks = split(docKey, doc, children, targetCountPerBlock, tolerance, isFirst, nextKey);
+                    if (nextKey == null && !isFirst && !newBlocks.isEmpty()) {
+                        // We split the last block, so the last of the new blocks is now the last block ...
+                        info.setString(LAST_BLOCK, lastKey(newBlocks));
+                    }
                     changed = true;
                 } else if (count < (targetCountPerBlock - tolerance) && nextKey != null) {
                     // This block is too small, so always combine it with the next block, if there is one
@@ -126,13 +140,110 @@ public class DocumentOptimizer implements DocumentConstants {
                 }
             }
         }
+        if (changed || ChildReferencesIndex.shards(document) == 0) {
+            changed |= childReferencesIndex.rebuild(key.toString(), document);
+        }
+        return changed;
+    }
+
+    /**
+     * Optimize only the supplied blocks of children of a node, which were just changed while saving the node. A changed block is
+     * split when it has more than the target plus the tolerance number of children, and merged with the next block when it has
+     * fewer than the target minus the tolerance number of children. The other blocks are neither read nor changed, so they are
+     * left for the {@link #optimizeChildrenBlocks(NodeKey, EditableDocument, int, int) periodic optimization}.
+     * <p>
+     * Note that this method changes the underlying db as well as the given documents, so *it must* be called from a
+     * transactional context while holding the lock of the node's document.
+     * </p>
+     *
+     * @param key the key for the node
+     * @param document the node's document
+     * @param changedBlocks the blocks that were changed, keyed by the key of the block (which is the key of the node for the node
+     *        document), in the order of the blocks; may not be null
+     * @param targetCountPerBlock the target number of children per block
+     * @param tolerance the allowed tolerance between the target and actual number of children per block
+     * @param indexChanges the changes to the {@link ChildReferencesIndex index} over the blocks, which records the blocks that are
+     *        created and removed; may be null if the blocks are not indexed
+     * @return true if any of the blocks were split or merged, or false otherwise
+     */
+    public boolean optimizeChangedBlocks( NodeKey key,
+                                          EditableDocument document,
+                                          Map<String, EditableDocument> changedBlocks,
+                                          int targetCountPerBlock,
+                                          int tolerance,
+                                          ChildReferencesIndex.Changes indexChanges ) {
+        Set<String> removedBlocks = new HashSet<>();
+        boolean changed = false;
+        for (Map.Entry<String, EditableDocument> changedBlock : changedBlocks.entrySet()) {
+            String blockKey = changedBlock.getKey();
+            if (removedBlocks.contains(blockKey)) {
+                // This block was merged into the previous block ...
+                continue;
+            }
+            EditableDocument doc = changedBlock.getValue();
+            EditableArray children = doc.getArray(CHILDREN);
+            if (children == null) {
+                continue;
+            }
+            boolean isFirst = doc == document;
+            NodeKey docKey = isFirst ? key : new NodeKey(blockKey);
+            EditableDocument docInfo = doc.getDocument(CHILDREN_INFO);
+            String nextKey = docInfo != null ? docInfo.getString(NEXT_BLOCK) : null;
+
+            if (children.size() < (targetCountPerBlock - tolerance) && nextKey != null) {
+                // This block is too small, so combine it with the next block ...
+                Map<String, Document> mergedBlocks = new LinkedHashMap<>();
+                nextKey = merge(docKey, doc, children, isFirst, nextKey, mergedBlocks);
+                removedBlocks.addAll(mergedBlocks.keySet());
+                if (indexChanges != null) {
+                    mergedBlocks.forEach(indexChanges::removing);
+                }
+                if (nextKey == null && !isFirst) {
+                    // We merged the last block into this block ...
+                    document.getDocument(CHILDREN_INFO).setString(LAST_BLOCK, blockKey);
+                }
+                changed = true;
+            }
+            if (children.size() > (targetCountPerBlock + tolerance)) {
+                // This block is too big (perhaps after merging), so split it into multiple blocks ...
+                Map<String, Document> newBlocks = split(docKey, doc, children, targetCountPerBlock, tolerance, isFirst, nextKey);
+                if (newBlocks.isEmpty()) {
+                    continue;
+                }
+                if (indexChanges != null) {
+                    String previousKey = blockKey;
+                    for (Map.Entry<String, Document> newBlock : newBlocks.entrySet()) {
+                        indexChanges.added(previousKey, newBlock.getKey(), newBlock.getValue());
+                        previousKey = newBlock.getKey();
+                    }
+                }
+                if (nextKey == null && !isFirst) {
+                    // We split the last block, so the last of the new blocks is now the last block ...
+                    document.getDocument(CHILDREN_INFO).setString(LAST_BLOCK, lastKey(newBlocks));
+                }
+                changed = true;
+            }
+        }
         return changed;
     }
 
+    private static String lastKey( Map<String, Document> blocks ) {
+        String lastKey = null;
+        for (String key : blocks.keySet()) {
+            lastKey = key;
+        }
+        return lastKey;
+    }
+
     protected EditableDocument edit( String key ) {
         return documentStore.lockDocuments(key) ? documentStore.edit(key, false) : null;
     }
 
+    protected boolean isBlockOfChildren( Document document ) {
+        // A block only contains children and the information about the next block ...
+        return !document.containsField(KEY) && !document.containsField(PARENT) && !document.containsField(PROPERTIES);
+    }
+
     /**
      * Split the children in the given document (with the given key) into two or more blocks, based upon the specified number of
      * desired children per block and a tolerance. This method will create additional blocks and will modify the supplied document
@@ -164,6 +275,31 @@ public class DocumentOptimizer implements DocumentConstants {
                                      int tolerance,
                                      boolean isFirst,
                                      String nextBlock ) {
+        return !split(key, document, children, targetCountPerBlock, tolerance, isFirst, nextBlock).isEmpty();
+    }
+
+    /**
+     * Split the children in the given document into two or more blocks, as described by
+     * {@link #splitChildren(NodeKey, EditableDocument, EditableArray, int, int, boolean, String)}.
+     *
+     * @param key the key for the document whose children are to be split; may not be null
+     * @param document the document whose children are to be split; may not be null
+     * @param children the children that are to be split; may not be null
+     * @param targetCountPerBlock the goal for the number of children in each block; must be positive
+     * @param tolerance the tolerance for the number of children in each block; must be positive but smaller than
+     *        <code>targetCountPerBlock</code>
+     * @param isFirst true if the supplied document is the first node document, or false if it is a block document
+     * @param nextBlock the key for the next block of children; may be null if there is no next block
+     * @return the new blocks keyed by their keys, in the order they follow the supplied document; empty if the children were not
+     *         split
+     */
+    protected Map<String, Document> split( NodeKey key,
+                                           EditableDocument document,
+                                           EditableArray children,
+                                           int targetCountPerBlock,
+                                           int tolerance,
+                                           boolean isFirst,
+                                           String nextBlock ) {
         assert 0 < targetCountPerBlock;
         assert 0 < tolerance;
         assert tolerance < targetCountPerBlock;
@@ -173,7 +309,7 @@ public class DocumentOptimizer implements DocumentConstants {
 
         if (numFullBlocks == 0) {
             // This block doesn't need to be split ...
-            return false;
+            return Collections.emptyMap();
         }
 
         int sizeOfLastBlock = total % targetCountPerBlock;
@@ -181,12 +317,14 @@ public class DocumentOptimizer implements DocumentConstants {
             // The last block would be too small to be on its own ...
             if (numFullBlocks == 1) {
                 // We would split into one full block and a second too-small block, so there's no point of splitting ...
-                return false;
+                return Collections.emptyMap();
             }
             // We'll split it into multiple blocks, so we'll just include the children in the last too-small block
             // in the previous block ...
             sizeOfLastBlock = 0;
         }
+        // Otherwise the remaining children go into a block of their own ...
+        int numBlocks = sizeOfLastBlock == 0 ? numFullBlocks : numFullBlocks + 1;
 
         // The order we do things is important here. The best thing is to create and persist blocks 2...n immediately,
         // and then we can change the first document to have the smaller number of children and to point to the newly-created
@@ -196,9 +334,10 @@ public class DocumentOptimizer implements DocumentConstants {
         int endIndex = 0;
         final String firstNewBlockKey = key.withRandomId().toString();
         String blockKey = firstNewBlockKey;
-        for (int n = 1; n != numFullBlocks; ++n) {
+        Map<String, Document> newBlocks = new LinkedHashMap<>();
+        for (int n = 1; n != numBlocks; ++n) {
             // Create the sublist of children that should be written to a new block ...
-            boolean isLast = n == (numFullBlocks - 1);
+            boolean isLast = n == (numBlocks - 1);
             endIndex = isLast ? total : (startIndex + targetCountPerBlock);
             EditableArray blockChildren = Schematic.newArray(children.subList(startIndex, endIndex));
 
@@ -216,6 +355,7 @@ public class DocumentOptimizer implements DocumentConstants {
 
             // Now persist the new document ...
             documentStore.localStore().put(blockKey, blockDoc);
+            newBlocks.put(blockKey, blockDoc);
 
             // And get ready for the next block ...
             if (!isLast) {
@@ -240,7 +380,7 @@ public class DocumentOptimizer implements DocumentConstants {
         }
 
         // Note we never changed the number of children, so we don't need to update 'count'.
-        return true;
+        return newBlocks;
     }
 
     /**
@@ -268,6 +408,29 @@ public class DocumentOptimizer implements DocumentConstants {
                                     EditableArray children,
                                     boolean isFirst,
                                     String nextBlock ) {
+        return merge(key, document, children, isFirst, nextBlock, null);
+    }
+
+    /**
+     * Merge the children of the next block into the given document, as described by
+     * {@link #mergeChildren(NodeKey, EditableDocument, EditableArray, boolean, String)}.
+     *
+     * @param key the key for the document whose children are to be merged with the next block; may not be null
+     * @param document the document to be modified with the next block's children; may not be null
+     * @param children the children into which are to be merged the next block's children; may not be null
+     * @param isFirst true if the supplied document is the first node document, or false if it is a block document
+     * @param nextBlock the key for the next block of children; may be null if there is no next block
+     * @param removedBlocks the map into which are placed the content of the blocks that are removed, keyed by their keys; may be
+     *        null
+     * @return the key for the block of children that is after blocks that are removed; may be null if the supplied document is
+     *         the last block
+     */
+    protected String merge( NodeKey key,
+                            EditableDocument document,
+                            EditableArray children,
+                            boolean isFirst,
+                            String nextBlock,
+                            Map<String, Document> removedBlocks ) {
         // The children in the next block should be added to the children in this block, even if the size would be too large
         // as any too-large blocks will eventually be optimized later ...
         EditableDocument info = document.getDocument(CHILDREN_INFO);
@@ -282,6 +445,9 @@ public class DocumentOptimizer implements DocumentConstants {
         while (nextBlock != null) {
             nextEntry = documentStore.get(nextBlock);
             Document nextDoc = nextEntry.content();
+            if (removedBlocks != null) {
+                removedBlocks.put(nextBlock, nextDoc);
+            }
             List<?> nextChildren = nextDoc.getArray(CHILDREN);
             Document nextInfo = nextDoc.getDocument(CHILDREN_INFO);
 
@@ -23,11 +23,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicLong;
 import org.modeshape.common.annotation.Immutable;
@@ -82,8 +84,28 @@ import org.modeshape.schematic.document.Null;
  */
 public class DocumentTranslator implements DocumentConstants {
 
+    /**
+     * The number of referrers of a node above which the referrers are moved out of the node's document and into separate
+     * shard documents, so that saves adding references to the node no longer rewrite (and lock) the node's document.
+     */
+    protected static final int REFERRER_SHARDING_THRESHOLD = 1000;
+
+    /**
+     * The number of shard documents across which the referrers of a heavily-referenced node are spread.
+     */
+    protected static final int REFERRER_SHARD_COUNT = 64;
+
+    /**
+     * The number of counter documents across which the references to each stored binary value are spread.
+     */
+    protected static final int BINARY_REFERENCE_STRIPES = 32;
+
     private final DocumentStore documentStore;
+    private final ChildReferencesIndex childReferencesIndex;
+    private final DocumentOptimizer childrenOptimizer;
     private final AtomicLong largeStringSize = new AtomicLong();
+    private volatile int childrenBlockTarget = 0;
+    private volatile int childrenBlockTolerance = 0;
     private final ExecutionContext context;
     private final PropertyFactory propertyFactory;
     private final ValueFactories factories;
@@ -106,6 +128,8 @@ public class DocumentTranslator implements DocumentConstants {
                                DocumentStore documentStore,
                                long largeStringSize ) {
         this.documentStore = documentStore;
+        this.childReferencesIndex = new ChildReferencesIndex(documentStore);
+        this.childrenOptimizer = new DocumentOptimizer(documentStore);
         this.largeStringSize.set(largeStringSize);
         this.context = context;
         this.propertyFactory = this.context.getPropertyFactory();
@@ -126,7 +150,9 @@ public class DocumentTranslator implements DocumentConstants {
     }
 
     public DocumentTranslator withLargeStringSize( long largeStringSize ) {
-        return new DocumentTranslator(context, documentStore, largeStringSize);
+        DocumentTranslator translator = new DocumentTranslator(context, documentStore, largeStringSize);
+        translator.setChildrenBlockSize(childrenBlockTarget, childrenBlockTolerance);
+        return translator;
     }
 
     public final ValueFactory<String> getStringFactory() {
@@ -150,6 +176,22 @@ public class DocumentTranslator implements DocumentConstants {
         this.largeStringSize.set(largeValueSize);
     }
 
+    /**
+     * Set the number of children that each block of children should have. When set, the blocks of children that are changed
+     * when a node is saved are split or merged as soon as they have more or fewer children than the target plus or minus the
+     * tolerance, rather than waiting for the periodic {@link DocumentOptimizer optimization} of all documents.
+     *
+     * @param targetCountPerBlock the target number of children per block, or 0 if the blocks are not to be optimized when saved
+     * @param tolerance the allowed tolerance between the target and actual number of children per block; must be positive but
+     *        smaller than the target for the blocks to be optimized when saved
+     */
+    public void setChildrenBlockSize( int targetCountPerBlock,
+                                      int tolerance ) {
+        boolean valid = 0 < tolerance && tolerance < targetCountPerBlock;
+        this.childrenBlockTolerance = valid ? tolerance : 0;
+        this.childrenBlockTarget = valid ? targetCountPerBlock : 0;
+    }
+
     /**
      * Obtain the preferred {@link NodeKey key} for the parent of this node. Because a node can be used in more than once place,
      * it may technically have more than one parent. Therefore, in such cases this method prefers the parent that is in the
@@ -392,6 +434,7 @@ public class DocumentTranslator implements DocumentConstants {
                              Property property,
                              Set<BinaryKey> unusedBinaryKeys,
                              Set<BinaryKey> usedBinaryKeys) {
+        String nodeKey = getKey(document);
         // Get or create the properties container ...
         EditableDocument properties = document.getDocument(PROPERTIES);
         if (properties == null) {
@@ -409,7 +452,7 @@ public class DocumentTranslator implements DocumentConstants {
         // Get the old value ...
         String localName = propertyName.getLocalName();
         Object oldValue = urlProps.get(localName);
-        decrementBinaryReferenceCount(oldValue, unusedBinaryKeys, usedBinaryKeys);
+        decrementBinaryReferenceCount(oldValue, nodeKey, unusedBinaryKeys, usedBinaryKeys);
 
         // Now set the property ...
         if (property.isEmpty()) {
@@ -417,12 +460,12 @@ public class DocumentTranslator implements DocumentConstants {
         } else if (property.isMultiple()) {
             EditableArray values = Schematic.newArray(property.size());
             for (Object v : property) {
-                values.add(valueToDocument(v, unusedBinaryKeys, usedBinaryKeys));
+                values.add(valueToDocument(v, nodeKey, unusedBinaryKeys, usedBinaryKeys));
             }
             urlProps.setArray(localName, values);
         } else {
             assert property.isSingle();
-            Object value = valueToDocument(property.getFirstValue(), unusedBinaryKeys, usedBinaryKeys);
+            Object value = valueToDocument(property.getFirstValue(), nodeKey, unusedBinaryKeys, usedBinaryKeys);
             if (value == null) {
                 urlProps.remove(localName);
             } else {
@@ -435,6 +478,7 @@ public class DocumentTranslator implements DocumentConstants {
                                     Name propertyName,
                                     Set<BinaryKey> unusedBinaryKeys,
                                     Set<BinaryKey> usedBinaryKeys) {
+        String nodeKey = getKey(document);
         // Get the properties container if it exists ...
         EditableDocument properties = document.getDocument(PROPERTIES);
         if (properties == null) {
@@ -455,7 +499,7 @@ public class DocumentTranslator implements DocumentConstants {
         Object fieldValue = urlProps.remove(localName);
 
         // We're removing a reference to a binary value, and we need to decrement the reference count ...
-        decrementBinaryReferenceCount(fieldValue, unusedBinaryKeys, usedBinaryKeys);
+        decrementBinaryReferenceCount(fieldValue, nodeKey, unusedBinaryKeys, usedBinaryKeys);
 
         // Now remove the namespace if empty ...
         if (urlProps.isEmpty()) {
@@ -470,6 +514,7 @@ public class DocumentTranslator implements DocumentConstants {
                                    Collection<?> values,
                                    Set<BinaryKey> unusedBinaryKeys,
                                    Set<BinaryKey> usedBinaryKeys) {
+        String nodeKey = getKey(document);
         assert values != null;
         int numValues = values.size();
         if (numValues == 0) {
@@ -497,29 +542,29 @@ public class DocumentTranslator implements DocumentConstants {
             if (isMultiple || numValues > 1) {
                 EditableArray array = Schematic.newArray(numValues);
                 for (Object value : values) {
-                    array.addValue(valueToDocument(value, unusedBinaryKeys, usedBinaryKeys));
+                    array.addValue(valueToDocument(value, nodeKey, unusedBinaryKeys, usedBinaryKeys));
                 }
                 urlProps.setArray(localName, array);
             } else {
-                urlProps.set(localName, valueToDocument(values.iterator().next(), unusedBinaryKeys, usedBinaryKeys));
+                urlProps.set(localName, valueToDocument(values.iterator().next(), nodeKey, unusedBinaryKeys, usedBinaryKeys));
             }
         } else if (propValue instanceof List<?>) {
             // Decrement the reference count of any binary references ...
-            decrementBinaryReferenceCount(propValue, unusedBinaryKeys, usedBinaryKeys);
+            decrementBinaryReferenceCount(propValue, nodeKey, unusedBinaryKeys, usedBinaryKeys);
 
             // There's an existing property with multiple values ...
             EditableArray array = urlProps.getArray(localName);
             for (Object value : values) {
-                value = valueToDocument(value, unusedBinaryKeys, usedBinaryKeys);
+                value = valueToDocument(value, nodeKey, unusedBinaryKeys, usedBinaryKeys);
                 array.addValueIfAbsent(value);
             }
         } else {
             // Decrement the reference count of any binary references ...
-            decrementBinaryReferenceCount(propValue, unusedBinaryKeys, usedBinaryKeys);
+            decrementBinaryReferenceCount(propValue, nodeKey, unusedBinaryKeys, usedBinaryKeys);
 
             // There's just a single value ...
             if (numValues == 1) {
-                Object value = valueToDocument(values.iterator().next(), unusedBinaryKeys, usedBinaryKeys);
+                Object value = valueToDocument(values.iterator().next(), nodeKey, unusedBinaryKeys, usedBinaryKeys);
                 if (!value.equals(propValue)) {
                     // But the existing value is different, so we have to change to an array ...
                     EditableArray array = Schematic.newArray(value, propValue);
@@ -528,7 +573,7 @@ public class DocumentTranslator implements DocumentConstants {
             } else {
                 EditableArray array = Schematic.newArray(numValues);
                 for (Object value : values) {
-                    value = valueToDocument(value, unusedBinaryKeys, usedBinaryKeys);
+                    value = valueToDocument(value, nodeKey, unusedBinaryKeys, usedBinaryKeys);
                     if (!value.equals(propValue)) {
                         array.addValue(value);
                     }
@@ -544,6 +589,7 @@ public class DocumentTranslator implements DocumentConstants {
                                       Collection<?> values,
                                       Set<BinaryKey> unusedBinaryKeys,
                                       Set<BinaryKey> usedBinaryKeys) {
+        String nodeKey = getKey(document);
         assert values != null;
         int numValues = values.size();
         if (numValues == 0) {
@@ -568,19 +614,19 @@ public class DocumentTranslator implements DocumentConstants {
         // Now add the value to the property ...
         String localName = propertyName.getLocalName();
         Object propValue = urlProps.get(localName);
-        decrementBinaryReferenceCount(propValue, unusedBinaryKeys, usedBinaryKeys);
+        decrementBinaryReferenceCount(propValue, nodeKey, unusedBinaryKeys, usedBinaryKeys);
 
         if (propValue instanceof List<?>) {
             // There's an existing property with multiple values ...
             EditableArray array = urlProps.getArray(localName);
             for (Object value : values) {
-                value = valueToDocument(value, null, null);
+                value = valueToDocument(value, nodeKey, null, null);
                 array.remove(value);
             }
         } else if (propValue != null) {
             // There's just a single value ...
             for (Object value : values) {
-                value = valueToDocument(value, unusedBinaryKeys, usedBinaryKeys);
+                value = valueToDocument(value, nodeKey, unusedBinaryKeys, usedBinaryKeys);
                 if (value.equals(propValue)) {
                     // And the value matches, so remove the field ...
                     urlProps.remove(localName);
@@ -702,6 +748,16 @@ public class DocumentTranslator implements DocumentConstants {
         ChildReferencesInfo info = getChildReferencesInfo(document);
         long newTotalSize = 0L;
 
+        // If the blocks of children are indexed, record the blocks we change so that the index can be updated ...
+        ChildReferencesIndex.Changes indexChanges = info != null && info.indexShards > 0 ? childReferencesIndex.changes(info.nodeKey,
+                                                                                                                   info.indexShards) : null;
+
+        // If the blocks are to be optimized when saved, record the blocks we change (in order) so that only they are optimized ...
+        int blockTarget = this.childrenBlockTarget;
+        int blockTolerance = this.childrenBlockTolerance;
+        String nodeKey = blockTarget > 0 ? getKey(document) : null;
+        Map<String, EditableDocument> changedBlocks = nodeKey != null ? new LinkedHashMap<>() : null;
+
         EditableDocument doc = document;
         EditableDocument lastDoc = document;
         String lastDocKey = null;
@@ -725,6 +781,12 @@ public class DocumentTranslator implements DocumentConstants {
                 }
 
                 // Change the existing children ...
+                if (indexChanges != null) {
+                    indexChanges.changing(doc == document ? info.nodeKey : lastDocKey, doc);
+                }
+                if (changedBlocks != null) {
+                    changedBlocks.put(doc == document ? nodeKey : lastDocKey, doc);
+                }
                 long blockCount = insertChildren(doc, insertionsByBeforeKey, removals, newNames);
                 newTotalSize += blockCount;
 
@@ -751,6 +813,9 @@ public class DocumentTranslator implements DocumentConstants {
                         EditableDocument childInfo = doc.getDocument(CHILDREN_INFO);
                         childInfo.remove(BLOCK_SIZE);
                         childInfo.set(COUNT, newTotalSize);
+                    } else if (doc != document) {
+                        // This is the last block, so update the total number of children on the first document ...
+                        document.getDocument(CHILDREN_INFO).setNumber(COUNT, newTotalSize);
                     }
                     doc = null;
                 }
@@ -768,6 +833,12 @@ public class DocumentTranslator implements DocumentConstants {
             } else {
                 lastKey = null;
             }
+            if (indexChanges != null) {
+                indexChanges.changing(lastKey != null ? lastKey : lastDocKey != null ? lastDocKey : info.nodeKey, lastDoc);
+            }
+            if (changedBlocks != null) {
+                changedBlocks.put(lastKey != null ? lastKey : lastDocKey != null ? lastDocKey : nodeKey, lastDoc);
+            }
             // Just append the new children to the end of the last document; we can use an asynchronous process
             // to adjust/optimize the number of children in each block ...
             EditableArray lastChildren = lastDoc.getOrCreateArray(CHILDREN);
@@ -791,6 +862,18 @@ public class DocumentTranslator implements DocumentConstants {
                 childInfo.setString(LAST_BLOCK, lastKey);
             }
         }
+
+        // Split or merge the changed blocks that now have too many or too few children ...
+        boolean blocksChanged = changedBlocks != null
+                                && childrenOptimizer.optimizeChangedBlocks(new NodeKey(nodeKey), document, changedBlocks,
+                                                                           blockTarget, blockTolerance, indexChanges);
+
+        if (blocksChanged && (indexChanges == null || !document.getDocument(CHILDREN_INFO).containsField(NEXT_BLOCK))) {
+            // The blocks were not indexed yet, or all children are back in the node document ...
+            childReferencesIndex.rebuild(nodeKey, document);
+        } else if (indexChanges != null) {
+            indexChanges.apply();
+        }
     }
 
     protected long insertChildren( EditableDocument document,
@@ -929,31 +1012,63 @@ public class DocumentTranslator implements DocumentConstants {
             long blockSize = childrenInfo.getLong(BLOCK_SIZE, 0L);
             String nextBlockKey = childrenInfo.getString(NEXT_BLOCK);
             String lastBlockKey = childrenInfo.getString(LAST_BLOCK, nextBlockKey);
-            return new ChildReferencesInfo(totalSize, blockSize, nextBlockKey, lastBlockKey);
+            int indexShards = childrenInfo.getInteger(CHILDREN_INDEX_SHARDS, 0);
+            String nodeKey = indexShards > 0 ? getKey(document) : null;
+            return new ChildReferencesInfo(totalSize, blockSize, nextBlockKey, lastBlockKey, nodeKey,
+                                           nodeKey != null ? indexShards : 0);
         }
         return null;
     }
 
+    /**
+     * Get the index over the blocks of children of the nodes.
+     *
+     * @return the index; never null
+     */
+    protected ChildReferencesIndex childReferencesIndex() {
+        return childReferencesIndex;
+    }
+
+    /**
+     * Get the form in which the supplied child name is stored in the blocks of children.
+     *
+     * @param name the name; may not be null
+     * @return the stored form of the name; never null
+     */
+    protected String childNameString( Name name ) {
+        return strings.create(name);
+    }
+
     @Immutable
     public static class ChildReferencesInfo {
         public final long totalSize;
         public final long blockSize;
         public final String nextKey;
         public final String lastKey;
+        /**
+         * The key of the node whose blocks of children are indexed, or null if the children are not indexed.
+         */
+        public final String nodeKey;
+        public final int indexShards;
 
         public ChildReferencesInfo( long totalSize,
                                     long blockSize,
                                     String nextKey,
-                                    String lastKey ) {
+                                    String lastKey,
+                                    String nodeKey,
+                                    int indexShards ) {
             this.totalSize = totalSize;
             this.blockSize = blockSize;
             this.nextKey = nextKey;
             this.lastKey = lastKey;
+            this.nodeKey = nodeKey;
+            this.indexShards = indexShards;
         }
 
         @Override
         public String toString() {
-            return "totalSize: " + totalSize + "; blockSize: " + blockSize + "; nextKey: " + nextKey + "; lastKey: " + lastKey;
+            return "totalSize: " + totalSize + "; blockSize: " + blockSize + "; nextKey: " + nextKey + "; lastKey: " + lastKey
+                   + "; indexShards: " + indexShards;
         }
     }
 
@@ -975,7 +1090,7 @@ public class DocumentTranslator implements DocumentConstants {
     }
     
     public EditableDocument childReferenceDocument(NodeKey key, Name name) {
-        return Schematic.newDocument(KEY, valueToDocument(key, null, null), NAME, strings.create(name)); 
+        return Schematic.newDocument(KEY, valueToDocument(key, null, null, null), NAME, strings.create(name)); 
     }
     
     public Set<NodeKey> getReferrers( Document document,
@@ -988,6 +1103,25 @@ public class DocumentTranslator implements DocumentConstants {
 
         // Get the NodeKeys in the respective arrays ...
         Set<NodeKey> result = new HashSet<NodeKey>();
+        int shards = referrerShards(document);
+        if (shards == 0) {
+            addReferrers(referrers, type, result);
+            return result;
+        }
+        // The referrers are stored in separate shards, so read them one shard at a time ...
+        String key = getKey(document);
+        for (int shard = 0; shard != shards; ++shard) {
+            Document referrerShard = loadReferrerShard(key, shard);
+            if (referrerShard != null) {
+                addReferrers(referrerShard, type, result);
+            }
+        }
+        return result;
+    }
+
+    private void addReferrers( Document referrers,
+                               ReferenceType type,
+                               Set<NodeKey> result ) {
         if (type != ReferenceType.WEAK) {
             Document strong = referrers.getDocument(STRONG);
             if (strong != null) {
@@ -1004,7 +1138,6 @@ public class DocumentTranslator implements DocumentConstants {
                 }
             }
         }
-        return result;
     }
 
     public Map<NodeKey, Integer> getReferrerCounts( Document document,
@@ -1017,6 +1150,25 @@ public class DocumentTranslator implements DocumentConstants {
 
         // Get the NodeKeys in the respective arrays ...
         Map<NodeKey, Integer> result = new HashMap<>();
+        int shards = referrerShards(document);
+        if (shards == 0) {
+            addReferrerCounts(referrers, type, result);
+            return result;
+        }
+        // The referrers are stored in separate shards, so read them one shard at a time ...
+        String key = getKey(document);
+        for (int shard = 0; shard != shards; ++shard) {
+            Document referrerShard = loadReferrerShard(key, shard);
+            if (referrerShard != null) {
+                addReferrerCounts(referrerShard, type, result);
+            }
+        }
+        return result;
+    }
+
+    private void addReferrerCounts( Document referrers,
+                                    ReferenceType type,
+                                    Map<NodeKey, Integer> result ) {
         if (type == ReferenceType.STRONG || type == ReferenceType.BOTH) {
             Document strong = referrers.getDocument(STRONG);
             if (strong != null) {
@@ -1033,16 +1185,34 @@ public class DocumentTranslator implements DocumentConstants {
                 }
             }
         }
-        return result;
     }
 
+    /**
+     * Apply the supplied referrer changes to the node with the given document. If the referrers of the node are stored in
+     * separate {@link #referrerShardKey(String, int) shard documents}, only those shards that contain the changed referrers are
+     * updated. Otherwise the referrers are updated in the node's document, and (if allowed) moved into shard documents once the
+     * number of referrers exceeds {@link #REFERRER_SHARDING_THRESHOLD}.
+     *
+     * @param document the document of the referenced node; may not be null
+     * @param changes the referrer changes; may not be null
+     * @param allowSharding true if the referrers may be moved into shard documents, or false if they must remain in the node's
+     *        document (e.g., for external nodes or nodes that are being removed)
+     */
     public void changeReferrers( EditableDocument document,
-                                 ReferrerChanges changes ) {
+                                 ReferrerChanges changes,
+                                 boolean allowSharding ) {
         if (changes.isEmpty()) {
             // There are no changes requested ...
             return;
         }
 
+        int shards = referrerShards(document);
+        if (shards > 0) {
+            // The referrers are stored in separate shards, so the node's own document doesn't change ...
+            changeShardedReferrers(getKey(document), shards, changes);
+            return;
+        }
+
         // Get the properties container ...
         EditableDocument referrers = document.getDocument(REFERRERS);
         List<NodeKey> strongAdded = changes.getAddedReferrers(ReferenceType.STRONG);
@@ -1065,23 +1235,188 @@ public class DocumentTranslator implements DocumentConstants {
                     weak.set(key.toString(), Collections.frequency(weakAdded, key));
                 }
             }
+        } else {
+            // There are already some references, so update them
+            List<NodeKey> strongRemoved = changes.getRemovedReferrers(ReferenceType.STRONG);
+            Map<NodeKey, Integer> strongCount = computeReferrersCountDelta(strongAdded, strongRemoved);
+            if (!strongCount.isEmpty()) {
+                EditableDocument strong = referrers.getOrCreateDocument(STRONG);
+                updateReferrers(strong, strongCount);
+            }
+
+            List<NodeKey> weakRemoved = changes.getRemovedReferrers(ReferenceType.WEAK);
+            Map<NodeKey, Integer> weakCount = computeReferrersCountDelta(weakAdded, weakRemoved);
+            if (!weakCount.isEmpty()) {
+                EditableDocument weak = referrers.getOrCreateDocument(WEAK);
+                updateReferrers(weak, weakCount);
+            }
+        }
+
+        if (allowSharding && referrerCount(referrers) > REFERRER_SHARDING_THRESHOLD) {
+            shardReferrers(getKey(document), referrers);
+        }
+    }
+
+    /**
+     * Get the number of shard documents in which the referrers of the node with the supplied document are stored.
+     *
+     * @param document the document of the node; may be null
+     * @return the number of shards, or 0 if the referrers are stored in the node's document
+     */
+    protected int referrerShards( Document document ) {
+        if (document == null) {
+            return 0;
+        }
+        Document referrers = document.getDocument(REFERRERS);
+        if (referrers == null) {
+            return 0;
+        }
+        Integer shards = referrers.getInteger(REFERRER_SHARDS);
+        return shards != null ? shards : 0;
+    }
+
+    /**
+     * Get the key of the document holding one shard of the referrers of a node.
+     *
+     * @param key the key of the referenced node; may not be null
+     * @param shard the index of the shard
+     * @return the key of the shard document; never null
+     */
+    protected String referrerShardKey( String key,
+                                       int shard ) {
+        return key + "/referrers/" + shard;
+    }
+
+    /**
+     * Get the keys of the shard documents that are changed when the supplied referrer changes are applied to a node whose
+     * referrers are sharded.
+     *
+     * @param key the key of the referenced node; may not be null
+     * @param shards the number of shards of the node's referrers
+     * @param changes the referrer changes, or null if all the shards are changed (e.g., when the node is removed)
+     * @return the keys of the shard documents; never null
+     */
+    protected Set<String> referrerShardKeys( String key,
+                                             int shards,
+                                             ReferrerChanges changes ) {
+        Set<String> shardKeys = new TreeSet<>();
+        if (changes == null) {
+            for (int shard = 0; shard != shards; ++shard) {
+                shardKeys.add(referrerShardKey(key, shard));
+            }
+            return shardKeys;
+        }
+        for (NodeKey referrer : changes.getAddedReferrers(ReferenceType.BOTH)) {
+            shardKeys.add(referrerShardKey(key, referrerShard(referrer.toString(), shards)));
+        }
+        for (NodeKey referrer : changes.getRemovedReferrers(ReferenceType.BOTH)) {
+            shardKeys.add(referrerShardKey(key, referrerShard(referrer.toString(), shards)));
+        }
+        return shardKeys;
+    }
+
+    /**
+     * Apply the supplied referrer changes to the shard documents of a node whose referrers are sharded. The node's own document
+     * is neither read nor changed, so the caller only needs to hold the locks of the {@link #referrerShardKeys changed shards}.
+     *
+     * @param key the key of the referenced node; may not be null
+     * @param shards the number of shards of the node's referrers
+     * @param changes the referrer changes; may not be null
+     */
+    protected void changeShardedReferrers( String key,
+                                           int shards,
+                                           ReferrerChanges changes ) {
+        Map<NodeKey, Integer> strongCount = computeReferrersCountDelta(changes.getAddedReferrers(ReferenceType.STRONG),
+                                                                       changes.getRemovedReferrers(ReferenceType.STRONG));
+        Map<NodeKey, Integer> weakCount = computeReferrersCountDelta(changes.getAddedReferrers(ReferenceType.WEAK),
+                                                                     changes.getRemovedReferrers(ReferenceType.WEAK));
+        Map<Integer, Map<NodeKey, Integer>> strongCountByShard = countsByShard(strongCount, shards);
+        Map<Integer, Map<NodeKey, Integer>> weakCountByShard = countsByShard(weakCount, shards);
+        Set<Integer> changedShards = new HashSet<>(strongCountByShard.keySet());
+        changedShards.addAll(weakCountByShard.keySet());
+        for (Integer shard : changedShards) {
+            EditableDocument referrerShard = documentStore.edit(referrerShardKey(key, shard), true);
+            Map<NodeKey, Integer> strongShardCount = strongCountByShard.get(shard);
+            if (strongShardCount != null) {
+                updateReferrers(referrerShard.getOrCreateDocument(STRONG), strongShardCount);
+            }
+            Map<NodeKey, Integer> weakShardCount = weakCountByShard.get(shard);
+            if (weakShardCount != null) {
+                updateReferrers(referrerShard.getOrCreateDocument(WEAK), weakShardCount);
+            }
+        }
+    }
+
+    /**
+     * Remove all of the shard documents holding the referrers of the node with the supplied key, which is being removed.
+     *
+     * @param key the key of the node; may not be null
+     */
+    protected void removeReferrerShards( String key ) {
+        SchematicEntry entry = documentStore.get(key);
+        if (entry == null) {
             return;
         }
+        int shards = referrerShards(entry.content());
+        for (int shard = 0; shard != shards; ++shard) {
+            documentStore.remove(referrerShardKey(key, shard));
+        }
+    }
+
+    private void shardReferrers( String key,
+                                 EditableDocument referrers ) {
+        // The document of the referenced node is already locked, and no other session writes to the shards before the node's
+        // document records that the referrers are sharded ...
+        Map<Integer, EditableDocument> referrerShards = new HashMap<>();
+        for (String type : new String[] {STRONG, WEAK}) {
+            Document counts = referrers.getDocument(type);
+            if (counts == null) {
+                continue;
+            }
+            for (Field field : counts.fields()) {
+                int shard = referrerShard(field.getName(), REFERRER_SHARD_COUNT);
+                EditableDocument referrerShard = referrerShards.computeIfAbsent(shard, index -> documentStore.edit(
+                        referrerShardKey(key, index), true));
+                referrerShard.getOrCreateDocument(type).set(field.getName(), field.getValue());
+            }
+            referrers.remove(type);
+        }
+        referrers.set(REFERRER_SHARDS, REFERRER_SHARD_COUNT);
+    }
+
+    private Document loadReferrerShard( String key,
+                                        int shard ) {
+        SchematicEntry entry = documentStore.get(referrerShardKey(key, shard));
+        return entry != null ? entry.content() : null;
+    }
 
-        // There are already some references, so update them
-        List<NodeKey> strongRemoved = changes.getRemovedReferrers(ReferenceType.STRONG);
-        Map<NodeKey, Integer> strongCount = computeReferrersCountDelta(strongAdded, strongRemoved);
-        if (!strongCount.isEmpty()) {
-            EditableDocument strong = referrers.getOrCreateDocument(STRONG);
-            updateReferrers(strong, strongCount);
+    private Map<Integer, Map<NodeKey, Integer>> countsByShard( Map<NodeKey, Integer> referrersCountDelta,
+                                                               int shards ) {
+        Map<Integer, Map<NodeKey, Integer>> result = new HashMap<>();
+        for (Map.Entry<NodeKey, Integer> entry : referrersCountDelta.entrySet()) {
+            int shard = referrerShard(entry.getKey().toString(), shards);
+            result.computeIfAbsent(shard, index -> new HashMap<>()).put(entry.getKey(), entry.getValue());
         }
+        return result;
+    }
+
+    private static int referrerShard( String referrerKey,
+                                      int shards ) {
+        // String.hashCode() is specified, so all processes in a cluster place a referrer in the same shard ...
+        return (referrerKey.hashCode() & Integer.MAX_VALUE) % shards;
+    }
 
-        List<NodeKey> weakRemoved = changes.getRemovedReferrers(ReferenceType.WEAK);
-        Map<NodeKey, Integer> weakCount = computeReferrersCountDelta(weakAdded, weakRemoved);
-        if (!weakCount.isEmpty()) {
-            EditableDocument weak = referrers.getOrCreateDocument(WEAK);
-            updateReferrers(weak, weakCount);
+    private static int referrerCount( Document referrers ) {
+        int count = 0;
+        Document strong = referrers.getDocument(STRONG);
+        if (strong != null) {
+            count += strong.size();
+        }
+        Document weak = referrers.getDocument(WEAK);
+        if (weak != null) {
+            count += weak.size();
         }
+        return count;
     }
 
     private void updateReferrers( EditableDocument owningDocument,
@@ -1134,6 +1469,7 @@ public class DocumentTranslator implements DocumentConstants {
     }
 
     protected Object valueToDocument( Object value,
+                                      String nodeKey,
                                       Set<BinaryKey> unusedBinaryKeys,
                                       Set<BinaryKey> usedBinaryKeys) {
         if (value == null) {
@@ -1219,7 +1555,7 @@ public class DocumentTranslator implements DocumentConstants {
             Document ref = Schematic.newDocument(SHA1_FIELD, sha1, LENGTH_FIELD, size);
 
             // Find the document metadata and increment the usage count ...
-            incrementBinaryReferenceCount(binary.getKey(), unusedBinaryKeys, usedBinaryKeys);
+            incrementBinaryReferenceCount(binary.getKey(), nodeKey, unusedBinaryKeys, usedBinaryKeys);
 
             // Now return the sha-1 reference ...
             return ref;
@@ -1232,29 +1568,43 @@ public class DocumentTranslator implements DocumentConstants {
         return sha1 + "-ref";
     }
 
+    /**
+     * Get the key of the counter document holding the references made by the node with the supplied key to the stored binary
+     * value with the supplied SHA-1 hash. The references to a binary value are striped across
+     * {@link #BINARY_REFERENCE_STRIPES} counter documents (plus the {@link #keyForBinaryReferenceDocument(String) document}
+     * used by earlier versions), so that saves of different nodes using the same binary value rarely need the same lock.
+     *
+     * @param sha1 the SHA-1 hash of the binary value; may not be null
+     * @param nodeKey the key of the node referencing the binary value; may be null if not known
+     * @return the key of the counter document; never null
+     */
+    protected final String keyForBinaryReferenceDocument( String sha1,
+                                                          String nodeKey ) {
+        int stripe = nodeKey == null ? 0 : (nodeKey.hashCode() & Integer.MAX_VALUE) % BINARY_REFERENCE_STRIPES;
+        return keyForBinaryReferenceStripe(sha1, stripe);
+    }
+
+    private String keyForBinaryReferenceStripe( String sha1,
+                                                int stripe ) {
+        return sha1 + "-" + stripe + "-ref";
+    }
+
     /**
      * Increment the reference count for the stored binary value with the supplied SHA-1 hash.
      *
      * @param binaryKey the key for the binary value; never null
+     * @param nodeKey the key of the node referencing the binary value; may be null if not known
      * @param unusedBinaryKeys the set of binary keys that are considered unused; may be null
      * @param usedBinaryKeys the set of binary keys that are considered used; may be null
      */
     protected void incrementBinaryReferenceCount( BinaryKey binaryKey,
+                                                  String nodeKey,
                                                   Set<BinaryKey> unusedBinaryKeys,
                                                   Set<BinaryKey> usedBinaryKeys ) {
         // Find the document metadata and increment the usage count ...
         String sha1 = binaryKey.toString();
-        String key = keyForBinaryReferenceDocument(sha1);
         // don't acquire a lock since we've already done this at the beginning of the #save
-        EditableDocument entry = documentStore.edit(key, false);
-        if (entry == null) {
-            // The document doesn't yet exist, so create it ...
-            Document content = Schematic.newDocument(SHA1, sha1, REFERENCE_COUNT, 1L);
-            documentStore.localStore().put(key, content);
-        } else {
-            Long countValue = entry.getLong(REFERENCE_COUNT);
-            entry.setNumber(REFERENCE_COUNT, countValue != null ? countValue + 1 : 1L);
-        }
+        changeBinaryReferenceCount(sha1, keyForBinaryReferenceDocument(sha1, nodeKey), 1L);
         // We're using the sha1, so remove it if its in the set of unused binary keys ...
         if (unusedBinaryKeys != null) {
             unusedBinaryKeys.remove(binaryKey);
@@ -1265,22 +1615,27 @@ public class DocumentTranslator implements DocumentConstants {
     }
 
     /**
-     * Decrement the reference count for the binary value.
+     * Decrement the reference count for the binary value. Only the counter of the node's stripe is read and changed: while it
+     * remains positive, another node of the same stripe still references the binary value. Otherwise the binary value is added
+     * to the set of unused binary keys as a candidate, since the other counters of the binary value are not locked; the caller
+     * must use {@link #isBinaryReferenced(BinaryKey)} to determine whether the binary value is really no longer used.
      * 
      * @param fieldValue the value in the document that may contain a binary value reference; may be null
+     * @param nodeKey the key of the node that referenced the binary value; may be null if not known
      * @param unusedBinaryKeys the set of binary keys that are considered unused; may be null
      * @param usedBinaryKeys the set of binary keys that are considered used; may be null
      */
     protected void decrementBinaryReferenceCount( Object fieldValue,
+                                                  String nodeKey,
                                                   Set<BinaryKey> unusedBinaryKeys,
                                                   Set<BinaryKey> usedBinaryKeys) {
         if (fieldValue instanceof List<?>) {
             for (Object value : (List<?>)fieldValue) {
-                decrementBinaryReferenceCount(value, unusedBinaryKeys, usedBinaryKeys);
+                decrementBinaryReferenceCount(value, nodeKey, unusedBinaryKeys, usedBinaryKeys);
             }
         } else if (fieldValue instanceof Object[]) {
             for (Object value : (Object[])fieldValue) {
-                decrementBinaryReferenceCount(value, unusedBinaryKeys, usedBinaryKeys);
+                decrementBinaryReferenceCount(value, nodeKey, unusedBinaryKeys, usedBinaryKeys);
             }
         } else {
             String sha1 = null;
@@ -1294,40 +1649,57 @@ public class DocumentTranslator implements DocumentConstants {
             }
 
             if (sha1 != null) {
-                BinaryKey binaryKey = new BinaryKey(sha1);
-                // Find the document metadata and decrement the usage count ...
+                // Find the document metadata and decrement the usage count, which may become negative when the reference was
+                // counted in another stripe ...
                 // Don't acquire a lock since we should've done so at the beginning of the #save method
-                EditableDocument sha1Usage = documentStore.edit(keyForBinaryReferenceDocument(sha1), false);
-                if (sha1Usage != null) {
-                    Long countValue = sha1Usage.getLong(REFERENCE_COUNT);
-                    assert countValue != null;
-
-                    long count = countValue - 1;
-                    assert count >= 0;
-
-                    if (count == 0) {
-                        // We're not using the binary value anymore ...
-                        if (unusedBinaryKeys != null) {
-                            unusedBinaryKeys.add(binaryKey);
-                        }
-                        if (usedBinaryKeys != null) {
-                            usedBinaryKeys.remove(binaryKey);
-                        }
-                    }
-                    sha1Usage.setNumber(REFERENCE_COUNT, count);
-                } else {
-                    // The documentStore doesn't contain the binary ref count doc, so we're no longer using the binary value ...
-                    if (unusedBinaryKeys != null) {
-                        unusedBinaryKeys.add(binaryKey);
-                    }
-                    if (usedBinaryKeys != null) {
-                        usedBinaryKeys.remove(binaryKey);
-                    }
+                long count = changeBinaryReferenceCount(sha1, keyForBinaryReferenceDocument(sha1, nodeKey), -1L);
+                if (count <= 0L && unusedBinaryKeys != null) {
+                    unusedBinaryKeys.add(new BinaryKey(sha1));
                 }
             }
         }
     }
 
+    private long changeBinaryReferenceCount( String sha1,
+                                             String key,
+                                             long delta ) {
+        EditableDocument entry = documentStore.edit(key, false);
+        if (entry == null) {
+            // The document doesn't yet exist, so create it ...
+            Document content = Schematic.newDocument(SHA1, sha1, REFERENCE_COUNT, delta);
+            documentStore.localStore().put(key, content);
+            return delta;
+        }
+        Long countValue = entry.getLong(REFERENCE_COUNT);
+        long count = countValue != null ? countValue + delta : delta;
+        entry.setNumber(REFERENCE_COUNT, count);
+        return count;
+    }
+
+    /**
+     * Determine whether the stored binary value with the supplied key is still referenced, by adding up all of its reference
+     * counters. Counters that are changed by transactions that haven't yet committed are not seen.
+     *
+     * @param binaryKey the key for the binary value; never null
+     * @return true if the binary value is referenced by at least one node, or false otherwise
+     */
+    protected boolean isBinaryReferenced( BinaryKey binaryKey ) {
+        String sha1 = binaryKey.toString();
+        List<String> keys = new ArrayList<>(BINARY_REFERENCE_STRIPES + 1);
+        keys.add(keyForBinaryReferenceDocument(sha1));
+        for (int stripe = 0; stripe != BINARY_REFERENCE_STRIPES; ++stripe) {
+            keys.add(keyForBinaryReferenceStripe(sha1, stripe));
+        }
+        long count = 0L;
+        for (SchematicEntry entry : documentStore.load(keys)) {
+            Long countValue = entry.content().getLong(REFERENCE_COUNT);
+            if (countValue != null) {
+                count += countValue;
+            }
+        }
+        return count > 0L;
+    }
+
     public Object valueFromDocument( Object value ) {
         if (value == null) {
             return null;
@@ -1536,49 +1908,21 @@ public class DocumentTranslator implements DocumentConstants {
                                          ChildReferences appended ) {
         assert appended != null;
         
-        long totalAdditions = 0;
         Integer bucketIdLength = parentDoc.getInteger(BUCKET_ID_LENGTH);     
         assert bucketIdLength != null;
         String parentKey = getKey(parentDoc);
 
-        // add all the new children into their corresponding buckets, creating each bucket if it does not exist
-        // we don't need to worry about locking here because the parent document should've already been locked at the beginning
-        // of the transaction acting as a monitor 
-        Map<BucketId, Set<ChildReference>> additionsPerBucket = new HashMap<>((int)appended.size());
-
-        // first collect all the new references into buckets...
-        for (ChildReference inserted : appended) {
-            Name insertedName = inserted.getName();
-            BucketId bucketId = new BucketId(insertedName, bucketIdLength);
-            Set<ChildReference> additions = additionsPerBucket.get(bucketId);
-            if (additions == null) {
-                additions = new HashSet<>();
-                additionsPerBucket.put(bucketId, additions);
-            }
-            additions.add(inserted);
-            ++totalAdditions;
-        }
-
-        //then insert them into each bucket
+        // the parent document should've already been locked at the beginning of the transaction and the caller must hold the
+        // locks of the changed buckets, since other sessions may be appending to them without locking the parent
+        Map<BucketId, Set<ChildReference>> additionsPerBucket = additionsPerBucket(appended, bucketIdLength);
+        long totalAdditions = 0;
         for (Map.Entry<BucketId, Set<ChildReference>> entry : additionsPerBucket.entrySet()) {
             BucketId bucketId = entry.getKey();
-            String bucketKey = bucketKey(parentKey, bucketId.toString());
-            boolean newBucket = !documentStore.containsKey(bucketKey);
-            // we don't worry about locking the bucket keys because the parent key should've already been locked, acting therefore
-            // as a monitor for all the buckets
-            EditableDocument bucketDoc = documentStore.edit(bucketKey, true);
-            assert bucketDoc != null;
-            for (ChildReference ref : entry.getValue()) {
-                // we store each key,name pair directly in the bucket
-                String key = ref.getKey().toString();
-                String name = strings.create(ref.getName());
-                bucketDoc.setString(key, name);
-            }
-
-            if (newBucket) {
+            if (addToBucket(parentKey, bucketId, entry.getValue())) {
                 // store the bucket id into the parent
                 parentDoc.getOrCreateArray(BUCKETS).add(bucketId.toString());
             }
+            totalAdditions += entry.getValue().size();
         }
 
         Long currentSize = parentDoc.getLong(SIZE);
@@ -1587,6 +1931,159 @@ public class DocumentTranslator implements DocumentConstants {
         } else {
             parentDoc.setNumber(SIZE, currentSize + totalAdditions);
         }
+        // from now on, other sessions may append children to this collection by changing only the buckets and their stripes
+        parentDoc.setBoolean(BUCKET_STRIPES, true);
+    }
+
+    /**
+     * Determine whether children can be appended to the unordered collection with the supplied document without changing (or
+     * locking) that document, by writing the bucket ids and the count of the appended children into
+     * {@link #bucketStripeKey bucket stripes}.
+     *
+     * @param parentDoc the document of the unordered collection; may be null
+     * @return true if the collection uses bucket stripes, or false otherwise
+     */
+    protected boolean hasBucketStripes( Document parentDoc ) {
+        return parentDoc != null && parentDoc.containsField(BUCKET_ID_LENGTH) && parentDoc.getBoolean(BUCKET_STRIPES, false);
+    }
+
+    /**
+     * Get the key of the stripe document which records the buckets of an unordered collection whose ids start with the same
+     * character, along with the number of children appended to those buckets without changing the collection's document.
+     *
+     * @param parentKey the key of the unordered collection; may not be null
+     * @param bucketId the id of a bucket; may not be null
+     * @return the key of the stripe document; never null
+     */
+    protected String bucketStripeKey( String parentKey,
+                                      String bucketId ) {
+        return parentKey + "/buckets/" + bucketId.charAt(0);
+    }
+
+    /**
+     * Get the keys of the stripe documents of an unordered collection, one for each possible first character of a bucket id.
+     *
+     * @param parentKey the key of the unordered collection; may not be null
+     * @return the keys of the stripe documents; never null
+     */
+    protected List<String> bucketStripeKeys( String parentKey ) {
+        List<String> stripeKeys = new ArrayList<>(16);
+        for (int stripe = 0; stripe != 16; ++stripe) {
+            stripeKeys.add(bucketStripeKey(parentKey, Integer.toHexString(stripe)));
+        }
+        return stripeKeys;
+    }
+
+    /**
+     * Get the keys of the buckets and bucket stripes which are changed when the supplied children are added to an unordered
+     * collection.
+     *
+     * @param parentKey the key of the unordered collection; may not be null
+     * @param bucketIdLength the length of the ids of the collection's buckets
+     * @param children the added children; may not be null
+     * @return the keys of the changed documents; never null
+     */
+    protected Set<String> bucketKeys( String parentKey,
+                                      int bucketIdLength,
+                                      ChildReferences children ) {
+        Set<BucketId> bucketIds = new HashSet<>();
+        for (ChildReference child : children) {
+            bucketIds.add(new BucketId(child.getName(), bucketIdLength));
+        }
+        return bucketKeys(parentKey, bucketIds);
+    }
+
+    /**
+     * Get the keys of the supplied buckets of an unordered collection and of their bucket stripes.
+     *
+     * @param parentKey the key of the unordered collection; may not be null
+     * @param bucketIds the ids of the buckets; may not be null
+     * @return the keys of the bucket and stripe documents; never null
+     */
+    protected Set<String> bucketKeys( String parentKey,
+                                      Collection<BucketId> bucketIds ) {
+        Set<String> keys = new TreeSet<>();
+        for (BucketId bucketId : bucketIds) {
+            keys.add(bucketKey(parentKey, bucketId.toString()));
+            keys.add(bucketStripeKey(parentKey, bucketId.toString()));
+        }
+        return keys;
+    }
+
+    /**
+     * Append children to an unordered collection {@link #hasBucketStripes which uses bucket stripes}. The collection's own
+     * document is neither read nor changed: new buckets are recorded in their stripe and each stripe counts the children that
+     * were added to its buckets, so the caller only needs to hold the locks of the {@link #bucketKeys changed buckets and
+     * stripes}.
+     *
+     * @param parentKey the key of the unordered collection; may not be null
+     * @param bucketIdLength the length of the ids of the collection's buckets
+     * @param appended the appended children; may not be null
+     */
+    protected void addChildrenToBucketStripes( String parentKey,
+                                               int bucketIdLength,
+                                               ChildReferences appended ) {
+        Map<BucketId, Set<ChildReference>> additionsPerBucket = additionsPerBucket(appended, bucketIdLength);
+        for (Map.Entry<BucketId, Set<ChildReference>> entry : additionsPerBucket.entrySet()) {
+            String bucketId = entry.getKey().toString();
+            boolean newBucket = addToBucket(parentKey, entry.getKey(), entry.getValue());
+            EditableDocument stripe = documentStore.edit(bucketStripeKey(parentKey, bucketId), true);
+            if (newBucket) {
+                stripe.getOrCreateArray(BUCKETS).add(bucketId);
+            }
+            Long currentSize = stripe.getLong(SIZE);
+            long additions = entry.getValue().size();
+            stripe.setNumber(SIZE, currentSize != null ? currentSize + additions : additions);
+        }
+    }
+
+    /**
+     * Load the stripe documents of an unordered collection {@link #hasBucketStripes which uses bucket stripes}.
+     *
+     * @param parentKey the key of the unordered collection; may not be null
+     * @return the existing stripe documents; never null
+     */
+    protected List<Document> loadBucketStripes( String parentKey ) {
+        List<Document> stripes = new ArrayList<>();
+        for (String stripeKey : bucketStripeKeys(parentKey)) {
+            SchematicEntry entry = documentStore.get(stripeKey);
+            if (entry != null) {
+                stripes.add(entry.content());
+            }
+        }
+        return stripes;
+    }
+
+    private Map<BucketId, Set<ChildReference>> additionsPerBucket( ChildReferences appended,
+                                                                   int bucketIdLength ) {
+        Map<BucketId, Set<ChildReference>> additionsPerBucket = new HashMap<>((int)appended.size());
+        for (ChildReference inserted : appended) {
+            Name insertedName = inserted.getName();
+            BucketId bucketId = new BucketId(insertedName, bucketIdLength);
+            Set<ChildReference> additions = additionsPerBucket.get(bucketId);
+            if (additions == null) {
+                additions = new HashSet<>();
+                additionsPerBucket.put(bucketId, additions);
+            }
+            additions.add(inserted);
+        }
+        return additionsPerBucket;
+    }
+
+    private boolean addToBucket( String parentKey,
+                                 BucketId bucketId,
+                                 Set<ChildReference> additions ) {
+        String bucketKey = bucketKey(parentKey, bucketId.toString());
+        boolean newBucket = !documentStore.containsKey(bucketKey);
+        EditableDocument bucketDoc = documentStore.edit(bucketKey, true);
+        assert bucketDoc != null;
+        for (ChildReference ref : additions) {
+            // we store each key,name pair directly in the bucket
+            String key = ref.getKey().toString();
+            String name = strings.create(ref.getName());
+            bucketDoc.setString(key, name);
+        }
+        return newBucket;
     }
     
     protected Map<BucketId, Set<NodeKey>> preRemoveChildrenFromBuckets( WorkspaceCache wsCache,
@@ -1629,8 +2126,8 @@ public class DocumentTranslator implements DocumentConstants {
             Set<NodeKey> removalsFromBucket = entry.getValue();
             String bucketIdString = bucketId.toString();
             String bucketKey = bucketKey(parentKey.toString(), bucketIdString);
-            // we don't worry about locking the bucket keys because the parent key should've already been locked, acting therefore
-            // as a monitor for all the buckets 
+            // the caller must hold the locks of the bucket keys, since other sessions may be appending to the buckets without
+            // locking the parent
             EditableDocument bucketDoc = documentStore.edit(bucketKey, false);
             assert bucketDoc != null;
             for (NodeKey toRemove : removalsFromBucket) {
@@ -1639,23 +2136,98 @@ public class DocumentTranslator implements DocumentConstants {
             }
             if (bucketDoc.isEmpty()) {
                 documentStore.remove(bucketKey);
-                parentDoc.getArray(BUCKETS).remove((Object)bucketIdString);
+                EditableArray bucketIds = parentDoc.getArray(BUCKETS);
+                if (bucketIds != null) {
+                    bucketIds.remove((Object)bucketIdString);
+                }
+                String stripeKey = bucketStripeKey(parentKey.toString(), bucketIdString);
+                if (documentStore.containsKey(stripeKey)) {
+                    bucketIds = documentStore.edit(stripeKey, false).getArray(BUCKETS);
+                    if (bucketIds != null) {
+                        bucketIds.remove((Object)bucketIdString);
+                    }
+                }
             } 
         }
     }
     
-    protected void removeAllBucketsFromUnorderedCollection( NodeKey parentDocKey ) {
-        // should already have been loaded into the cache and the parent locked
+    /**
+     * Get the keys of all the bucket and bucket stripe documents of an unordered collection, as currently recorded in the
+     * collection's document and in its stripes.
+     *
+     * @param parentKey the key of the unordered collection; may not be null
+     * @return the keys of the bucket and stripe documents; never null
+     */
+    protected Set<String> allBucketKeys( String parentKey ) {
+        Set<String> keys = new TreeSet<>();
+        SchematicEntry parent = documentStore.get(parentKey);
+        if (parent == null) {
+            return keys;
+        }
+        Document parentDoc = parent.content();
+        List<?> parentBucketIds = parentDoc.getArray(BUCKETS);
+        if (parentBucketIds != null) {
+            for (Object bucketId : parentBucketIds) {
+                keys.add(bucketKey(parentKey, bucketId.toString()));
+            }
+        }
+        if (hasBucketStripes(parentDoc)) {
+            // the stripes are locked even when they don't exist yet, since appending to a new bucket creates its stripe ...
+            keys.addAll(bucketStripeKeys(parentKey));
+            for (Document stripe : loadBucketStripes(parentKey)) {
+                List<?> stripeBucketIds = stripe.getArray(BUCKETS);
+                if (stripeBucketIds != null) {
+                    for (Object bucketId : stripeBucketIds) {
+                        keys.add(bucketKey(parentKey, bucketId.toString()));
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Remove all the bucket and bucket stripe documents of an unordered collection. The caller must hold the lock of the
+     * collection and the locks of {@link #allBucketKeys all its bucket keys}.
+     *
+     * @param parentDocKey the key of the unordered collection; may not be null
+     * @return the keys of the children which were in the removed buckets; never null
+     */
+    protected Set<NodeKey> removeAllBucketsFromUnorderedCollection( NodeKey parentDocKey ) {
+        // should already have been loaded into the cache
         EditableDocument parentDoc = documentStore.edit(parentDocKey.toString(), false);
         assert parentDoc != null;
-        EditableArray bucketsIds = parentDoc.getArray(BUCKETS);
-        if (bucketsIds == null || bucketsIds.isEmpty()) {
-            return;
+        Set<Object> bucketIds = new HashSet<>();
+        EditableArray parentBucketIds = parentDoc.getArray(BUCKETS);
+        if (parentBucketIds != null) {
+            bucketIds.addAll(parentBucketIds);
+        }
+        if (hasBucketStripes(parentDoc)) {
+            for (String stripeKey : bucketStripeKeys(parentDocKey.toString())) {
+                SchematicEntry stripe = documentStore.get(stripeKey);
+                if (stripe == null) {
+                    continue;
+                }
+                List<?> stripeBucketIds = stripe.content().getArray(BUCKETS);
+                if (stripeBucketIds != null) {
+                    bucketIds.addAll(stripeBucketIds);
+                }
+                documentStore.remove(stripeKey);
+            }
         }
-        for (Object bucketId : bucketsIds) {
+        Set<NodeKey> childKeys = new HashSet<>();
+        for (Object bucketId : bucketIds) {
             String bucketKey = bucketKey(parentDocKey.toString(), bucketId.toString());
+            SchematicEntry bucket = documentStore.get(bucketKey);
+            if (bucket != null) {
+                // keys are stored directly in the bucket
+                for (String childKey : bucket.content().keySet()) {
+                    childKeys.add(new NodeKey(childKey));
+                }
+            }
             documentStore.remove(bucketKey);
         }
+        return childKeys;
     }
     
     protected void addInternalProperties(EditableDocument doc, Map<String, Object> properties) {
@@ -157,6 +157,11 @@ public class ImmutableChildReferences {
             return EMPTY_ITERATOR;
         }
 
+        @Override
+        public Iterator<ChildReference> iterator( long offset ) {
+            return EMPTY_ITERATOR;
+        }
+
         @Override
         public Iterator<ChildReference> iterator( Name name ) {
             return EMPTY_ITERATOR;
@@ -496,6 +501,7 @@ public class ImmutableChildReferences {
         protected final WorkspaceCache cache;
         protected final long totalSize;
         protected final boolean allowsSNS;
+        protected final ChildReferencesInfo info;
         private Segment firstSegment;
 
         public Segmented( WorkspaceCache cache,
@@ -506,6 +512,7 @@ public class ImmutableChildReferences {
             this.totalSize = info.totalSize;
             this.firstSegment = new Segment(firstSegment, info.nextKey, allowsSNS);
             this.allowsSNS = allowsSNS;
+            this.info = info;
         }
 
         @Override
@@ -520,6 +527,12 @@ public class ImmutableChildReferences {
 
         @Override
         public int getChildCount( Name name ) {
+            if (info.nodeKey != null) {
+                long count = index().childCount(info.nodeKey, info.indexShards, cache.translator().childNameString(name));
+                if (count >= 0L) {
+                    return (int)count;
+                }
+            }
             int result = 0;
             Segment segment = this.firstSegment;
             while (segment != null) {
@@ -533,6 +546,22 @@ public class ImmutableChildReferences {
         public ChildReference getChild( Name name,
                                         int snsIndex,
                                         Context context ) {
+            if (info.nodeKey != null && (context == null || context.changes() == null)) {
+                // Use the index to find the only block that can contain the child ...
+                ChildReferencesIndex.Position position = index().findChild(info.nodeKey, info.indexShards,
+                                                                           cache.translator().childNameString(name), snsIndex);
+                if (position == ChildReferencesIndex.NOT_FOUND) {
+                    return null;
+                }
+                if (position != null) {
+                    ChildReference child = segmentFor(position.blockKey).getReferences().getChild(name, (int)position.index + 1);
+                    if (child != null) {
+                        // The SNS indexes within the block are relative to the block ...
+                        return allowsSNS ? child.with(snsIndex) : child;
+                    }
+                }
+                // Otherwise the index is not available, so look through the blocks ...
+            }
             ChildReference result = null;
             Segment segment = this.firstSegment;
             while (segment != null) {
@@ -629,9 +658,32 @@ public class ImmutableChildReferences {
             };
         }
 
+        @Override
+        public Iterator<ChildReference> iterator( long offset ) {
+            if (info.nodeKey != null) {
+                // Use the index to start with the block that contains the child at the offset ...
+                ChildReferencesIndex.Position position = index().findPosition(info.nodeKey, offset);
+                if (position == ChildReferencesIndex.NOT_FOUND) {
+                    return ImmutableChildReferences.EMPTY_ITERATOR;
+                }
+                if (position != null) {
+                    Iterator<ChildReference> iter = iterator(segmentFor(position.blockKey), defaultContext());
+                    for (long i = 0; i != position.index && iter.hasNext(); ++i) {
+                        iter.next();
+                    }
+                    return iter;
+                }
+            }
+            return super.iterator(offset);
+        }
+
         @Override
         public Iterator<ChildReference> iterator( final Context context ) {
-            final Segment firstSegment = this.firstSegment;
+            return iterator(this.firstSegment, context);
+        }
+
+        protected Iterator<ChildReference> iterator( final Segment firstSegment,
+                                                     final Context context ) {
             return new Iterator<ChildReference>() {
                 private Segment segment = firstSegment;
                 private Iterator<ChildReference> iter = segment != null ? segment.getReferences().iterator(context) : ImmutableChildReferences.EMPTY_ITERATOR;
@@ -727,6 +779,24 @@ public class ImmutableChildReferences {
             };
         }
 
+        protected ChildReferencesIndex index() {
+            return cache.translator().childReferencesIndex();
+        }
+
+        @SuppressWarnings( "synthetic-access" )
+        private Segment segmentFor( String blockKey ) {
+            if (blockKey.equals(info.nodeKey)) {
+                return firstSegment;
+            }
+            // Use the block if it has already been loaded ...
+            for (Segment segment = firstSegment; segment.next != null; segment = segment.next) {
+                if (blockKey.equals(segment.nextKey)) {
+                    return segment.next;
+                }
+            }
+            return Segment.load(cache, blockKey, allowsSNS);
+        }
+
         @SuppressWarnings( "synthetic-access" )
         @Override
         public StringBuilder toString( StringBuilder sb ) {
@@ -862,18 +932,24 @@ public class ImmutableChildReferences {
 
         public Segment next( WorkspaceCache cache ) {
             if (next == null && nextKey != null) {
-                Document blockDoc = cache.blockFor(nextKey);
-                if (blockDoc == null) {
-                    throw new DocumentNotFoundException(nextKey);
-                }
-                // we only need the direct children of the block to avoid nesting
-                ChildReferences refs = cache.translator().getChildReferencesFromBlock(blockDoc, allowsSNS);
-                ChildReferencesInfo nextNextKey = cache.translator().getChildReferencesInfo(blockDoc);
-                next = new Segment(refs, nextNextKey != null ? nextNextKey.nextKey : null, allowsSNS);
+                next = load(cache, nextKey, allowsSNS);
             }
             return next;
         }
 
+        protected static Segment load( WorkspaceCache cache,
+                                       String key,
+                                       boolean allowsSNS ) {
+            Document blockDoc = cache.blockFor(key);
+            if (blockDoc == null) {
+                throw new DocumentNotFoundException(key);
+            }
+            // we only need the direct children of the block to avoid nesting
+            ChildReferences refs = cache.translator().getChildReferencesFromBlock(blockDoc, allowsSNS);
+            ChildReferencesInfo nextNextKey = cache.translator().getChildReferencesInfo(blockDoc);
+            return new Segment(refs, nextNextKey != null ? nextNextKey.nextKey : null, allowsSNS);
+        }
+
         public Iterator<NodeKey> keys() {
             return references.getAllKeys();
         }
@@ -211,6 +211,15 @@ public class SessionChildReferences extends AbstractChildReferences {
         return createIterator(context);
     }
 
+    @Override
+    public Iterator<ChildReference> iterator( long offset ) {
+        if ((changedChildren == null || changedChildren.isEmpty()) && (appended == null || appended.isEmpty())) {
+            // There are no transient changes, so the persisted children can be skipped without reading them ...
+            return persisted.iterator(offset);
+        }
+        return super.iterator(offset);
+    }
+
     protected Iterator<ChildReference> createIterator( final Context context ) {
         Iterator<ChildReference> firstIter = persisted.iterator(context);
         final MutableChildReferences appended = this.appended;
@@ -193,6 +193,49 @@ public class SessionNode implements MutableCachedNode {
         return false;
     }
 
+    /**
+     * Determine whether this is an existing node whose only changes are references being added or removed by other nodes.
+     *
+     * @return true if only the referrers of this node have changed, or false otherwise
+     */
+    protected boolean hasOnlyReferrerChanges() {
+        ReferrerChanges referrerChanges = referrerChanges(false);
+        if (referrerChanges == null || referrerChanges.isEmpty()) return false;
+        if (hasPropertyChanges()) return false;
+        if (newParent != null || lockChange != null) return false;
+        if (!changedChildren.isEmpty()) return false;
+        MutableChildReferences childRefChanges = appended(false);
+        if (childRefChanges != null && !childRefChanges.isEmpty()) return false;
+        ChangedAdditionalParents additionalParents = additionalParents();
+        if (additionalParents != null && !additionalParents.isEmpty()) return false;
+        MixinChanges mixinChanges = mixinChanges(false);
+        if (mixinChanges != null && !mixinChanges.isEmpty()) return false;
+        if (federatedSegments.get() != null || excludeFromSearch.get() != null || permissionChanges.get() != null) return false;
+        return addedInternalProperties.isEmpty() && removedInternalProperties.isEmpty();
+    }
+
+    /**
+     * Determine whether this is an existing node whose only changes are children being appended to it.
+     *
+     * @return true if children have only been appended to this node, or false otherwise
+     */
+    protected boolean hasOnlyAppendedChildren() {
+        if (isNew) return false;
+        MutableChildReferences childRefChanges = appended(false);
+        if (childRefChanges == null || childRefChanges.isEmpty()) return false;
+        if (hasPropertyChanges()) return false;
+        if (newParent != null || lockChange != null) return false;
+        if (!changedChildren.isEmpty()) return false;
+        ReferrerChanges referrerChanges = referrerChanges(false);
+        if (referrerChanges != null && !referrerChanges.isEmpty()) return false;
+        ChangedAdditionalParents additionalParents = additionalParents();
+        if (additionalParents != null && !additionalParents.isEmpty()) return false;
+        MixinChanges mixinChanges = mixinChanges(false);
+        if (mixinChanges != null && !mixinChanges.isEmpty()) return false;
+        if (federatedSegments.get() != null || excludeFromSearch.get() != null || permissionChanges.get() != null) return false;
+        return addedInternalProperties.isEmpty() && removedInternalProperties.isEmpty();
+    }
+
     @Override
     public void lock( boolean sessionScoped ) {
         this.lockChange = sessionScoped ? LockChange.LOCK_FOR_SESSION : LockChange.LOCK_FOR_NON_SESSION;
@@ -15,6 +15,8 @@
  */
 package org.modeshape.jcr.cache.document;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
@@ -60,6 +62,8 @@ public class WorkspaceCache implements DocumentCache {
     private final ChangeSetListener systemChangeNotifier;
     private final ChangeSetListener nonSystemChangeNotifier;
     private final RepositoryEnvironment repositoryEnvironment;
+    private final WorkspacePathCache pathCache;
+    private final String systemWorkspaceName;
     private volatile boolean closed = false;
 
     public WorkspaceCache( ExecutionContext context,
@@ -72,6 +76,21 @@ public class WorkspaceCache implements DocumentCache {
                            ConcurrentMap<NodeKey, CachedNode> cache,
                            ChangeBus changeBus,
                            RepositoryEnvironment repositoryEnvironment) {
+        this(context, repositoryKey, workspaceName, systemWorkspace, documentStore, translator, rootKey, cache, changeBus,
+             repositoryEnvironment, null);
+    }
+
+    public WorkspaceCache( ExecutionContext context,
+                           String repositoryKey,
+                           String workspaceName,
+                           WorkspaceCache systemWorkspace,
+                           DocumentStore documentStore,
+                           DocumentTranslator translator,
+                           NodeKey rootKey,
+                           ConcurrentMap<NodeKey, CachedNode> cache,
+                           ChangeBus changeBus,
+                           RepositoryEnvironment repositoryEnvironment,
+                           WorkspacePathCache pathCache ) {
         assert context != null;
         assert repositoryKey != null;
         assert workspaceName != null;
@@ -94,6 +113,8 @@ public class WorkspaceCache implements DocumentCache {
         this.nameFactory = context.getValueFactories().getNameFactory();
         this.nodesByKey = cache;
         this.repositoryEnvironment = repositoryEnvironment;
+        this.pathCache = pathCache;
+        this.systemWorkspaceName = systemWorkspace != null ? systemWorkspace.getWorkspaceName() : workspaceName;
         if (systemWorkspace != null) {
             // This is not the system workspace, so we have to listen both asynchronously and synchronously ...
             this.systemChangeNotifier = new SystemChangeNotifier(systemWorkspace.getWorkspaceName());
@@ -123,6 +144,9 @@ public class WorkspaceCache implements DocumentCache {
         this.nameFactory = original.nameFactory;
         this.repositoryEnvironment = original.repositoryEnvironment;
         this.nodesByKey = cache;
+        // the shared path cache only reflects the persisted content, so it is not used within transactions
+        this.pathCache = null;
+        this.systemWorkspaceName = original.systemWorkspaceName;
         this.systemChangeNotifier = null;
         this.nonSystemChangeNotifier = null;
         //the change bus is not copied on purpose because this ctr should only be used for creating lightweight, "transient" instances
@@ -179,6 +203,15 @@ public class WorkspaceCache implements DocumentCache {
         return repositoryEnvironment;
     }
 
+    /**
+     * Get the cache of the keys of the nodes at absolute paths in this workspace, which is shared by all sessions.
+     *
+     * @return the path cache, or null if paths are not cached for this workspace
+     */
+    public final WorkspacePathCache pathCache() {
+        return pathCache;
+    }
+
     final Document documentFor( String key ) {
         // Look up the information in the database ...
         SchematicEntry entry = documentStore.get(key);
@@ -255,6 +288,39 @@ public class WorkspaceCache implements DocumentCache {
         return node;
     }
 
+    /**
+     * Load into this cache, with a single read from the document store, those of the supplied nodes which are not cached yet. This
+     * can be used by operations that visit many nodes one after the other (like the children of a node) to avoid reading each of
+     * them separately. Nodes which are stored in external sources are not loaded.
+     *
+     * @param keys the keys of the nodes; may not be null
+     */
+    public void prefetch( Collection<NodeKey> keys ) {
+        checkNotClosed();
+        Set<String> keysToLoad = new HashSet<>();
+        for (NodeKey key : keys) {
+            if (sourceKey.equals(key.getSourceKey()) && !nodesByKey.containsKey(key)) {
+                keysToLoad.add(key.toString());
+            }
+        }
+        if (keysToLoad.isEmpty()) {
+            return;
+        }
+        for (SchematicEntry entry : documentStore.load(keysToLoad)) {
+            Document doc;
+            try {
+                doc = entry.content();
+            } catch (IllegalStateException e) {
+                // The document was concurrently removed ...
+                continue;
+            }
+            if (translator.isCacheable(doc)) {
+                NodeKey key = new NodeKey(entry.id());
+                nodesByKey.putIfAbsent(key, new LazyCachedNode(key, doc));
+            }
+        }
+    }
+
     @Override
     public CachedNode getNode( ChildReference reference ) {
         checkNotClosed();
@@ -282,6 +348,7 @@ public class WorkspaceCache implements DocumentCache {
     @Override
     public void clear() {
         nodesByKey.clear();
+        if (pathCache != null) pathCache.clear();
     }
 
     protected void evictChangedNodes( ChangeSet changes ) {
@@ -295,6 +362,15 @@ public class WorkspaceCache implements DocumentCache {
                 if (closed) break;
                 nodesByKey.remove(key);
             }
+            invalidatePaths(changes);
+        }
+    }
+
+    private void invalidatePaths( ChangeSet changes ) {
+        // Only changes to this workspace or to the (shared) system content can change the nodes at our paths ...
+        if (pathCache != null && (workspaceName.equals(changes.getWorkspaceName())
+                                  || systemWorkspaceName.equals(changes.getWorkspaceName()))) {
+            pathCache.invalidate(changes);
         }
     }
 
@@ -315,6 +391,7 @@ public class WorkspaceCache implements DocumentCache {
             if (closed) break;
             nodesByKey.remove(key);
         }
+        invalidatePaths(changes);
 
         // Send the changes to the change bus so that others can see them ...
         if (changeBus != null) changeBus.notify(changes);
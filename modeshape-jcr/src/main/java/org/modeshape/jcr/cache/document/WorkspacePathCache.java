@@ -0,0 +1,267 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.cache.document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.modeshape.common.annotation.GuardedBy;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.AbstractNodeChange;
+import org.modeshape.jcr.cache.change.Change;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.NodeAdded;
+import org.modeshape.jcr.cache.change.NodeMoved;
+import org.modeshape.jcr.cache.change.NodeRemoved;
+import org.modeshape.jcr.cache.change.NodeRenamed;
+import org.modeshape.jcr.cache.change.NodeReordered;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.Path;
+import org.modeshape.jcr.value.Path.Segment;
+import org.modeshape.jcr.value.PathFactory;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * A cache of the keys of the persisted nodes at absolute paths in a workspace, shared by all of the sessions using that
+ * workspace. The cache also remembers the paths at which there is no node.
+ * <p>
+ * Entries are invalidated from the {@link ChangeSet}s describing the structural changes made to the workspace. A change to the
+ * node at a path invalidates the entries at or below that path and at or below its same-name-siblings (whose indexes may have
+ * shifted), so that moves, renames, removals and reorderings only invalidate the affected part of the cache. Adding a node
+ * only invalidates the record that there was no node at its path. The cached paths are also kept in a sorted map keyed by an
+ * encoding of the path in which the same-name-siblings of a node and all of their descendants share a prefix, so that an
+ * invalidation only visits the affected entries.
+ * </p>
+ */
+@ThreadSafe
+public final class WorkspacePathCache {
+
+    /**
+     * The number of structural changes in a single change set above which the whole cache is cleared rather than invalidating
+     * each of the affected paths.
+     */
+    private static final int MAX_PATHS_TO_INVALIDATE = 100;
+
+    private static final char SEGMENT_START = '\u0001';
+    private static final char LOCAL_NAME_START = '\u0002';
+    private static final char INDEX_START = '\u0003';
+    private static final char AFTER_ALL = '\uffff';
+
+    private final ConcurrentMap<Path, NodeKey> keysByPath;
+    private final ConcurrentMap<Path, Boolean> missingPaths;
+    @GuardedBy( "lock" )
+    private final NavigableMap<String, Path> pathsByEncoding = new ConcurrentSkipListMap<>();
+    private final Object lock = new Object();
+    private final String sourceKey;
+    private final PathFactory pathFactory;
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Create a new cache.
+     *
+     * @param maximumSize the maximum number of keys of nodes, and the maximum number of paths at which there are no nodes, that
+     *        are kept in the cache
+     * @param sourceKey the key of the source of the workspace; nodes from other sources (e.g., federated nodes) are not cached
+     * @param pathFactory the factory for paths; may not be null
+     */
+    public WorkspacePathCache( long maximumSize,
+                               String sourceKey,
+                               PathFactory pathFactory ) {
+        assert sourceKey != null;
+        // evicted paths are removed from the sorted map in another thread, since eviction may happen while the cache is locked
+        this.keysByPath = Caffeine.newBuilder().maximumSize(maximumSize)
+                                  .<Path, NodeKey>removalListener((path, key, cause) -> {
+                                      if (cause.wasEvicted()) evicted(path);
+                                  }).build().asMap();
+        this.missingPaths = Caffeine.newBuilder().maximumSize(maximumSize)
+                                    .<Path, Boolean>removalListener((path, missing, cause) -> {
+                                        if (cause.wasEvicted()) evicted(path);
+                                    }).build().asMap();
+        this.sourceKey = sourceKey;
+        this.pathFactory = pathFactory;
+    }
+
+    /**
+     * Get the current version of this cache, which changes every time entries are invalidated. The version should be obtained
+     * before resolving a path, and then passed to {@link #put(Path, NodeKey, long)} or {@link #putMissing(Path, long)}.
+     *
+     * @return the version
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Get the key of the node at the supplied absolute path.
+     *
+     * @param path the absolute and normalized path; may not be null
+     * @return the key of the node, or null if the path is not in the cache
+     */
+    public NodeKey get( Path path ) {
+        return keysByPath.get(path);
+    }
+
+    /**
+     * Determine whether this cache knows that there is no node at the supplied path.
+     *
+     * @param path the absolute and normalized path; may not be null
+     * @return true if there is known to be no node at the path, or false otherwise
+     */
+    public boolean isMissing( Path path ) {
+        return missingPaths.containsKey(path);
+    }
+
+    /**
+     * Record the key of the node at the supplied path, unless this cache was invalidated since the path was resolved.
+     *
+     * @param path the absolute and normalized path; may not be null
+     * @param key the key of the node at the path; may not be null
+     * @param version the {@link #version() version} of this cache obtained before the path was resolved
+     */
+    public void put( Path path,
+                     NodeKey key,
+                     long version ) {
+        if (!sourceKey.equals(key.getSourceKey())) {
+            // Federated content may change without any events ...
+            return;
+        }
+        synchronized (lock) {
+            if (this.version.get() != version) {
+                // The path may have been resolved from content that has since been changed ...
+                return;
+            }
+            pathsByEncoding.put(encode(path), path);
+            keysByPath.put(path, key);
+        }
+    }
+
+    /**
+     * Record that there is no node at the supplied path, unless this cache was invalidated since the path was resolved.
+     *
+     * @param path the absolute and normalized path; may not be null
+     * @param version the {@link #version() version} of this cache obtained before the path was resolved
+     */
+    public void putMissing( Path path,
+                            long version ) {
+        synchronized (lock) {
+            if (this.version.get() != version) {
+                return;
+            }
+            pathsByEncoding.put(encode(path), path);
+            missingPaths.put(path, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Invalidate the entries affected by the structural changes in the supplied change set.
+     *
+     * @param changes the changes; may not be null
+     */
+    void invalidate( ChangeSet changes ) {
+        List<Path> paths = new ArrayList<>();
+        List<Path> addedPaths = new ArrayList<>();
+        for (Change change : changes) {
+            if (change instanceof NodeMoved) {
+                NodeMoved moved = (NodeMoved)change;
+                paths.add(moved.getOldPath());
+                paths.add(moved.getNewPath());
+            } else if (change instanceof NodeRenamed) {
+                NodeRenamed renamed = (NodeRenamed)change;
+                Path newPath = renamed.getPath();
+                paths.add(newPath);
+                if (!newPath.isRoot()) {
+                    paths.add(pathFactory.create(newPath.getParent(), renamed.getOldSegment()));
+                }
+            } else if (change instanceof NodeReordered || change instanceof NodeRemoved) {
+                paths.add(((AbstractNodeChange)change).getPath());
+            } else if (change instanceof NodeAdded) {
+                // a new node is appended after its same-name-siblings, so only its own path changes ...
+                addedPaths.add(((NodeAdded)change).getPath());
+            }
+        }
+        if (paths.isEmpty() && addedPaths.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            version.incrementAndGet();
+            if (paths.size() + addedPaths.size() > MAX_PATHS_TO_INVALIDATE) {
+                clear();
+                return;
+            }
+            for (Path path : paths) {
+                if (path.isRoot()) {
+                    clear();
+                    return;
+                }
+                // the same-name-siblings of the changed node and all of their descendants ...
+                String prefix = encode(path.getParent()) + SEGMENT_START + encodeName(path.getLastSegment()) + INDEX_START;
+                NavigableMap<String, Path> affected = pathsByEncoding.subMap(prefix, true, prefix + AFTER_ALL, false);
+                for (Path affectedPath : affected.values()) {
+                    keysByPath.remove(affectedPath);
+                    missingPaths.remove(affectedPath);
+                }
+                affected.clear();
+            }
+            for (Path path : addedPaths) {
+                if (missingPaths.remove(path) != null && !keysByPath.containsKey(path)) {
+                    pathsByEncoding.remove(encode(path));
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all of the entries from this cache.
+     */
+    void clear() {
+        synchronized (lock) {
+            version.incrementAndGet();
+            keysByPath.clear();
+            missingPaths.clear();
+            pathsByEncoding.clear();
+        }
+    }
+
+    private void evicted( Path path ) {
+        synchronized (lock) {
+            if (!keysByPath.containsKey(path) && !missingPaths.containsKey(path)) {
+                pathsByEncoding.remove(encode(path));
+            }
+        }
+    }
+
+    /**
+     * Encode the path so that the encodings of the same-name-siblings of a node and of all their descendants start with the
+     * encoding of the node's parent followed by the node's name and the {@link #INDEX_START start of its index}. The separators
+     * cannot appear in names or namespace URIs.
+     */
+    private static String encode( Path path ) {
+        StringBuilder sb = new StringBuilder();
+        for (Segment segment : path) {
+            sb.append(SEGMENT_START).append(encodeName(segment)).append(INDEX_START).append(segment.getIndex());
+        }
+        return sb.toString();
+    }
+
+    private static String encodeName( Segment segment ) {
+        Name name = segment.getName();
+        return name.getNamespaceUri() + LOCAL_NAME_START + name.getLocalName();
+    }
+}
@@ -35,6 +35,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import javax.jcr.InvalidItemStateException;
 import javax.transaction.Status;
 import javax.transaction.SystemException;
 import org.modeshape.common.SystemFailureException;
@@ -962,7 +964,10 @@ public class WritableSessionCache extends AbstractSessionCache {
                     ReferrerChanges referrerChanges = referrerChangesForRemovedNodes.get(key);
                     if (referrerChanges != null) {
                         EditableDocument doc = documentStore.edit(keyStr, false);
-                        if (doc != null) translator.changeReferrers(doc, referrerChanges);
+                        if (doc != null) {
+                            lockReferrerShards(keyStr, doc, referrerChanges);
+                            translator.changeReferrers(doc, referrerChanges, false);
+                        }
                     }
 
                     // if the node had any binary properties, make sure we decrement the ref count of each
@@ -970,7 +975,7 @@ public class WritableSessionCache extends AbstractSessionCache {
                         Property property = propertyIterator.next();
                         if (property.isBinary()) {
                             Object value = property.isMultiple() ? Arrays.asList(property.getValuesAsArray()) : property.getFirstValue();
-                            translator.decrementBinaryReferenceCount(value, unusedBinaryKeys, null);
+                            translator.decrementBinaryReferenceCount(value, keyStr, unusedBinaryKeys, null);
                         }
                     }
 
@@ -990,6 +995,8 @@ public class WritableSessionCache extends AbstractSessionCache {
                 NodeKey newParent = node.newParent();
                 EditableDocument doc = null;
                 ChangedAdditionalParents additionalParents = node.additionalParents();
+                int referrerShards = node.isNew() || isExternal || !node.hasOnlyReferrerChanges() ? 0 : referrerShards(key);
+                int bucketIdLength = isExternal || !isUnorderedCollection ? 0 : bucketStripesIdLength(key, node);
 
                 if (node.isNew()) {
                     doc = Schematic.newDocument();
@@ -1024,6 +1031,29 @@ public class WritableSessionCache extends AbstractSessionCache {
                     }                    
                     // Create an event ...
                     changes.nodeCreated(key, newParent, newPath, primaryType, mixinTypes, node.changedProperties());
+                } else if (referrerShards > 0) {
+                    // Only the referrers of this node have changed, and they are stored in separate shards; so change only those
+                    // shards and leave the node's own document untouched (it isn't even locked) ...
+                    ReferrerChanges referrerChanges = node.getReferrerChanges();
+                    lockKeys(translator.referrerShardKeys(keyStr, referrerShards, referrerChanges));
+                    if (!documentStore.containsKey(keyStr)) {
+                        // the node was removed by another session while we were waiting for the locks ...
+                        throw new DocumentNotFoundException(keyStr);
+                    }
+                    translator.changeShardedReferrers(keyStr, referrerShards, referrerChanges);
+                    changes.nodeChanged(key, sessionPaths.getPath(node), primaryType, mixinTypes);
+                    continue;
+                } else if (bucketIdLength > 0) {
+                    // Children have only been appended to this unordered collection, so add them to their buckets and record
+                    // the new buckets and the counts in the bucket stripes; the collection's own document isn't even locked ...
+                    MutableChildReferences appended = node.appended(false);
+                    lockKeys(translator.bucketKeys(keyStr, bucketIdLength, appended));
+                    if (!documentStore.containsKey(keyStr)) {
+                        // the collection was removed by another session while we were waiting for the locks ...
+                        throw new DocumentNotFoundException(keyStr);
+                    }
+                    translator.addChildrenToBucketStripes(keyStr, bucketIdLength, appended);
+                    continue;
                 } else {
                     doc = documentStore.edit(keyStr, true);
                     if (doc == null) {
@@ -1154,6 +1184,7 @@ public class WritableSessionCache extends AbstractSessionCache {
                     if (!isUnorderedCollection) {
                         translator.changeChildren(doc, changedChildren, appended);
                     } else {
+                        lockBuckets(keyStr, doc, appended);
                         translator.addChildrenToBuckets(doc, appended);
                     }
                 } else if (changedChildren != null && !changedChildren.isEmpty()) {
@@ -1190,6 +1221,7 @@ public class WritableSessionCache extends AbstractSessionCache {
                         // there are both added & removed children for this collection
                         if (appended != null && !appended.isEmpty()) {
                             // process additions first
+                            lockBuckets(keyStr, doc, appended);
                             translator.addChildrenToBuckets(doc, appended);
                         }
                         if (changedChildren.removalCount() > 0){
@@ -1203,6 +1235,7 @@ public class WritableSessionCache extends AbstractSessionCache {
                                                                                                                     doc,
                                                                                                                     changedChildren.getRemovals());
                             if (!removalsPerBucket.isEmpty()) {
+                                lockKeys(translator.bucketKeys(keyStr, removalsPerBucket.keySet()));
                                 if (unorderedCollectionBucketRemovals == null) {
                                     unorderedCollectionBucketRemovals = new LinkedHashMap<>();
                                 }
@@ -1276,7 +1309,8 @@ public class WritableSessionCache extends AbstractSessionCache {
                 ReferrerChanges referrerChanges = node.getReferrerChanges();
                 boolean nodeChanged = false;
                 if (referrerChanges != null && !referrerChanges.isEmpty()) {
-                    translator.changeReferrers(doc, referrerChanges);
+                    lockReferrerShards(keyStr, doc, referrerChanges);
+                    translator.changeReferrers(doc, referrerChanges, !isExternal);
                     changes.nodeChanged(key, newPath, primaryType, mixinTypes);
                     nodeChanged = true;
                 }
@@ -1389,7 +1423,15 @@ public class WritableSessionCache extends AbstractSessionCache {
         // This will only remove the buckets, not the original nodes which are processed below
         if (removedUnorderedCollections != null) {
             for (NodeKey removedUnorderedCollectionKey : removedUnorderedCollections) {
-                translator.removeAllBucketsFromUnorderedCollection(removedUnorderedCollectionKey);
+                lockAllBuckets(removedUnorderedCollectionKey.toString());
+                for (NodeKey childKey : translator.removeAllBucketsFromUnorderedCollection(removedUnorderedCollectionKey)) {
+                    if (changedNodes.get(childKey) != REMOVED) {
+                        // another session appended this child after this session read the collection ...
+                        String msg = JcrI18n.unorderedCollectionChangedByAnotherSession.text(removedUnorderedCollectionKey,
+                                                                                            childKey);
+                        throw new WrappedException(new InvalidItemStateException(msg));
+                    }
+                }
             }
         }
 
@@ -1431,10 +1473,24 @@ public class WritableSessionCache extends AbstractSessionCache {
             // Note 2: we do this last because the children are removed from their parent before the removal is handled above
             // (see Node 1), meaning getting the path and other information for removed nodes never would work properly.
             for (NodeKey removedKey : removedNodes) {
-                documentStore.remove(removedKey.toString());
+                String removedKeyStr = removedKey.toString();
+                SchematicEntry removedEntry = documentStore.get(removedKeyStr);
+                if (removedEntry != null) {
+                    // other sessions may be changing the referrer shards of this node without locking the node itself ...
+                    lockReferrerShards(removedKeyStr, removedEntry.content(), null);
+                }
+                translator.removeReferrerShards(removedKeyStr);
+                translator.childReferencesIndex().remove(removedKeyStr);
+                documentStore.remove(removedKeyStr);
             }
         }
 
+        if (!unusedBinaryKeys.isEmpty()) {
+            // Only the reference counters of our nodes are locked, so check the total counts of the candidates ...
+            unusedBinaryKeys.removeIf(translator::isBinaryReferenced);
+            usedBinaryKeys.removeAll(unusedBinaryKeys);
+        }
+
         if (!unusedBinaryKeys.isEmpty()) {
             // There are some binary values that are no longer referenced ...
             for (BinaryKey key : unusedBinaryKeys) {
@@ -1492,7 +1548,6 @@ public class WritableSessionCache extends AbstractSessionCache {
         if (changedNodesInOrder.isEmpty()) {
             return;
         }
-        DocumentStore documentStore = workspaceCache.documentStore();
 
         if (logger.isDebugEnabled()) {
             if (!this.changedNodes.isEmpty()) {
@@ -1503,7 +1558,14 @@ public class WritableSessionCache extends AbstractSessionCache {
         Set<String> changedNodesKeys = changedNodesInOrder.stream().map(this::keysToLockForNode).collect(TreeSet::new,
                                                                                                          TreeSet::addAll,
                                                                                                          TreeSet::addAll);
+        if (lockKeys(changedNodesKeys)) {
+            // now that we've locked the keys, load all of the from the document store
+            // note that some of the keys may be new but it's important to pass the entire set down to the document store
+            workspaceCache.loadFromDocumentStore(changedNodesKeys);
+        }
+    }
 
+    private boolean lockKeys(Set<String> changedNodesKeys) {
         // we may already have a list of locked nodes, so remove the ones that we've already locked (and we hold the lock for)
         Transaction modeshapeTx = repositoryEnvironment.getTransactions().currentTransaction();
         assert modeshapeTx != null;
@@ -1514,10 +1576,11 @@ public class WritableSessionCache extends AbstractSessionCache {
                 logger.debug("The keys {0} have been locked previously as part of the transaction {1}; skipping them...",
                              changedNodesKeys, txId);    
             }             
-            return;
+            return false;
         }
     
         // there are new nodes that we need to lock...
+        DocumentStore documentStore = workspaceCache().documentStore();
         Set<String> newKeysToLock = new TreeSet<>(changedNodesKeys);
         newKeysToLock.removeAll(lockedKeysForTx);
         int retryCountOnLockTimeout = 3;
@@ -1541,30 +1604,109 @@ public class WritableSessionCache extends AbstractSessionCache {
                     " retry attempts.");
         }
         lockedKeysForTx.addAll(newKeysToLock);
-    
-        // now that we've locked the keys, load all of the from the document store
-        // note that some of the keys may be new but it's important to pass the entire set down to the document store
-        workspaceCache.loadFromDocumentStore(changedNodesKeys);
+        return true;
+    }
+
+    private void lockReferrerShards( String key,
+                                     Document document,
+                                     ReferrerChanges referrerChanges ) {
+        // the referrers may have been sharded by another session after we decided which keys to lock ...
+        DocumentTranslator translator = translator();
+        int referrerShards = translator.referrerShards(document);
+        if (referrerShards > 0) {
+            lockKeys(translator.referrerShardKeys(key, referrerShards, referrerChanges));
+        }
     }
     
+    private void lockBuckets( String key,
+                              Document document,
+                              ChildReferences appended ) {
+        // other sessions may be appending children to the buckets of this collection without locking the collection itself ...
+        Integer bucketIdLength = document.getInteger(DocumentConstants.BUCKET_ID_LENGTH);
+        if (bucketIdLength != null) {
+            lockKeys(translator().bucketKeys(key, bucketIdLength, appended));
+        }
+    }
+
+    private void lockAllBuckets( String key ) {
+        // other sessions may be appending children to the buckets of this collection without locking the collection itself, so
+        // lock all of its buckets and stripes; once the stripes are locked no more buckets can be created, but the ones created
+        // before that have to be locked as well ...
+        DocumentTranslator translator = translator();
+        while (lockKeys(translator.allBucketKeys(key))) {
+            // read the buckets again now that more keys are locked ...
+        }
+    }
+
     private Set<String> keysToLockForNode(NodeKey key) {
         Set<String> keys = new TreeSet<>();
+        SessionNode node = changedNodes.get(key);
+        Set<String> referrerShardKeys = referrerShardKeysToLock(key, node);
+        if (!referrerShardKeys.isEmpty() && node != REMOVED && node.hasOnlyReferrerChanges()) {
+            // only the sharded referrers of the node will change, so there's no need to lock the node itself
+            return referrerShardKeys;
+        }
+        int bucketIdLength = node != REMOVED ? bucketStripesIdLength(key, node) : 0;
+        if (bucketIdLength > 0) {
+            // children are only appended to the buckets of an unordered collection, so there's no need to lock the node itself
+            return translator().bucketKeys(key.toString(), bucketIdLength, node.appended(false));
+        }
         //always the node itself
         keys.add(key.toString());
+        keys.addAll(referrerShardKeys);
         Set<BinaryKey> binaryReferencesForNode = binaryReferencesByNodeKey.get(key);
         if (binaryReferencesForNode == null || binaryReferencesForNode.isEmpty()) {
             return keys;
         }
         DocumentTranslator translator = translator();
         for (BinaryKey binaryKey : binaryReferencesForNode) {
-            keys.add(translator.keyForBinaryReferenceDocument(binaryKey.toString()));
+            keys.add(translator.keyForBinaryReferenceDocument(binaryKey.toString(), key.toString()));
         }
         return keys;
     }
+
+    private Set<String> referrerShardKeysToLock( NodeKey key,
+                                                 SessionNode node ) {
+        if (node == null || node.isNew()) {
+            return Collections.emptySet();
+        }
+        ReferrerChanges referrerChanges = null;
+        if (node != REMOVED) {
+            referrerChanges = node.getReferrerChanges();
+            if (referrerChanges == null || referrerChanges.isEmpty()) {
+                return Collections.emptySet();
+            }
+        }
+        int referrerShards = referrerShards(key);
+        if (referrerShards == 0) {
+            return Collections.emptySet();
+        }
+        // a removed node has to remove all of its shards ...
+        return translator().referrerShardKeys(key.toString(), referrerShards, referrerChanges);
+    }
+
+    private int bucketStripesIdLength( NodeKey key,
+                                       SessionNode node ) {
+        if (node == null || !node.hasOnlyAppendedChildren()) {
+            return 0;
+        }
+        CachedNode persisted = workspaceCache().getNode(key);
+        if (!(persisted instanceof LazyCachedNode)) {
+            return 0;
+        }
+        Document document = ((LazyCachedNode)persisted).document();
+        return translator().hasBucketStripes(document) ? document.getInteger(DocumentConstants.BUCKET_ID_LENGTH) : 0;
+    }
+
+    private int referrerShards( NodeKey key ) {
+        CachedNode persisted = workspaceCache().getNode(key);
+        return persisted instanceof LazyCachedNode ? translator().referrerShards(((LazyCachedNode)persisted).document()) : 0;
+    }
    
     private Transactions.TransactionFunction binaryUsageUpdateFunction( final Set<BinaryKey> usedBinaries,
                                                                         final Set<BinaryKey> unusedBinaries ) {
         final BinaryStore binaryStore = getContext().getBinaryStore();
+        final DocumentTranslator translator = translator();
         return () -> {
             if (!usedBinaries.isEmpty()) {
                 if (logger.isDebugEnabled()) {
@@ -1589,6 +1731,13 @@ public class WritableSessionCache extends AbstractSessionCache {
                     if (logger.isDebugEnabled()) {
                         logger.debug("Finished marking binary values as unused: {0}", unusedBinaries);
                     }
+                    // Another transaction may have committed a new reference (in a counter we didn't lock) before the values
+                    // were marked as unused, so make sure those are still marked as used ...
+                    List<BinaryKey> stillUsed = unusedBinaries.stream().filter(translator::isBinaryReferenced)
+                                                              .collect(Collectors.toList());
+                    if (!stillUsed.isEmpty()) {
+                        binaryStore.markAsUsed(stillUsed);
+                    }
                 } catch (BinaryStoreException e) {
                     logger.error(e, JcrI18n.errorMarkingBinaryValuesUnused, e.getMessage());
                 }
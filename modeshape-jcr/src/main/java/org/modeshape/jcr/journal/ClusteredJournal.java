@@ -80,6 +80,11 @@ public class ClusteredJournal extends MessageConsumer<ClusteredJournal.DeltaMess
         localJournal.notify(changeSet);
     }
 
+    @Override
+    public void notify( List<ChangeSet> changeSets ) {
+        localJournal.notify(changeSets);
+    }
+
     @Override
     public void start() throws Exception {
         // make sure the clustering service is open
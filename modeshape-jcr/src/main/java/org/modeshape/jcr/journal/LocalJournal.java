@@ -19,12 +19,18 @@ package org.modeshape.jcr.journal;
 import java.io.File;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NavigableMap;
 import java.util.NoSuchElementException;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import javax.jcr.RepositoryException;
 import org.mapdb.Atomic;
@@ -34,6 +40,7 @@ import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.CheckArg;
+import org.modeshape.common.util.NamedThreadFactory;
 import org.modeshape.common.util.StringUtil;
 import org.modeshape.common.util.TimeBasedKeys;
 import org.modeshape.jcr.JcrI18n;
@@ -44,6 +51,12 @@ import org.modeshape.schematic.annotation.ThreadSafe;
 
 /**
  * An append only journal implementation which stores each {@link ChangeSet} (either local or remove) on the local FS.
+ * <p>
+ * Records are written by a single writer thread, which uses one commit for all the records that were added while the previous
+ * commit was being done (up to a maximum number of records per commit). Callers of {@link #addRecords(JournalRecord...)} block
+ * until their records have been committed, while callers of {@link #addRecordsAsync(JournalRecord...)} can decide whether and when
+ * to wait.
+ * </p>
  *
  * @author Horia Chiorean (hchiorea@redhat.com)
  */
@@ -52,9 +65,13 @@ public class LocalJournal implements ChangeJournal {
     private static final Logger LOGGER = Logger.getLogger(LocalJournal.class);
 
     private static final int DEFAULT_MAX_TIME_TO_KEEP_FILES = -1;
+    private static final int DEFAULT_MAX_RECORDS_PER_COMMIT = 1000;
+    private static final long DEFAULT_MAX_COMMIT_DELAY_MILLIS = 0L;
+    private static final long WRITER_POLL_INTERVAL_MILLIS = 100L;
+    private static final CompletableFuture<Void> NOTHING_TO_WRITE = CompletableFuture.completedFuture(null);
     private static final String RECORDS_FIELD = "records";
     private static final String JOURNAL_ID_FIELD = "journalId";
-    private static final TimeBasedKeys TIME_BASED_KEYS = TimeBasedKeys.create();
+    protected static final TimeBasedKeys TIME_BASED_KEYS = TimeBasedKeys.create();
 
     /**
      * When searching records in the local journal, we want to use a small delta to compensate for the fact that there is slight
@@ -66,6 +83,11 @@ public class LocalJournal implements ChangeJournal {
     private final String journalLocation;
     private final boolean asyncWritesEnabled;
     private final long maxTimeToKeepEntriesMillis;
+    private final int maxRecordsPerCommit;
+    private final long maxCommitDelayMillis;
+    private final BlockingQueue<PendingRecords> pendingRecords = new LinkedBlockingQueue<>();
+    private final Object queueLock = new Object();
+    private final Object writeLock = new Object();
 
     private String journalId;
     private DB journalDB;
@@ -75,6 +97,7 @@ public class LocalJournal implements ChangeJournal {
     private BTreeMap<Long, JournalRecord> records;
     private long searchTimeDelta;
     private volatile boolean stopped;
+    private Thread writer;
 
     /**
      * Creates a new journal instance, in stopped state.
@@ -86,11 +109,34 @@ public class LocalJournal implements ChangeJournal {
     public LocalJournal( String journalLocation,
                          boolean asyncWritesEnabled,
                          int maxDaysToKeepEntries ) {
+        this(journalLocation, asyncWritesEnabled, maxDaysToKeepEntries, DEFAULT_MAX_RECORDS_PER_COMMIT,
+             DEFAULT_MAX_COMMIT_DELAY_MILLIS);
+    }
+
+    /**
+     * Creates a new journal instance, in stopped state.
+     *
+     * @param journalLocation the folder location on the FS where the entries should be saved. Must not be {@code null}
+     * @param asyncWritesEnabled flag which indicates if disk write should be asynchronous or not.
+     * @param maxDaysToKeepEntries the maximum number of days this journal should store entries on disk. A negative value or 0
+     * @param maxRecordsPerCommit the maximum number of records that are written to disk with a single commit; must be positive
+     * @param maxCommitDelayMillis the number of milliseconds the writer waits for more records before committing the records it
+     *        already has; 0 if the writer should commit as soon as no more records are pending
+     */
+    public LocalJournal( String journalLocation,
+                         boolean asyncWritesEnabled,
+                         int maxDaysToKeepEntries,
+                         int maxRecordsPerCommit,
+                         long maxCommitDelayMillis ) {
         CheckArg.isNotNull(journalLocation, "journalLocation");
+        CheckArg.isPositive(maxRecordsPerCommit, "maxRecordsPerCommit");
+        CheckArg.isNonNegative(maxCommitDelayMillis, "maxCommitDelayMillis");
 
         this.journalLocation = journalLocation;
         this.asyncWritesEnabled = asyncWritesEnabled;
         this.maxTimeToKeepEntriesMillis = TimeUnit.DAYS.toMillis(maxDaysToKeepEntries);
+        this.maxRecordsPerCommit = maxRecordsPerCommit;
+        this.maxCommitDelayMillis = maxCommitDelayMillis;
         this.stopped = true;
         this.searchTimeDelta = DEFAULT_LOCAL_SEARCH_DELTA;
     }
@@ -104,7 +150,6 @@ public class LocalJournal implements ChangeJournal {
         return !stopped;
     }
 
-    @SuppressWarnings( "rawtypes" )
     @Override
     public synchronized void start() throws RepositoryException {
         if (!stopped) {
@@ -116,54 +161,82 @@ public class LocalJournal implements ChangeJournal {
                 boolean folderHierarchyCreated = journalFileLocation.mkdirs();
                 assert folderHierarchyCreated;
             }
-
-            /**
-             * TODO author=Horia Chiorean date=1/14/14 description=The following should be enabled when append only files are available
-            DBMaker dbMaker = DBMaker.newAppendFileDB(new File(journalFileLocation, RECORDS_FIELD))
-                                     .compressionEnable()
-                                     .checksumEnable()
-                                     .closeOnJvmShutdown();
-                                     
-            */
-            DBMaker dbMaker = DBMaker.newFileDB(new File(journalFileLocation, RECORDS_FIELD))
-                                     .compressionEnable()
-                                     .checksumEnable()
-                                     .mmapFileEnableIfSupported()
-                                     .closeOnJvmShutdown();
-                                     
-            if (asyncWritesEnabled) {
-                dbMaker.asyncWriteEnable();
-            }
-            this.journalDB = dbMaker.make();
-            this.records = this.journalDB.createTreeMap(RECORDS_FIELD)
-                                         .keySerializer(BTreeKeySerializer.ZERO_OR_POSITIVE_LONG)
-                                         .counterEnable()
-                                         .makeOrGet();
-            Atomic.String journalAtomic = this.journalDB.getAtomicString(JOURNAL_ID_FIELD);
-            //only write the value the first time
-            if (StringUtil.isBlank(journalAtomic.get())) {
-                journalAtomic.set("Journal_" + UUID.randomUUID().toString());
+            this.journalId = openStorage(journalFileLocation);
+            synchronized (queueLock) {
+                this.stopped = false;
             }
-            this.journalId = journalAtomic.get();
-            this.stopped = false;
+            this.writer = new NamedThreadFactory("modeshape-journal-writer").newThread(this::writeRecords);
+            this.writer.setDaemon(true);
+            this.writer.start();
         } catch (Exception e) {
             throw new RepositoryException(JcrI18n.cannotStartJournal.text(), e);
         } 
     }
 
+    /**
+     * Open the storage of the records in the given folder.
+     *
+     * @param journalFileLocation the existing folder in which the records are stored; never null
+     * @return the identifier of this journal, which must be the same every time the storage in the same folder is opened
+     * @throws Exception if the storage cannot be opened
+     */
+    @SuppressWarnings( "rawtypes" )
+    protected String openStorage( File journalFileLocation ) throws Exception {
+        DBMaker dbMaker = DBMaker.newFileDB(new File(journalFileLocation, RECORDS_FIELD))
+                                 .compressionEnable()
+                                 .checksumEnable()
+                                 .mmapFileEnableIfSupported()
+                                 .closeOnJvmShutdown();
+                                 
+        if (asyncWritesEnabled) {
+            dbMaker.asyncWriteEnable();
+        }
+        this.journalDB = dbMaker.make();
+        this.records = this.journalDB.createTreeMap(RECORDS_FIELD)
+                                     .keySerializer(BTreeKeySerializer.ZERO_OR_POSITIVE_LONG)
+                                     .counterEnable()
+                                     .makeOrGet();
+        Atomic.String journalAtomic = this.journalDB.getAtomicString(JOURNAL_ID_FIELD);
+        //only write the value the first time
+        if (StringUtil.isBlank(journalAtomic.get())) {
+            journalAtomic.set("Journal_" + UUID.randomUUID().toString());
+        }
+        return journalAtomic.get();
+    }
+
     @Override
     public synchronized void shutdown() {
-        if (this.stopped || this.journalDB.isClosed()) {
+        if (this.stopped) {
             return;
         }
-        
+
+        synchronized (queueLock) {
+            // No more records will be accepted, and the writer will stop once it has written those that are pending ...
+            this.stopped = true;
+        }
         try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            try {
+                closeStorage();
+            } catch (Exception e) {
+                LOGGER.error(e, JcrI18n.cannotStopJournal);
+            }
+        }
+    }
+
+    /**
+     * Close the storage of the records. This is called once all pending records have been written.
+     *
+     * @throws Exception if the storage cannot be closed
+     */
+    protected void closeStorage() throws Exception {
+        if (!this.journalDB.isClosed()) {
             this.journalDB.commit();
             this.journalDB.close();
-        } catch (Exception e) {
-            LOGGER.error(e, JcrI18n.cannotStopJournal);
-        } finally {
-            this.stopped = true;
         }
     }
 
@@ -174,30 +247,153 @@ public class LocalJournal implements ChangeJournal {
         if (changeSet.isEmpty() || systemWorkspaceChanges) {
             return;
         }
-        addRecords(new JournalRecord(changeSet));
+        JournalRecord record = new JournalRecord(changeSet);
+        if (asyncWritesEnabled) {
+            // The writes are asynchronous, so there's no need to wait for the record to be committed ...
+            addRecordsAsync(record);
+        } else {
+            addRecords(record);
+        }
     }
 
     @Override
-    public synchronized void addRecords( JournalRecord... records ) {
-        if (stopped) {
+    public void notify( List<ChangeSet> changeSets ) {
+        // Write the records of all of the change sets together ...
+        List<JournalRecord> records = new ArrayList<>(changeSets.size());
+        for (ChangeSet changeSet : changeSets) {
+            //do not store records from jcr:system
+            boolean systemWorkspaceChanges = RepositoryConfiguration.SYSTEM_WORKSPACE_NAME.equalsIgnoreCase(changeSet.getWorkspaceName());
+            if (!changeSet.isEmpty() && !systemWorkspaceChanges) {
+                records.add(new JournalRecord(changeSet));
+            }
+        }
+        if (records.isEmpty()) {
             return;
         }
-        LOGGER.debug("Adding {0} records", records.length);
-        for (JournalRecord record : records) {
-            if (record.getTimeBasedKey() < 0) {
-                //generate a unique timestamp only if there isn't one. In some scenarios (i.e. running in a cluster) we
-                //always want to keep the original TS because otherwise it would be impossible to have a correct order
-                //and therefore search
-                long createTimeMillisUTC = TIME_BASED_KEYS.nextKey();
-                record.withTimeBasedKey(createTimeMillisUTC);
+        JournalRecord[] recordArray = records.toArray(new JournalRecord[records.size()]);
+        if (asyncWritesEnabled) {
+            addRecordsAsync(recordArray);
+        } else {
+            addRecords(recordArray);
+        }
+    }
+
+    @Override
+    public void addRecords( JournalRecord... records ) {
+        try {
+            addRecordsAsync(records).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Adds one or more journal records to this journal, without waiting for them to be written to disk. The records are
+     * committed along with all of the other records that are pending at the same time.
+     *
+     * @param records a {@link JournalRecord} array.
+     * @return the future that is completed once the records have been committed; never null
+     */
+    public CompletableFuture<Void> addRecordsAsync( JournalRecord... records ) {
+        if (records.length == 0) {
+            return NOTHING_TO_WRITE;
+        }
+        PendingRecords pending = new PendingRecords(records);
+        synchronized (queueLock) {
+            if (stopped) {
+                return NOTHING_TO_WRITE;
+            }
+            pendingRecords.add(pending);
+        }
+        return pending.committed;
+    }
+
+    /**
+     * The loop of the writer thread, which commits all of the records that are pending and stops once the journal has been
+     * stopped and all of the records have been written.
+     */
+    protected void writeRecords() {
+        List<PendingRecords> batch = new ArrayList<>();
+        while (true) {
+            try {
+                PendingRecords first = pendingRecords.poll(WRITER_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (stopped && pendingRecords.isEmpty()) return;
+                    continue;
+                }
+                batch.add(first);
+                int count = first.records.length;
+                // Add everything that arrived during the previous commit, and wait a bit for more if so configured ...
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxCommitDelayMillis);
+                while (count < maxRecordsPerCommit) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingRecords next = remaining > 0 ? pendingRecords.poll(remaining, TimeUnit.NANOSECONDS) :
+                                                          pendingRecords.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                    count += next.records.length;
+                }
+                write(batch, count);
+            } catch (InterruptedException e) {
+                // Only the journal controls this thread, so just keep going until the journal is stopped ...
+                LOGGER.debug("Journal writer interrupted while waiting for records");
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write( List<PendingRecords> batch,
+                        int count ) {
+        LOGGER.debug("Adding {0} records", count);
+        try {
+            List<JournalRecord> toStore = new ArrayList<>(count);
+            for (PendingRecords pending : batch) {
+                for (JournalRecord record : pending.records) {
+                    if (record.getTimeBasedKey() < 0) {
+                        //generate a unique timestamp only if there isn't one. In some scenarios (i.e. running in a cluster) we
+                        //always want to keep the original TS because otherwise it would be impossible to have a correct order
+                        //and therefore search
+                        long createTimeMillisUTC = TIME_BASED_KEYS.nextKey();
+                        record.withTimeBasedKey(createTimeMillisUTC);
+                    }
+                    toStore.add(record);
+                }
+            }
+            synchronized (writeLock) {
+                storeRecords(toStore);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error(e, JcrI18n.cannotWriteJournalRecords, count);
+            for (PendingRecords pending : batch) {
+                pending.committed.completeExceptionally(e);
             }
+            return;
+        }
+        for (PendingRecords pending : batch) {
+            pending.committed.complete(null);
+        }
+    }
+
+    /**
+     * Durably store the supplied records, which all have a time-based key.
+     *
+     * @param records the records; never null or empty
+     */
+    protected void storeRecords( List<JournalRecord> records ) {
+        for (JournalRecord record : records) {
             this.records.put(record.getTimeBasedKey(), record);
         }
         this.journalDB.commit();
     }
 
     @Override
-    public synchronized void removeOldRecords() {
+    public void removeOldRecords() {
         //perform cleanup
         removeRecordsOlderThan(System.currentTimeMillis() - this.maxTimeToKeepEntriesMillis);
     }
@@ -208,6 +404,17 @@ public class LocalJournal implements ChangeJournal {
         }
         long searchBound = TIME_BASED_KEYS.getCounterEndingAt(millisInUtc);
         LOGGER.debug("Removing records older than " + searchBound);
+        synchronized (writeLock) {
+            removeRecordsBefore(searchBound);
+        }
+    }
+
+    /**
+     * Remove all of the records whose time-based key is smaller than the given key.
+     *
+     * @param searchBound the time-based key of the oldest record that is to be kept
+     */
+    protected void removeRecordsBefore( long searchBound ) {
         NavigableMap<Long, JournalRecord> toRemove = this.records.headMap(searchBound);
         toRemove.clear();
         journalDB.commit();
@@ -326,6 +533,23 @@ public class LocalJournal implements ChangeJournal {
         return this;
     }
 
+    protected long searchTimeDelta() {
+        return searchTimeDelta;
+    }
+
+    protected boolean asyncWritesEnabled() {
+        return asyncWritesEnabled;
+    }
+
+    protected static final class PendingRecords {
+        protected final JournalRecord[] records;
+        protected final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        protected PendingRecords( JournalRecord[] records ) {
+            this.records = records;
+        }
+    }
+
     private static Records recordsFrom( final NavigableMap<Long, JournalRecord> content, boolean descending ) {
         final Iterator<JournalRecord> iterator = descending ? content.descendingMap().values().iterator() : 
                                                               content.values().iterator();
@@ -0,0 +1,950 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.CheckArg;
+import org.modeshape.common.util.IoUtil;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.schematic.annotation.ThreadSafe;
+
+/**
+ * A {@link LocalJournal} that stores the records in fixed-size, memory-mapped segment files to which records are only ever
+ * appended. Each record is written with a small binary header (the time-based key, the time of the changes and the keys of the
+ * changed nodes) followed by the compressed change set, so that searching by time and {@link #changedNodesSince(long) finding
+ * the changed nodes} only require sequential reads of the headers.
+ * <p>
+ * Each segment keeps a sparse in-memory index of the time-based keys of its records, which is rebuilt by scanning the segment
+ * headers when the journal is started. Old records are removed by deleting whole segments; records in the remaining segments that
+ * are older than the retention bound are simply skipped, so removing records never has to rewrite any file.
+ * </p>
+ * <p>
+ * Records are usually appended in the order of their keys, but records received from other processes in a cluster keep their
+ * original (and possibly older) keys. Each segment therefore also tracks the smallest and largest key of its records and whether
+ * its records were appended in key order, and all reads return the records in the order of their keys.
+ * </p>
+ */
+@ThreadSafe
+public class SegmentedJournal extends LocalJournal {
+
+    private static final Logger LOGGER = Logger.getLogger(SegmentedJournal.class);
+
+    /**
+     * The default size of each segment file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    protected static final String SEGMENTS_FOLDER = "segments";
+    protected static final String SEGMENT_PREFIX = "segment-";
+    protected static final String SEGMENT_SUFFIX = ".jnl";
+    protected static final String INFO_FILE = "journal.info";
+
+    private static final int MAGIC = 0x4D534A31; // "MSJ1"
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    /**
+     * The size of the fields that precede the content of each record: the length and checksum of the content.
+     */
+    private static final int RECORD_PREFIX_SIZE = 8;
+    /**
+     * Every n-th record of a segment is added to the segment's sparse index.
+     */
+    private static final int INDEX_INTERVAL = 32;
+
+    private final int segmentSize;
+    private volatile List<Segment> segments = Collections.emptyList();
+    private volatile long retainedFromKey = -1L;
+    private File segmentsFolder;
+    private File infoFile;
+    private String journalId;
+    private long nextSegmentNumber;
+
+    /**
+     * Creates a new journal instance, in stopped state.
+     *
+     * @param journalLocation the folder location on the FS where the entries should be saved. Must not be {@code null}
+     * @param asyncWritesEnabled flag which indicates if disk writes should be asynchronous (i.e., not forced to disk after each
+     *        commit) or not.
+     * @param maxDaysToKeepEntries the maximum number of days this journal should store entries on disk. A negative value or 0
+     * @param maxRecordsPerCommit the maximum number of records that are written to disk with a single commit; must be positive
+     * @param maxCommitDelayMillis the number of milliseconds the writer waits for more records before committing the records it
+     *        already has; 0 if the writer should commit as soon as no more records are pending
+     * @param segmentSize the size in bytes of each segment file; must be positive. Records larger than this are written to a
+     *        segment of their own.
+     */
+    public SegmentedJournal( String journalLocation,
+                             boolean asyncWritesEnabled,
+                             int maxDaysToKeepEntries,
+                             int maxRecordsPerCommit,
+                             long maxCommitDelayMillis,
+                             int segmentSize ) {
+        super(journalLocation, asyncWritesEnabled, maxDaysToKeepEntries, maxRecordsPerCommit, maxCommitDelayMillis);
+        CheckArg.isPositive(segmentSize, "segmentSize");
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    protected String openStorage( File journalFileLocation ) throws Exception {
+        this.segmentsFolder = new File(journalFileLocation, SEGMENTS_FOLDER);
+        if (!segmentsFolder.exists() && !segmentsFolder.mkdirs()) {
+            throw new IOException("Unable to create the folder " + segmentsFolder);
+        }
+        this.infoFile = new File(journalFileLocation, INFO_FILE);
+        readInfo();
+
+        File[] files = segmentsFolder.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) files = new File[0];
+        Arrays.sort(files);
+        List<Segment> opened = new ArrayList<>(files.length);
+        this.nextSegmentNumber = 0L;
+        for (int i = 0; i != files.length; ++i) {
+            boolean last = i == files.length - 1;
+            Segment segment = Segment.open(files[i], segmentNumber(files[i]), last);
+            opened.add(segment);
+            nextSegmentNumber = segment.number + 1;
+        }
+        this.segments = Collections.unmodifiableList(opened);
+        LOGGER.debug("Opened {0} journal segments in {1}", opened.size(), segmentsFolder);
+        return journalId;
+    }
+
+    @Override
+    protected void closeStorage() throws Exception {
+        for (Segment segment : segments) {
+            segment.close(!asyncWritesEnabled());
+        }
+        this.segments = Collections.emptyList();
+    }
+
+    @Override
+    protected void storeRecords( List<JournalRecord> records ) {
+        List<Segment> current = segments;
+        Segment previous = current.isEmpty() ? null : current.get(current.size() - 1);
+        Segment active = previous;
+        List<Segment> modified = new ArrayList<>(2);
+        List<Segment> created = new ArrayList<>(1);
+        try {
+            for (JournalRecord record : records) {
+                byte[] content = encode(record);
+                if (active == null || !active.hasRoomFor(content.length)) {
+                    if (active != null) {
+                        active.seal();
+                    }
+                    active = newSegment(content.length);
+                    created.add(active);
+                    current = appendSegment(current, active);
+                }
+                active.append(content, record.getTimeBasedKey());
+                if (!modified.contains(active)) modified.add(active);
+            }
+            for (Segment segment : modified) {
+                // Make the records durable and only then visible to the readers ...
+                if (!asyncWritesEnabled()) segment.force();
+                segment.publish();
+            }
+            this.segments = current;
+        } catch (IOException | RuntimeException e) {
+            // None of the records were published, so remove them all to make sure they are never recovered later ...
+            for (Segment segment : created) {
+                segment.delete();
+            }
+            if (previous != null) {
+                previous.rollback();
+            }
+            if (e instanceof RuntimeException) throw (RuntimeException)e;
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    protected void removeRecordsBefore( long searchBound ) {
+        if (searchBound <= retainedFromKey) {
+            return;
+        }
+        try {
+            // Record the new bound first, so that any records before it will never be returned ...
+            retainedFromKey = searchBound;
+            writeInfo();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        // And then delete all the segments that contain only older records (which may be anywhere, since records from other
+        // processes keep their original keys) ...
+        List<Segment> remaining = new ArrayList<>(segments);
+        for (Iterator<Segment> iter = remaining.iterator(); iter.hasNext();) {
+            Segment segment = iter.next();
+            if (segment.maxKey() < searchBound) {
+                iter.remove();
+                segment.delete();
+            }
+        }
+        this.segments = Collections.unmodifiableList(remaining);
+    }
+
+    @Override
+    public Records allRecords( boolean descendingOrder ) {
+        if (!started()) {
+            return Records.EMPTY;
+        }
+        long fromKey = retainedFromKey;
+        return recordsFrom(viewsFrom(fromKey), fromKey, descendingOrder);
+    }
+
+    @Override
+    public JournalRecord lastRecord() {
+        if (!started()) {
+            return null;
+        }
+        // the last record is the one with the largest key, which is not necessarily the one appended last ...
+        Segment last = null;
+        for (Segment segment : segments) {
+            if (segment.maxKeyOffset() >= 0 && (last == null || segment.maxKey() > last.maxKey())) {
+                last = segment;
+            }
+        }
+        if (last == null || last.maxKey() < retainedFromKey) {
+            return null;
+        }
+        return last.recordAt(last.maxKeyOffset());
+    }
+
+    @Override
+    public Records recordsNewerThan( LocalDateTime changeSetTime,
+                                     boolean inclusive,
+                                     boolean descendingOrder ) {
+        if (!started()) {
+            return Records.EMPTY;
+        }
+        long changeSetMillisUTC = -1;
+        long searchBound = -1;
+        if (changeSetTime != null) {
+            changeSetMillisUTC = changeSetTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+            // adjust the millis using a delta so that we are sure we catch everything in a cluster which may have differences in
+            // clock time
+            searchBound = TIME_BASED_KEYS.getCounterStartingAt(changeSetMillisUTC - searchTimeDelta());
+        }
+        long fromKey = Math.max(searchBound, retainedFromKey);
+        List<SegmentView> views = viewsFrom(fromKey);
+        // we used a delta, so look at the time of each change set to find the first that should be included ...
+        for (Iterator<Position> positions = positions(views, fromKey, false); positions.hasNext();) {
+            Position position = positions.next();
+            long recordChangeTimeMillisUTC = position.changeTimeMillis();
+            if ((recordChangeTimeMillisUTC == changeSetMillisUTC && inclusive) || recordChangeTimeMillisUTC > changeSetMillisUTC) {
+                return recordsFrom(views, position.key(), descendingOrder);
+            }
+        }
+        return Records.EMPTY;
+    }
+
+    @Override
+    public Iterator<NodeKey> changedNodesSince( final long timestamp ) {
+        if (!started()) {
+            return Collections.emptyIterator();
+        }
+        // we use a delta to make sure we get everything and we filter false positives later on
+        long searchBound = TIME_BASED_KEYS.getCounterStartingAt(timestamp - searchTimeDelta());
+        long fromKey = Math.max(searchBound, retainedFromKey);
+        final Iterator<Position> positions = positions(viewsFrom(fromKey), fromKey, false);
+        return new Iterator<NodeKey>() {
+            private Iterator<NodeKey> currentBatchOfKeys = null;
+
+            @Override
+            public boolean hasNext() {
+                nextBatchOfKeys();
+                return currentBatchOfKeys != null && currentBatchOfKeys.hasNext();
+            }
+
+            @Override
+            public NodeKey next() {
+                nextBatchOfKeys();
+                if (currentBatchOfKeys == null) {
+                    throw new NoSuchElementException();
+                }
+                return currentBatchOfKeys.next();
+            }
+
+            private void nextBatchOfKeys() {
+                while ((currentBatchOfKeys == null || !currentBatchOfKeys.hasNext()) && positions.hasNext()) {
+                    Position position = positions.next();
+                    // we searched using a delta, so we must eliminate false positives
+                    if (position.changeTimeMillis() >= timestamp) {
+                        // only the header of the record needs to be read ...
+                        currentBatchOfKeys = position.changedNodes().iterator();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Get the number of segment files used by this journal.
+     *
+     * @return the number of segments
+     */
+    protected int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Get the current view of each segment that may contain records whose time-based key is equal to or larger than the
+     * supplied key.
+     *
+     * @param fromKey the smallest time-based key
+     * @return the views of the segments; never null
+     */
+    protected List<SegmentView> viewsFrom( long fromKey ) {
+        List<SegmentView> views = new ArrayList<>();
+        for (Segment segment : segments) {
+            SegmentView view = segment.view();
+            if (view.maxKey >= fromKey) {
+                views.add(view);
+            }
+        }
+        return views;
+    }
+
+    /**
+     * Iterate over the positions of the records in the supplied segment views whose time-based key is equal to or larger than
+     * the supplied key, in the order of their keys. The record headers of a segment are only read when the iteration reaches
+     * the segment's range of keys, so that only the positions of the segments whose ranges overlap (usually just one) are held
+     * in memory at any time.
+     *
+     * @param views the views of the segments; may not be null
+     * @param fromKey the smallest time-based key
+     * @param descending true if the positions should be returned in descending order of their keys
+     * @return the iterator over the positions; never null
+     */
+    protected static Iterator<Position> positions( List<SegmentView> views,
+                                                   final long fromKey,
+                                                   final boolean descending ) {
+        final List<SegmentView> ordered = new ArrayList<>(views);
+        // the segments are read in the order of the first key the iteration will return from each ...
+        ordered.sort(descending ? SegmentView.BY_MAX_KEY.reversed() : SegmentView.BY_MIN_KEY);
+        Comparator<SegmentCursor> byKey = Comparator.comparingLong(SegmentCursor::key);
+        final PriorityQueue<SegmentCursor> cursors = new PriorityQueue<>(Math.max(1, ordered.size()),
+                                                                        descending ? byKey.reversed() : byKey);
+        return new Iterator<Position>() {
+            private int nextView = 0;
+
+            @Override
+            public boolean hasNext() {
+                readSegments();
+                return !cursors.isEmpty();
+            }
+
+            @Override
+            public Position next() {
+                readSegments();
+                SegmentCursor cursor = cursors.poll();
+                if (cursor == null) {
+                    throw new NoSuchElementException();
+                }
+                Position position = cursor.current();
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+                return position;
+            }
+
+            private void readSegments() {
+                // read every segment that may have a record that comes before the next record of the segments already read ...
+                while (nextView < ordered.size()) {
+                    SegmentView view = ordered.get(nextView);
+                    SegmentCursor first = cursors.peek();
+                    if (first != null && (descending ? view.maxKey < first.key() : view.minKey > first.key())) {
+                        break;
+                    }
+                    ++nextView;
+                    SegmentCursor cursor = new SegmentCursor(view, fromKey, descending);
+                    if (cursor.advance()) {
+                        cursors.add(cursor);
+                    }
+                }
+            }
+        };
+    }
+
+    private static Records recordsFrom( final List<SegmentView> views,
+                                        final long fromKey,
+                                        final boolean descending ) {
+        return new Records() {
+            @Override
+            public int size() {
+                int size = 0;
+                for (SegmentView view : views) {
+                    size += view.collectPositions(fromKey, null);
+                }
+                return size;
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return !iterator().hasNext();
+            }
+
+            @Override
+            public Iterator<JournalRecord> iterator() {
+                final Iterator<Position> positions = positions(views, fromKey, descending);
+                return new Iterator<JournalRecord>() {
+                    @Override
+                    public boolean hasNext() {
+                        return positions.hasNext();
+                    }
+
+                    @Override
+                    public JournalRecord next() {
+                        return positions.next().record();
+                    }
+                };
+            }
+        };
+    }
+
+    private Segment newSegment( int contentLength ) throws IOException {
+        int size = Math.max(segmentSize, SEGMENT_HEADER_SIZE + RECORD_PREFIX_SIZE + contentLength);
+        long number = nextSegmentNumber++;
+        File file = new File(segmentsFolder, String.format("%s%019d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        LOGGER.debug("Creating journal segment {0} with {1} bytes", file, size);
+        return Segment.create(file, number, size);
+    }
+
+    private static List<Segment> appendSegment( List<Segment> current,
+                                                Segment segment ) {
+        List<Segment> result = new ArrayList<>(current.size() + 1);
+        result.addAll(current);
+        result.add(segment);
+        return Collections.unmodifiableList(result);
+    }
+
+    private void readInfo() throws IOException {
+        this.journalId = null;
+        this.retainedFromKey = -1L;
+        if (infoFile.exists()) {
+            List<String> lines = Files.readAllLines(infoFile.toPath(), StandardCharsets.UTF_8);
+            if (lines.size() > 0) this.journalId = lines.get(0).trim();
+            if (lines.size() > 1) this.retainedFromKey = Long.parseLong(lines.get(1).trim());
+        }
+        if (journalId == null || journalId.isEmpty()) {
+            this.journalId = "Journal_" + UUID.randomUUID().toString();
+            writeInfo();
+        }
+    }
+
+    private void writeInfo() throws IOException {
+        File temp = new File(infoFile.getParentFile(), INFO_FILE + ".tmp");
+        String content = journalId + "\n" + retainedFromKey + "\n";
+        Files.write(temp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), infoFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long segmentNumber( File file ) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Encode the record as: the time-based key, the time of the changes, the number of changed nodes followed by the string form
+     * of each of their keys, and finally the length of the compressed and serialized change set followed by its bytes.
+     *
+     * @param record the record; may not be null
+     * @return the encoded record; never null
+     * @throws IOException if the change set cannot be serialized
+     */
+    protected static byte[] encode( JournalRecord record ) throws IOException {
+        ByteArrayOutputStream changes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (ObjectOutputStream oos = new ObjectOutputStream(new DeflaterOutputStream(changes, deflater))) {
+            oos.writeObject(record.getChangeSet());
+        } finally {
+            deflater.end();
+        }
+        Set<NodeKey> changedNodes = record.changedNodes();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(changes.size() + 32 * changedNodes.size() + 32);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeLong(record.getTimeBasedKey());
+        output.writeLong(record.getChangeTimeMillis());
+        output.writeInt(changedNodes.size());
+        for (NodeKey key : changedNodes) {
+            byte[] keyBytes = key.toString().getBytes(StandardCharsets.UTF_8);
+            output.writeShort(keyBytes.length);
+            output.write(keyBytes);
+        }
+        output.writeInt(changes.size());
+        changes.writeTo(output);
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The position of a single record within a segment.
+     */
+    protected static final class Position {
+        protected static final Comparator<Position> BY_KEY = Comparator.comparingLong(Position::key);
+
+        private final Segment segment;
+        private final int offset;
+        private final long key;
+
+        protected Position( Segment segment,
+                            int offset,
+                            long key ) {
+            this.segment = segment;
+            this.offset = offset;
+            this.key = key;
+        }
+
+        protected long key() {
+            return key;
+        }
+
+        protected long changeTimeMillis() {
+            return segment.changeTimeAt(offset);
+        }
+
+        protected List<NodeKey> changedNodes() {
+            return segment.changedNodesAt(offset);
+        }
+
+        protected JournalRecord record() {
+            return segment.recordAt(offset);
+        }
+    }
+
+    /**
+     * The records of a segment that had been published when the view was taken.
+     */
+    protected static final class SegmentView {
+        protected static final Comparator<SegmentView> BY_MIN_KEY = Comparator.comparingLong(view -> view.minKey);
+        protected static final Comparator<SegmentView> BY_MAX_KEY = Comparator.comparingLong(view -> view.maxKey);
+
+        protected final Segment segment;
+        protected final int limit;
+        protected final long minKey;
+        protected final long maxKey;
+        protected final boolean inOrder;
+
+        protected SegmentView( Segment segment,
+                               int limit,
+                               long minKey,
+                               long maxKey,
+                               boolean inOrder ) {
+            this.segment = segment;
+            this.limit = limit;
+            this.minKey = minKey;
+            this.maxKey = maxKey;
+            this.inOrder = inOrder;
+        }
+
+        /**
+         * Find the positions of the records whose time-based key is equal to or larger than the supplied key, by sequentially
+         * reading the record headers.
+         *
+         * @param fromKey the smallest time-based key
+         * @param positions the list to which the positions are added in the order of the records; may be null if the records
+         *        should only be counted
+         * @return the number of records that were found
+         */
+        protected int collectPositions( long fromKey,
+                                        List<Position> positions ) {
+            return segment.collectPositions(fromKey, limit, inOrder && fromKey > minKey, positions);
+        }
+    }
+
+    /**
+     * The positions of the records of a single segment, in the order in which an iteration returns them.
+     */
+    private static final class SegmentCursor {
+        private final List<Position> positions = new ArrayList<>();
+        private final boolean descending;
+        private int index;
+        private Position current;
+
+        protected SegmentCursor( SegmentView view,
+                                 long fromKey,
+                                 boolean descending ) {
+            view.collectPositions(fromKey, positions);
+            if (!view.inOrder) {
+                positions.sort(Position.BY_KEY);
+            }
+            this.descending = descending;
+            this.index = descending ? positions.size() - 1 : 0;
+        }
+
+        protected Position current() {
+            return current;
+        }
+
+        protected long key() {
+            return current.key();
+        }
+
+        /**
+         * Move to the next position.
+         *
+         * @return true if there is a next position, or false if all the positions were returned
+         */
+        protected boolean advance() {
+            if (index < 0 || index >= positions.size()) {
+                current = null;
+                return false;
+            }
+            current = positions.get(descending ? index-- : index++);
+            return true;
+        }
+    }
+
+    /**
+     * A single segment file. Only the last segment is ever appended to, and only by the journal's writer; the records that are
+     * {@link #publish() published} can be read concurrently by any number of threads.
+     */
+    protected static final class Segment {
+        // the offsets within each record's content
+        private static final int KEY_OFFSET = 0;
+        private static final int CHANGE_TIME_OFFSET = 8;
+        private static final int NODE_COUNT_OFFSET = 16;
+
+        protected final long number;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private long lastAppendedKey = -1L;
+        private long minAppendedKey = Long.MAX_VALUE;
+        private long maxAppendedKey = -1L;
+        private int maxAppendedKeyOffset = -1;
+        private boolean appendedInOrder = true;
+        private volatile int limit;
+        private volatile long minKey = Long.MAX_VALUE;
+        private volatile long maxKey = -1L;
+        private volatile int maxKeyOffset = -1;
+        private volatile boolean inOrder = true;
+        private volatile int indexSize;
+        private long[] indexKeys = new long[16];
+        private int[] indexOffsets = new int[16];
+        private int count;
+        private int publishedCount;
+        private long publishedLastKey = -1L;
+        private boolean sealed;
+
+        private Segment( File file,
+                         long number,
+                         MappedByteBuffer buffer ) {
+            this.file = file;
+            this.number = number;
+            this.buffer = buffer;
+        }
+
+        protected static Segment create( File file,
+                                         long number,
+                                         int size ) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                raf.setLength(size);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, size);
+                Segment segment = new Segment(file, number, buffer);
+                segment.writePosition = SEGMENT_HEADER_SIZE;
+                segment.limit = SEGMENT_HEADER_SIZE;
+                return segment;
+            } catch (IOException | RuntimeException e) {
+                if (!file.delete()) file.deleteOnExit();
+                throw e;
+            }
+        }
+
+        protected static Segment open( File file,
+                                       long number,
+                                       boolean writable ) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r"); FileChannel channel = raf.getChannel()) {
+                FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+                MappedByteBuffer buffer = channel.map(mode, 0, channel.size());
+                if (buffer.capacity() < SEGMENT_HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                    throw new IOException("The file " + file + " is not a journal segment");
+                }
+                Segment segment = new Segment(file, number, buffer);
+                segment.recover();
+                segment.sealed = !writable;
+                return segment;
+            }
+        }
+
+        /**
+         * Scan the records, verifying their checksums, to rebuild the index and to find where the next record is to be written. A
+         * record that was only partially written (e.g., because the process was stopped) and everything after it is ignored.
+         */
+        private void recover() {
+            int position = SEGMENT_HEADER_SIZE;
+            int capacity = buffer.capacity();
+            CRC32 crc = new CRC32();
+            while (position + RECORD_PREFIX_SIZE <= capacity) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + RECORD_PREFIX_SIZE + length > capacity) break;
+                int checksum = buffer.getInt(position + 4);
+                ByteBuffer content = buffer.duplicate();
+                content.position(position + RECORD_PREFIX_SIZE);
+                content.limit(position + RECORD_PREFIX_SIZE + length);
+                crc.reset();
+                crc.update(content);
+                if ((int)crc.getValue() != checksum) {
+                    LOGGER.debug("Ignoring the incomplete journal record at offset {0} in {1}", position, file);
+                    break;
+                }
+                added(position, buffer.getLong(position + RECORD_PREFIX_SIZE + KEY_OFFSET));
+                position += RECORD_PREFIX_SIZE + length;
+            }
+            this.writePosition = position;
+            publish();
+        }
+
+        protected boolean hasRoomFor( int contentLength ) {
+            return !sealed && writePosition + RECORD_PREFIX_SIZE + contentLength <= buffer.capacity();
+        }
+
+        protected void append( byte[] content,
+                               long timeBasedKey ) {
+            assert hasRoomFor(content.length);
+            CRC32 crc = new CRC32();
+            crc.update(content, 0, content.length);
+            int position = writePosition;
+            ByteBuffer target = buffer.duplicate();
+            target.position(position + RECORD_PREFIX_SIZE);
+            target.put(content);
+            buffer.putInt(position + 4, (int)crc.getValue());
+            // write the length last, since a non-zero length marks the record as present ...
+            buffer.putInt(position, content.length);
+            writePosition = position + RECORD_PREFIX_SIZE + content.length;
+            added(position, timeBasedKey);
+        }
+
+        private void added( int offset,
+                            long timeBasedKey ) {
+            if (count % INDEX_INTERVAL == 0) {
+                int size = indexSize;
+                if (size == indexKeys.length) {
+                    indexKeys = Arrays.copyOf(indexKeys, size * 2);
+                    indexOffsets = Arrays.copyOf(indexOffsets, size * 2);
+                }
+                indexKeys[size] = timeBasedKey;
+                indexOffsets[size] = offset;
+                indexSize = size + 1;
+            }
+            ++count;
+            if (timeBasedKey < lastAppendedKey) {
+                // the sparse index can no longer be used to skip records ...
+                appendedInOrder = false;
+            }
+            if (timeBasedKey < minAppendedKey) {
+                minAppendedKey = timeBasedKey;
+            }
+            if (timeBasedKey > maxAppendedKey) {
+                maxAppendedKey = timeBasedKey;
+                maxAppendedKeyOffset = offset;
+            }
+            lastAppendedKey = timeBasedKey;
+        }
+
+        protected void force() {
+            buffer.force();
+        }
+
+        /**
+         * Make all the appended records visible to readers.
+         */
+        protected void publish() {
+            minKey = minAppendedKey;
+            maxKey = maxAppendedKey;
+            maxKeyOffset = maxAppendedKeyOffset;
+            inOrder = appendedInOrder;
+            publishedCount = count;
+            publishedLastKey = lastAppendedKey;
+            limit = writePosition;
+        }
+
+        /**
+         * Discard all the appended records that were not yet published, and allow records to be appended again. The discarded
+         * records are overwritten with zeros so that they are not found when the segment is recovered.
+         */
+        protected void rollback() {
+            int published = limit;
+            for (int position = published; position < writePosition; ++position) {
+                buffer.put(position, (byte)0);
+            }
+            writePosition = published;
+            int size = indexSize;
+            while (size > 0 && indexOffsets[size - 1] >= published) {
+                --size;
+            }
+            indexSize = size;
+            count = publishedCount;
+            lastAppendedKey = publishedLastKey;
+            minAppendedKey = minKey;
+            maxAppendedKey = maxKey;
+            maxAppendedKeyOffset = maxKeyOffset;
+            appendedInOrder = inOrder;
+            sealed = false;
+        }
+
+        /**
+         * Prevent any more records from being appended; the records that were appended still have to be published.
+         */
+        protected void seal() {
+            sealed = true;
+        }
+
+        protected void close( boolean force ) {
+            if (!sealed && force) force();
+            sealed = true;
+        }
+
+        protected void delete() {
+            sealed = true;
+            // the mapping stays valid for any reader that is still using it ...
+            if (!file.delete()) {
+                LOGGER.debug("Unable to delete the journal segment {0}; it will be deleted when the process exits", file);
+                file.deleteOnExit();
+            }
+        }
+
+        protected long maxKey() {
+            return maxKey;
+        }
+
+        protected int maxKeyOffset() {
+            return maxKeyOffset;
+        }
+
+        /**
+         * Get a view of the records that are currently published. The limit is read first, so the keys of the view include at
+         * least all the records up to the limit.
+         *
+         * @return the view; never null
+         */
+        protected SegmentView view() {
+            int limit = this.limit;
+            return new SegmentView(this, limit, minKey, maxKey, inOrder);
+        }
+
+        protected int collectPositions( long fromKey,
+                                        int limit,
+                                        boolean useIndex,
+                                        List<Position> positions ) {
+            int position = SEGMENT_HEADER_SIZE;
+            // Use the sparse index to skip the records that are certainly older, but only if the records were appended in the
+            // order of their keys and some of them are older ...
+            int size = useIndex ? indexSize : 0;
+            long[] keys = indexKeys;
+            int[] offsets = indexOffsets;
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < fromKey) {
+                    position = offsets[mid];
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            int count = 0;
+            while (position < limit) {
+                long key = keyAt(position);
+                if (key >= fromKey) {
+                    if (positions != null) positions.add(new Position(this, position, key));
+                    ++count;
+                }
+                position += RECORD_PREFIX_SIZE + buffer.getInt(position);
+            }
+            return count;
+        }
+
+        protected long keyAt( int offset ) {
+            return buffer.getLong(offset + RECORD_PREFIX_SIZE + KEY_OFFSET);
+        }
+
+        protected long changeTimeAt( int offset ) {
+            return buffer.getLong(offset + RECORD_PREFIX_SIZE + CHANGE_TIME_OFFSET);
+        }
+
+        protected List<NodeKey> changedNodesAt( int offset ) {
+            ByteBuffer content = buffer.duplicate();
+            content.position(offset + RECORD_PREFIX_SIZE + NODE_COUNT_OFFSET);
+            int nodeCount = content.getInt();
+            List<NodeKey> keys = new ArrayList<>(nodeCount);
+            for (int i = 0; i != nodeCount; ++i) {
+                byte[] keyBytes = new byte[content.getShort() & 0xFFFF];
+                content.get(keyBytes);
+                keys.add(new NodeKey(new String(keyBytes, StandardCharsets.UTF_8)));
+            }
+            return keys;
+        }
+
+        protected JournalRecord recordAt( int offset ) {
+            ByteBuffer content = buffer.duplicate();
+            content.position(offset + RECORD_PREFIX_SIZE + NODE_COUNT_OFFSET);
+            int nodeCount = content.getInt();
+            for (int i = 0; i != nodeCount; ++i) {
+                int keyLength = content.getShort() & 0xFFFF;
+                content.position(content.position() + keyLength);
+            }
+            byte[] changes = new byte[content.getInt()];
+            content.get(changes);
+            ObjectInputStream ois = null;
+            try {
+                ois = new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(changes)));
+                ChangeSet changeSet = (ChangeSet)ois.readObject();
+                return new JournalRecord(changeSet).withTimeBasedKey(keyAt(offset));
+            } catch (IOException | ClassNotFoundException e) {
+                throw new IllegalStateException("Unable to read the journal record at offset " + offset + " in " + file, e);
+            } finally {
+                IoUtil.closeQuietly(ois);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return file.getName() + " (" + count + " records)";
+        }
+    }
+}
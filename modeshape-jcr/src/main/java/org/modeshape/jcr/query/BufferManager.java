@@ -16,6 +16,7 @@
 package org.modeshape.jcr.query;
 
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Map;
@@ -27,6 +28,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import org.mapdb.BTreeKeySerializer;
 import org.mapdb.DB;
 import org.mapdb.DB.BTreeMapMaker;
@@ -36,6 +38,7 @@ import org.mapdb.HTreeMap;
 import org.mapdb.Serializer;
 import org.modeshape.common.collection.SingleIterator;
 import org.modeshape.common.collection.Supplier;
+import org.modeshape.common.logging.Logger;
 import org.modeshape.jcr.ExecutionContext;
 import org.modeshape.jcr.index.local.MapDB;
 import org.modeshape.jcr.index.local.MapDB.ComparableUniqueKeyComparator;
@@ -49,11 +52,114 @@ import org.modeshape.jcr.value.ValueFactories;
 
 /**
  * A manager of temporary buffers used in the query system.
+ * <p>
+ * Each manager can be given a {@link MemoryBudget} that limits the number of entries that its heap and off-heap buffers may hold
+ * at the same time. Budgets can be nested (e.g., a budget for a session within a budget for the whole repository), and a buffer
+ * whose addition of an entry would exceed any of the budgets is moved (or "spilled") into a temporary file, where it remains until
+ * it is closed.
+ * </p>
  * 
  * @author Randall Hauch (rhauch@redhat.com)
  */
 public class BufferManager implements Serializers, AutoCloseable {
 
+    private static final Logger LOGGER = Logger.getLogger(BufferManager.class);
+
+    /**
+     * A limit on the number of entries that may be held in memory by a set of buffers. Each reservation is made against the
+     * budget and all of its parent budgets, so a single budget can be shared by multiple {@link BufferManager} instances (e.g.,
+     * one for the whole repository) while each manager also has its own, smaller budget.
+     * 
+     * @see BufferManager#BufferManager(ExecutionContext, MemoryBudget)
+     */
+    public static final class MemoryBudget {
+        /**
+         * A budget that places no limits on the number of entries.
+         */
+        public static final MemoryBudget UNBOUNDED = new MemoryBudget(-1L, null);
+
+        private final long maxEntries;
+        private final MemoryBudget parent;
+        private final boolean bounded;
+        private final AtomicLong reserved = new AtomicLong();
+
+        /**
+         * Create a new budget.
+         * 
+         * @param maxEntries the maximum number of entries that can be reserved at any one time, or a negative number if this
+         *        budget does not have a limit of its own
+         * @param parent the budget against which all reservations must also be made; may be null
+         */
+        public MemoryBudget( long maxEntries,
+                             MemoryBudget parent ) {
+            this.maxEntries = maxEntries;
+            this.parent = parent;
+            this.bounded = maxEntries >= 0 || (parent != null && parent.isBounded());
+        }
+
+        /**
+         * Determine whether this budget or any of its parents limits the number of entries.
+         * 
+         * @return true if reservations might fail, or false if all reservations will succeed
+         */
+        public boolean isBounded() {
+            return bounded;
+        }
+
+        /**
+         * Get the maximum number of entries that this budget allows to be reserved at any one time.
+         * 
+         * @return the maximum number of entries, or a negative number if this budget does not have a limit of its own
+         */
+        public long getMaxEntries() {
+            return maxEntries;
+        }
+
+        /**
+         * Get the number of entries that are currently reserved.
+         * 
+         * @return the number of reserved entries
+         */
+        public long getReservedEntries() {
+            return reserved.get();
+        }
+
+        /**
+         * Attempt to reserve the given number of entries against this budget and all of its parents.
+         * 
+         * @param entries the number of entries; must be positive
+         * @return true if the entries were reserved, or false if doing so would exceed this or one of the parent budgets
+         */
+        public boolean tryReserve( long entries ) {
+            long total = reserved.addAndGet(entries);
+            if (maxEntries >= 0 && total > maxEntries) {
+                reserved.addAndGet(-entries);
+                return false;
+            }
+            if (parent != null && !parent.tryReserve(entries)) {
+                reserved.addAndGet(-entries);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Release the given number of entries that were previously {@link #tryReserve(long) reserved}.
+         * 
+         * @param entries the number of entries
+         */
+        public void release( long entries ) {
+            if (entries == 0L) return;
+            reserved.addAndGet(-entries);
+            if (parent != null) parent.release(entries);
+        }
+
+        @Override
+        public String toString() {
+            return "MemoryBudget(reserved=" + reserved.get() + ",max=" + maxEntries + ")";
+        }
+    }
+
     /**
      * A basic buffer interface.
      * 
@@ -299,9 +405,13 @@ public class BufferManager implements Serializers, AutoCloseable {
             if (db == null) {
                 try {
                     lock.lock();
-                    // Allocate it ...
-                    db = supplier.get();
-                    reference.set(db);
+                    // Another thread may have allocated it while we were waiting for the lock ...
+                    db = reference.get();
+                    if (db == null) {
+                        // Allocate it ...
+                        db = supplier.get();
+                        reference.set(db);
+                    }
                 } finally {
                     lock.unlock();
                 }
@@ -332,20 +442,52 @@ public class BufferManager implements Serializers, AutoCloseable {
         }
     };
 
+    private final static Supplier<DB> TEMP_FILE_DB_SUPPLIER = new Supplier<DB>() {
+        @Override
+        public DB get() {
+            return DBMaker.newTempFileDB().transactionDisable().deleteFilesAfterClose().closeOnJvmShutdown().make();
+        }
+    };
+
     private final Serializers serializers;
     private final DbHolder offheap;
     private final DbHolder onheap;
+    private final DbHolder tempFiles;
+    private final MemoryBudget budget;
     private final AtomicLong dbCounter = new AtomicLong();
+    private final AtomicLong spillCounter = new AtomicLong();
 
     public BufferManager( ExecutionContext context ) {
-        this(context, OFF_HEAP_DB_SUPPLIER, ON_HEAP_DB_SUPPLIER);
+        this(context, MemoryBudget.UNBOUNDED);
+    }
+
+    /**
+     * Create a buffer manager whose heap and off-heap buffers are limited by the supplied budget.
+     * 
+     * @param context the execution context; may not be null
+     * @param budget the budget for the number of entries kept in memory by this manager's buffers; may be null if there is no
+     *        limit
+     */
+    public BufferManager( ExecutionContext context,
+                          MemoryBudget budget ) {
+        this(context, OFF_HEAP_DB_SUPPLIER, ON_HEAP_DB_SUPPLIER, TEMP_FILE_DB_SUPPLIER, budget);
     }
 
     protected BufferManager( ExecutionContext context,
                              Supplier<DB> offheapDbSupplier,
                              Supplier<DB> onheapDbSupplier ) {
+        this(context, offheapDbSupplier, onheapDbSupplier, TEMP_FILE_DB_SUPPLIER, MemoryBudget.UNBOUNDED);
+    }
+
+    protected BufferManager( ExecutionContext context,
+                             Supplier<DB> offheapDbSupplier,
+                             Supplier<DB> onheapDbSupplier,
+                             Supplier<DB> spilledDbSupplier,
+                             MemoryBudget budget ) {
         offheap = new DbHolder(offheapDbSupplier);
         onheap = new DbHolder(onheapDbSupplier);
+        tempFiles = new DbHolder(spilledDbSupplier);
+        this.budget = budget != null ? budget : MemoryBudget.UNBOUNDED;
 
         // Create the serializers ...
         ValueFactories factories = context.getValueFactories();
@@ -365,10 +507,34 @@ public class BufferManager implements Serializers, AutoCloseable {
             } catch (RuntimeException e) {
                 if (error == null) error = e;
             }
+            try {
+                tempFiles.close();
+            } catch (RuntimeException e) {
+                if (error == null) error = e;
+            }
             if (error != null) throw error;
         }
     }
 
+    /**
+     * Get the budget that limits the number of entries kept in memory by this manager's buffers.
+     * 
+     * @return the budget; never null
+     */
+    public MemoryBudget getMemoryBudget() {
+        return budget;
+    }
+
+    /**
+     * Get the number of buffers created by this manager that have exceeded the {@link #getMemoryBudget() memory budget} and
+     * have been moved to temporary files.
+     * 
+     * @return the number of spilled buffers
+     */
+    public long getSpilledBufferCount() {
+        return spillCounter.get();
+    }
+
     /**
      * Obtain a maker object that can create a new {@link QueueBuffer}.
      * 
@@ -485,6 +651,8 @@ public class BufferManager implements Serializers, AutoCloseable {
     protected abstract class CloseableBuffer implements Buffer {
         protected final String name;
         protected final boolean onHeap;
+        private boolean spilled;
+        private long reservedEntries;
 
         protected CloseableBuffer( String name,
                                    boolean onHeap ) {
@@ -492,21 +660,120 @@ public class BufferManager implements Serializers, AutoCloseable {
             this.onHeap = onHeap;
         }
 
+        /**
+         * Record that an entry was added to this buffer, and determine whether the buffer must now be moved to a temporary file.
+         * 
+         * @return true if the buffer's contents must be spilled by calling {@link #spill(Object, Function)}, or false otherwise
+         */
+        protected final boolean entryAdded() {
+            if (spilled || !budget.isBounded()) return false;
+            if (budget.tryReserve(1L)) {
+                ++reservedEntries;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Move the contents of this buffer into a temporary file and release all of the entries reserved by this buffer.
+         * 
+         * @param current the in-memory collection
+         * @param factory the function that creates the collection with this buffer's name in the supplied database
+         * @return the new collection backed by a temporary file; never null
+         */
+        @SuppressWarnings( {"unchecked", "rawtypes"} )
+        protected final <C> C spill( C current,
+                                     Function<DB, C> factory ) {
+            assert !spilled;
+            C result = factory.apply(tempFiles.get());
+            if (result instanceof Map) {
+                ((Map)result).putAll((Map)current);
+            } else {
+                ((Set)result).addAll((Set)current);
+            }
+            BufferManager.this.delete(name, onHeap);
+            budget.release(reservedEntries);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Moved {0} entries in buffer '{1}' to a temporary file, since the query buffers exceeded {2}",
+                             reservedEntries + 1, name, budget);
+            }
+            reservedEntries = 0L;
+            spilled = true;
+            spillCounter.incrementAndGet();
+            return result;
+        }
+
+        /**
+         * Determine whether this buffer's contents have been moved to a temporary file.
+         * 
+         * @return true if the buffer has been spilled, or false if it is still in memory
+         */
+        protected final boolean isSpilled() {
+            return spilled;
+        }
+
+        /**
+         * Wrap an iterator over this buffer's current collection so that it fails with a {@link ConcurrentModificationException}
+         * once the buffer has been spilled, since the in-memory collection it reads has then been removed.
+         * 
+         * @param iterator the iterator over the current collection; may not be null
+         * @return the fail-fast iterator; never null
+         */
+        protected final <T> Iterator<T> failFast( final Iterator<T> iterator ) {
+            if (spilled) {
+                // the buffer can't be spilled again, so the iterator remains valid ...
+                return iterator;
+            }
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    checkNotSpilled();
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    checkNotSpilled();
+                    return iterator.next();
+                }
+
+                @Override
+                public void remove() {
+                    checkNotSpilled();
+                    iterator.remove();
+                }
+
+                private void checkNotSpilled() {
+                    if (spilled) {
+                        throw new ConcurrentModificationException(name);
+                    }
+                }
+            };
+        }
+
         @Override
         public void close() {
-            BufferManager.this.delete(name, onHeap);
+            if (spilled) {
+                tempFiles.get().delete(name);
+            } else {
+                BufferManager.this.delete(name, onHeap);
+                budget.release(reservedEntries);
+                reservedEntries = 0L;
+            }
         }
     }
 
     protected final class CloseableQueueBuffer<T> extends CloseableBuffer implements QueueBuffer<T> {
-        protected final Map<Long, T> buffer;
+        private final Function<DB, Map<Long, T>> factory;
+        protected Map<Long, T> buffer;
         private final AtomicLong size = new AtomicLong();
 
         protected CloseableQueueBuffer( String name,
                                         boolean onHeap,
-                                        Map<Long, T> buffer ) {
+                                        Function<DB, Map<Long, T>> factory ) {
             super(name, onHeap);
-            this.buffer = buffer;
+            this.factory = factory;
+            this.buffer = factory.apply(db(onHeap));
         }
 
         @Override
@@ -522,12 +789,14 @@ public class BufferManager implements Serializers, AutoCloseable {
         @Override
         public void append( T value ) {
             buffer.put(size.getAndIncrement(), value);
+            if (entryAdded()) buffer = spill(buffer, factory);
         }
 
         @Override
         public Iterator<T> iterator() {
+            final Map<Long, T> buffer = this.buffer;
             final AtomicLong counter = new AtomicLong(0L);
-            return new Iterator<T>() {
+            return failFast(new Iterator<T>() {
                 @Override
                 public boolean hasNext() {
                     return counter.get() < buffer.size();
@@ -546,7 +815,7 @@ public class BufferManager implements Serializers, AutoCloseable {
                 public void remove() {
                     throw new UnsupportedOperationException();
                 }
-            };
+            });
         }
 
         @Override
@@ -556,13 +825,15 @@ public class BufferManager implements Serializers, AutoCloseable {
     }
 
     protected final class CloseableDistinctBuffer<T> extends CloseableBuffer implements DistinctBuffer<T> {
-        private final Set<T> buffer;
+        private final Function<DB, Set<T>> factory;
+        private Set<T> buffer;
 
         protected CloseableDistinctBuffer( String name,
                                            boolean onHeap,
-                                           Set<T> buffer ) {
+                                           Function<DB, Set<T>> factory ) {
             super(name, onHeap);
-            this.buffer = buffer;
+            this.factory = factory;
+            this.buffer = factory.apply(db(onHeap));
         }
 
         @Override
@@ -577,12 +848,14 @@ public class BufferManager implements Serializers, AutoCloseable {
 
         @Override
         public boolean addIfAbsent( T value ) {
-            return buffer.add(value);
+            if (!buffer.add(value)) return false;
+            if (entryAdded()) buffer = spill(buffer, factory);
+            return true;
         }
 
         @Override
         public Iterator<T> iterator() {
-            return buffer.iterator();
+            return failFast(buffer.iterator());
         }
 
         @Override
@@ -592,13 +865,15 @@ public class BufferManager implements Serializers, AutoCloseable {
     }
 
     protected final class CloseableSortingBuffer<K, V> extends CloseableBuffer implements SortingBuffer<K, V> {
-        private final NavigableMap<K, V> buffer;
+        private final Function<DB, NavigableMap<K, V>> factory;
+        private NavigableMap<K, V> buffer;
 
         protected CloseableSortingBuffer( String name,
                                           boolean onHeap,
-                                          NavigableMap<K, V> buffer ) {
+                                          Function<DB, NavigableMap<K, V>> factory ) {
             super(name, onHeap);
-            this.buffer = buffer;
+            this.factory = factory;
+            this.buffer = factory.apply(db(onHeap));
         }
 
         @Override
@@ -614,7 +889,7 @@ public class BufferManager implements Serializers, AutoCloseable {
         @Override
         public void put( K sortable,
                          V record ) {
-            buffer.put(sortable, record);
+            if (buffer.put(sortable, record) == null && entryAdded()) buffer = spill(buffer, factory);
         }
 
         @Override
@@ -631,21 +906,21 @@ public class BufferManager implements Serializers, AutoCloseable {
             if (lowerKey == null) {
                 if (upperKey == null) {
                     // It is unbounded ...
-                    return buffer.values().iterator();
+                    return failFast(buffer.values().iterator());
                 }
-                return buffer.headMap(upperKey, includeUpperKey).values().iterator();
+                return failFast(buffer.headMap(upperKey, includeUpperKey).values().iterator());
             }
             assert lowerKey != null;
             if (upperKey == null) {
-                return buffer.tailMap(lowerKey, includeLowerKey).values().iterator();
+                return failFast(buffer.tailMap(lowerKey, includeLowerKey).values().iterator());
             }
-            return buffer.subMap(lowerKey, includeLowerKey, upperKey, includeUpperKey).values().iterator();
+            return failFast(buffer.subMap(lowerKey, includeLowerKey, upperKey, includeUpperKey).values().iterator());
         }
 
         @Override
         public Iterator<V> ascending() {
             final Iterator<Map.Entry<K, V>> entryIter = buffer.entrySet().iterator();
-            return new Iterator<V>() {
+            return failFast(new Iterator<V>() {
                 @Override
                 public boolean hasNext() {
                     return entryIter.hasNext();
@@ -660,13 +935,13 @@ public class BufferManager implements Serializers, AutoCloseable {
                 public void remove() {
                     entryIter.remove();
                 }
-            };
+            });
         }
 
         @Override
         public Iterator<V> descending() {
             final Iterator<Map.Entry<K, V>> entryIter = buffer.descendingMap().entrySet().iterator();
-            return new Iterator<V>() {
+            return failFast(new Iterator<V>() {
                 @Override
                 public boolean hasNext() {
                     return entryIter.hasNext();
@@ -681,7 +956,7 @@ public class BufferManager implements Serializers, AutoCloseable {
                 public void remove() {
                     entryIter.remove();
                 }
-            };
+            });
         }
 
         @Override
@@ -692,14 +967,16 @@ public class BufferManager implements Serializers, AutoCloseable {
 
     protected final class CloseableSortingBufferWithDuplicates<K extends Comparable<K>, V> extends CloseableBuffer
         implements SortingBuffer<K, V> {
-        private final NavigableMap<UniqueKey<K>, V> buffer;
+        private final Function<DB, NavigableMap<UniqueKey<K>, V>> factory;
+        private NavigableMap<UniqueKey<K>, V> buffer;
         private final AtomicLong counter = new AtomicLong();
 
         protected CloseableSortingBufferWithDuplicates( String name,
                                                         boolean onHeap,
-                                                        NavigableMap<UniqueKey<K>, V> buffer ) {
+                                                        Function<DB, NavigableMap<UniqueKey<K>, V>> factory ) {
             super(name, onHeap);
-            this.buffer = buffer;
+            this.factory = factory;
+            this.buffer = factory.apply(db(onHeap));
         }
 
         @Override
@@ -716,6 +993,7 @@ public class BufferManager implements Serializers, AutoCloseable {
         public void put( K sortable,
                          V record ) {
             buffer.put(new UniqueKey<K>(sortable, counter.incrementAndGet()), record);
+            if (entryAdded()) buffer = spill(buffer, factory);
         }
 
         @Override
@@ -725,7 +1003,7 @@ public class BufferManager implements Serializers, AutoCloseable {
             SortedMap<UniqueKey<K>, V> map = buffer.subMap(lowest, pastHighest);
             if (map == null || map.isEmpty()) return null;
             final Iterator<Map.Entry<UniqueKey<K>, V>> entryIter = map.entrySet().iterator();
-            return new Iterator<V>() {
+            return failFast(new Iterator<V>() {
                 @Override
                 public boolean hasNext() {
                     return entryIter.hasNext();
@@ -740,7 +1018,7 @@ public class BufferManager implements Serializers, AutoCloseable {
                 public void remove() {
                     entryIter.remove();
                 }
-            };
+            });
         }
 
         @Override
@@ -752,20 +1030,20 @@ public class BufferManager implements Serializers, AutoCloseable {
             UniqueKey<K> highest = includeUpperKey ? new UniqueKey<K>(upperKey, Long.MAX_VALUE) : new UniqueKey<K>(upperKey, 0L);
             if (upperKey == null) {
                 if (lowerKey == null) return Collections.<V>emptyList().iterator();
-                return buffer.tailMap(lowest, includeLowerKey).values().iterator();
+                return failFast(buffer.tailMap(lowest, includeLowerKey).values().iterator());
             } else if (lowerKey == null) {
                 assert upperKey != null;
-                return buffer.headMap(highest, includeUpperKey).values().iterator();
+                return failFast(buffer.headMap(highest, includeUpperKey).values().iterator());
             }
             assert lowerKey != null;
             assert upperKey != null;
-            return buffer.subMap(lowest, includeLowerKey, highest, includeUpperKey).values().iterator();
+            return failFast(buffer.subMap(lowest, includeLowerKey, highest, includeUpperKey).values().iterator());
         }
 
         @Override
         public Iterator<V> ascending() {
             final Iterator<Map.Entry<UniqueKey<K>, V>> entryIter = buffer.entrySet().iterator();
-            return new Iterator<V>() {
+            return failFast(new Iterator<V>() {
                 @Override
                 public boolean hasNext() {
                     return entryIter.hasNext();
@@ -780,13 +1058,13 @@ public class BufferManager implements Serializers, AutoCloseable {
                 public void remove() {
                     entryIter.remove();
                 }
-            };
+            });
         }
 
         @Override
         public Iterator<V> descending() {
             final Iterator<Map.Entry<UniqueKey<K>, V>> entryIter = buffer.descendingMap().entrySet().iterator();
-            return new Iterator<V>() {
+            return failFast(new Iterator<V>() {
                 @Override
                 public boolean hasNext() {
                     return entryIter.hasNext();
@@ -801,7 +1079,7 @@ public class BufferManager implements Serializers, AutoCloseable {
                 public void remove() {
                     entryIter.remove();
                 }
-            };
+            });
         }
 
         @Override
@@ -831,8 +1109,11 @@ public class BufferManager implements Serializers, AutoCloseable {
 
         @Override
         public QueueBuffer<T> make() {
-            HTreeMap<Long, T> values = db(useHeap).createHashMap(name).valueSerializer(serializer).counterEnable().make();
-            return new CloseableQueueBuffer<T>(name, useHeap, values);
+            Function<DB, Map<Long, T>> factory = db -> {
+                HTreeMap<Long, T> values = db.createHashMap(name).valueSerializer(serializer).counterEnable().make();
+                return values;
+            };
+            return new CloseableQueueBuffer<T>(name, useHeap, factory);
         }
     }
 
@@ -864,10 +1145,13 @@ public class BufferManager implements Serializers, AutoCloseable {
 
         @Override
         public DistinctBuffer<T> make() {
-            HTreeSetMaker maker = db(useHeap).createHashSet(name).serializer(serializer);
-            if (keepsize) maker = maker.counterEnable();
-            Set<T> buffer = maker.make();
-            return new CloseableDistinctBuffer<T>(name, useHeap, buffer);
+            final boolean keepsize = this.keepsize;
+            Function<DB, Set<T>> factory = db -> {
+                HTreeSetMaker maker = db.createHashSet(name).serializer(serializer);
+                if (keepsize) maker = maker.counterEnable();
+                return maker.make();
+            };
+            return new CloseableDistinctBuffer<T>(name, useHeap, factory);
         }
     }
 
@@ -900,10 +1184,13 @@ public class BufferManager implements Serializers, AutoCloseable {
 
         @Override
         public SortingBuffer<K, V> make() {
-            BTreeMapMaker maker = db(useHeap).createTreeMap(name).keySerializer(keySerializer).valueSerializer(valueSerializer);
-            if (keepsize) maker = maker.counterEnable();
-            NavigableMap<K, V> buffer = maker.make();
-            return new CloseableSortingBuffer<K, V>(name, useHeap, buffer);
+            final boolean keepsize = this.keepsize;
+            Function<DB, NavigableMap<K, V>> factory = db -> {
+                BTreeMapMaker maker = db.createTreeMap(name).keySerializer(keySerializer).valueSerializer(valueSerializer);
+                if (keepsize) maker = maker.counterEnable();
+                return maker.make();
+            };
+            return new CloseableSortingBuffer<K, V>(name, useHeap, factory);
         }
     }
 
@@ -942,11 +1229,13 @@ public class BufferManager implements Serializers, AutoCloseable {
         public SortingBuffer<K, V> make() {
             Comparator<UniqueKey<K>> comparator = this.keyComparator != null ? new UniqueKeyComparator<K>(keyComparator) : new ComparableUniqueKeyComparator<K>();
             BTreeKeySerializer<UniqueKey<K>> uniqueKeySerializer = new UniqueKeyBTreeSerializer<K>(keySerializer, comparator);
-            BTreeMapMaker maker = db(useHeap).createTreeMap(name).keySerializer(uniqueKeySerializer)
-                                             .valueSerializer(valueSerializer);
-            if (keepsize) maker = maker.counterEnable();
-            NavigableMap<UniqueKey<K>, V> buffer = maker.make();
-            return new CloseableSortingBufferWithDuplicates<K, V>(name, useHeap, buffer);
+            final boolean keepsize = this.keepsize;
+            Function<DB, NavigableMap<UniqueKey<K>, V>> factory = db -> {
+                BTreeMapMaker maker = db.createTreeMap(name).keySerializer(uniqueKeySerializer).valueSerializer(valueSerializer);
+                if (keepsize) maker = maker.counterEnable();
+                return maker.make();
+            };
+            return new CloseableSortingBufferWithDuplicates<K, V>(name, useHeap, factory);
         }
     }
 }
@@ -28,6 +28,10 @@ import org.modeshape.common.annotation.NotThreadSafe;
 import org.modeshape.common.util.CheckArg;
 import org.modeshape.common.util.StringUtil;
 import org.modeshape.jcr.JcrI18n;
+import org.modeshape.jcr.query.NodeSequence.Batch;
+import org.modeshape.jcr.query.QueryResults.Columns;
+import org.modeshape.jcr.query.engine.QueryProfile;
+import org.modeshape.jcr.query.engine.Results;
 import org.modeshape.jcr.query.model.BindVariableName;
 import org.modeshape.jcr.query.model.LiteralValue;
 import org.modeshape.jcr.query.model.QueryCommand;
@@ -48,6 +52,8 @@ public class JcrQuery extends JcrAbstractQuery {
     private final Map<String, Object> variables;
     private volatile Set<String> variableNames;
     private final AtomicReference<CancellableQuery> executingQuery = new AtomicReference<CancellableQuery>();
+    private long waitForIndexesThrough = 0L;
+    private long waitForIndexesTimeoutInNanos = 0L;
 
     /**
      * Creates a new JCR {@link Query} by specifying the query statement itself, the language in which the query is stated, the
@@ -79,6 +85,26 @@ public class JcrQuery extends JcrAbstractQuery {
         this.hints.includeSystemContent = includeSystemContent;
     }
 
+    @Override
+    public void waitForIndexes( long timestamp,
+                                long timeout,
+                                TimeUnit unit ) {
+        this.waitForIndexesThrough = timestamp;
+        this.waitForIndexesTimeoutInNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Wait for the asynchronously-updated indexes to reflect the changes saved through the time given to
+     * {@link #waitForIndexes(long, long, TimeUnit)}, if any.
+     * 
+     * @throws RepositoryException if the thread was interrupted while waiting
+     */
+    protected void waitForIndexes() throws RepositoryException {
+        if (waitForIndexesThrough > 0L && waitForIndexesTimeoutInNanos > 0L) {
+            context.waitForIndexes(waitForIndexesThrough, waitForIndexesTimeoutInNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
     protected QueryCommand query() {
         return query;
     }
@@ -106,7 +132,15 @@ public class JcrQuery extends JcrAbstractQuery {
     @Override
     public org.modeshape.jcr.api.query.QueryResult execute() throws RepositoryException {
         context.checkValid();
+        waitForIndexes();
         final long start = System.nanoTime();
+        PlanHints hints = this.hints;
+        final long slowQueryThreshold = context.getSlowQueryThresholdInMillis();
+        if (slowQueryThreshold >= 0L && !hints.profile && context.sampleQueryForProfiling()) {
+            // Profile this sample of the queries so that its plan can be reported if it turns out to be slow ...
+            hints = hints.clone();
+            hints.profile = true;
+        }
         // Create an executable query and set it on this object ...
         CancellableQuery newExecutable = context.createExecutableQuery(query, hints, variables);
         CancellableQuery executable = executingQuery.getAndSet(newExecutable);
@@ -121,7 +155,25 @@ public class JcrQuery extends JcrAbstractQuery {
         executingQuery.compareAndSet(executable, null);
 
         checkForProblems(result.getProblems());
-        context.recordDuration(Math.abs(System.nanoTime() - start), TimeUnit.NANOSECONDS, statement, language);
+        final long executed = System.nanoTime();
+        final long executionTime = Math.abs(executed - start);
+        context.recordDuration(executionTime, TimeUnit.NANOSECONDS, statement, language);
+        if (slowQueryThreshold >= 0L) {
+            QueryProfile profile = result.getProfile();
+            if (profile != null) {
+                // The rows are read lazily, so the time spent reading them is only known once all rows are read or the results
+                // are closed ...
+                profile.setCompletionListener(completed -> {
+                    long fetchTime = Math.abs(System.nanoTime() - executed);
+                    if (TimeUnit.NANOSECONDS.toMillis(executionTime + fetchTime) >= slowQueryThreshold) {
+                        context.recordSlowQuery(executionTime, fetchTime, TimeUnit.NANOSECONDS, statement, language,
+                                                completed.getPlan());
+                    }
+                });
+            } else if (TimeUnit.NANOSECONDS.toMillis(executionTime) >= slowQueryThreshold) {
+                context.recordSlowQuery(executionTime, -1L, TimeUnit.NANOSECONDS, statement, language, null);
+            }
+        }
         if (Query.XPATH.equals(language)) {
             return new XPathQueryResult(context, statement, result, hints.restartable, hints.rowsKeptInMemory);
         } else if (Query.SQL.equals(language)) {
@@ -152,6 +204,46 @@ public class JcrQuery extends JcrAbstractQuery {
         return new JcrQueryResult(context, statement, result, false, 0);
     }
 
+    @SuppressWarnings( "deprecation" )
+    @Override
+    public org.modeshape.jcr.api.query.QueryResult profile() throws RepositoryException {
+        context.checkValid();
+
+        // Set to record the statistics of each operator and then create an executable query ...
+        PlanHints hints = this.hints.clone();
+        hints.profile = true;
+        hints.showPlan = true;
+        waitForIndexes();
+        CancellableQuery profiledExecutable = context.createExecutableQuery(query, hints, variables);
+        final QueryResults result = profiledExecutable.execute(); // may be cancelled
+        checkForProblems(result.getProblems());
+
+        // Read all of the rows, so that the plan describes the complete execution ...
+        NodeSequence rows = result.getRows();
+        try {
+            Batch batch = null;
+            while ((batch = rows.nextBatch()) != null) {
+                while (batch.hasNext()) {
+                    batch.nextRow();
+                }
+            }
+        } finally {
+            rows.close();
+        }
+
+        // And return a result with no rows but with the profiled plan ...
+        Columns columns = result.getColumns();
+        NodeSequence noRows = NodeSequence.emptySequence(rows.width());
+        QueryResults profiled = new Results(columns, result.getStatistics(), noRows, result.getCachedNodes(),
+                                            result.getProblems(), result.getPlan());
+        if (Query.XPATH.equals(language)) {
+            return new XPathQueryResult(context, statement, profiled, false, 0);
+        } else if (Query.SQL.equals(language)) {
+            return new JcrSqlQueryResult(context, statement, profiled, false, 0);
+        }
+        return new JcrQueryResult(context, statement, profiled, false, 0);
+    }
+
     @Override
     public boolean cancel() {
         CancellableQuery executing = executingQuery.get();
@@ -90,6 +90,20 @@ public interface JcrQueryContext {
                                             PlanHints hints,
                                             Map<String, Object> variables ) throws RepositoryException;
 
+    /**
+     * Wait until the asynchronously-updated indexes of the current workspace reflect all of the changes saved at or before the
+     * given time.
+     * 
+     * @param timestamp the time, in milliseconds since the epoch, of the latest change that should be reflected in the indexes
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout; may not be null
+     * @return true if the indexes reflect these changes, or false if the timeout elapsed before they did
+     * @throws RepositoryException if the session has been closed or the thread was interrupted while waiting
+     */
+    boolean waitForIndexes( long timestamp,
+                            long timeout,
+                            TimeUnit unit ) throws RepositoryException;
+
     /**
      * Obtain the JCR node given the supplied cached node.
      * 
@@ -130,6 +144,38 @@ public interface JcrQueryContext {
                          String query,
                          String language );
 
+    /**
+     * Get the number of milliseconds that a query may take before it is considered slow.
+     * 
+     * @return the threshold in milliseconds, or a negative number if slow queries are not to be detected
+     */
+    long getSlowQueryThresholdInMillis();
+
+    /**
+     * Determine whether the next query is one of the sample of queries that are profiled so that, if they are slow, their plans
+     * can be reported with the statistics of each operator.
+     * 
+     * @return true if the query should be profiled, or false otherwise
+     */
+    boolean sampleQueryForProfiling();
+
+    /**
+     * Report a slow query.
+     * 
+     * @param executionTime the time spent executing the query; must be positive
+     * @param fetchTime the time spent reading the rows of the query, or a negative number if that is not known
+     * @param unit the time unit for the durations; may not be null
+     * @param query the query string; may not be null
+     * @param language the query language; may not be null
+     * @param plan the plan annotated with the statistics of each operator, or null if the query was not profiled
+     */
+    void recordSlowQuery( long executionTime,
+                          long fetchTime,
+                          TimeUnit unit,
+                          String query,
+                          String language,
+                          String plan );
+
     /**
      * Get the internal {@link Path} of the supplied cached node.
      * 
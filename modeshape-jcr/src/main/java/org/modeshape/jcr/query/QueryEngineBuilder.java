@@ -16,6 +16,7 @@
 
 package org.modeshape.jcr.query;
 
+import java.util.concurrent.ExecutorService;
 import org.modeshape.jcr.ExecutionContext;
 import org.modeshape.jcr.RepositoryConfiguration;
 import org.modeshape.jcr.query.optimize.Optimizer;
@@ -83,6 +84,18 @@ public abstract class QueryEngineBuilder {
         return this.optimizer != null ? this.optimizer : defaultOptimizer();
     }
 
+    /**
+     * Get the executor that the query engine can use to evaluate independent branches of queries in parallel.
+     *
+     * @return the executor, or null if all parts of a query are to be evaluated on the caller's thread
+     */
+    protected final ExecutorService branchExecutor() {
+        if (config == null || context == null) return null;
+        RepositoryConfiguration.Querying querying = config.getQuerying();
+        int parallelism = querying.getParallelism();
+        return parallelism > 0 ? context.getCachedTreadPool(querying.getThreadPoolName(), parallelism) : null;
+    }
+
     protected Planner defaultPlanner() {
         return new CanonicalPlanner();
     }
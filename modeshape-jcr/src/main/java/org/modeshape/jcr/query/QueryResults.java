@@ -26,6 +26,7 @@ import org.modeshape.common.util.CheckArg;
 import org.modeshape.jcr.cache.CachedNode;
 import org.modeshape.jcr.cache.CachedNodeSupplier;
 import org.modeshape.jcr.query.NodeSequence.Batch;
+import org.modeshape.jcr.query.engine.QueryProfile;
 import org.modeshape.jcr.query.model.Column;
 
 /**
@@ -76,6 +77,13 @@ public interface QueryResults {
      */
     public String getPlan();
 
+    /**
+     * Get the profile of the query's execution, if requested.
+     * 
+     * @return the profile, or null if the query was not {@link org.modeshape.jcr.query.plan.PlanHints#profile profiled}
+     */
+    public QueryProfile getProfile();
+
     /**
      * Get the problems encountered during execution.
      * 
@@ -19,6 +19,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.jcr.ExecutionContext;
 import org.modeshape.jcr.JcrI18n;
@@ -105,7 +106,7 @@ public class IndexQueryEngine extends ScanningQueryEngine {
                 };
             }
             // Finally create the query engine ...
-            return new IndexQueryEngine(context(), repositoryName(), planner(), optimizer, indexManager());
+            return new IndexQueryEngine(context(), repositoryName(), planner(), optimizer, indexManager(), branchExecutor());
         }
 
         @Override
@@ -158,7 +159,16 @@ public class IndexQueryEngine extends ScanningQueryEngine {
                                 Planner planner,
                                 Optimizer optimizer,
                                 IndexManager indexManager ) {
-        super(context, repositoryName, planner, optimizer);
+        this(context, repositoryName, planner, optimizer, indexManager, null);
+    }
+
+    protected IndexQueryEngine( ExecutionContext context,
+                                String repositoryName,
+                                Planner planner,
+                                Optimizer optimizer,
+                                IndexManager indexManager,
+                                ExecutorService branchExecutor ) {
+        super(context, repositoryName, planner, optimizer, branchExecutor);
         this.indexManager = indexManager;
     }
 
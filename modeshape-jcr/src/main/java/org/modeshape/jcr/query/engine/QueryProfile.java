@@ -0,0 +1,328 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.query.engine;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.jcr.cache.CachedNode;
+import org.modeshape.jcr.query.BufferManager;
+import org.modeshape.jcr.query.NodeSequence;
+import org.modeshape.jcr.query.engine.process.DelegatingSequence;
+import org.modeshape.jcr.query.plan.PlanNode;
+
+/**
+ * The execution profile of a single query, which records for each operator in the query plan how many rows and batches it
+ * produced and how much time was spent producing them. Operators are profiled by wrapping the {@link NodeSequence} of each plan
+ * node with {@link #profile(PlanNode, NodeSequence)}; because the rows are pulled lazily, the times include the time spent by
+ * the operators below (and are reported along with the time spent in the operator itself).
+ * <p>
+ * Profiling adds a small overhead to each row, so it is only done when requested with
+ * {@link org.modeshape.jcr.query.plan.PlanHints#profile}.
+ * </p>
+ */
+@ThreadSafe
+public class QueryProfile {
+
+    private final Map<PlanNode, Operator> operators = new ConcurrentHashMap<>();
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    private final long startTime = System.nanoTime();
+    private final BufferManager bufferManager;
+    private final long initialSpilledBuffers;
+    private volatile PlanNode plan;
+    private volatile long totalTime = -1L;
+    private volatile long spilledBuffers = -1L;
+    private volatile Consumer<QueryProfile> completionListener;
+
+    /**
+     * Create a new profile.
+     *
+     * @param bufferManager the buffer manager used by the query; may be null
+     */
+    public QueryProfile( BufferManager bufferManager ) {
+        this.bufferManager = bufferManager;
+        this.initialSpilledBuffers = bufferManager != null ? bufferManager.getSpilledBufferCount() : 0L;
+    }
+
+    /**
+     * Set the optimized plan of the query.
+     *
+     * @param plan the plan; may not be null
+     */
+    public void setPlan( PlanNode plan ) {
+        this.plan = plan;
+    }
+
+    /**
+     * Set the listener that should be called once the query's rows have all been read or the query's results have been closed.
+     *
+     * @param listener the listener; may be null
+     */
+    public void setCompletionListener( Consumer<QueryProfile> listener ) {
+        this.completionListener = listener;
+        if (listener != null && completed.get()) {
+            // The query completed before the listener was set ...
+            listener.accept(this);
+        }
+    }
+
+    /**
+     * Wrap the sequence that was created for the given plan node so that it is profiled.
+     *
+     * @param node the plan node; may not be null
+     * @param rows the sequence for the plan node; may be null
+     * @return the profiled sequence, or null if the supplied sequence was null
+     */
+    public NodeSequence profile( PlanNode node,
+                                 NodeSequence rows ) {
+        if (rows == null) return null;
+        Operator operator = new Operator();
+        operators.put(node, operator);
+        return new ProfilingSequence(rows, operator, node == plan);
+    }
+
+    /**
+     * Determine whether all of the rows were read or the results were closed.
+     *
+     * @return true if the query has completed
+     */
+    public boolean isCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Get the number of nanoseconds between the creation of this profile and the completion of the query.
+     *
+     * @return the total time in nanoseconds; or -1 if the query has not {@link #isCompleted() completed}
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * Get the number of rows returned by the query so far.
+     *
+     * @return the number of rows
+     */
+    public long getRowCount() {
+        Operator top = plan != null ? operators.get(plan) : null;
+        return top != null ? top.rows.get() : 0L;
+    }
+
+    protected void complete() {
+        if (completed.compareAndSet(false, true)) {
+            totalTime = Math.abs(System.nanoTime() - startTime);
+            spilledBuffers = bufferManager != null ? bufferManager.getSpilledBufferCount() - initialSpilledBuffers : 0L;
+            Consumer<QueryProfile> listener = completionListener;
+            if (listener != null) listener.accept(this);
+        }
+    }
+
+    /**
+     * Get the query plan, with each operator annotated with the statistics collected so far.
+     *
+     * @return the annotated plan; never null
+     */
+    public String getPlan() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Profile: rows=").append(getRowCount());
+        if (totalTime >= 0L) {
+            sb.append(", time=").append(millis(totalTime)).append("ms");
+            sb.append(", spilledBuffers=").append(spilledBuffers);
+        } else {
+            sb.append(" (not completed)");
+        }
+        sb.append('\n');
+        if (plan != null) {
+            sb.append(plan.getString(this::describe));
+        }
+        return sb.toString();
+    }
+
+    protected String describe( PlanNode node ) {
+        Operator operator = operators.get(node);
+        if (operator == null) return null;
+        long rowsIn = 0L;
+        long childTime = 0L;
+        boolean hasProfiledChildren = false;
+        for (PlanNode child : node) {
+            Operator childOperator = operators.get(child);
+            if (childOperator != null) {
+                hasProfiledChildren = true;
+                rowsIn += childOperator.rows.get();
+                childTime += childOperator.nanos.get();
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("rows=").append(operator.rows.get());
+        if (hasProfiledChildren) sb.append(", rowsIn=").append(rowsIn);
+        sb.append(", batches=").append(operator.batches.get());
+        long nanos = operator.nanos.get();
+        sb.append(", time=").append(millis(nanos)).append("ms");
+        if (hasProfiledChildren) sb.append(", selfTime=").append(millis(Math.max(0L, nanos - childTime))).append("ms");
+        return sb.toString();
+    }
+
+    private static String millis( long nanos ) {
+        return String.format("%.3f", nanos / (double)TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Override
+    public String toString() {
+        return getPlan();
+    }
+
+    protected static final class Operator {
+        protected final AtomicLong rows = new AtomicLong();
+        protected final AtomicLong batches = new AtomicLong();
+        protected final AtomicLong nanos = new AtomicLong();
+    }
+
+    protected final class ProfilingSequence extends DelegatingSequence {
+        private final Operator operator;
+        private final boolean top;
+
+        protected ProfilingSequence( NodeSequence delegate,
+                                     Operator operator,
+                                     boolean top ) {
+            super(delegate);
+            this.operator = operator;
+            this.top = top;
+        }
+
+        @Override
+        public Batch nextBatch() {
+            long start = System.nanoTime();
+            Batch batch = null;
+            try {
+                batch = super.nextBatch();
+            } finally {
+                operator.nanos.addAndGet(Math.abs(System.nanoTime() - start));
+            }
+            if (batch == null) {
+                if (top) complete();
+                return null;
+            }
+            operator.batches.incrementAndGet();
+            return new ProfilingBatch(batch, operator);
+        }
+
+        @Override
+        public void close() {
+            try {
+                super.close();
+            } finally {
+                if (top) complete();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "(profile " + delegate + ")";
+        }
+    }
+
+    protected static final class ProfilingBatch implements NodeSequence.Batch {
+        private final NodeSequence.Batch original;
+        private final Operator operator;
+
+        protected ProfilingBatch( NodeSequence.Batch original,
+                                  Operator operator ) {
+            this.original = original;
+            this.operator = operator;
+        }
+
+        @Override
+        public String getWorkspaceName() {
+            return original.getWorkspaceName();
+        }
+
+        @Override
+        public long rowCount() {
+            return original.rowCount();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return original.isEmpty();
+        }
+
+        @Override
+        public int width() {
+            return original.width();
+        }
+
+        @Override
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            try {
+                return original.hasNext();
+            } finally {
+                operator.nanos.addAndGet(Math.abs(System.nanoTime() - start));
+            }
+        }
+
+        @Override
+        public void nextRow() {
+            long start = System.nanoTime();
+            try {
+                original.nextRow();
+                operator.rows.incrementAndGet();
+            } finally {
+                operator.nanos.addAndGet(Math.abs(System.nanoTime() - start));
+            }
+        }
+
+        @Override
+        public CachedNode getNode() {
+            long start = System.nanoTime();
+            try {
+                return original.getNode();
+            } finally {
+                operator.nanos.addAndGet(Math.abs(System.nanoTime() - start));
+            }
+        }
+
+        @Override
+        public CachedNode getNode( int index ) {
+            long start = System.nanoTime();
+            try {
+                return original.getNode(index);
+            } finally {
+                operator.nanos.addAndGet(Math.abs(System.nanoTime() - start));
+            }
+        }
+
+        @Override
+        public float getScore() {
+            return original.getScore();
+        }
+
+        @Override
+        public float getScore( int index ) {
+            return original.getScore(index);
+        }
+
+        @Override
+        public String toString() {
+            return "(profile-batch " + original + ")";
+        }
+    }
+}
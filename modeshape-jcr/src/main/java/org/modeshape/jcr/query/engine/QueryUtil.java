@@ -51,6 +51,20 @@ public class QueryUtil {
     }
     
     
+    /**
+     * Determine whether the supplied value contains any of the characters that the '.' of a regular expression does not match.
+     * 
+     * @param value the value; may not be null
+     * @return true if the value contains a line terminator, or false otherwise
+     */
+    public static boolean hasLineTerminators( String value ) {
+        for (int i = 0; i != value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') return true;
+        }
+        return false;
+    }
+
     /**
      * Convert the JCR like expression to a regular expression. The JCR like expression uses '%' to match 0 or more characters,
      * '_' to match any single character, '\x' to match the 'x' character, and all other characters to match themselves. Note that
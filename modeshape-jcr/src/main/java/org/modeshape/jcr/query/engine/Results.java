@@ -37,6 +37,8 @@ public class Results implements org.modeshape.jcr.query.QueryResults {
     private final NodeSequence rows;
     private final Statistics statistics;
     private final String plan;
+    private final QueryProfile profile;
+    private final boolean showPlan;
     private final CachedNodeSupplier cachedNodes;
 
     /**
@@ -47,6 +49,8 @@ public class Results implements org.modeshape.jcr.query.QueryResults {
         this.columns = IndexQueryEngine.ResultColumns.EMPTY;
         this.statistics = new Statistics();
         this.plan = null;
+        this.profile = null;
+        this.showPlan = false;
         this.rows = NodeSequence.emptySequence(0);
         this.cachedNodes = null;
     }
@@ -75,6 +79,42 @@ public class Results implements org.modeshape.jcr.query.QueryResults {
         this.columns = columns;
         this.statistics = statistics;
         this.plan = plan;
+        this.profile = null;
+        this.showPlan = plan != null;
+        this.rows = rows;
+        this.cachedNodes = cachedNodes;
+    }
+
+    /**
+     * Create a results object for a query that is being {@link org.modeshape.jcr.query.plan.PlanHints#profile profiled}. The
+     * {@link #getPlan() plan}, if requested, is annotated with the statistics recorded in the profile.
+     * 
+     * @param columns the definition of the query result columns
+     * @param statistics the statistics for this query; may not be null
+     * @param rows the sequence of rows; may not be null
+     * @param cachedNodes the supplier for obtaining cached nodes; may not be null
+     * @param problems the problems; may be null if there are no problems
+     * @param profile the profile of the query execution; may not be null
+     * @param showPlan true if the {@link #getPlan() plan} is to be made available, or false otherwise
+     */
+    public Results( Columns columns,
+                    Statistics statistics,
+                    NodeSequence rows,
+                    CachedNodeSupplier cachedNodes,
+                    Problems problems,
+                    QueryProfile profile,
+                    boolean showPlan ) {
+        assert columns != null;
+        assert statistics != null;
+        assert rows != null;
+        assert cachedNodes != null;
+        assert profile != null;
+        this.problems = problems != null ? problems : NO_PROBLEMS;
+        this.columns = columns;
+        this.statistics = statistics;
+        this.plan = null;
+        this.profile = profile;
+        this.showPlan = showPlan;
         this.rows = rows;
         this.cachedNodes = cachedNodes;
     }
@@ -106,7 +146,13 @@ public class Results implements org.modeshape.jcr.query.QueryResults {
 
     @Override
     public String getPlan() {
-        return plan;
+        if (!showPlan) return null;
+        return profile != null ? profile.getPlan() : plan;
+    }
+
+    @Override
+    public QueryProfile getProfile() {
+        return profile;
     }
 
     @Override
@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
 import javax.jcr.RepositoryException;
 import javax.jcr.Value;
@@ -53,6 +54,8 @@ import org.modeshape.jcr.cache.NodeCache;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.PropertyTypeUtil;
 import org.modeshape.jcr.cache.RepositoryCache;
+import org.modeshape.jcr.cache.document.TransactionalWorkspaceCache;
+import org.modeshape.jcr.cache.document.WorkspaceCache;
 import org.modeshape.jcr.query.BufferManager;
 import org.modeshape.jcr.query.NodeSequence;
 import org.modeshape.jcr.query.NodeSequence.Batch;
@@ -70,6 +73,7 @@ import org.modeshape.jcr.query.RowExtractors.ExtractFromRow;
 import org.modeshape.jcr.query.engine.process.DependentQuery;
 import org.modeshape.jcr.query.engine.process.DistinctSequence;
 import org.modeshape.jcr.query.engine.process.ExceptSequence;
+import org.modeshape.jcr.query.engine.process.ExchangeSequence;
 import org.modeshape.jcr.query.engine.process.HashJoinSequence;
 import org.modeshape.jcr.query.engine.process.IntersectSequence;
 import org.modeshape.jcr.query.engine.process.JoinSequence.Range;
@@ -159,11 +163,17 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
     /** We don't use the standard logging convention here; we want clients to easily configure logging for the indexes */
     protected static final Logger LOGGER = Logger.getLogger("org.modeshape.jcr.query");
 
+    /** The maximum number of compiled LIKE expressions that each RELIKE filter will cache. */
+    private static final int MAX_CACHED_RELIKE_PATTERNS = 256;
+
+    /** Branches with fewer known rows than this are cheap enough to be evaluated on the caller's thread. */
+    private static final long MIN_ROWS_FOR_PARALLEL_BRANCH = 100L;
+
     public static class Builder extends QueryEngineBuilder {
 
         @Override
         public QueryEngine build() {
-            return new ScanningQueryEngine(context(), repositoryName(), planner(), optimizer());
+            return new ScanningQueryEngine(context(), repositoryName(), planner(), optimizer(), branchExecutor());
         }
 
         @Override
@@ -179,16 +189,36 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
     protected final String repositoryName;
     protected final Planner planner;
     protected final Optimizer optimizer;
+    protected final ExecutorService branchExecutor;
 
     public ScanningQueryEngine( ExecutionContext context,
                                 String repositoryName,
                                 Planner planner,
                                 Optimizer optimizer ) {
+        this(context, repositoryName, planner, optimizer, null);
+    }
+
+    /**
+     * Create a query engine that can evaluate independent branches of a query in parallel.
+     * 
+     * @param context the execution context; may be null
+     * @param repositoryName the name of the repository
+     * @param planner the planner; may not be null
+     * @param optimizer the optimizer; may not be null
+     * @param branchExecutor the executor used to evaluate independent branches of a query in parallel, or null if all parts of
+     *        a query should be evaluated on the caller's thread
+     */
+    public ScanningQueryEngine( ExecutionContext context,
+                                String repositoryName,
+                                Planner planner,
+                                Optimizer optimizer,
+                                ExecutorService branchExecutor ) {
         assert planner != null;
         assert optimizer != null;
         this.repositoryName = repositoryName;
         this.planner = planner;
         this.optimizer = optimizer;
+        this.branchExecutor = branchExecutor;
     }
 
     /**
@@ -485,6 +515,7 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
         long nanos = System.nanoTime();
         Columns columns = null;
         NodeSequence rows = null;
+        QueryProfile profile = null;
         final String workspaceName = context.getWorkspaceNames().iterator().next();
         try {
 
@@ -501,6 +532,11 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                 }
                 rows = NodeSequence.emptySequence(columns.getColumns().size());
             } else {
+                if (context.getHints().profile) {
+                    profile = new QueryProfile(context.getBufferManager());
+                    profile.setPlan(plan);
+                    context.withProfile(profile);
+                }
                 boolean includeSystemContent = context.getHints().includeSystemContent;
                 final QuerySources sources = new QuerySources(context.getRepositoryCache(), context.getNodeTypes(),
                                                               workspaceName, includeSystemContent);
@@ -520,8 +556,13 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
         } finally {
             statistics = statistics.withExecutionTime(Math.abs(System.nanoTime() - nanos));
         }
-        final String planDesc = context.getHints().showPlan ? plan.getString() : null;
         CachedNodeSupplier cachedNodes = context.getNodeCache(workspaceName);
+        if (profile != null) {
+            // The plan will be annotated with the statistics that are recorded as the rows are read ...
+            return new Results(columns, statistics, rows, cachedNodes, context.getProblems(), profile,
+                               context.getHints().showPlan);
+        }
+        final String planDesc = context.getHints().showPlan ? plan.getString() : null;
         return new Results(columns, statistics, rows, cachedNodes, context.getProblems(), planDesc);
     }
 
@@ -540,6 +581,27 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                                                PlanNode plan,
                                                Columns columns,
                                                QuerySources sources ) {
+        NodeSequence rows = createOperatorSequence(originalQuery, context, plan, columns, sources);
+        QueryProfile profile = context.profile();
+        return profile != null ? profile.profile(plan, rows) : rows;
+    }
+
+    /**
+     * Create the node sequence for the operator defined by the supplied plan node. The sequences for any child plan nodes are
+     * created with {@link #createNodeSequence}.
+     * 
+     * @param originalQuery the original query command; may not be null
+     * @param context the context in which the query is to be executed; may not be null
+     * @param plan the optimized plan for the query; may not be null
+     * @param columns the result column definition; may not be null
+     * @param sources the query sources for the repository; may not be null
+     * @return the sequence of results; null only if the type of plan is not understood
+     */
+    protected NodeSequence createOperatorSequence( QueryCommand originalQuery,
+                                                   ScanQueryContext context,
+                                                   PlanNode plan,
+                                                   Columns columns,
+                                                   QuerySources sources ) {
         NodeSequence rows = null;
         final String workspaceName = sources.getWorkspaceName();
         final NodeCache cache = context.getNodeCache(workspaceName);
@@ -618,6 +680,13 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
 
                 NodeSequence left = createNodeSequence(originalQuery, joinQueryContext, leftPlan, leftColumns, sources);
                 NodeSequence right = createNodeSequence(originalQuery, joinQueryContext, rightPlan, rightColumns, sources);
+                ExchangeSequence leftExchange = null;
+                if (shouldRunInParallel(context, leftPlan, rightPlan, left, right)) {
+                    // The join reads all of the right side before it reads the left, so evaluate the left in the background
+                    // (once the join is first read) ...
+                    leftExchange = ExchangeSequence.create(left, branchExecutor, ExchangeSequence.DEFAULT_MAX_QUEUED_BATCHES);
+                    left = leftExchange;
+                }
 
                 // Figure out the join algorithm ...
                 JoinAlgorithm algorithm = plan.getProperty(Property.JOIN_ALGORITHM, JoinAlgorithm.class);
@@ -757,6 +826,7 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
 
                 rows = new HashJoinSequence(workspaceName, left, right, leftExtractor, rightExtractor, joinType,
                                             context.getBufferManager(), cache, rangeProducer, pack, useHeap);
+                if (leftExchange != null) rows = leftExchange.startedBy(rows);
                 // For each Constraint object applied to the JOIN, simply create a SelectComponent on top ...
                 RowFilter filter = null;
                 List<Constraint> constraints = plan.getPropertyAsList(Property.JOIN_CONSTRAINTS, Constraint.class);
@@ -820,6 +890,19 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                     second = NodeSequence.slice(second, secondColumns);
                     assert first.width() == second.width();
                 }
+                ExchangeSequence branchExchange = null;
+                if (shouldRunInParallel(context, firstPlan, secondPlan, first, second)) {
+                    if (operation == Operation.UNION) {
+                        // The 'first' is read before the 'second', so evaluate the 'second' in the background ...
+                        branchExchange = ExchangeSequence.create(second, branchExecutor,
+                                                                 ExchangeSequence.DEFAULT_MAX_QUEUED_BATCHES);
+                        second = branchExchange;
+                    } else {
+                        // INTERSECT and EXCEPT read all of the 'second' before the 'first', so evaluate the 'first' in the background
+                        branchExchange = ExchangeSequence.create(first, branchExecutor, ExchangeSequence.DEFAULT_MAX_QUEUED_BATCHES);
+                        first = branchExchange;
+                    }
+                }
                 pack = false;
                 switch (operation) {
                     case UNION: {
@@ -844,6 +927,8 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                         break;
                     }
                 }
+                // The background branch is only started once the set operation is first read ...
+                if (branchExchange != null) rows = branchExchange.startedBy(rows);
                 if (!all) {
                     useHeap = false;
                     rows = new DistinctSequence(rows, context.getTypeSystem(), context.getBufferManager(), useHeap);
@@ -938,6 +1023,49 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
         return rows;
     }
 
+    /**
+     * Determine whether the two independent branches of a set operation or join should be evaluated in parallel. This is only
+     * worthwhile when both branches actually have to read nodes, and is not done for EXISTS queries (which usually need only the
+     * first row) or for branches that depend on variables set by other parts of the query. It is also only done when the nodes
+     * are read through the shared (and thread-safe) workspace caches rather than a session's cache or the cache of a
+     * transaction, which must not be used by other threads.
+     * 
+     * @param context the context in which the query is to be executed; may not be null
+     * @param firstPlan the plan for the first branch; may not be null
+     * @param secondPlan the plan for the second branch; may not be null
+     * @param first the sequence for the first branch; may not be null
+     * @param second the sequence for the second branch; may not be null
+     * @return true if one of the branches should be evaluated in the background, or false if both should be evaluated on the
+     *         caller's thread
+     */
+    protected boolean shouldRunInParallel( ScanQueryContext context,
+                                           PlanNode firstPlan,
+                                           PlanNode secondPlan,
+                                           NodeSequence first,
+                                           NodeSequence second ) {
+        if (branchExecutor == null || context.getHints().isExistsQuery) return false;
+        for (String workspaceName : context.getWorkspaceNames()) {
+            // Session caches and the caches of transactions may only be used on the caller's thread ...
+            if (!isSharedWorkspaceCache(context.getNodeCache(workspaceName))) return false;
+        }
+        if (first.isEmpty() || second.isEmpty()) return false;
+        if (isSmall(first) || isSmall(second)) return false;
+        for (PlanNode plan : new PlanNode[] {firstPlan, secondPlan}) {
+            if (plan.findAtOrBelow(Type.SOURCE) == null) return false;
+            if (plan.findAtOrBelow(Type.DEPENDENT_QUERY) != null) return false;
+        }
+        return true;
+    }
+
+    private static boolean isSharedWorkspaceCache( NodeCache cache ) {
+        return cache instanceof WorkspaceCache && !(cache instanceof TransactionalWorkspaceCache);
+    }
+
+    private static boolean isSmall( NodeSequence sequence ) {
+        long rowCount = sequence.getRowCount();
+        return rowCount >= 0L && rowCount < MIN_ROWS_FOR_PARALLEL_BRANCH;
+    }
+
     /**
      * Create a node sequence for the given source.
      * 
@@ -1108,18 +1236,20 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
         assert columns != null;
         assert sources != null;
         if (constraint instanceof Or) {
-            Or orConstraint = (Or)constraint;
-            final RowFilter left = createRowFilter(orConstraint.left(), context, columns, sources);
-            final RowFilter right = createRowFilter(orConstraint.right(), context, columns, sources);
+            // Flatten the nested disjunctions and evaluate the cheapest constraints first ...
+            final RowFilter[] filters = createRowFilters(operandsOf(constraint, Or.class), context, columns, sources);
             return new RowFilter() {
                 @Override
                 public boolean isCurrentRowValid( Batch batch ) {
-                    return left.isCurrentRowValid(batch) || right.isCurrentRowValid(batch);
+                    for (RowFilter filter : filters) {
+                        if (filter.isCurrentRowValid(batch)) return true;
+                    }
+                    return false;
                 }
 
                 @Override
                 public String toString() {
-                    return "(or " + left + "," + right + " )";
+                    return "(or " + filtersToString(filters) + " )";
                 }
             };
         }
@@ -1139,18 +1269,20 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
             };
         }
         if (constraint instanceof And) {
-            And andConstraint = (And)constraint;
-            final RowFilter left = createRowFilter(andConstraint.left(), context, columns, sources);
-            final RowFilter right = createRowFilter(andConstraint.right(), context, columns, sources);
+            // Flatten the nested conjunctions and evaluate the cheapest constraints first ...
+            final RowFilter[] filters = createRowFilters(operandsOf(constraint, And.class), context, columns, sources);
             return new RowFilter() {
                 @Override
                 public boolean isCurrentRowValid( Batch batch ) {
-                    return left.isCurrentRowValid(batch) && right.isCurrentRowValid(batch);
+                    for (RowFilter filter : filters) {
+                        if (!filter.isCurrentRowValid(batch)) return false;
+                    }
+                    return true;
                 }
 
                 @Override
                 public String toString() {
-                    return "(and " + left + "," + right + " )";
+                    return "(and " + filtersToString(filters) + " )";
                 }
             };
         }
@@ -1516,6 +1648,46 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                                     }
                                 };
                             }
+                            final boolean hasEscapes = expression.indexOf('\\') != -1;
+                            if (!hasEscapes && !QueryUtil.hasWildcardCharacters(expression)) {
+                                // There are no wildcards, so this is really just a string comparison ...
+                                final String literal = expression;
+                                return new DynamicOperandFilter(operation) {
+                                    @Override
+                                    protected boolean evaluate( Object leftHandValue ) {
+                                        if (leftHandValue == null) return false; // null values never match
+                                        return literal.equals(types.asString(leftHandValue));
+                                    }
+
+                                    @Override
+                                    public String toString() {
+                                        return "(filter " + Visitors.readable(constraint) + ")";
+                                    }
+                                };
+                            }
+                            final int lastIndex = expression.length() - 1;
+                            if (!hasEscapes && expression.charAt(lastIndex) == '%'
+                                && !QueryUtil.hasWildcardCharacters(expression.substring(0, lastIndex))) {
+                                // The only wildcard is at the end, so we can simply compare the prefix ...
+                                final String prefix = expression.substring(0, lastIndex);
+                                // ... except for values with line terminators, which the '.*' of the regular expression
+                                // does not match ...
+                                final Pattern pattern = Pattern.compile(QueryUtil.toRegularExpression(expression));
+                                return new DynamicOperandFilter(operation) {
+                                    @Override
+                                    protected boolean evaluate( Object leftHandValue ) {
+                                        if (leftHandValue == null) return false; // null values never match
+                                        String value = types.asString(leftHandValue);
+                                        if (QueryUtil.hasLineTerminators(value)) return pattern.matcher(value).matches();
+                                        return value.startsWith(prefix);
+                                    }
+
+                                    @Override
+                                    public String toString() {
+                                        return "(filter " + Visitors.readable(constraint) + ")";
+                                    }
+                                };
+                            }
                             String regex = QueryUtil.toRegularExpression(expression);
                             final Pattern pattern = Pattern.compile(regex);
                             return new DynamicOperandFilter(operation) {
@@ -1550,10 +1722,12 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                 @Override
                 protected RowFilter createFilter() {
                     final Set<?> values = ScanningQueryEngine.literalValues(setCriteria, context, defaultType);
+                    // Determine once (rather than for every row) whether the values need to be converted to paths ...
+                    final boolean convertToPaths = Path.class.isAssignableFrom(defaultType.getType());
                     return new DynamicOperandFilter(operation) {
                         @Override
                         protected boolean evaluate( Object leftHandValue ) {
-                            if (Path.class.isAssignableFrom(defaultType.getType())) {
+                            if (convertToPaths) {
                                 leftHandValue = leftHandValue instanceof Object[] ?
                                                 pathFactory.create((Object[])leftHandValue) : 
                                                 pathFactory.create(leftHandValue);
@@ -1663,6 +1837,9 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
             final int index = columns.getSelectorIndex(selectorName);
             final NodeCache cache = context.getNodeCache(sources.getWorkspaceName());
             return new RowFilter() {
+                // Many rows usually share the same LIKE expressions, so compile each expression only once ...
+                private final Map<String, Pattern> patterns = new HashMap<>();
+
                 @Override
                 public boolean isCurrentRowValid( Batch batch ) {
                     CachedNode node = batch.getNode(index);
@@ -1672,18 +1849,195 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
                     for (Object value : property) {
                         if (value == null) continue;
                         // The property value should be a LIKE expression ...
-                        String regex = toRegularExpression(value.toString());
-                        final Pattern pattern = Pattern.compile(regex);
-                        if (pattern.matcher(literalStr).matches()) return true;
+                        if (patternFor(value.toString()).matcher(literalStr).matches()) return true;
                     }
                     return false;
                 }
+
+                private Pattern patternFor( String likeExpression ) {
+                    Pattern pattern = patterns.get(likeExpression);
+                    if (pattern == null) {
+                        if (patterns.size() >= MAX_CACHED_RELIKE_PATTERNS) patterns.clear();
+                        pattern = Pattern.compile(toRegularExpression(likeExpression));
+                        patterns.put(likeExpression, pattern);
+                    }
+                    return pattern;
+                }
+
+                @Override
+                public String toString() {
+                    return "(filter " + Visitors.readable(constraint) + ")";
+                }
             };
         }
         assert false;
         return NodeSequence.PASS_ROW_FILTER;
     }
 
+    /**
+     * Create the {@link RowFilter}s for the supplied constraints, ordered so that the filters that are cheapest to evaluate come
+     * first. This ordering allows the conjunctions and disjunctions to short-circuit before evaluating the more expensive
+     * constraints (e.g., those that load ancestors or extract full-text content).
+     *
+     * @param constraints the constraints; may not be null
+     * @param context the context in which the query is to be executed; may not be null
+     * @param columns the result column definition; may not be null
+     * @param sources the query sources for the repository; may not be null
+     * @return the row filters in the order they should be evaluated; never null
+     * @see #estimateEvaluationCost(Constraint)
+     */
+    protected RowFilter[] createRowFilters( List<Constraint> constraints,
+                                            QueryContext context,
+                                            Columns columns,
+                                            QuerySources sources ) {
+        List<Constraint> ordered = orderByEvaluationCost(constraints);
+        RowFilter[] filters = new RowFilter[ordered.size()];
+        for (int i = 0; i != filters.length; ++i) {
+            filters[i] = createRowFilter(ordered.get(i), context, columns, sources);
+        }
+        return filters;
+    }
+
+    /**
+     * Order the supplied constraints so that those that are cheapest to evaluate come first. The sort is stable, so constraints
+     * with equal costs remain in their original order.
+     *
+     * @param constraints the constraints; may not be null
+     * @return a new list with the constraints in the order they should be evaluated; never null
+     * @see #estimateEvaluationCost(Constraint)
+     */
+    protected List<Constraint> orderByEvaluationCost( List<Constraint> constraints ) {
+        List<Constraint> ordered = new ArrayList<>(constraints);
+        Collections.sort(ordered, new Comparator<Constraint>() {
+            @Override
+            public int compare( Constraint c1,
+                                Constraint c2 ) {
+                return Integer.compare(estimateEvaluationCost(c1), estimateEvaluationCost(c2));
+            }
+        });
+        return ordered;
+    }
+
+    /**
+     * Estimate the relative cost of evaluating the supplied constraint against a single row. The values have no units and are
+     * only meaningful when compared with each other.
+     *
+     * @param constraint the constraint; may not be null
+     * @return the relative cost; always positive
+     */
+    protected int estimateEvaluationCost( Constraint constraint ) {
+        if (constraint instanceof SameNode || constraint instanceof ChildNode || constraint instanceof PropertyExistence) {
+            // These only look at the node in the row ...
+            return 1;
+        }
+        if (constraint instanceof Not) {
+            return estimateEvaluationCost(((Not)constraint).getConstraint());
+        }
+        if (constraint instanceof And) {
+            And and = (And)constraint;
+            return estimateEvaluationCost(and.left()) + estimateEvaluationCost(and.right());
+        }
+        if (constraint instanceof Or) {
+            Or or = (Or)constraint;
+            return estimateEvaluationCost(or.left()) + estimateEvaluationCost(or.right());
+        }
+        if (constraint instanceof Comparison) {
+            Comparison comparison = (Comparison)constraint;
+            int cost = estimateEvaluationCost(comparison.getOperand1());
+            // LIKE expressions are generally evaluated with regular expressions ...
+            return comparison.operator() == Operator.LIKE ? cost + 2 : cost;
+        }
+        if (constraint instanceof Between) {
+            return estimateEvaluationCost(((Between)constraint).getOperand());
+        }
+        if (constraint instanceof SetCriteria) {
+            return estimateEvaluationCost(((SetCriteria)constraint).getOperand()) + 1;
+        }
+        if (constraint instanceof DescendantNode) {
+            // This may have to load each of the ancestors ...
+            return 6;
+        }
+        if (constraint instanceof Relike) {
+            return 8;
+        }
+        if (constraint instanceof FullTextSearch) {
+            // This has to extract the text of all properties (including binary values) ...
+            return 10;
+        }
+        return 5;
+    }
+
+    /**
+     * Estimate the relative cost of obtaining the value of the supplied dynamic operand for a single row.
+     *
+     * @param operand the dynamic operand; may not be null
+     * @return the relative cost; always positive
+     */
+    protected int estimateEvaluationCost( DynamicOperand operand ) {
+        if (operand instanceof NodeName || operand instanceof NodeLocalName || operand instanceof NodeId
+            || operand instanceof FullTextSearchScore) {
+            return 2;
+        }
+        if (operand instanceof PropertyValue || operand instanceof NodePath || operand instanceof NodeDepth) {
+            return 3;
+        }
+        if (operand instanceof LowerCase) {
+            return estimateEvaluationCost(((LowerCase)operand).getOperand()) + 1;
+        }
+        if (operand instanceof UpperCase) {
+            return estimateEvaluationCost(((UpperCase)operand).getOperand()) + 1;
+        }
+        if (operand instanceof ReferenceValue) {
+            // This may have to look at all of the properties on the node ...
+            return 5;
+        }
+        return 4;
+    }
+
+    /**
+     * Obtain the operands of the supplied constraint, flattening any nested constraints of the same type. For example, the
+     * operands of the {@link And} constraint "{@code (a AND (b AND c))}" are "{@code a}", "{@code b}" and "{@code c}".
+     *
+     * @param constraint the constraint; may not be null
+     * @param type the type of constraint that is to be flattened; should be either {@link And} or {@link Or}
+     * @return the list of operands; never null
+     */
+    protected static List<Constraint> operandsOf( Constraint constraint,
+                                                  Class<? extends Constraint> type ) {
+        List<Constraint> operands = new ArrayList<>();
+        collectOperands(constraint, type, operands);
+        return operands;
+    }
+
+    private static void collectOperands( Constraint constraint,
+                                         Class<? extends Constraint> type,
+                                         List<Constraint> operands ) {
+        if (type.isInstance(constraint)) {
+            if (constraint instanceof And) {
+                And and = (And)constraint;
+                collectOperands(and.left(), type, operands);
+                collectOperands(and.right(), type, operands);
+                return;
+            }
+            if (constraint instanceof Or) {
+                Or or = (Or)constraint;
+                collectOperands(or.left(), type, operands);
+                collectOperands(or.right(), type, operands);
+                return;
+            }
+        }
+        operands.add(constraint);
+    }
+
+    private static String filtersToString( RowFilter[] filters ) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i != filters.length; ++i) {
+            if (i != 0) sb.append(',');
+            sb.append(filters[i]);
+        }
+        return sb.toString();
+    }
+
     protected TypeFactory<?> determineType( DynamicOperand operand,
                                             QueryContext context,
                                             Columns columns ) {
@@ -3031,6 +3385,7 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
     static class ScanQueryContext extends QueryContext {
 
         protected final Map<PlanNode, Columns> columnsByPlanNode;
+        protected QueryProfile profile;
 
         protected ScanQueryContext( ExecutionContext context,
                                     RepositoryCache repositoryCache,
@@ -3070,28 +3425,48 @@ public class ScanningQueryEngine implements org.modeshape.jcr.query.QueryEngine
             return columnsByPlanNode.get(node);
         }
 
+        /**
+         * Get the profile in which the execution of the query is recorded.
+         * 
+         * @return the profile, or null if the query is not {@link PlanHints#profile profiled}
+         */
+        public QueryProfile profile() {
+            return profile;
+        }
+
+        /**
+         * Set the profile in which the execution of the query is recorded.
+         * 
+         * @param profile the profile; may be null
+         * @return this context
+         */
+        public ScanQueryContext withProfile( QueryProfile profile ) {
+            this.profile = profile;
+            return this;
+        }
+
         @Override
         public ScanQueryContext with( Map<String, Object> variables ) {
             return new ScanQueryContext(context, repositoryCache, workspaceNames, overriddenNodeCachesByWorkspaceName, schemata,
-                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode);
+                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode).withProfile(profile);
         }
 
         @Override
         public ScanQueryContext with( PlanHints hints ) {
             return new ScanQueryContext(context, repositoryCache, workspaceNames, overriddenNodeCachesByWorkspaceName, schemata,
-                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode);
+                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode).withProfile(profile);
         }
 
         @Override
         public ScanQueryContext with( Problems problems ) {
             return new ScanQueryContext(context, repositoryCache, workspaceNames, overriddenNodeCachesByWorkspaceName, schemata,
-                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode);
+                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode).withProfile(profile);
         }
 
         @Override
         public ScanQueryContext with( Schemata schemata ) {
             return new ScanQueryContext(context, repositoryCache, workspaceNames, overriddenNodeCachesByWorkspaceName, schemata,
-                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode);
+                                        indexDefns, nodeTypes, bufferManager, hints, problems, variables, columnsByPlanNode).withProfile(profile);
         }
     }
 }
@@ -0,0 +1,247 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.query.engine.process;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.jcr.query.NodeSequence;
+
+/**
+ * A {@link NodeSequence} that evaluates its delegate on a separate thread, so that the delegate can produce its batches while the
+ * caller's thread is busy with other parts of the query (e.g., the other branch of a UNION or the other side of a join). The
+ * batches are handed to the consumer through a bounded queue, so the producer never gets more than a fixed number of batches ahead
+ * of the consumer.
+ * <p>
+ * If the consumer stops pulling batches for a while (e.g., because the application is not iterating over the results), the
+ * producer simply hands the delegate over to the consumer and stops; any remaining batches are then read from the delegate on the
+ * consumer's thread. This way an abandoned result never holds on to a thread of the query executor.
+ * </p>
+ * <p>
+ * The producer is only started when the rows are first needed: either on the first call to {@link #nextBatch()}, or on the first
+ * call to {@link NodeSequence#nextBatch()} of the sequence returned by {@link #startedBy(NodeSequence)} (which is usually the
+ * operator that consumes this sequence after reading its other input). A query whose rows are never read therefore never
+ * occupies a thread of the query executor.
+ * </p>
+ */
+public class ExchangeSequence extends DelegatingSequence {
+
+    private static final Logger LOGGER = Logger.getLogger(ExchangeSequence.class);
+
+    /**
+     * The maximum number of batches that the producer may get ahead of the consumer.
+     */
+    public static final int DEFAULT_MAX_QUEUED_BATCHES = 8;
+
+    /**
+     * The number of milliseconds that the producer waits for room in the queue before handing the delegate over to the consumer.
+     */
+    protected static final long HANDOFF_TIMEOUT_IN_MILLIS = 5000L;
+
+    private static final long POLL_INTERVAL_IN_MILLIS = 100L;
+    private static final Object END = new Object();
+
+    /**
+     * Create a sequence that evaluates the supplied sequence on the given executor once its rows are first needed.
+     *
+     * @param delegate the sequence that is to be evaluated in the background; may not be null
+     * @param executor the executor on which the sequence is to be evaluated; may not be null
+     * @param maxQueuedBatches the maximum number of batches that may be produced but not yet consumed; must be positive
+     * @return the sequence that returns the same batches as the delegate; never null
+     */
+    public static ExchangeSequence create( NodeSequence delegate,
+                                           ExecutorService executor,
+                                           int maxQueuedBatches ) {
+        assert delegate != null;
+        assert executor != null;
+        assert maxQueuedBatches > 0;
+        return new ExchangeSequence(delegate, executor, maxQueuedBatches);
+    }
+
+    private final ExecutorService executor;
+    private final BlockingQueue<Object> queue;
+    private final long rowCount;
+    private final boolean empty;
+    private volatile Future<?> producer;
+    private volatile boolean closed = false;
+    private volatile boolean handedOff = false;
+    private volatile Object pending;
+    private boolean started = false;
+    private boolean serial = false;
+
+    protected ExchangeSequence( NodeSequence delegate,
+                                ExecutorService executor,
+                                int maxQueuedBatches ) {
+        super(delegate);
+        this.executor = executor;
+        this.queue = new ArrayBlockingQueue<>(maxQueuedBatches);
+        // Capture these before the producer starts, since the delegate is not thread-safe ...
+        this.rowCount = delegate.getRowCount();
+        this.empty = delegate.isEmpty();
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Start evaluating the delegate in the background, if that has not already been done. This must be called on the consumer's
+     * thread.
+     */
+    public void start() {
+        if (started) return;
+        started = true;
+        if (closed) return;
+        try {
+            producer = executor.submit(this::produce);
+        } catch (RejectedExecutionException e) {
+            // All of the threads are busy, so just evaluate the delegate on the caller's thread ...
+            LOGGER.debug("No thread available to evaluate {0} in parallel; it will be evaluated serially", delegate);
+            serial = true;
+        }
+    }
+
+    /**
+     * Return a sequence with the same batches as the supplied consumer, which {@link #start() starts} this sequence when the first
+     * batch of the consumer is requested. This allows this sequence to be evaluated while the consumer reads its other inputs.
+     *
+     * @param consumer the sequence that reads the batches of this sequence; may not be null
+     * @return the sequence that should be used in place of the consumer; never null
+     */
+    public NodeSequence startedBy( NodeSequence consumer ) {
+        return new DelegatingSequence(consumer) {
+            @Override
+            public Batch nextBatch() {
+                start();
+                return super.nextBatch();
+            }
+
+            @Override
+            public String toString() {
+                return delegate.toString();
+            }
+        };
+    }
+
+    protected void produce() {
+        try {
+            Batch batch = null;
+            while (!closed && (batch = delegate.nextBatch()) != null) {
+                if (batch.isEmpty()) continue;
+                // The batch has to be read here, since it may only be valid until the delegate's next batch is obtained ...
+                batch = NodeSequence.copy(batch);
+                if (!enqueue(batch)) return;
+            }
+            enqueue(END);
+        } catch (Throwable t) {
+            enqueue(t);
+        }
+    }
+
+    private boolean enqueue( Object item ) {
+        long waited = 0L;
+        try {
+            while (!closed) {
+                if (queue.offer(item, POLL_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS)) return true;
+                waited += POLL_INTERVAL_IN_MILLIS;
+                if (waited >= HANDOFF_TIMEOUT_IN_MILLIS) {
+                    // The consumer is not keeping up, so let it read the rest of the delegate itself ...
+                    LOGGER.debug("Handing {0} over to the consumer after waiting {1}ms for it", delegate, waited);
+                    pending = item;
+                    handedOff = true;
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    public Batch nextBatch() {
+        start();
+        if (serial) return delegate.nextBatch();
+        try {
+            while (true) {
+                Object item = queue.poll(POLL_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+                if (item == null && handedOff) {
+                    // The producer has stopped, but it may have added items before it did ...
+                    item = queue.poll();
+                    if (item == null) {
+                        // Read the remaining batches on this thread, starting with the one the producer could not enqueue ...
+                        serial = true;
+                        item = pending;
+                        pending = null;
+                        if (item == null) return delegate.nextBatch();
+                    }
+                }
+                if (item == null) continue;
+                if (item == END) {
+                    // Leave the marker so that subsequent calls also see the end ...
+                    if (!serial) queue.offer(END);
+                    return null;
+                }
+                if (item instanceof Throwable) {
+                    if (!serial) queue.offer(item);
+                    Throwable t = (Throwable)item;
+                    if (t instanceof RuntimeException) throw (RuntimeException)t;
+                    if (t instanceof Error) throw (Error)t;
+                    throw new RuntimeException(t);
+                }
+                return (Batch)item;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+        Future<?> producer = this.producer;
+        if (producer != null) {
+            try {
+                // Wait for the producer to notice, since the delegate must not be closed while it is being used ...
+                producer.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                LOGGER.debug(e, "Error while evaluating {0}", delegate);
+            }
+        }
+        pending = null;
+        super.close();
+    }
+
+    @Override
+    public String toString() {
+        return "(exchange " + delegate + ")";
+    }
+}
@@ -69,6 +69,12 @@ public final class PlanHints implements Serializable, Cloneable {
     /** Flag indicates whether the query execution can be stopped immediately after the plan is developed. */
     public boolean planOnly = false;
 
+    /**
+     * Flag indicates whether the rows, batches and time of each operator should be recorded, so that the query plan in the
+     * {@link QueryResults} can be annotated with these statistics once the rows have been read.
+     */
+    public boolean profile = false;
+
     /** Flag indicates whether to check during validation for the existance of columns used in column selectors and criteria. */
     public boolean validateColumnExistance = true;
 
@@ -124,6 +130,7 @@ public final class PlanHints implements Serializable, Cloneable {
         sb.append(", isExistsQuery=").append(isExistsQuery);
         sb.append(", showPlan=").append(showPlan);
         sb.append(", planOnly=").append(planOnly);
+        sb.append(", profile=").append(profile);
         sb.append(", validateColumnExistance=").append(validateColumnExistance);
         sb.append(", includeSystemContent=").append(includeSystemContent);
         sb.append(", useSessionContent=").append(useSessionContent);
@@ -148,6 +155,7 @@ public final class PlanHints implements Serializable, Cloneable {
         clone.isExistsQuery = this.isExistsQuery;
         clone.showPlan = this.showPlan;
         clone.planOnly = this.planOnly;
+        clone.profile = this.profile;
         clone.validateColumnExistance = this.validateColumnExistance;
         clone.includeSystemContent = this.includeSystemContent;
         clone.useSessionContent = this.useSessionContent;
@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.function.Function;
 import org.modeshape.common.annotation.NotThreadSafe;
 import org.modeshape.common.util.CheckArg;
 import org.modeshape.common.util.ObjectUtil;
@@ -1012,21 +1013,37 @@ public final class PlanNode implements Iterable<PlanNode>, Readable, Cloneable,
 
     @Override
     public String getString() {
+        return getString(null);
+    }
+
+    /**
+     * Get the string representation of this plan tree, with each node optionally followed by an annotation.
+     *
+     * @param annotator the function that returns the annotation for a node, or null if the node has no annotation; may be null
+     * @return the string representation; never null
+     */
+    public String getString( Function<PlanNode, String> annotator ) {
         StringBuilder sb = new StringBuilder();
-        getRecursiveString(sb, 0);
+        getRecursiveString(sb, 0, annotator);
         return sb.toString();
     }
 
     private void getRecursiveString( StringBuilder str,
-                                     int indentLevel ) {
+                                     int indentLevel,
+                                     Function<PlanNode, String> annotator ) {
         for (int i = 0; i < indentLevel; ++i) {
             str.append("  ");
         }
-        getNodeString(str).append('\n');
+        getNodeString(str);
+        String annotation = annotator != null ? annotator.apply(this) : null;
+        if (annotation != null) {
+            str.append(" {").append(annotation).append('}');
+        }
+        str.append('\n');
 
         // Recursively add children at one greater tab level
         for (PlanNode child : this) {
-            child.getRecursiveString(str, indentLevel + 1);
+            child.getRecursiveString(str, indentLevel + 1, annotator);
         }
     }
 
@@ -256,6 +256,17 @@ public class PathExpression implements Serializable {
         return expression;
     }
 
+    /**
+     * Get the path portion of this expression (without the workspace name) from which the unused predicates have been removed,
+     * and which is converted into the regular expression used to {@link #matcher(String) match} paths.
+     * 
+     * @return the path expression used for matching; never null
+     */
+    String getMatchPathExpression() {
+        WorkspacePath repoPath = parsePathInWorkspace(this.expression);
+        return removeUnusedPredicates(repoPath.path);
+    }
+
     /**
      * Replace certain XPath patterns that are not used or understood.
      * 
@@ -98,6 +98,13 @@ public class SequencerPathExpression implements Serializable {
         this.hc = HashCode.compute(this.selectExpression, this.outputExpression);
     }
 
+    /**
+     * @return the compiled selection expression
+     */
+    PathExpression getSelectPathExpression() {
+        return selectExpression;
+    }
+
     /**
      * @return selectExpression
      */
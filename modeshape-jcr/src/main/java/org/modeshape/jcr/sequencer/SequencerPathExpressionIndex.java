@@ -0,0 +1,485 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.sequencer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.util.CheckArg;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.NamespaceRegistry;
+import org.modeshape.jcr.value.Path;
+
+/**
+ * An index of {@link SequencerPathExpression}s that quickly finds the expressions that may match a changed property, by evaluating
+ * all of the expressions at once directly on the segments of the {@link Path} rather than on its string form.
+ * <p>
+ * The selection expressions are compiled into a single automaton, which is a trie of the path segments where the wildcard
+ * segments ('<code>*</code>') and the descendant segments ('<code>//</code>') are additional states. The automaton is
+ * conservative: it never misses an expression that {@link SequencerPathExpression#matcher(String) matches}, but it may return
+ * expressions that do not match, and the parts of an expression that it does not understand (e.g., groups spanning several
+ * segments, or optional segments) simply accept all paths. The caller is therefore expected to use the
+ * {@link SequencerPathExpression#matcher(String) matcher} of the candidate expressions to determine if there actually is a match
+ * and to obtain the selected and output paths; this only happens for the few expressions that are candidates.
+ * </p>
+ * <p>
+ * Like the regular expressions of the path expressions, the names are compared case-insensitively, and the namespace prefixes of
+ * the names in the expressions are compared with the prefixes that are currently registered for the namespaces of the path
+ * segments.
+ * </p>
+ * <p>
+ * The index is built with {@link #add(SequencerPathExpression, Object)} and can then be used concurrently by multiple threads,
+ * as long as it is safely published and not modified afterwards.
+ * </p>
+ *
+ * @param <T> the type of value associated with each expression
+ */
+@ThreadSafe
+public final class SequencerPathExpressionIndex<T> {
+
+    /**
+     * The index predicates, which are ignored since segments with any index are accepted.
+     */
+    private static final Pattern INDEX_PREDICATE_PATTERN = Pattern.compile("\\[(?:\\d+(?:,\\d+)*|\\*|)\\]");
+
+    /**
+     * The characters that give a segment a regular expression meaning.
+     */
+    private static final String WILDCARD_CHARACTERS = ".*?+{}^$\\[]";
+
+    private final NamespaceRegistry namespaces;
+    private final State root = new State(false);
+    private final List<T> values = new ArrayList<>();
+    private final BitSet all = new BitSet();
+
+    /**
+     * Create an empty index.
+     *
+     * @param namespaces the namespace registry used to convert the paths into strings; may not be null
+     */
+    public SequencerPathExpressionIndex( NamespaceRegistry namespaces ) {
+        CheckArg.isNotNull(namespaces, "namespaces");
+        this.namespaces = namespaces;
+    }
+
+    /**
+     * Add an expression to this index. This method must not be called once the index is used by other threads.
+     *
+     * @param expression the expression; may not be null
+     * @param value the value that is returned by {@link #candidates(Path, Name)} when the expression may match; may not be null
+     */
+    public void add( SequencerPathExpression expression,
+                     T value ) {
+        CheckArg.isNotNull(expression, "expression");
+        CheckArg.isNotNull(value, "value");
+        int index = values.size();
+        values.add(value);
+        all.set(index);
+        List<Step> steps = compile(expression.getSelectPathExpression().getMatchPathExpression());
+        State state = root;
+        for (Step step : steps) {
+            if (step == Rest.INSTANCE) {
+                // The rest of the expression is not understood, so it matches anything following the previous steps ...
+                state.rest.set(index);
+                state.hasRest = true;
+                return;
+            }
+            state = step.addTo(state);
+        }
+        state.accepts.set(index);
+        state.hasAccepts = true;
+    }
+
+    /**
+     * Get all of the values in this index, in the order they were added.
+     *
+     * @return the values; never null
+     */
+    public List<T> values() {
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Determine if there are no expressions in this index.
+     *
+     * @return true if there are no expressions
+     */
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /**
+     * Find in one pass the values of all the expressions that may match the supplied property on the supplied node.
+     *
+     * @param pathToNode the path of the node that owns the property; may not be null
+     * @param propertyName the name of the property; may not be null
+     * @return the values of the expressions that may match, in the order they were added; never null but possibly empty
+     */
+    public List<T> candidates( Path pathToNode,
+                               Name propertyName ) {
+        if (values.isEmpty()) return Collections.emptyList();
+        if (pathToNode.isRoot()) {
+            // The string form of the properties on the root node contains an empty segment, which a wildcard can match ...
+            return values();
+        }
+        BitSet result = new BitSet();
+        List<State> current = new ArrayList<>();
+        List<State> next = new ArrayList<>();
+        activate(root, current, result);
+        for (Path.Segment segment : pathToNode) {
+            step(current, segment.getName(), false, next, result);
+            List<State> tmp = current;
+            current = next;
+            next = tmp;
+            next.clear();
+            if (current.isEmpty()) return valuesIn(result);
+        }
+        step(current, propertyName, true, next, result);
+        for (State state : next) {
+            if (state.hasAccepts) result.or(state.accepts);
+        }
+        return valuesIn(result);
+    }
+
+    private List<T> valuesIn( BitSet result ) {
+        if (result.isEmpty()) return Collections.emptyList();
+        if (result.equals(all)) return values();
+        List<T> matches = new ArrayList<>(result.cardinality());
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+            matches.add(values.get(i));
+        }
+        return matches;
+    }
+
+    private void step( List<State> current,
+                       Name name,
+                       boolean property,
+                       List<State> next,
+                       BitSet result ) {
+        String localName = null;
+        String prefix = null;
+        boolean prefixResolved = false;
+        for (State state : current) {
+            if (state.loops) activate(state, next, result);
+            if (state.anyOne != null) activate(state.anyOne, next, result);
+            Map<String, List<Transition>> literals = property ? state.properties : state.children;
+            if (literals == null) continue;
+            if (localName == null) localName = name.getLocalName().toLowerCase();
+            List<Transition> transitions = literals.get(localName);
+            if (transitions == null) continue;
+            if (!prefixResolved) {
+                prefix = namespaces.getPrefixForNamespaceUri(name.getNamespaceUri(), false);
+                prefixResolved = true;
+            }
+            for (Transition transition : transitions) {
+                // If the namespace has no prefix, we can't tell what the string form of the name will be ...
+                if (prefix == null || transition.prefix.equalsIgnoreCase(prefix)) {
+                    activate(transition.target, next, result);
+                }
+            }
+        }
+    }
+
+    private static void activate( State state,
+                                  List<State> states,
+                                  BitSet result ) {
+        for (State existing : states) {
+            if (existing == state) return;
+        }
+        states.add(state);
+        if (state.hasRest) result.or(state.rest);
+        if (state.deep != null) activate(state.deep, states, result);
+    }
+
+    /**
+     * Compile the supplied path expression into steps.
+     *
+     * @param expression the path expression, without workspace name and unused predicates
+     * @return the steps; never null, and the last step is {@link Rest} if the remainder of the expression is not understood
+     */
+    static List<Step> compile( String expression ) {
+        List<Step> steps = new ArrayList<>();
+        if (expression.length() == 0 || expression.charAt(0) != '/' || hasTopLevelAlternatives(expression)) {
+            steps.add(Rest.INSTANCE);
+            return steps;
+        }
+        expression = expandFinalPredicate(expression);
+        int length = expression.length();
+        int i = 0;
+        while (i < length) {
+            if (expression.charAt(i) == '/') {
+                int j = i;
+                while (j < length && expression.charAt(j) == '/') {
+                    ++j;
+                }
+                if (j - i > 1) steps.add(AnyDepth.INSTANCE);
+                i = j;
+                continue;
+            }
+            // Find the end of the segment, which may contain groups and predicates with slashes ...
+            int depth = 0;
+            int j = i;
+            for (; j < length; ++j) {
+                char c = expression.charAt(j);
+                if (c == '(' || c == '[') ++depth;
+                else if (c == ')' || c == ']') --depth;
+                else if (c == '/' && depth <= 0) break;
+            }
+            Step step = segment(expression.substring(i, j));
+            steps.add(step);
+            if (step == Rest.INSTANCE) break;
+            i = j;
+        }
+        return steps;
+    }
+
+    private static boolean hasTopLevelAlternatives( String expression ) {
+        int depth = 0;
+        for (int i = 0; i != expression.length(); ++i) {
+            char c = expression.charAt(i);
+            if (c == '(' || c == '[') ++depth;
+            else if (c == ')' || c == ']') --depth;
+            else if (c == '|' && depth <= 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The final predicate of an expression (if it is not an index) is a relative path to the property, and is converted into
+     * segments like the regular expression does.
+     */
+    private static String expandFinalPredicate( String expression ) {
+        if (!expression.endsWith("]")) return expression;
+        int start = expression.lastIndexOf('[');
+        if (start < 0 || (start > 0 && expression.charAt(start - 1) == '\\')) return expression;
+        String predicate = expression.substring(start);
+        if (INDEX_PREDICATE_PATTERN.matcher(predicate).matches()) return expression;
+        return expression.substring(0, start) + "/" + predicate.substring(1, predicate.length() - 1);
+    }
+
+    private static Step segment( String segment ) {
+        segment = INDEX_PREDICATE_PATTERN.matcher(segment).replaceAll("");
+        if (segment.length() == 0 || segment.indexOf('/') >= 0) return Rest.INSTANCE;
+        if (segment.contains("(|") || segment.contains("||") || segment.contains("|)")) {
+            // The segment (or part of it) is optional ...
+            return Rest.INSTANCE;
+        }
+        if (segment.charAt(0) == '(' && segment.charAt(segment.length() - 1) == ')') {
+            String group = segment.substring(1, segment.length() - 1);
+            if (containsAny(group, "()")) return AnyOne.INSTANCE;
+            List<Literal> alternatives = new ArrayList<>();
+            for (String alternative : group.split("\\|")) {
+                Step step = segment(alternative);
+                if (!(step instanceof Literal)) return step;
+                alternatives.add((Literal)step);
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new Alternatives(alternatives);
+        }
+        // Any other group or alternatives can only match part of a single segment ...
+        if (containsAny(segment, WILDCARD_CHARACTERS + "()|")) return AnyOne.INSTANCE;
+        boolean property = segment.charAt(0) == '@';
+        String name = property ? segment.substring(1) : segment;
+        if (name.indexOf('@') >= 0) return AnyOne.INSTANCE;
+        int colon = name.indexOf(':');
+        if (colon == 0 || colon == name.length() - 1 || name.indexOf(':', colon + 1) >= 0 || name.length() == 0) {
+            return AnyOne.INSTANCE;
+        }
+        String prefix = colon > 0 ? name.substring(0, colon) : "";
+        String localName = colon > 0 ? name.substring(colon + 1) : name;
+        return new Literal(property, prefix.toLowerCase(), localName.toLowerCase());
+    }
+
+    private static boolean containsAny( String str,
+                                        String characters ) {
+        for (int i = 0; i != str.length(); ++i) {
+            if (characters.indexOf(str.charAt(i)) >= 0) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "SequencerPathExpressionIndex" + values;
+    }
+
+    /**
+     * A state of the automaton.
+     */
+    private static final class State {
+        protected final boolean loops;
+        protected Map<String, List<Transition>> children;
+        protected Map<String, List<Transition>> properties;
+        protected State anyOne;
+        protected State deep;
+        protected final BitSet accepts = new BitSet();
+        protected final BitSet rest = new BitSet();
+        protected boolean hasAccepts;
+        protected boolean hasRest;
+
+        protected State( boolean loops ) {
+            this.loops = loops;
+        }
+
+        protected State literal( Literal literal,
+                                 State target ) {
+            Map<String, List<Transition>> literals = literal.property ? properties : children;
+            if (literals == null) {
+                literals = new HashMap<>();
+                if (literal.property) properties = literals;
+                else children = literals;
+            }
+            List<Transition> transitions = literals.get(literal.localName);
+            if (transitions == null) {
+                transitions = new ArrayList<>(1);
+                literals.put(literal.localName, transitions);
+            }
+            if (target == null) {
+                // Reuse an existing state for the same name, so that expressions with the same prefix share states ...
+                for (Transition transition : transitions) {
+                    if (!transition.shared && transition.prefix.equals(literal.prefix)) return transition.target;
+                }
+                target = new State(false);
+                transitions.add(new Transition(literal.prefix, target, false));
+            } else {
+                transitions.add(new Transition(literal.prefix, target, true));
+            }
+            return target;
+        }
+    }
+
+    private static final class Transition {
+        protected final String prefix;
+        protected final State target;
+        protected final boolean shared;
+
+        protected Transition( String prefix,
+                              State target,
+                              boolean shared ) {
+            this.prefix = prefix;
+            this.target = target;
+            this.shared = shared;
+        }
+    }
+
+    /**
+     * A step of a compiled expression, which adds the states needed to match the step.
+     */
+    abstract static class Step {
+        /**
+         * Add this step after the supplied state.
+         *
+         * @param state the state matching the previous steps; never null
+         * @return the state matching this step; never null
+         */
+        abstract State addTo( State state );
+    }
+
+    static final class Literal extends Step {
+        protected final boolean property;
+        protected final String prefix;
+        protected final String localName;
+
+        protected Literal( boolean property,
+                           String prefix,
+                           String localName ) {
+            this.property = property;
+            this.prefix = prefix;
+            this.localName = localName;
+        }
+
+        @Override
+        State addTo( State state ) {
+            return state.literal(this, null);
+        }
+
+        @Override
+        public String toString() {
+            return (property ? "@" : "") + (prefix.length() == 0 ? localName : prefix + ":" + localName);
+        }
+    }
+
+    static final class Alternatives extends Step {
+        protected final List<Literal> literals;
+
+        protected Alternatives( List<Literal> literals ) {
+            this.literals = literals;
+        }
+
+        @Override
+        State addTo( State state ) {
+            State target = new State(false);
+            for (Literal literal : literals) {
+                state.literal(literal, target);
+            }
+            return target;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + literals + ")";
+        }
+    }
+
+    static final class AnyOne extends Step {
+        protected static final AnyOne INSTANCE = new AnyOne();
+
+        @Override
+        State addTo( State state ) {
+            if (state.anyOne == null) state.anyOne = new State(false);
+            return state.anyOne;
+        }
+
+        @Override
+        public String toString() {
+            return "*";
+        }
+    }
+
+    static final class AnyDepth extends Step {
+        protected static final AnyDepth INSTANCE = new AnyDepth();
+
+        @Override
+        State addTo( State state ) {
+            if (state.deep == null) state.deep = new State(true);
+            return state.deep;
+        }
+
+        @Override
+        public String toString() {
+            return "//";
+        }
+    }
+
+    static final class Rest extends Step {
+        protected static final Rest INSTANCE = new Rest();
+
+        @Override
+        State addTo( State state ) {
+            // This step is handled by the index, since it applies to a single expression ...
+            return state;
+        }
+
+        @Override
+        public String toString() {
+            return "...";
+        }
+    }
+}
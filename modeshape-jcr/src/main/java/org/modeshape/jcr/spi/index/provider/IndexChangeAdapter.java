@@ -16,11 +16,13 @@
 
 package org.modeshape.jcr.spi.index.provider;
 
+import java.util.List;
 import java.util.Set;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.jcr.ExecutionContext;
 import org.modeshape.jcr.cache.CachedNode.Properties;
 import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.ChangeSet;
 import org.modeshape.jcr.cache.change.ChangeSetAdapter;
 import org.modeshape.jcr.value.Name;
 import org.modeshape.jcr.value.Path;
@@ -36,6 +38,10 @@ public abstract class IndexChangeAdapter extends ChangeSetAdapter {
     protected final String workspaceName;
     protected final ProvidedIndex<?> index;
     protected final Logger logger;
+    /**
+     * Whether several change sets are being processed together; only used by the thread notifying this adapter.
+     */
+    private boolean inBatch;
 
     protected IndexChangeAdapter( ExecutionContext context,
                                   String workspaceName,
@@ -94,14 +100,26 @@ public abstract class IndexChangeAdapter extends ChangeSetAdapter {
         return (ProvidedIndex<T>)index;
     }
 
+    @Override
+    public void notify( List<ChangeSet> changeSets ) {
+        // Commit the index once for all of the change sets ...
+        inBatch = true;
+        try {
+            super.notify(changeSets);
+        } finally {
+            inBatch = false;
+            index.commit();
+        }
+    }
+
     @Override
     protected void completeChanges() {
-        index.commit();
+        if (!inBatch) index.commit();
     }
 
     @Override
     protected void completeWorkspaceChanges() {
-        index.commit();
+        if (!inBatch) index.commit();
     }
 
     @Override
@@ -22,13 +22,21 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 import org.modeshape.common.annotation.Immutable;
 import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.JcrI18n;
 import org.modeshape.jcr.JcrLexicon;
 import org.modeshape.jcr.ModeShapeLexicon;
 import org.modeshape.jcr.cache.CachedNode.Properties;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.change.AbstractPropertyChange;
+import org.modeshape.jcr.cache.change.ChangeSet;
 import org.modeshape.jcr.cache.change.ChangeSetAdapter.NodeTypePredicate;
 import org.modeshape.jcr.cache.change.PropertyAdded;
 import org.modeshape.jcr.cache.change.PropertyChanged;
@@ -259,7 +267,30 @@ public class IndexChangeAdapters {
                                                       Name propertyName,
                                                       ValueFactory<String> factory,
                                                       ProvidedIndex<?> index ) {
-        return new TextPropertyChangeAdapter(context, matcher, workspaceName, propertyName, factory,index);
+        return forTextProperty(context, matcher, workspaceName, propertyName, factory, index, false);
+    }
+
+    /**
+     * Create an {@link IndexChangeAdapter} implementation that handles full text information.
+     *
+     * @param context the execution context; may not be null
+     * @param matcher the node type matcher used to determine which nodes should be included in the index; may not be null
+     * @param workspaceName the name of the workspace; may not be null
+     * @param propertyName the name of the property; may not be null
+     * @param factory the value factory for the property's value type; may not be null
+     * @param index the local index that should be used; may not be null
+     * @param asynchronousText {@code true} if the text of binary values should be added to the index (and committed) once it
+     *        has been extracted, or {@code false} if the changes should wait for the text to be extracted
+     * @return the new {@link IndexChangeAdapter}; never null
+     */
+    public static IndexChangeAdapter forTextProperty( ExecutionContext context,
+                                                      NodeTypePredicate matcher,
+                                                      String workspaceName,
+                                                      Name propertyName,
+                                                      ValueFactory<String> factory,
+                                                      ProvidedIndex<?> index,
+                                                      boolean asynchronousText ) {
+        return new TextPropertyChangeAdapter(context, matcher, workspaceName, propertyName, factory, index, asynchronousText);
     }
 
     private IndexChangeAdapters() {
@@ -898,58 +929,168 @@ public class IndexChangeAdapters {
     }
     
     protected static final class TextPropertyChangeAdapter extends PropertyChangeAdapter<String> {
+        private final boolean asynchronousText;
+        private final ConcurrentMap<String, CompletableFuture<Void>> pendingByNodeKey = new ConcurrentHashMap<>();
+
         public TextPropertyChangeAdapter( ExecutionContext context,
                                           NodeTypePredicate matcher, String workspaceName, Name propertyName,
                                           ValueFactory<String> valueFactory, ProvidedIndex<?> index ) {
+            this(context, matcher, workspaceName, propertyName, valueFactory, index, false);
+        }
+
+        public TextPropertyChangeAdapter( ExecutionContext context,
+                                          NodeTypePredicate matcher, String workspaceName, Name propertyName,
+                                          ValueFactory<String> valueFactory, ProvidedIndex<?> index,
+                                          boolean asynchronousText ) {
             super(context, matcher, workspaceName, propertyName, valueFactory, index);
+            this.asynchronousText = asynchronousText;
         }
 
         @Override
-        protected void addValues( NodeKey key, Property property ) {
-            StringBuilder builder = textFrom(property);
-            if (builder.length() > 0) {
-                index().add(nodeKey(key), propertyName(), builder.toString());    
+        public void notify( ChangeSet changeSet ) {
+            if (!asynchronousText) {
+                super.notify(changeSet);
+                return;
             }
+            // see whenTextReady ...
+            synchronized (index) {
+                super.notify(changeSet);
+            }
+        }
+
+        @Override
+        public void notify( List<ChangeSet> changeSets ) {
+            if (!asynchronousText) {
+                super.notify(changeSets);
+                return;
+            }
+            synchronized (index) {
+                super.notify(changeSets);
+            }
+        }
+
+        @Override
+        protected void addValues( NodeKey key, Property property ) {
+            String nodeKey = nodeKey(key);
+            whenTextReady(nodeKey, textFrom(property), text -> {
+                if (text.length() > 0) {
+                    index().add(nodeKey, propertyName(), text);
+                }
+            });
         }
 
         @Override
         protected void removeValues( NodeKey key, Property property ) {
-            StringBuilder builder = textFrom(property);
-            if (builder.length() > 0) {
-                index().remove(nodeKey(key),propertyName(), builder.toString());
+            String nodeKey = nodeKey(key);
+            whenTextReady(nodeKey, textFrom(property), text -> {
+                if (text.length() > 0) {
+                    index().remove(nodeKey, propertyName(), text);
+                }
+            });
+        }
+
+        @Override
+        protected void removeNode( String workspaceName,
+                                   NodeKey key,
+                                   NodeKey parentKey,
+                                   Path path,
+                                   Name primaryType,
+                                   Set<Name> mixinTypes ) {
+            String nodeKey = nodeKey(key);
+            whenTextReady(nodeKey, CompletableFuture.completedFuture(""), text -> index().remove(nodeKey));
+        }
+
+        /**
+         * Apply a change to the index once the text is available. The changes of a node are applied in the order in which they
+         * were made, so a change waiting for the text of a binary also delays the later changes of the same node; these
+         * delayed changes are committed as soon as they are applied. They run in the thread that completed the extraction, so
+         * they and the change bus both hold the index's monitor while they change or commit the index.
+         */
+        private void whenTextReady( String nodeKey,
+                                    CompletableFuture<String> text,
+                                    Consumer<String> change ) {
+            CompletableFuture<Void> previous = pendingByNodeKey.get(nodeKey);
+            if (previous == null && text.isDone()) {
+                change.accept(textOf(text));
+                return;
             }
+            CompletableFuture<?> ready = previous == null ? text : CompletableFuture.allOf(previous, text);
+            CompletableFuture<Void> applied = ready.handle((result, error) -> {
+                synchronized (index) {
+                    try {
+                        change.accept(textOf(text));
+                        index().commit();
+                    } catch (RuntimeException e) {
+                        logger.error(e, JcrI18n.errorIndexingText, nodeKey, index.getName(), e.getMessage());
+                    }
+                }
+                return null;
+            });
+            pendingByNodeKey.put(nodeKey, applied);
+            applied.thenRun(() -> pendingByNodeKey.remove(nodeKey, applied));
         }
-        
-        protected StringBuilder textFrom(Property property) {
-            StringBuilder builder = new StringBuilder();
+
+        private String textOf( CompletableFuture<String> text ) {
+            try {
+                String result = text.join();
+                return result != null ? result : "";
+            } catch (CompletionException | CancellationException e) {
+                logger.debug(e, "Error trying to get extracted text");
+                return "";
+            }
+        }
+
+        protected CompletableFuture<String> textFrom( Property property ) {
             if (property.isEmpty()) {
-                return builder;
+                return CompletableFuture.completedFuture("");
             }
             if (!property.isBinary()) {
-                String[] values = property.getValuesAsArray(valueFactory);  
+                StringBuilder builder = new StringBuilder();
+                String[] values = property.getValuesAsArray(valueFactory);
                 for (int i = 0; i < values.length; i++) {
                     builder.append(values[i]);
                     if (i < values.length - 1) {
                         builder.append(" ");
                     }
                 }
-            } else {
-                for (Iterator<Object> valuesIterator = property.iterator(); valuesIterator.hasNext();) {
-                    Object value = valuesIterator.next();
-                    assert value instanceof BinaryValue;
-                    BinaryValue binaryValue = (BinaryValue) value;
-                    try {
-                        String extractedText = context.getBinaryStore().getText(binaryValue);
-                        builder.append(extractedText);
-                        if (valuesIterator.hasNext()) {
-                            builder.append(" ");
-                        }
-                    } catch (BinaryStoreException e) {
-                        logger.debug(e, "Error trying to get extracted text for {0}", binaryValue);
+                return CompletableFuture.completedFuture(builder.toString());
+            }
+            List<CompletableFuture<String>> texts = new ArrayList<>(property.size());
+            for (Iterator<Object> valuesIterator = property.iterator(); valuesIterator.hasNext();) {
+                Object value = valuesIterator.next();
+                assert value instanceof BinaryValue;
+                texts.add(textFrom((BinaryValue)value));
+            }
+            if (texts.size() == 1) {
+                return texts.get(0);
+            }
+            return CompletableFuture.allOf(texts.toArray(new CompletableFuture<?>[texts.size()])).thenApply(ignored -> {
+                StringBuilder builder = new StringBuilder();
+                for (CompletableFuture<String> text : texts) {
+                    String extractedText = text.join();
+                    if (extractedText == null) continue;
+                    if (builder.length() > 0) {
+                        builder.append(" ");
                     }
+                    builder.append(extractedText);
+                }
+                return builder.toString();
+            });
+        }
+
+        private CompletableFuture<String> textFrom( BinaryValue binaryValue ) {
+            if (!asynchronousText) {
+                try {
+                    return CompletableFuture.completedFuture(context.getBinaryStore().getText(binaryValue));
+                } catch (BinaryStoreException e) {
+                    logger.debug(e, "Error trying to get extracted text for {0}", binaryValue);
+                    return CompletableFuture.completedFuture(null);
                 }
             }
-            return builder;
+            return context.getBinaryStore().getTextAsync(binaryValue).exceptionally(e -> {
+                logger.debug(e, "Error trying to get extracted text for {0}", binaryValue);
+                return null;
+            });
         }
     }
 
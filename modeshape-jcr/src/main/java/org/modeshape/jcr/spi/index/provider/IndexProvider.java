@@ -24,6 +24,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.jcr.RepositoryException;
 import javax.jcr.query.qom.Constraint;
 import javax.jcr.query.qom.JoinCondition;
@@ -549,6 +554,33 @@ public abstract class IndexProvider {
         return atomicIndex == null ? null : atomicIndex.managed();
     }
 
+    /**
+     * Wait until each of the asynchronously-updated indexes applicable to the given workspace has been updated with all of the
+     * changes saved at or before the given time. Synchronously-updated indexes are always up to date and are never waited upon.
+     *
+     * @param workspaceName the name of the workspace; never null
+     * @param timestamp the time (in milliseconds since the epoch) through which the changes should have been applied
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout; never null
+     * @return true if the indexes are up to date, or false if the timeout elapsed before they were
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public final boolean waitForIndexes( String workspaceName,
+                                         long timestamp,
+                                         long timeout,
+                                         TimeUnit unit ) throws InterruptedException {
+        Collection<AtomicIndex> indexes = providedIndexesFor(workspaceName);
+        if (indexes == null) return true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (AtomicIndex index : indexes) {
+            AsynchronousUpdates updates = index.asynchronousUpdates;
+            if (updates != null && !updates.awaitChangesThrough(timestamp, deadline - System.nanoTime())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Return the latest time at which this provider successfully updated its indexes.  
      * 
@@ -1410,8 +1442,12 @@ public abstract class IndexProvider {
             // 'notify' method returns), and the "in-thread" behavior is what does this ...
             observable.registerInThread(index);
         } else {
-            // The index is to be updated asynchronously, so use a normal listener ...
-            observable.register(index);
+            // The index is to be updated asynchronously, so use a normal listener that also keeps track of the changes
+            // that have been published but not yet applied to the index ...
+            AsynchronousUpdates updates = new AsynchronousUpdates(index);
+            index.asynchronousUpdates = updates;
+            observable.registerInThread(updates.published);
+            observable.register(updates);
         }
     }
 
@@ -1419,7 +1455,13 @@ public abstract class IndexProvider {
     private void removeProvidedIndex( AtomicIndex index,
                                       ChangeBus observable ) {
         try {
-            observable.unregister(index);
+            AsynchronousUpdates updates = index.asynchronousUpdates;
+            if (updates != null) {
+                observable.unregister(updates);
+                observable.unregister(updates.published);
+            } else {
+                observable.unregister(index);
+            }
             removeIndex(index.indexDefinition(), index.managed(), index.workspaceName());
         } catch (RuntimeException e) {
             String msg = "Error removing index '{0}' in workspace '{1}' with definition: {2}";
@@ -1451,6 +1493,10 @@ public abstract class IndexProvider {
         private volatile ManagedIndex managedIndex;
         private volatile IndexDefinition defn;
         private final NodeTypeMatcher matcher;
+        /**
+         * The listener through which this index is updated when it is updated asynchronously, or null otherwise.
+         */
+        protected volatile AsynchronousUpdates asynchronousUpdates;
 
         protected AtomicIndex( IndexDefinition defn,
                                ManagedIndex managedIndex,
@@ -1503,6 +1549,20 @@ public abstract class IndexProvider {
             }
         }
 
+        @Override
+        public final void notify( List<ChangeSet> changeSets ) {
+            List<ChangeSet> workspaceChanges = new ArrayList<>(changeSets.size());
+            for (ChangeSet changeSet : changeSets) {
+                if (changeSet.getWorkspaceName() != null) {
+                    // This is a change in the content of a workspace ...
+                    workspaceChanges.add(changeSet);
+                }
+            }
+            if (!workspaceChanges.isEmpty()) {
+                managedIndex.getIndexChangeAdapter().notify(workspaceChanges);
+            }
+        }
+
         protected ManagedIndex managed() {
             return managedIndex;
         }
@@ -1519,4 +1579,88 @@ public abstract class IndexProvider {
             this.matcher.use(matcher);
         }
     }
+
+    /**
+     * The listener through which an {@link AtomicIndex} is updated asynchronously. Besides the listener that is called in the
+     * bus' own threads, it has a {@link #published} listener called in the thread that publishes each change set before the
+     * bus' threads can see it, so that it knows how many of the published change sets have not yet been applied to the index. This is what allows queries to
+     * {@link IndexProvider#waitForIndexes wait} for an index to catch up with the changes saved up to a given time.
+     */
+    @ThreadSafe
+    private static final class AsynchronousUpdates implements ChangeSetListener {
+        private final AtomicIndex index;
+        private final AtomicLong pending = new AtomicLong();
+        private final Lock lock = new ReentrantLock();
+        private final Condition applied = lock.newCondition();
+        @GuardedBy( "lock" )
+        private long appliedThrough = 0L;
+        protected final ChangeSetListener published = changeSet -> pending.incrementAndGet();
+
+        protected AsynchronousUpdates( AtomicIndex index ) {
+            this.index = index;
+        }
+
+        @Override
+        public void notify( ChangeSet changeSet ) {
+            try {
+                index.notify(changeSet);
+            } finally {
+                applied(1, timestampOf(changeSet));
+            }
+        }
+
+        @Override
+        public void notify( List<ChangeSet> changeSets ) {
+            try {
+                index.notify(changeSets);
+            } finally {
+                long latest = 0L;
+                for (ChangeSet changeSet : changeSets) {
+                    latest = Math.max(latest, timestampOf(changeSet));
+                }
+                applied(changeSets.size(), latest);
+            }
+        }
+
+        private long timestampOf( ChangeSet changeSet ) {
+            return changeSet.getTimestamp() != null ? changeSet.getTimestamp().getMilliseconds() : 0L;
+        }
+
+        private void applied( int count,
+                              long timestamp ) {
+            lock.lock();
+            try {
+                // the 'published' listener has already counted these change sets ...
+                pending.addAndGet(-count);
+                appliedThrough = Math.max(appliedThrough, timestamp);
+                applied.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wait until this index has been updated with the changes saved at or before the given time, or until there are no more
+         * published changes that have yet to be applied.
+         *
+         * @param timestamp the time (in milliseconds since the epoch) through which the changes should have been applied
+         * @param timeoutInNanos the maximum number of nanoseconds to wait
+         * @return true if the index is up to date, or false if the timeout elapsed before it was
+         * @throws InterruptedException if the thread was interrupted while waiting
+         */
+        protected boolean awaitChangesThrough( long timestamp,
+                                               long timeoutInNanos ) throws InterruptedException {
+            lock.lock();
+            try {
+                long remaining = timeoutInNanos;
+                while (appliedThrough < timestamp && pending.get() > 0) {
+                    if (remaining <= 0L) return false;
+                    remaining = applied.awaitNanos(remaining);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
 }
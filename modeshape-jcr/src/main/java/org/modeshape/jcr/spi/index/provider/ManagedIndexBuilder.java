@@ -161,8 +161,10 @@ public abstract class ManagedIndexBuilder {
                         changeAdapters.add(IndexChangeAdapters.forNodePath(context, matcher, workspaceName, index));
                     } else {
                         // default to a property....
+                        // asynchronous indexes don't wait for the text of binary values to be extracted ...
                         changeAdapters.add(IndexChangeAdapters.forTextProperty(context, matcher, workspaceName,
-                                                                               propertyName, valueFactory, index));
+                                                                               propertyName, valueFactory, index,
+                                                                               !defn.isSynchronous()));
                     }
                 }
                 break;
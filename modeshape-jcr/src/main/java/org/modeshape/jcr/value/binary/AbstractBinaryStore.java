@@ -17,8 +17,10 @@ package org.modeshape.jcr.value.binary;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.jcr.RepositoryException;
 import org.modeshape.common.annotation.ThreadSafe;
@@ -43,7 +45,7 @@ public abstract class AbstractBinaryStore implements BinaryStore {
      */
     static final long DEFAULT_MINIMUM_BINARY_SIZE_IN_BYTES = 1024 * 4;
 
-    private static final long DEFAULT_LATCH_WAIT_IN_SECONDS = 10L;
+    private static final long DEFAULT_TEXT_WAIT_IN_SECONDS = 10L;
 
     private static final long LARGE_SIZE = 1 << 25; // 32MB
     private static final long MEDIUM_FILE_SIZE = 1 << 20; // 1MB
@@ -131,19 +133,40 @@ public abstract class AbstractBinaryStore implements BinaryStore {
 
         // there isn't any text available, so wait for a job to finish and then return the result
         try {
-            CountDownLatch latch = extractors.getWorkerLatch(binary.getKey(), false);
-            if (latch == null) {
-                // There is no latch, so just compute the text here ...
-                latch = extractors.extract(this, binary, new TextExtractorContext(detector()));
-            }
-            // There was a latch, so wait till the work is done ...
-            if (latch != null && latch.await(DEFAULT_LATCH_WAIT_IN_SECONDS, TimeUnit.SECONDS)) {
-                return getExtractedText(binary);
-            }
+            return extractors.extract(this, binary, new TextExtractorContext(detector())).get(DEFAULT_TEXT_WAIT_IN_SECONDS,
+                                                                                              TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
             // Stopped waiting ...
             return null;
         } catch (InterruptedException e) {
             throw new BinaryStoreException(e);
+        } catch (ExecutionException e) {
+            throw new BinaryStoreException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getTextAsync( BinaryValue binary ) {
+        try {
+            // try and locate an already extracted text from the store
+            if (binary instanceof StoredBinaryValue) {
+                String extractedText = getExtractedText(binary);
+                if (extractedText != null) {
+                    return CompletableFuture.completedFuture(extractedText);
+                }
+            }
+            if (extractors == null || !extractors.extractionEnabled()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (binary instanceof InMemoryBinaryValue) {
+                return CompletableFuture.completedFuture(extractors.extract((InMemoryBinaryValue)binary,
+                                                                            new TextExtractorContext(detector())));
+            }
+            return extractors.extract(this, binary, new TextExtractorContext(detector()));
+        } catch (BinaryStoreException | RuntimeException e) {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
         }
     }
 
@@ -17,6 +17,7 @@ package org.modeshape.jcr.value.binary;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import javax.jcr.RepositoryException;
 import org.modeshape.common.annotation.ThreadSafe;
@@ -167,6 +168,27 @@ public interface BinaryStore {
      */
     String getText( BinaryValue binary ) throws BinaryStoreException;
 
+    /**
+     * Get the text that can be extracted from this binary content, without waiting for a text extractor to finish extracting
+     * the text. The returned future completes with the same text {@link #getText(BinaryValue)} would return, or exceptionally if
+     * the binary content could not be accessed.
+     * <p>
+     * The default implementation simply calls {@link #getText(BinaryValue)}.
+     * </p>
+     *
+     * @param binary the binary content; may not be null
+     * @return the future extracted text; never null
+     */
+    default CompletableFuture<String> getTextAsync( BinaryValue binary ) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        try {
+            result.complete(getText(binary));
+        } catch (BinaryStoreException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
     /**
      * Get the MIME type for this binary value, never {@code null}.
      * <p>
@@ -20,6 +20,7 @@ import java.io.InputStream;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import javax.jcr.RepositoryException;
 import org.modeshape.common.collection.Collections;
@@ -330,6 +331,33 @@ public class CompositeBinaryStore implements BinaryStore {
         throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(binary.getKey(), this));
     }
 
+    @Override
+    public CompletableFuture<String> getTextAsync( BinaryValue binary ) {
+        if (binary instanceof InMemoryBinaryValue) {
+            return BinaryStore.super.getTextAsync(binary);
+        }
+
+        Iterator<Map.Entry<String, BinaryStore>> it = getNamedStoreIterator();
+
+        while (it.hasNext()) {
+            Map.Entry<String, BinaryStore> entry = it.next();
+
+            final String binaryStoreKey = entry.getKey();
+            BinaryStore bs = entry.getValue();
+            try {
+                if (bs.hasBinary(binary.getKey())) {
+                    return bs.getTextAsync(binary);
+                }
+            } catch (RuntimeException e) {
+                logger.debug(e, "The named store " + binaryStoreKey + " raised exception");
+            }
+        }
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        result.completeExceptionally(new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(binary.getKey(), this)));
+        return result;
+    }
+
     @Override
     public String getMimeType( BinaryValue binary,
                                String name ) throws IOException, RepositoryException {
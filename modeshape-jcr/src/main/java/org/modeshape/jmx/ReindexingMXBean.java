@@ -0,0 +1,92 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jmx;
+
+import java.util.List;
+import javax.management.MXBean;
+
+/**
+ * JMX MXBean interface which exposes the progress of the full reindexing of the workspaces of a running repository.
+ */
+@MXBean
+@Details( "JMX MXBean which exposes the progress of the full reindexing of the repository content" )
+public interface ReindexingMXBean {
+
+    /**
+     * Get the names of the workspaces that are currently being reindexed.
+     *
+     * @return the workspace names; never null but possibly empty
+     */
+    @Details( "The names of the workspaces that are currently being reindexed" )
+    List<String> getReindexingWorkspaces();
+
+    /**
+     * Get the names of the workspaces whose reindexing was interrupted and will resume from a checkpoint.
+     *
+     * @return the workspace names; never null but possibly empty
+     */
+    @Details( "The names of the workspaces whose reindexing was interrupted and will resume from its latest checkpoint" )
+    List<String> getInterruptedWorkspaces();
+
+    /**
+     * Get the number of nodes reindexed since the reindexing currently in progress started or resumed.
+     *
+     * @return the number of nodes
+     */
+    @Details( "The number of nodes reindexed since the reindexing currently in progress started or resumed" )
+    long getNodesReindexed();
+
+    /**
+     * Get the average number of nodes reindexed per second since the reindexing currently in progress started or resumed.
+     *
+     * @return the number of nodes per second
+     */
+    @Details( "The average number of nodes reindexed per second by the reindexing currently in progress" )
+    double getNodesPerSecond();
+
+    /**
+     * Get the estimated percentage of the content that has been reindexed by the reindexing currently in progress. The estimate
+     * is based upon the position of the reindexing among the children of each node on the path to the node being reindexed.
+     *
+     * @return the percentage, between 0 and 100
+     */
+    @Details( "The estimated percentage of the content reindexed by the reindexing currently in progress" )
+    double getPercentComplete();
+
+    /**
+     * Get the estimated number of seconds before the reindexing currently in progress completes.
+     *
+     * @return the number of seconds, or -1 if no reindexing is in progress or no estimate is available yet
+     */
+    @Details( "The estimated number of seconds before the reindexing currently in progress completes, or -1 if unknown" )
+    long getEstimatedSecondsRemaining();
+
+    /**
+     * Get the maximum number of nodes reindexed per second.
+     *
+     * @return the maximum number of nodes per second, or 0 if reindexing is not throttled
+     */
+    @Details( "The maximum number of nodes reindexed per second, or 0 if reindexing is not throttled" )
+    int getMaxNodesPerSecond();
+
+    /**
+     * Set the maximum number of nodes reindexed per second, which also applies to the reindexing currently in progress.
+     *
+     * @param maxNodesPerSecond the maximum number of nodes per second, or 0 if reindexing should not be throttled
+     */
+    @Details( "The maximum number of nodes reindexed per second, or 0 if reindexing is not throttled" )
+    void setMaxNodesPerSecond( @Details( "The maximum number of nodes per second, or 0 for no limit" ) int maxNodesPerSecond );
+}
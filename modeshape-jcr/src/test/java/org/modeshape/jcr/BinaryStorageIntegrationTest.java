@@ -275,6 +275,57 @@ public class BinaryStorageIntegrationTest extends SingleUseAbstractTest {
     }
 
 
+    @Test
+    public void shouldKeepSharedBinaryUsedUntilLastReferenceIsRemovedConcurrently() throws Exception {
+        startRepositoryWithConfigurationFrom("config/repo-config-binaries-fs.json");
+        assertEquals(0, binariesCount());
+        int nodeCount = 16;
+        Node parent = session.getRootNode().addNode("shared");
+        for (int i = 0; i <= nodeCount; i++) {
+            parent.addNode("node_" + i).setProperty("data", session.getValueFactory().createBinary(resourceStream(
+                    "data/move-initial-data.xml")));
+        }
+        session.save();
+        assertEquals(1, binariesCount());
+
+        // remove all but one of the nodes using the binary at the same time from different sessions ...
+        ExecutorService executorService = Executors.newFixedThreadPool(nodeCount);
+        final CyclicBarrier barrier = new CyclicBarrier(nodeCount);
+        final List<Future<?>> results = new ArrayList<>();
+        try {
+            for (int i = 1; i <= nodeCount; i++) {
+                final String path = "/shared/node_" + i;
+                results.add(executorService.submit(() -> {
+                    JcrSession session1 = repository.login();
+                    try {
+                        session1.getNode(path).remove();
+                        barrier.await();
+                        session1.save();
+                        return null;
+                    } finally {
+                        session1.logout();
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(3, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        // the binary is still used by the remaining node ...
+        Thread.sleep(100);
+        binaryStore().removeValuesUnusedLongerThan(1, TimeUnit.MILLISECONDS);
+        assertEquals(1, binariesCount());
+
+        session.getNode("/shared/node_0").remove();
+        session.save();
+        Thread.sleep(100);
+        binaryStore().removeValuesUnusedLongerThan(1, TimeUnit.MILLISECONDS);
+        assertEquals(0, binariesCount());
+    }
+
     @Test
     @FixFor( "MODE-2489" )
     public void shouldSupportContentBasedTypeDetection() throws Exception {
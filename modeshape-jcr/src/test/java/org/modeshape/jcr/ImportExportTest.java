@@ -24,6 +24,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -31,10 +32,13 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
 import javax.jcr.ImportUUIDBehavior;
 import javax.jcr.ItemExistsException;
 import javax.jcr.Node;
@@ -53,7 +57,11 @@ import org.junit.Test;
 import org.modeshape.common.FixFor;
 import org.modeshape.common.junit.SkipLongRunning;
 import org.modeshape.common.util.FileUtil;
+import org.modeshape.common.util.IoUtil;
 import org.modeshape.jcr.api.Binary;
+import org.modeshape.jcr.api.ExportOptions;
+import org.modeshape.jcr.api.ImportCheckpoint;
+import org.modeshape.jcr.api.ImportOptions;
 import org.modeshape.jcr.api.JcrTools;
 import org.modeshape.jcr.api.Workspace;
 import org.modeshape.jcr.security.SimplePrincipal;
@@ -1376,6 +1384,223 @@ public class ImportExportTest extends SingleUseAbstractTest {
         assertFalse(session.nodeExists("/firstLevelNode/nonexisting"));
     }
 
+    @Test
+    public void shouldStreamImportInSeveralTransactionsAndSetForwardReferences() throws Exception {
+        createContentWithForwardReferences("/source");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        session.exportSystemView("/source", outputStream, false, false);
+        session.getNode("/source").remove();
+        session.save();
+
+        RecordingImportOptions options = new RecordingImportOptions(4, null, Integer.MAX_VALUE);
+        ((Workspace)session.getWorkspace()).importXML("/", new ByteArrayInputStream(outputStream.toByteArray()),
+                                                      ImportUUIDBehavior.IMPORT_UUID_COLLISION_THROW, options);
+
+        // the 19 nodes were saved in transactions of at least 4 nodes ending with a complete node, and the last 2 nodes when
+        // the import completed ...
+        assertEquals(4, options.checkpoints.size());
+        assertEquals(17, options.checkpoints.get(3).getNodeCount());
+        // the reference to the last node is set only when that node is imported ...
+        assertEquals(1, options.checkpoints.get(3).getPendingReferences().size());
+        assertContentWithForwardReferences("/source");
+    }
+
+    @Test
+    public void shouldResumeStreamingImportFromCheckpoint() throws Exception {
+        createContentWithForwardReferences("/source");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        session.exportSystemView("/source", outputStream, false, false);
+        byte[] content = outputStream.toByteArray();
+        session.getNode("/source").remove();
+        session.save();
+
+        // fail after the second transaction has been saved ...
+        RecordingImportOptions options = new RecordingImportOptions(3, null, 2);
+        try {
+            ((Workspace)session.getWorkspace()).importXML("/", new ByteArrayInputStream(content),
+                                                          ImportUUIDBehavior.IMPORT_UUID_COLLISION_THROW, options);
+            fail("The import should have failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        session.refresh(false);
+        assertNode("/source/child0/grandchild3");
+        assertNoNode("/source/child0/grandchild4");
+
+        // and resume it with a serialized copy of the last checkpoint ...
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(options.checkpoints.get(1));
+        }
+        ImportCheckpoint checkpoint;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized.toByteArray()))) {
+            checkpoint = (ImportCheckpoint)in.readObject();
+        }
+        assertEquals(6, checkpoint.getNodeCount());
+        options = new RecordingImportOptions(3, checkpoint, Integer.MAX_VALUE);
+        ((Workspace)session.getWorkspace()).importXML("/", new ByteArrayInputStream(content),
+                                                      ImportUUIDBehavior.IMPORT_UUID_COLLISION_THROW, options);
+        assertEquals(9, options.checkpoints.get(0).getNodeCount());
+        session.refresh(false);
+        assertContentWithForwardReferences("/source");
+    }
+
+    @Test
+    public void shouldStreamImportFilesWithoutSavingThemBeforeTheirContent() throws Exception {
+        Node folder = session.getRootNode().addNode("files", "nt:folder");
+        for (int i = 0; i != 5; ++i) {
+            Node content = folder.addNode("file" + i + ".txt", "nt:file").addNode("jcr:content", "nt:resource");
+            content.setProperty("jcr:data", session.getValueFactory().createBinary(new ByteArrayInputStream(("text " + i).getBytes())));
+        }
+        session.save();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        session.exportSystemView("/files", outputStream, false, false);
+        session.getNode("/files").remove();
+        session.save();
+
+        // an 'nt:file' is not valid without its 'jcr:content', so each transaction ends with the content of a file ...
+        RecordingImportOptions options = new RecordingImportOptions(1, null, Integer.MAX_VALUE);
+        ((Workspace)session.getWorkspace()).importXML("/", new ByteArrayInputStream(outputStream.toByteArray()),
+                                                      ImportUUIDBehavior.IMPORT_UUID_COLLISION_THROW, options);
+        assertEquals(5, options.checkpoints.size());
+        for (int i = 0; i != 5; ++i) {
+            Node content = session.getNode("/files/file" + i + ".txt/jcr:content");
+            assertEquals("text " + i, content.getProperty("jcr:data").getString());
+        }
+    }
+
+    @Test
+    public void shouldExportCompressedSystemViewWithSameContentAsUncompressedExport() throws Exception {
+        createContentWithManyBinaries("/source");
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        session.exportSystemView("/source", expected, false, false);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ((org.modeshape.jcr.api.Session)session).exportSystemView("/source", compressed, new CompressingExportOptions());
+        byte[] content = uncompress(compressed.toByteArray());
+        assertTrue(compressed.size() < content.length);
+        assertArrayEquals(expected.toByteArray(), content);
+
+        session.getNode("/source").remove();
+        session.save();
+        session.getWorkspace().importXML("/", new ByteArrayInputStream(content), ImportUUIDBehavior.IMPORT_UUID_COLLISION_THROW);
+        assertContentWithManyBinaries("/source");
+    }
+
+    @Test
+    public void shouldExportCompressedDocumentViewWithSameContentAsUncompressedExport() throws Exception {
+        createContentWithManyBinaries("/source");
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        session.exportDocumentView("/source", expected, false, false);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ((org.modeshape.jcr.api.Session)session).exportDocumentView("/source", compressed, new CompressingExportOptions());
+        assertArrayEquals(expected.toByteArray(), uncompress(compressed.toByteArray()));
+    }
+
+    private void createContentWithManyBinaries( String path ) throws RepositoryException {
+        Node source = session.getRootNode().addNode(path.substring(1));
+        // more children than are read in a single batch, the last of which has a binary too large to be encoded ahead ...
+        for (int i = 0; i != 250; ++i) {
+            byte[] data = new byte[i == 249 ? 2 * 1024 * 1024 : 100 + i];
+            for (int j = 0; j != data.length; ++j) {
+                data[j] = (byte)(i + j);
+            }
+            source.addNode("child" + i).setProperty("data", session.getValueFactory().createBinary(new ByteArrayInputStream(data)));
+        }
+        session.save();
+    }
+
+    private void assertContentWithManyBinaries( String path ) throws RepositoryException, IOException {
+        Node source = session.getNode(path);
+        assertEquals(250, source.getNodes().getSize());
+        for (int i = 0; i != 250; ++i) {
+            Binary binary = (Binary)source.getNode("child" + i).getProperty("data").getBinary();
+            assertEquals(i == 249 ? 2 * 1024 * 1024 : 100 + i, binary.getSize());
+            byte[] data = new byte[1];
+            assertEquals(1, binary.read(data, 10));
+            assertEquals((byte)(i + 10), data[0]);
+        }
+    }
+
+    private byte[] uncompress( byte[] content ) throws IOException {
+        try (InputStream stream = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            return IoUtil.readBytes(stream);
+        }
+    }
+
+    private static class CompressingExportOptions extends ExportOptions {
+        @Override
+        public boolean compress() {
+            return true;
+        }
+    }
+
+    private void createContentWithForwardReferences( String path ) throws RepositoryException {
+        Node source = session.getRootNode().addNode(path.substring(1));
+        Node referrer = null;
+        for (int i = 0; i != 3; ++i) {
+            Node child = source.addNode("child" + i);
+            for (int j = 0; j != 5; ++j) {
+                child.addNode("grandchild" + j).setProperty("index", j);
+            }
+            if (i == 0) {
+                referrer = child.getNode("grandchild0");
+            }
+        }
+        // the referrer is exported before the node it refers to ...
+        Node referenceable = source.getNode("child2/grandchild4");
+        referenceable.addMixin("mix:referenceable");
+        referrer.setProperty("ref", session.getValueFactory().createValue(referenceable, false));
+        session.save();
+    }
+
+    private void assertContentWithForwardReferences( String path ) throws RepositoryException {
+        Node source = session.getNode(path);
+        assertEquals(3, source.getNodes().getSize());
+        for (int i = 0; i != 3; ++i) {
+            Node child = source.getNode("child" + i);
+            assertEquals(5, child.getNodes().getSize());
+            assertEquals(4, child.getNode("grandchild4").getProperty("index").getLong());
+        }
+        Node referenceable = source.getNode("child2/grandchild4");
+        assertEquals(referenceable.getIdentifier(), source.getNode("child0/grandchild0").getProperty("ref").getNode().getIdentifier());
+        assertEquals(1, referenceable.getReferences().getSize());
+    }
+
+    private static class RecordingImportOptions extends ImportOptions {
+        private final int nodesPerTransaction;
+        private final ImportCheckpoint resumeFrom;
+        private final int failAfter;
+        protected final List<ImportCheckpoint> checkpoints = new ArrayList<>();
+
+        protected RecordingImportOptions( int nodesPerTransaction,
+                                          ImportCheckpoint resumeFrom,
+                                          int failAfter ) {
+            this.nodesPerTransaction = nodesPerTransaction;
+            this.resumeFrom = resumeFrom;
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public int nodesPerTransaction() {
+            return nodesPerTransaction;
+        }
+
+        @Override
+        public ImportCheckpoint resumeFrom() {
+            return resumeFrom;
+        }
+
+        @Override
+        public void saved( ImportCheckpoint checkpoint ) {
+            checkpoints.add(checkpoint);
+            if (checkpoints.size() == failAfter) {
+                throw new IllegalStateException("Simulated failure after " + checkpoint);
+            }
+        }
+    }
+
     // ----------------------------------------------------------------------------------------------------------------
     // Utilities
     // ----------------------------------------------------------------------------------------------------------------
@@ -38,6 +38,7 @@ import javax.jcr.NodeIterator;
 import javax.jcr.PathNotFoundException;
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
+import javax.jcr.ReferentialIntegrityException;
 import javax.jcr.RepositoryException;
 import javax.jcr.Value;
 import javax.jcr.nodetype.ConstraintViolationException;
@@ -176,6 +177,63 @@ public class JcrNodeTest extends MultiUseAbstractTest {
         }
     }
 
+    @Test
+    public void shouldTrackReferrersOfHeavilyReferencedNodes() throws Exception {
+        Node referenceableNode = session.getRootNode().addNode("heavilyReferenced");
+        referenceableNode.addMixin(JcrMixLexicon.REFERENCEABLE.toString());
+        Node referrers = session.getRootNode().addNode("referrers");
+        session.save();
+        String referrerShardKey = ((AbstractJcrNode)referenceableNode).key() + "/referrers/0";
+
+        try {
+            // add enough references for the referrers to be moved into separate shards ...
+            int count = 1200;
+            for (int i = 0; i != count; ++i) {
+                Node referrer = referrers.addNode("referrer" + i);
+                referrer.setProperty("strong", referenceableNode);
+                if (i % 2 == 0) {
+                    referrer.setProperty("weak", session.getValueFactory().createValue(referenceableNode, true));
+                }
+                if (i % 500 == 0) {
+                    session.save();
+                }
+            }
+            session.save();
+            assertTrue(repository.documentStore().containsKey(referrerShardKey));
+            assertEquals(count, referenceableNode.getReferences().getSize());
+            assertEquals(count / 2, referenceableNode.getWeakReferences().getSize());
+
+            // change the references in another session ...
+            JcrSession otherSession = repository.login();
+            try {
+                otherSession.getNode("/referrers/referrer0").getProperty("strong").remove();
+                otherSession.getNode("/referrers/referrer1").remove();
+                Node referrer = otherSession.getNode("/referrers").addNode("anotherReferrer");
+                referrer.setProperty("strong", otherSession.getNode("/heavilyReferenced"));
+                otherSession.save();
+            } finally {
+                otherSession.logout();
+            }
+            assertEquals(count - 1, referenceableNode.getReferences().getSize());
+            assertEquals(count / 2, referenceableNode.getWeakReferences().getSize());
+
+            // the strong references still prevent the node from being removed ...
+            referenceableNode.remove();
+            try {
+                session.save();
+                fail("Should not allow the removal of a node with strong references");
+            } catch (ReferentialIntegrityException e) {
+                // expected
+                session.refresh(false);
+            }
+        } finally {
+            session.getNode("/referrers").remove();
+            session.getNode("/heavilyReferenced").remove();
+            session.save();
+        }
+        assertFalse(repository.documentStore().containsKey(referrerShardKey));
+    }
+
     @Test
     @FixFor("MODE-1489")
     public void shouldAllowMultipleOrderBeforeWithoutSave() throws Exception {
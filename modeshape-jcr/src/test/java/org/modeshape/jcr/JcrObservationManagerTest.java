@@ -34,6 +34,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import javax.jcr.NamespaceRegistry;
 import javax.jcr.Node;
 import javax.jcr.Property;
@@ -246,6 +248,104 @@ public final class JcrObservationManagerTest extends SingleUseAbstractTest {
         checkResults(listener);
     }
 
+    @Test
+    public void shouldNotDelayListenersWhileAnotherListenerOfTheSessionIsBusy() throws Exception {
+        // register a listener that does not return until it is released, and then a regular listener
+        final CountDownLatch busy = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        EventListener blocking = events -> {
+            busy.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        getObservationManager().addEventListener(blocking, Event.NODE_ADDED, null, true, null, null, false);
+        SimpleListener listener = addListener(2, 2, Event.NODE_ADDED, null, true, null, null, false);
+
+        try {
+            getRoot().addNode("first", UNSTRUCTURED);
+            save();
+            assertTrue(busy.await(5, TimeUnit.SECONDS));
+            getRoot().addNode("second", UNSTRUCTURED);
+            save();
+
+            // the regular listener receives both events while the other listener is still busy
+            listener.waitForEvents();
+            assertThat(release.getCount(), is(1L));
+            checkResults(listener);
+        } finally {
+            release.countDown();
+            removeListener(listener);
+            getObservationManager().removeEventListener(blocking);
+        }
+    }
+
+    @Test
+    public void shouldOnlyNotifyListenersWhosePathOrUuidMatches() throws Exception {
+        // setup
+        Node a = getRoot().addNode("a", UNSTRUCTURED);
+        Node b = getRoot().addNode("b", UNSTRUCTURED);
+        save();
+
+        // register listeners
+        SimpleListener deepA = addListener(2, Event.NODE_ADDED, a.getPath(), true, null, null, false);
+        SimpleListener exactA = addListener(1, Event.NODE_ADDED, a.getPath(), false, null, null, false);
+        SimpleListener deepB = addListener(1, Event.NODE_ADDED, b.getPath(), true, null, null, false);
+        SimpleListener exactRoot = addListener(0, Event.NODE_ADDED, getRoot().getPath(), false, null, null, false);
+        SimpleListener other = addListener(0, Event.NODE_ADDED, "/other", true, null, null, false);
+        SimpleListener uuidB = addListener(1, Event.PROPERTY_ADDED, null, true, new String[] {b.getIdentifier()}, null, false);
+        SimpleListener all = addListener(3, Event.NODE_ADDED, null, true, null, null, false);
+
+        // add nodes and a property
+        a.addNode("x", UNSTRUCTURED).addNode("y", UNSTRUCTURED);
+        b.addNode("z", UNSTRUCTURED);
+        b.setProperty("prop1", "foo");
+        save();
+
+        // event handling
+        for (SimpleListener listener : Arrays.asList(deepA, exactA, deepB, exactRoot, other, uuidB, all)) {
+            listener.waitForEvents();
+            removeListener(listener);
+            checkResults(listener);
+        }
+        assertTrue(containsPath(exactA, a.getPath() + "/x"));
+        assertTrue(containsPath(deepA, a.getPath() + "/x/y"));
+        assertTrue(containsPath(deepB, b.getPath() + "/z"));
+        assertTrue(containsPath(uuidB, b.getPath() + "/prop1"));
+    }
+
+    @Test
+    public void shouldRouteChangesToListenersOfSameNameSiblingsByPathSegment() throws Exception {
+        // setup
+        Node first = getRoot().addNode("s", UNSTRUCTURED);
+        Node second = getRoot().addNode("s", UNSTRUCTURED);
+        save();
+        assertThat(second.getPath(), is(getRoot().getPath() + "/s[2]"));
+
+        // register listeners
+        SimpleListener deepFirst = addListener(2, Event.NODE_ADDED, first.getPath(), true, null, null, false);
+        SimpleListener deepSecond = addListener(1, Event.NODE_ADDED, second.getPath(), true, null, null, false);
+        SimpleListener exactSecond = addListener(1, Event.NODE_ADDED, second.getPath(), false, null, null, false);
+        SimpleListener deepTestRoot = addListener(3, Event.NODE_ADDED, getRoot().getPath(), true, null, null, false);
+
+        // add nodes below both siblings
+        first.addNode("x", UNSTRUCTURED).addNode("y", UNSTRUCTURED);
+        second.addNode("z", UNSTRUCTURED);
+        save();
+
+        // event handling
+        for (SimpleListener listener : Arrays.asList(deepFirst, deepSecond, exactSecond, deepTestRoot)) {
+            listener.waitForEvents();
+            removeListener(listener);
+            checkResults(listener);
+        }
+        assertTrue(containsPath(deepFirst, first.getPath() + "/x/y"));
+        assertTrue(containsPath(deepSecond, second.getPath() + "/z"));
+        assertTrue(containsPath(exactSecond, second.getPath() + "/z"));
+    }
+
     @Test
     public void shouldNotReceiveEventIfNodeTypeDoesNotMatch() throws Exception {
         // setup
@@ -1181,6 +1181,18 @@ public class JcrQueryManagerTest extends MultiUseAbstractTest {
         validateQuery().rowCount(0).warnings(0).onlyQueryPlan().validate(query, result);
     }
 
+    @Test
+    public void shouldProfileQueryByExecutingQueryAndAnnotatingPlan() throws RepositoryException {
+        String sql = "SELECT * FROM [car:Car] WHERE [car:year] < 2009 ORDER BY [jcr:path]";
+        org.modeshape.jcr.api.query.Query query = session.getWorkspace().getQueryManager().createQuery(sql, Query.JCR_SQL2);
+        org.modeshape.jcr.api.query.QueryResult result = query.profile();
+        validateQuery().rowCount(0).warnings(0).onlyQueryPlan().validate(query, result);
+        String plan = result.getPlan();
+        assertTrue(plan, plan.startsWith("Profile: rows=13, time="));
+        assertTrue(plan, plan.contains("Sort [car:Car]"));
+        assertTrue(plan, plan.contains("{rows=13, rowsIn=13, batches=1, time="));
+    }
+
     @FixFor( "MODE-1888" )
     @Test
     public void shouldCaptureWarningsAboutPotentialTypos() throws RepositoryException {
@@ -1334,6 +1334,65 @@ public class JcrSessionTest extends SingleUseAbstractTest {
         }
     }
 
+    @Test
+    public void shouldResolveAbsolutePathsAfterStructuralChangesInOtherSessions() throws Exception {
+        Node rootNode = session.getRootNode();
+        rootNode.addNode("a").addNode("b").addNode("c").addNode("d");
+        rootNode.addNode("tmp");
+        Node siblings = rootNode.addNode("siblings");
+        siblings.addNode("child").setProperty("order", 1);
+        siblings.addNode("child").setProperty("order", 2);
+        siblings.addNode("child").setProperty("order", 3);
+        session.save();
+
+        JcrSession other = repository.login();
+        try {
+            // Resolve the paths (including a missing path) so they are cached ...
+            String dKey = other.getNode("/a/b/c/d").getIdentifier();
+            assertThat(other.nodeExists("/tmp/x"), is(false));
+            assertThat(other.getNode("/siblings/child[3]").getProperty("order").getLong(), is(3L));
+
+            // Move ...
+            session.move("/a/b", "/tmp/b");
+            session.save();
+            assertThat(other.nodeExists("/a/b/c/d"), is(false));
+            assertThat(other.getNode("/tmp/b/c/d").getIdentifier(), is(dKey));
+
+            // Rename ...
+            session.move("/tmp/b", "/tmp/x");
+            session.save();
+            assertThat(other.nodeExists("/tmp/b/c/d"), is(false));
+            assertThat(other.nodeExists("/tmp/x"), is(true));
+            assertThat(other.getNode("/tmp/x/c/d").getIdentifier(), is(dKey));
+
+            // Remove a same-name-sibling, which shifts the indexes of the later siblings ...
+            session.getNode("/siblings/child[2]").remove();
+            session.save();
+            assertThat(other.getNode("/siblings/child[2]").getProperty("order").getLong(), is(3L));
+            assertThat(other.nodeExists("/siblings/child[3]"), is(false));
+
+            // Reorder ...
+            session.getNode("/siblings").orderBefore("child[2]", "child[1]");
+            session.save();
+            assertThat(other.getNode("/siblings/child[1]").getProperty("order").getLong(), is(3L));
+
+            // Remove ...
+            session.getNode("/tmp/x").remove();
+            session.save();
+            assertThat(other.nodeExists("/tmp/x/c/d"), is(false));
+
+            // Add a same-name-sibling where there was known to be no node, which leaves the earlier siblings cached ...
+            assertThat(other.nodeExists("/siblings/child[3]"), is(false));
+            assertThat(other.getNode("/siblings/child[2]").getProperty("order").getLong(), is(1L));
+            session.getNode("/siblings").addNode("child").setProperty("order", 4);
+            session.save();
+            assertThat(other.getNode("/siblings/child[3]").getProperty("order").getLong(), is(4L));
+            assertThat(other.getNode("/siblings/child[2]").getProperty("order").getLong(), is(1L));
+        } finally {
+            other.logout();
+        }
+    }
+
     private List<Node> queryAndExpectResults( String queryString,
                                               int howMany ) throws RepositoryException {
         QueryManager queryManager = session.getWorkspace().getQueryManager();
@@ -16,16 +16,27 @@
 package org.modeshape.jcr;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.jcr.ImportUUIDBehavior;
+import javax.jcr.InvalidItemStateException;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
 import javax.jcr.UnsupportedRepositoryOperationException;
 import javax.jcr.nodetype.ConstraintViolationException;
 import javax.jcr.query.Query;
@@ -34,6 +45,7 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.modeshape.common.FixFor;
+import org.modeshape.jcr.cache.document.DocumentStore;
 import org.modeshape.jcr.query.JcrQuery;
 
 /**
@@ -455,4 +467,135 @@ public class JcrUnorderedCollectionsTest extends MultiUseAbstractTest {
         }
         session.save();
     }
+
+    @Test
+    public void shouldAllowConcurrentSessionsToAppendChildrenWithoutLockingTheCollection() throws Exception {
+        Node collection = session.getRootNode().addNode("col", "test:tinyCollection");
+        collection.addNode("first");
+        session.save();
+
+        final int threadCount = 4;
+        final int childrenPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            Set<Future<Void>> results = new HashSet<>();
+            for (int i = 0; i < threadCount; i++) {
+                final String prefix = "child_" + i + "_";
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        JcrSession ingestSession = repository.login();
+                        try {
+                            for (int j = 0; j < childrenPerThread; j++) {
+                                ingestSession.getNode("/col").addNode(prefix + j);
+                                ingestSession.save();
+                            }
+                        } finally {
+                            ingestSession.logout();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        int childCount = 1 + threadCount * childrenPerThread;
+        session.refresh(false);
+        collection = session.getNode("/col");
+        assertEquals(childCount, collection.getNodes().getSize());
+        Set<String> names = new HashSet<>(childCount);
+        for (NodeIterator children = collection.getNodes(); children.hasNext();) {
+            names.add(children.nextNode().getName());
+        }
+        assertEquals(childCount, names.size());
+        for (int i = 0; i < threadCount; i++) {
+            for (int j = 0; j < childrenPerThread; j++) {
+                assertNode("/col/child_" + i + "_" + j);
+            }
+        }
+
+        // removing children from the collection should still be reflected in its size
+        session.getNode("/col/first").remove();
+        session.getNode("/col/child_0_0").remove();
+        session.save();
+        assertEquals(childCount - 2, session.getNode("/col").getNodes().getSize());
+        session.getNode("/col").addNode("last");
+        session.save();
+        assertEquals(childCount - 1, session.getNode("/col").getNodes().getSize());
+    }
+
+    @Test
+    public void shouldNotLeaveChildrenOrBucketsWhenRemovingCollectionWhileOthersAppend() throws Exception {
+        Node collection = session.getRootNode().addNode("col", "test:tinyCollection");
+        collection.addNode("first");
+        session.save();
+        String collectionKey = ((AbstractJcrNode)collection).key().toString();
+
+        final int threadCount = 4;
+        final int childrenPerThread = 50;
+        final Set<String> appendedKeys = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        final CountDownLatch appending = new CountDownLatch(threadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            Set<Future<Void>> results = new HashSet<>();
+            for (int i = 0; i < threadCount; i++) {
+                final String prefix = "child_" + i + "_";
+                results.add(executor.submit(() -> {
+                    JcrSession ingestSession = repository.login();
+                    try {
+                        for (int j = 0; j < childrenPerThread; j++) {
+                            AbstractJcrNode child = null;
+                            try {
+                                child = ingestSession.getNode("/col").addNode(prefix + j);
+                                ingestSession.save();
+                            } catch (RepositoryException e) {
+                                // the collection has been removed ...
+                                return null;
+                            }
+                            appendedKeys.add(child.key().toString());
+                            appending.countDown();
+                        }
+                        return null;
+                    } finally {
+                        ingestSession.logout();
+                    }
+                }));
+            }
+            assertTrue(appending.await(10, TimeUnit.SECONDS));
+            for (boolean removed = false; !removed;) {
+                session.refresh(false);
+                session.getNode("/col").remove();
+                try {
+                    session.save();
+                    removed = true;
+                } catch (InvalidItemStateException e) {
+                    // children were appended after this session read the collection, so try again ...
+                }
+            }
+            for (Future<Void> result : results) {
+                result.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        // none of the appended children, buckets or stripes survive the collection ...
+        DocumentStore documentStore = repository.documentStore();
+        assertNull(documentStore.get(collectionKey));
+        for (String appendedKey : appendedKeys) {
+            assertNull("Orphaned child " + appendedKey, documentStore.get(appendedKey));
+        }
+        for (int bucket = 0; bucket != 16; ++bucket) {
+            String bucketId = Integer.toHexString(bucket);
+            assertNull(documentStore.get(collectionKey + "/" + bucketId));
+            assertNull(documentStore.get(collectionKey + "/buckets/" + bucketId));
+        }
+    }
 }
@@ -16,7 +16,11 @@
 
 package org.modeshape.jcr;
 
+import java.util.concurrent.TimeUnit;
+import javax.jcr.Node;
+import javax.jcr.PropertyType;
 import org.junit.Test;
+import org.modeshape.jcr.api.query.Query;
 
 /**
  * We don't test a lot of functionality here. It's the same provider as tested in the {@link LocalIndexProviderTest}, except that
@@ -40,6 +44,27 @@ public class LocalIndexProviderAsynchronousTest extends AbstractIndexProviderTes
         return "local";
     }
 
+    @Test
+    public void shouldWaitForIndexesToCatchUpBeforeExecutingQuery() throws Exception {
+        registerValueIndex("titleIndex", "mix:title", "Index for the 'jcr:title' property on mix:title", "*", "jcr:title",
+                           PropertyType.STRING);
+        waitForIndexes();
+
+        Node root = session().getRootNode();
+        for (int i = 0; i != 50; ++i) {
+            Node book = root.addNode("book" + i);
+            book.addMixin("mix:title");
+            book.setProperty("jcr:title", i % 2 == 0 ? "Even" : "Odd");
+            session.save();
+        }
+        long savedThrough = System.currentTimeMillis();
+
+        // Don't wait for the index to be updated, but let the query wait for it ...
+        Query query = jcrSql2Query("SELECT * FROM [mix:title] WHERE [jcr:title] = 'Even'");
+        query.waitForIndexes(savedThrough, 10, TimeUnit.SECONDS);
+        validateQuery().rowCount(25L).useIndex("titleIndex").validate(query, query.execute());
+    }
+
     // ---------------------------------------------------------------
     // Override these so that we can easily run them via JUnit runner.
     // ---------------------------------------------------------------
@@ -33,6 +33,7 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
@@ -45,9 +46,16 @@ import javax.jcr.query.Row;
 import org.junit.Test;
 import org.modeshape.common.FixFor;
 import org.modeshape.common.util.FileUtil;
+import org.modeshape.jcr.RepositoryConfiguration.FieldName;
 import org.modeshape.jcr.api.index.IndexManager;
 import org.modeshape.jcr.api.query.Query;
+import org.modeshape.jcr.cache.CachedNode.Properties;
+import org.modeshape.jcr.cache.NodeCache;
+import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.query.engine.IndexPlanners;
+import org.modeshape.jcr.spi.index.IndexWriter;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.schematic.document.EditableDocument;
 
 /**
  * This test verifies that the local index provider works when the indexes are updated <em>synchronous</em>. See
@@ -1416,4 +1424,94 @@ public class LocalIndexProviderTest extends AbstractIndexProviderTest {
                 .validate(query, query.execute());
         
     }
+
+    @Test
+    public void shouldResumeInterruptedReindexingFromLatestCheckpoint() throws Exception {
+        // Restart the repository so that reindexing records a checkpoint every 10 nodes ...
+        RepositoryConfiguration config = repository().getConfiguration();
+        EditableDocument doc = config.edit();
+        doc.getOrCreateDocument(FieldName.REINDEXING).setNumber(FieldName.REINDEXING_CHECKPOINT_INTERVAL, 10);
+        stopRepository();
+        startRepositoryWithConfiguration(new RepositoryConfiguration(doc, config.getName()));
+
+        registerValueIndex("titleIndex", "mix:title", "Index for the 'jcr:title' property on mix:title", "*", "jcr:title",
+                           PropertyType.STRING);
+        waitForIndexes();
+        Node root = session().getRootNode();
+        for (int i = 0; i != 100; ++i) {
+            root.addNode("node" + i).addMixin("mix:title");
+        }
+        session.save();
+
+        RepositoryQueryManager queryManager = session.repository().runningState().queryManager();
+        String workspaceName = session.getWorkspace().getName();
+        NodeCache cache = session.cache().getWorkspace();
+        Set<String> providerNames = Collections.singleton(providerName());
+        CountingIndexWriter all = new CountingIndexWriter(queryManager.getIndexWriter(), Integer.MAX_VALUE);
+        assertTrue(queryManager.reindexWorkspace(workspaceName, cache, false, providerNames, all, false));
+
+        // Fail while reindexing the 25th node below the root ...
+        CountingIndexWriter failing = new CountingIndexWriter(queryManager.getIndexWriter(), 25);
+        try {
+            queryManager.reindexWorkspace(workspaceName, cache, false, providerNames, failing, false);
+            fail("The reindexing should have failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // The first 20 nodes below the root were reindexed before the latest checkpoint, so they aren't reindexed again ...
+        CountingIndexWriter resumed = new CountingIndexWriter(queryManager.getIndexWriter(), Integer.MAX_VALUE);
+        assertTrue(queryManager.reindexWorkspace(workspaceName, cache, false, providerNames, resumed, true));
+        assertThat(resumed.added, is(all.added - 20));
+
+        // And the next reindexing starts from the beginning ...
+        CountingIndexWriter again = new CountingIndexWriter(queryManager.getIndexWriter(), Integer.MAX_VALUE);
+        assertTrue(queryManager.reindexWorkspace(workspaceName, cache, false, providerNames, again, true));
+        assertThat(again.added, is(all.added));
+    }
+
+    private static class CountingIndexWriter implements IndexWriter {
+        private final IndexWriter delegate;
+        private final int failAfter;
+        protected int added;
+
+        protected CountingIndexWriter( IndexWriter delegate,
+                                       int failAfter ) {
+            this.delegate = delegate;
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public boolean canBeSkipped() {
+            return delegate.canBeSkipped();
+        }
+
+        @Override
+        public void clearAllIndexes() {
+            delegate.clearAllIndexes();
+        }
+
+        @Override
+        public boolean add( String workspace,
+                            NodeKey key,
+                            org.modeshape.jcr.value.Path path,
+                            Name primaryType,
+                            Set<Name> mixinTypes,
+                            Properties properties ) {
+            if (added == failAfter) throw new IllegalStateException("Failing after " + failAfter + " nodes");
+            ++added;
+            return delegate.add(workspace, key, path, primaryType, mixinTypes, properties);
+        }
+
+        @Override
+        public boolean remove( String workspace,
+                               NodeKey key ) {
+            return delegate.remove(workspace, key);
+        }
+
+        @Override
+        public void commit( String workspace ) {
+            delegate.commit(workspace);
+        }
+    }
 }
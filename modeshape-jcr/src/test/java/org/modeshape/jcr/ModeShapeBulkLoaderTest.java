@@ -0,0 +1,278 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.jcr.ItemExistsException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.nodetype.ConstraintViolationException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+import javax.jcr.query.Query;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.modeshape.jcr.api.BulkLoader;
+import org.modeshape.jcr.api.BulkLoader.NodeDescriptor;
+
+/**
+ * Unit test for the {@link ModeShapeBulkLoader}.
+ */
+public class ModeShapeBulkLoaderTest extends MultiUseAbstractTest {
+
+    @BeforeClass
+    public static final void beforeAll() throws Exception {
+        MultiUseAbstractTest.beforeAll();
+        registerNodeTypes("cnd/large-collections.cnd");
+    }
+
+    @AfterClass
+    public static final void afterAll() throws Exception {
+        MultiUseAbstractTest.afterAll();
+    }
+
+    @Override
+    public void beforeEach() throws Exception {
+        super.beforeEach();
+        session.getRootNode().addNode("parent");
+        session.save();
+    }
+
+    @Override
+    public void afterEach() throws Exception {
+        NodeIterator nodeIterator = session.getRootNode().getNodes();
+        while (nodeIterator.hasNext()) {
+            Node node = nodeIterator.nextNode();
+            if (!JcrLexicon.SYSTEM.getString().equals(node.getName())) {
+                node.remove();
+            }
+        }
+        session.save();
+        super.afterEach();
+    }
+
+    @Test
+    public void shouldLoadNestedNodesInBatches() throws Exception {
+        ValueFactory valueFactory = session.getValueFactory();
+        List<NodeDescriptor> nodes = new ArrayList<>();
+        for (int i = 0; i != 10; ++i) {
+            nodes.add(new NodeDescriptor("node" + i, "nt:unstructured").setProperty("index", valueFactory.createValue(i)));
+            for (int j = 0; j != 3; ++j) {
+                nodes.add(new NodeDescriptor("node" + i + "/child" + j, "nt:unstructured").setProperty("tags", new Value[] {
+                    valueFactory.createValue("a"), valueFactory.createValue("b")}));
+            }
+        }
+        nodes.add(new NodeDescriptor("ref", "nt:unstructured").addMixin("mix:referenceable").setIdentifier("bulk-loaded-id"));
+
+        BulkLoader loader = session.getWorkspace().getBulkLoader();
+        assertEquals(41, loader.load("/parent", nodes.iterator(), 7));
+
+        Node parent = session.getNode("/parent");
+        assertEquals(11, parent.getNodes().getSize());
+        for (int i = 0; i != 10; ++i) {
+            Node node = session.getNode("/parent/node" + i);
+            assertEquals(i, node.getProperty("index").getLong());
+            assertEquals(PropertyType.LONG, node.getProperty("index").getType());
+            assertEquals(3, node.getNodes().getSize());
+            Node child = node.getNode("child2");
+            assertTrue(child.getProperty("tags").isMultiple());
+            assertEquals(2, child.getProperty("tags").getValues().length);
+        }
+        Node ref = session.getNodeByIdentifier("bulk-loaded-id");
+        assertEquals("/parent/ref", ref.getPath());
+        assertEquals("bulk-loaded-id", ref.getProperty("jcr:uuid").getString());
+        assertTrue(ref.isNodeType("mix:referenceable"));
+        assertFalse(session.hasPendingChanges());
+
+        // the loaded nodes can be changed like any other node ...
+        session.getNode("/parent/node3/child1").remove();
+        session.save();
+        assertEquals(2, session.getNode("/parent/node3").getNodes().getSize());
+
+        assertNodesAreFound("SELECT [jcr:path] FROM [nt:unstructured] WHERE [index] = 5", Query.JCR_SQL2, "/parent/node5");
+    }
+
+    @Test
+    public void shouldLoadChildrenIntoUnorderedCollection() throws Exception {
+        List<NodeDescriptor> nodes = new ArrayList<>();
+        nodes.add(new NodeDescriptor("collection", "test:smallCollection"));
+        for (int i = 0; i != 50; ++i) {
+            nodes.add(new NodeDescriptor("collection/child" + i, "nt:unstructured"));
+        }
+        assertEquals(51, session.getWorkspace().getBulkLoader().load("/parent", nodes.iterator(), 20));
+
+        Node collection = session.getNode("/parent/collection");
+        assertEquals(50, collection.getNodes().getSize());
+        assertEquals("/parent/collection/child42", session.getNode("/parent/collection/child42").getPath());
+
+        // and later loads append to the existing collection ...
+        nodes.clear();
+        for (int i = 50; i != 60; ++i) {
+            nodes.add(new NodeDescriptor("child" + i, "nt:unstructured"));
+        }
+        session.getWorkspace().getBulkLoader().load("/parent/collection", nodes.iterator());
+        assertEquals(60, session.getNode("/parent/collection").getNodes().getSize());
+    }
+
+    @Test
+    public void shouldConvertValuesToTheRequiredTypeAndAutoCreateProperties() throws Exception {
+        ValueFactory valueFactory = session.getValueFactory();
+        Calendar lastModified = Calendar.getInstance();
+        List<NodeDescriptor> nodes = new ArrayList<>();
+        nodes.add(new NodeDescriptor("folder", "nt:folder"));
+        nodes.add(new NodeDescriptor("folder/file", "nt:file"));
+        nodes.add(new NodeDescriptor("folder/file/jcr:content", "nt:resource")
+                          .setProperty("jcr:data", valueFactory.createValue(valueFactory.createBinary(new ByteArrayInputStream(
+                                                                                                                             "content".getBytes()))))
+                          .setProperty("jcr:lastModified", valueFactory.createValue(valueFactory.createValue(lastModified)
+                                                                                                .getString())));
+        session.getWorkspace().getBulkLoader().load("/parent", nodes.iterator());
+
+        Node content = session.getNode("/parent/folder/file/jcr:content");
+        assertEquals(PropertyType.DATE, content.getProperty("jcr:lastModified").getType());
+        assertEquals(lastModified.getTimeInMillis(), content.getProperty("jcr:lastModified").getDate().getTimeInMillis());
+        assertEquals("content".length(), content.getProperty("jcr:data").getBinary().getSize());
+        assertTrue(session.getNode("/parent/folder").hasProperty("jcr:created"));
+        assertEquals(session.getUserID(), session.getNode("/parent/folder").getProperty("jcr:createdBy").getString());
+    }
+
+    @Test
+    public void shouldLoadSameNameSiblingsAtTheirIndexes() throws Exception {
+        session.getNode("/parent").addNode("x");
+        session.save();
+        final List<String> addedPaths = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch latch = new CountDownLatch(5);
+        EventListener listener = new EventListener() {
+            @Override
+            public void onEvent( EventIterator events ) {
+                while (events.hasNext()) {
+                    try {
+                        addedPaths.add(events.nextEvent().getPath());
+                    } catch (RepositoryException e) {
+                        throw new RuntimeException(e);
+                    }
+                    latch.countDown();
+                }
+            }
+        };
+        ObservationManager observationManager = session.getWorkspace().getObservationManager();
+        observationManager.addEventListener(listener, Event.NODE_ADDED, "/parent", true, null, null, false);
+        try {
+            List<NodeDescriptor> nodes = new ArrayList<>();
+            nodes.add(new NodeDescriptor("x", "nt:unstructured"));
+            nodes.add(new NodeDescriptor("x[2]/a", "nt:unstructured"));
+            nodes.add(new NodeDescriptor("x[2]/a", "nt:unstructured").setProperty("second", session.getValueFactory()
+                                                                                                      .createValue(true)));
+            nodes.add(new NodeDescriptor("x[2]/a[2]/b", "nt:unstructured"));
+            nodes.add(new NodeDescriptor("x[3]", "nt:unstructured"));
+            session.getWorkspace().getBulkLoader().load("/parent", nodes.iterator(), 2);
+
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            Collections.sort(addedPaths);
+            assertEquals(Arrays.asList("/parent/x[2]", "/parent/x[2]/a", "/parent/x[2]/a[2]", "/parent/x[2]/a[2]/b",
+                                       "/parent/x[3]"), addedPaths);
+        } finally {
+            observationManager.removeEventListener(listener);
+        }
+        assertEquals(3, session.getNode("/parent").getNodes("x").getSize());
+        assertTrue(session.getNode("/parent/x[2]/a[2]").getProperty("second").getBoolean());
+        assertEquals("/parent/x[2]/a[2]/b", session.getNode("/parent/x[2]/a[2]/b").getPath());
+        assertNodesAreFound("SELECT [jcr:path] FROM [nt:unstructured] WHERE [second] = true", Query.JCR_SQL2,
+                            "/parent/x[2]/a[2]");
+
+        // the index of a same-name sibling may be given, but only if it is the next one ...
+        try {
+            session.getWorkspace().getBulkLoader().load("/parent", Arrays.asList(new NodeDescriptor("x[5]", "nt:unstructured"))
+                                                                          .iterator());
+            fail("Expected a PathNotFoundException");
+        } catch (PathNotFoundException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldNotLoadSameNameSiblingsThatAreNotAllowed() throws Exception {
+        List<NodeDescriptor> nodes = new ArrayList<>();
+        nodes.add(new NodeDescriptor("folder", "nt:folder"));
+        nodes.add(new NodeDescriptor("folder/sub", "nt:folder"));
+        nodes.add(new NodeDescriptor("folder/sub", "nt:folder"));
+        try {
+            session.getWorkspace().getBulkLoader().load("/parent", nodes.iterator());
+            fail("Expected an ItemExistsException");
+        } catch (ItemExistsException e) {
+            // expected
+        }
+        assertEquals(0, session.getNode("/parent").getNodes().getSize());
+    }
+
+    @Test
+    public void shouldNotLoadNodesThatAreNotInDocumentOrder() throws Exception {
+        List<NodeDescriptor> nodes = new ArrayList<>();
+        nodes.add(new NodeDescriptor("a", "nt:unstructured"));
+        nodes.add(new NodeDescriptor("b/c", "nt:unstructured"));
+        try {
+            session.getWorkspace().getBulkLoader().load("/parent", nodes.iterator());
+            fail("Expected a PathNotFoundException");
+        } catch (PathNotFoundException e) {
+            // expected
+        }
+        assertFalse(session.getNode("/parent").hasNode("a"));
+    }
+
+    @Test
+    public void shouldNotLoadNodesThatViolateTheNodeTypes() throws Exception {
+        ValueFactory valueFactory = session.getValueFactory();
+        assertNotLoaded(new NodeDescriptor("folder", "nt:folder"), new NodeDescriptor("folder/child", "nt:unstructured"));
+        assertNotLoaded(new NodeDescriptor("resource", "nt:resource"));
+        assertNotLoaded(new NodeDescriptor("folder", "nt:folder").setProperty("undefined", valueFactory.createValue("x")));
+        assertNotLoaded(new NodeDescriptor("versionable", "nt:unstructured").addMixin("mix:versionable"));
+        Value reference = valueFactory.createValue(session.getNode("/parent").getIdentifier(), PropertyType.WEAKREFERENCE);
+        assertNotLoaded(new NodeDescriptor("referrer", "nt:unstructured").setProperty("ref", reference));
+    }
+
+    private void assertNotLoaded( NodeDescriptor... nodes ) throws Exception {
+        List<NodeDescriptor> list = new ArrayList<>();
+        for (NodeDescriptor node : nodes) {
+            list.add(node);
+        }
+        try {
+            session.getWorkspace().getBulkLoader().load("/parent", list.iterator());
+            fail("Expected a ConstraintViolationException for " + list);
+        } catch (ConstraintViolationException e) {
+            // expected
+        }
+        assertEquals(0, session.getNode("/parent").getNodes().getSize());
+    }
+}
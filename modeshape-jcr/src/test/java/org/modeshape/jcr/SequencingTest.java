@@ -27,6 +27,7 @@ import javax.jcr.Node;
 import org.junit.Test;
 import org.modeshape.common.FixFor;
 import org.modeshape.common.collection.Problems;
+import org.modeshape.common.util.FileUtil;
 import org.modeshape.jcr.RepositoryConfiguration.FieldName;
 import org.modeshape.jcr.sequencer.AbstractSequencerTest;
 import org.modeshape.schematic.Schematic;
@@ -147,6 +148,115 @@ public class SequencingTest extends AbstractSequencerTest {
         assertThat(session.getRootNode().hasNode("output/foo"), is(false));
     }
 
+    @Test
+    public void shouldRunFailedSequencingWorkAgainWhenRetriesAreConfigured() throws Exception {
+        EditableDocument doc = Schematic.newDocument();
+        addSequencer(doc, "seq1", TestSequencersHolder.FaultyDuringFirstExecute.class.getName(), "/foo[@bar] => /output");
+        doc.getOrCreateDocument(FieldName.SEQUENCING).set(FieldName.MAX_RETRIES, 1);
+        TestSequencersHolder.FaultyDuringFirstExecute.EXECUTE_CALL_COUNTER.set(0);
+        startRepositoryWithConfiguration(doc);
+
+        // Now use a session to add a '/foo' node with a 'bar' property ...
+        Node foo = session.getRootNode().addNode("foo");
+        foo.setProperty("bar", "value of bar");
+        session.save();
+
+        // The first attempt fails, but the second one should produce the output ...
+        Node fooOutput = getOutputNode("/output/foo");
+        assertThat(fooOutput, is(notNullValue()));
+        assertNotNull(session.getNode("/output/foo/" + TestSequencersHolder.DERIVED_NODE_NAME));
+        assertEquals(2, TestSequencersHolder.FaultyDuringFirstExecute.EXECUTE_CALL_COUNTER.get());
+    }
+
+    @Test
+    public void shouldSaveOutputOfBatchedSequencingWorkAndIsolateFailedItems() throws Exception {
+        EditableDocument doc = Schematic.newDocument();
+        addSequencer(doc, "seq1", TestSequencersHolder.FaultyForBadInputs.class.getName(), "/items/(*)[@bar] => /output");
+        doc.getOrCreateDocument(FieldName.SEQUENCING).set(FieldName.OUTPUT_BATCH_SIZE, 10);
+        startRepositoryWithConfiguration(doc);
+
+        // Save several inputs at once, so that they are sequenced in the same batch ...
+        Node items = session.getRootNode().addNode("items");
+        for (int i = 1; i <= 5; i++) {
+            items.addNode("item" + i).setProperty("bar", "value of bar");
+        }
+        Node bad = items.addNode("bad");
+        bad.setProperty("bar", "value of bar");
+        session.save();
+
+        for (int i = 1; i <= 5; i++) {
+            assertNotNull(getOutputNode("/output/item" + i));
+            assertNotNull(session.getNode("/output/item" + i + "/" + TestSequencersHolder.DERIVED_NODE_NAME));
+        }
+        expectSequencingFailure(bad);
+        assertThat(session.getRootNode().hasNode("output/bad"), is(false));
+    }
+
+    @Test
+    public void shouldRunAllQueuedSequencingWorkWithSingleThread() throws Exception {
+        EditableDocument doc = Schematic.newDocument();
+        addSequencer(doc, "seq1", TestSequencersHolder.SlowSequencer.class.getName(), "/items/(*)[@bar] => /output");
+        doc.getOrCreateDocument(FieldName.SEQUENCING).set(FieldName.MAX_POOL_SIZE, 1);
+        startRepositoryWithConfiguration(doc);
+
+        // Save each input separately, so that the work is queued while the only thread is still busy ...
+        Node items = session.getRootNode().addNode("items");
+        session.save();
+        for (int i = 1; i <= 5; i++) {
+            items.addNode("item" + i).setProperty("bar", "value of bar");
+            session.save();
+        }
+
+        for (int i = 1; i <= 5; i++) {
+            assertNotNull("Item " + i + " was not sequenced", getOutputNode("/output/item" + i, 5));
+        }
+    }
+
+    @Test
+    public void shouldRunSequencingWorkRecordedInQueueLocation() throws Exception {
+        FileUtil.delete("target/sequencing_queue");
+        EditableDocument doc = Schematic.newDocument();
+        addSequencer(doc, "seq1", TestSequencersHolder.SlowSequencer.class.getName(), "/items/(*)[@bar] => /output");
+        doc.getOrCreateDocument(FieldName.SEQUENCING).set(FieldName.MAX_POOL_SIZE, 1).set(FieldName.MAX_QUEUE_SIZE, 1)
+           .set(FieldName.QUEUE_LOCATION, "target/sequencing_queue");
+        startRepositoryWithConfiguration(doc);
+
+        // The work that does not fit in memory waits in the queue location ...
+        Node items = session.getRootNode().addNode("items");
+        for (int i = 1; i <= 3; i++) {
+            items.addNode("item" + i).setProperty("bar", "value of bar");
+        }
+        session.save();
+
+        for (int i = 1; i <= 3; i++) {
+            assertNotNull("Item " + i + " was not sequenced", getOutputNode("/output/item" + i, 5));
+        }
+    }
+
+    @Test
+    public void shouldNotSequenceWorkThatDoesNotFitInFullQueueWithoutLocation() throws Exception {
+        EditableDocument doc = Schematic.newDocument();
+        addSequencer(doc, "seq1", TestSequencersHolder.SlowSequencer.class.getName(), "/items/(*)[@bar] => /output");
+        doc.getOrCreateDocument(FieldName.SEQUENCING).set(FieldName.MAX_POOL_SIZE, 1).set(FieldName.MAX_QUEUE_SIZE, 1);
+        startRepositoryWithConfiguration(doc);
+
+        // Save all inputs at once, so that the work is submitted together and only the first item fits in the queue ...
+        Node items = session.getRootNode().addNode("items");
+        for (int i = 1; i <= 3; i++) {
+            items.addNode("item" + i).setProperty("bar", "value of bar");
+        }
+        session.save();
+
+        assertNotNull(getOutputNode("/output/item1", 5));
+
+        // The processing of changes is not blocked, so the work for later changes is accepted once there is room ...
+        items.addNode("item4").setProperty("bar", "value of bar");
+        session.save();
+        assertNotNull(getOutputNode("/output/item4", 5));
+        assertThat(session.getRootNode().hasNode("output/item2"), is(false));
+        assertThat(session.getRootNode().hasNode("output/item3"), is(false));
+    }
+
     /**
      * Sequencer path expressions are matching expressions, and therefore we cannot verify that they actually represent paths. So,
      * even though this is an valid path expression, it won't match any real paths.
@@ -82,6 +82,54 @@ public class TestSequencersHolder {
         }
     }
 
+    /**
+     * A sequencer that takes a while to execute, and then behaves like the {@link DefaultSequencer}.
+     */
+    public static class SlowSequencer extends DefaultSequencer {
+        @Override
+        public boolean execute( Property inputProperty,
+                                Node outputNode,
+                                Context context ) throws Exception {
+            Thread.sleep(100);
+            return super.execute(inputProperty, outputNode, context);
+        }
+    }
+
+    /**
+     * A sequencer that fails the first time it is executed, and then behaves like the {@link DefaultSequencer}.
+     */
+    public static class FaultyDuringFirstExecute extends DefaultSequencer {
+        public static final AtomicInteger EXECUTE_CALL_COUNTER = new AtomicInteger();
+
+        @Override
+        public boolean execute( Property inputProperty,
+                                Node outputNode,
+                                Context context ) throws Exception {
+            if (EXECUTE_CALL_COUNTER.incrementAndGet() == 1) {
+                throw new IllegalStateException("We're expecting to get this exception the first time");
+            }
+            return super.execute(inputProperty, outputNode, context);
+        }
+    }
+
+    /**
+     * A sequencer that fails for the input nodes whose name starts with "bad", and otherwise behaves like the
+     * {@link DefaultSequencer}.
+     */
+    public static class FaultyForBadInputs extends DefaultSequencer {
+        @Override
+        public boolean execute( Property inputProperty,
+                                Node outputNode,
+                                Context context ) throws Exception {
+            if (inputProperty.getParent().getName().startsWith("bad")) {
+                // write some output first, which should be discarded ...
+                outputNode.addNode(DERIVED_NODE_NAME);
+                throw new IllegalStateException("We're expecting to get this exception for " + inputProperty.getPath());
+            }
+            return super.execute(inputProperty, outputNode, context);
+        }
+    }
+
     /**
      * A sequencer which has different property types and is used to test the setting of property values.
      */
@@ -16,7 +16,19 @@
 
 package org.modeshape.jcr.bus;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.modeshape.common.collection.ring.BlockingWaitStrategy;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetListener;
 
 /**
  * Unit test for {@link RepositoryChangeBus}
@@ -29,4 +41,106 @@ public class RepositoryChangeBusTest extends AbstractChangeBusTest {
     protected ChangeBus createRepositoryChangeBus() throws Exception {
         return new RepositoryChangeBus("repo", Executors.newCachedThreadPool());
     }
+
+    @Test
+    public void shouldPassAllAvailableChangeSetsToSlowListenerAtOnce() throws Exception {
+        BatchingListener listener = new BatchingListener(10);
+        changeBus.register(listener);
+
+        List<ChangeSet> changes = new ArrayList<>();
+        for (int i = 0; i != 10; ++i) {
+            TestChangeSet changeSet = new TestChangeSet(WORKSPACE1);
+            changes.add(changeSet);
+            changeBus.notify(changeSet);
+        }
+        // The listener is still stuck on the first change set, so it has yet to process the others ...
+        assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+        assertTrue(((RepositoryChangeBus)changeBus).getListenerLags().get(listener) >= 0L);
+        listener.release.countDown();
+
+        assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        assertEquals(changes, listener.received);
+        assertTrue("Expected the change sets to be batched, but got " + listener.batchSizes, listener.batchSizes.size() < 10);
+    }
+
+    @Test
+    public void shouldNotifyListenersOneChangeSetAtATimeWhenBatchingIsDisabled() throws Exception {
+        changeBus.shutdown();
+        changeBus = new RepositoryChangeBus("repo", Executors.newCachedThreadPool(), null, 1024, new BlockingWaitStrategy(), 1);
+        changeBus.start();
+        BatchingListener listener = new BatchingListener(5);
+        changeBus.register(listener);
+        for (int i = 0; i != 5; ++i) {
+            changeBus.notify(new TestChangeSet(WORKSPACE1));
+        }
+        listener.release.countDown();
+        assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        assertEquals(5, listener.received.size());
+        assertTrue(listener.batchSizes.isEmpty());
+    }
+
+    @Test
+    public void shouldNotifyInThreadListenersBeforeAsynchronousListeners() throws Exception {
+        AtomicInteger published = new AtomicInteger();
+        changeBus.registerInThread(changeSet -> {
+            try {
+                // give the asynchronous listener a chance to see the change set first ...
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            published.incrementAndGet();
+        });
+        List<Integer> publishedWhenSeen = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(5);
+        changeBus.register(changeSet -> {
+            publishedWhenSeen.add(published.get());
+            done.countDown();
+        });
+        for (int i = 0; i != 5; ++i) {
+            changeBus.notify(new TestChangeSet(WORKSPACE1));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i != 5; ++i) {
+            assertTrue("Change set " + i + " was seen before it was published", publishedWhenSeen.get(i) > i);
+        }
+    }
+
+    protected static class BatchingListener implements ChangeSetListener {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch done;
+        private final List<ChangeSet> received = new ArrayList<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        protected BatchingListener( int expectedNumberOfEvents ) {
+            this.done = new CountDownLatch(expectedNumberOfEvents);
+        }
+
+        @Override
+        public void notify( ChangeSet changeSet ) {
+            waitForRelease();
+            received.add(changeSet);
+            done.countDown();
+        }
+
+        @Override
+        public void notify( List<ChangeSet> changeSets ) {
+            waitForRelease();
+            batchSizes.add(changeSets.size());
+            for (ChangeSet changeSet : changeSets) {
+                received.add(changeSet);
+                done.countDown();
+            }
+        }
+
+        private void waitForRelease() {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
@@ -16,6 +16,7 @@
 package org.modeshape.jcr.cache.document;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import java.util.Arrays;
@@ -26,6 +27,7 @@ import org.junit.Test;
 import org.modeshape.jcr.ExecutionContext;
 import org.modeshape.jcr.RepositoryEnvironment;
 import org.modeshape.jcr.cache.ChildReference;
+import org.modeshape.jcr.cache.ChildReferences;
 import org.modeshape.jcr.cache.MutableCachedNode;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.SessionCache;
@@ -172,6 +174,110 @@ public class DocumentOptimizerTest extends AbstractSessionCacheTest {
         print(document(key), true);
     }
 
+    @Test
+    public void shouldIndexChildReferenceBlocksForLookupsByNameAndPosition() throws Exception {
+        MutableCachedNode nodeB = check(session1).mutableNode("/childB");
+        NodeKey key = nodeB.getKey().withId("parent");
+        MutableCachedNode parent = nodeB.createChild(session(), key, name("parent"), property("p1a", 0));
+        for (int i = 0; i != 20; ++i) {
+            parent.createChild(session(), key.withId("item" + i), name("item" + i), property("p1a", i));
+            parent.createChild(session(), key.withId("sns" + i), name("sns"), property("p1a", i));
+        }
+        session1.save();
+
+        assertThat(workspaceCache.documentStore().containsKey(ChildReferencesIndex.indexKey(key.toString())), is(false));
+        runInTransaction(() -> optimizer.optimizeChildrenBlocks(key, null, 5, 2)); // will split and index the blocks ...
+        assertThat(workspaceCache.documentStore().containsKey(ChildReferencesIndex.indexKey(key.toString())), is(true));
+
+        workspaceCache.clear();
+        ChildReferences refs = workspaceCache.getNode(key).getChildReferences(workspaceCache);
+        assertThat(refs.size(), is(40L));
+        assertThat(refs.getChild(name("item13")).getKey(), is(key.withId("item13")));
+        assertThat(refs.getChild(name("missing")), is(nullValue()));
+        assertThat(refs.getChildCount(name("sns")), is(20));
+        ChildReference sns = refs.getChild(name("sns"), 17);
+        assertThat(sns.getKey(), is(key.withId("sns16")));
+        assertThat(sns.getSnsIndex(), is(17));
+        assertThat(refs.getChild(name("sns"), 21), is(nullValue()));
+        Iterator<ChildReference> iter = refs.iterator(29);
+        assertThat(iter.next().getKey(), is(key.withId("sns14")));
+        assertThat(iter.next().getKey(), is(key.withId("item15")));
+        assertThat(refs.iterator(40).hasNext(), is(false));
+
+        // The index is updated when children are appended ...
+        parent = check(session1).mutableNode("/childB/parent");
+        parent.createChild(session(), key.withId("sns20"), name("sns"), property("p1a", 20));
+        session1.save();
+
+        workspaceCache.clear();
+        refs = workspaceCache.getNode(key).getChildReferences(workspaceCache);
+        assertThat(refs.getChildCount(name("sns")), is(21));
+        assertThat(refs.getChild(name("sns"), 21).getKey(), is(key.withId("sns20")));
+        assertThat(refs.iterator(40).next().getKey(), is(key.withId("sns20")));
+    }
+
+    @Test
+    public void shouldSplitAndMergeChangedBlocksWhenSaved() throws Exception {
+        workspaceCache.translator().setChildrenBlockSize(5, 2);
+        MutableCachedNode nodeB = check(session1).mutableNode("/childB");
+        NodeKey key = nodeB.getKey().withId("parent");
+        nodeB.createChild(session(), key, name("parent"), property("p1a", 0));
+        MutableCachedNode other = nodeB.createChild(session(), key.withId("other"), name("other"), property("p1a", 0));
+        session1.save();
+
+        // Each save appends to the last block, which is split as soon as it gets too big ...
+        int count = 0;
+        for (int i = 0; i != 4; ++i) {
+            MutableCachedNode parent = check(session1).mutableNode("/childB/parent");
+            for (int j = 0; j != 6; ++j, ++count) {
+                parent.createChild(session(), key.withId("c" + count), name("c" + count), property("p1a", count));
+            }
+            session1.save();
+            assertBlocks(key, 0, count);
+        }
+        assertThat(workspaceCache.documentStore().containsKey(ChildReferencesIndex.indexKey(key.toString())), is(true));
+        workspaceCache.clear();
+        ChildReferences refs = workspaceCache.getNode(key).getChildReferences(workspaceCache);
+        assertThat(refs.getChild(name("c17")).getKey(), is(key.withId("c17")));
+        assertThat(refs.iterator(20).next().getKey(), is(key.withId("c20")));
+
+        // Moving away the children in the first block leaves it too small, so it is merged with the next block ...
+        MutableCachedNode parent = check(session1).mutableNode("/childB/parent");
+        other = check(session1).mutableNode("/childB/other");
+        for (int i = 0; i != 5; ++i) {
+            parent.moveChild(session1, key.withId("c" + i), other, name("c" + i));
+        }
+        session1.save();
+        assertBlocks(key, 5, count);
+        workspaceCache.clear();
+        refs = workspaceCache.getNode(key).getChildReferences(workspaceCache);
+        assertThat(refs.size(), is(19L));
+        assertThat(refs.getChild(name("c17")).getKey(), is(key.withId("c17")));
+        assertThat(refs.iterator(0).next().getKey(), is(key.withId("c5")));
+        assertThat(refs.iterator(15).next().getKey(), is(key.withId("c20")));
+    }
+
+    protected void assertBlocks( NodeKey key,
+                                 int first,
+                                 int end ) {
+        Document doc = document(key);
+        int expected = first;
+        while (doc != null) {
+            List<?> children = doc.getArray(DocumentTranslator.CHILDREN);
+            Document info = doc.getDocument(DocumentTranslator.CHILDREN_INFO);
+            String nextKey = info != null ? info.getString(DocumentTranslator.NEXT_BLOCK) : null;
+            assertThat("Block has too many children: " + children.size(), children.size() <= 7, is(true));
+            if (nextKey != null) {
+                assertThat("Block has too few children: " + children.size(), children.size() >= 3, is(true));
+            }
+            for (Object child : children) {
+                assertThat(workspaceCache.translator().childReferenceFrom(child).getKey(), is(key.withId("c" + expected++)));
+            }
+            doc = nextKey != null ? workspaceCache.documentStore().get(nextKey).content() : null;
+        }
+        assertThat(expected, is(end));
+    }
+
     protected Document document( NodeKey key ) {
         SchematicEntry entry = workspaceCache.documentStore().get(key.toString());
         return entry.content();
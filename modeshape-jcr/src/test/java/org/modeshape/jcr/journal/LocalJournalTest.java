@@ -26,6 +26,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -118,6 +121,32 @@ public class LocalJournalTest {
         assertEquals(initialRecordCount + 3, journal.allRecords(false).size());
     }
 
+    @Test
+    public void shouldAddRecordsConcurrently() throws Exception {
+        int initialRecordCount = journal.allRecords(false).size();
+        int threadCount = 8;
+        int recordsPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < recordsPerThread; j++) {
+                        journal.notify(TestChangeSet.create("j5", 1));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // the records are committed before 'notify' returns ...
+        assertEquals(initialRecordCount + threadCount * recordsPerThread, journal.allRecords(false).size());
+    }
+
     @Test
     public void shouldReturnLastRecord() throws Exception {
         JournalRecord lastRecord = journal.lastRecord();
@@ -329,5 +358,10 @@ public class LocalJournalTest {
             Thread.sleep(1);
             return new TestChangeSet(changes, journalId, nodeChanges);
         }
+
+        static ChangeSet create( String journalId,
+                                 List<Change> changes ) {
+            return new TestChangeSet(changes, journalId, new HashSet<NodeKey>());
+        }
     }
 }
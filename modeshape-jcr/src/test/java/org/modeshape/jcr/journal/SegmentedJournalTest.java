@@ -0,0 +1,211 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.modeshape.jcr.cache.change.Change;
+import org.modeshape.jcr.cache.change.ChangeSet;
+
+/**
+ * Unit test for {@link SegmentedJournal}, which runs all of the {@link LocalJournalTest} tests against small segments.
+ */
+public class SegmentedJournalTest extends LocalJournalTest {
+
+    private static final int SEGMENT_SIZE = 4 * 1024;
+
+    @Override
+    protected ChangeJournal journal() throws Exception {
+        return new SegmentedJournal("target/local_journal", false, -1, 1000, 0L, SEGMENT_SIZE);
+    }
+
+    protected SegmentedJournal segmentedJournal() {
+        return (SegmentedJournal)journal;
+    }
+
+    @Test
+    public void shouldRollOverToNewSegmentsAndKeepRecordsAfterRestart() throws Exception {
+        int initialRecordCount = journal.allRecords(false).size();
+        int entriesCount = 50;
+        for (int i = 0; i < entriesCount; i++) {
+            journal.notify(TestChangeSet.create("j1", 10));
+        }
+        assertTrue(segmentedJournal().segmentCount() > 1);
+        JournalRecord lastRecord = journal.lastRecord();
+
+        journal.shutdown();
+        journal.start();
+        assertEquals(initialRecordCount + entriesCount, journal.allRecords(false).size());
+        assertEquals(lastRecord, journal.lastRecord());
+        assertEquals(lastRecord.getTimeBasedKey(), journal.lastRecord().getTimeBasedKey());
+        assertEquals(lastRecord, journal.allRecords(true).iterator().next());
+
+        // and the journal should continue appending after the existing records ...
+        journal.notify(TestChangeSet.create("j2", 1));
+        assertEquals(initialRecordCount + entriesCount + 1, journal.allRecords(false).size());
+        assertEquals("j2", journal.lastRecord().getJournalId());
+    }
+
+    @Test
+    public void shouldDeleteWholeSegmentsWhenRemovingOldRecords() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            journal.notify(TestChangeSet.create("j1", 10));
+        }
+        Thread.sleep(1);
+        long currentMillis = System.currentTimeMillis();
+        Thread.sleep(1);
+        ChangeSet newest = TestChangeSet.create("j2", 1);
+        journal.notify(newest);
+        int segmentCount = segmentedJournal().segmentCount();
+
+        segmentedJournal().removeRecordsOlderThan(currentMillis);
+        assertEquals(1, journal.allRecords(false).size());
+        assertTrue(segmentedJournal().segmentCount() < segmentCount);
+
+        // the retention bound survives a restart, even for records in segments that were not deleted ...
+        journal.shutdown();
+        journal.start();
+        assertEquals(1, journal.allRecords(false).size());
+        assertEquals("j2", journal.lastRecord().getJournalId());
+    }
+
+    @Test
+    public void shouldIgnorePartiallyWrittenRecordWhenRestarting() throws Exception {
+        int recordCount = journal.allRecords(false).size();
+        journal.shutdown();
+
+        // corrupt the content of the last record, as if the process had stopped while writing it ...
+        File[] segments = segmentFiles();
+        Arrays.sort(segments);
+        try (RandomAccessFile file = new RandomAccessFile(segments[segments.length - 1], "rw")) {
+            long offset = findLastNonZero(file) - 10;
+            assertTrue(offset > 0);
+            file.seek(offset);
+            file.write(new byte[] {1, 2, 3, 4});
+        }
+        journal.start();
+        assertEquals(recordCount - 1, journal.allRecords(false).size());
+        journal.notify(TestChangeSet.create("j5", 1));
+        assertEquals(recordCount, journal.allRecords(false).size());
+        assertEquals("j5", journal.lastRecord().getJournalId());
+    }
+
+    @Test
+    public void shouldOrderRecordsFromOtherProcessesByTheirOriginalKeys() throws Exception {
+        // records made by another process, which this process receives (with their original keys) only later ...
+        Thread.sleep(1);
+        List<JournalRecord> remoteRecords = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ChangeSet changeSet = TestChangeSet.create("remote", 1);
+            remoteRecords.add(new JournalRecord(changeSet).withTimeBasedKey(LocalJournal.TIME_BASED_KEYS.nextKey()));
+        }
+        LocalDateTime firstRemoteTime = remoteRecords.get(0).getChangeSet().getTimestamp().toLocalDateTime();
+        Thread.sleep(1);
+        long afterRemoteChanges = System.currentTimeMillis();
+        Thread.sleep(1);
+        for (int i = 0; i < 50; i++) {
+            journal.notify(TestChangeSet.create("j1", 10));
+        }
+        JournalRecord newest = journal.lastRecord();
+        journal.addRecords(remoteRecords.toArray(new JournalRecord[remoteRecords.size()]));
+        assertTrue(segmentedJournal().segmentCount() > 1);
+
+        // the last record is still the newest one, and all of the records are returned in the order of their keys ...
+        assertEquals(newest.getTimeBasedKey(), journal.lastRecord().getTimeBasedKey());
+        assertRecordsInKeyOrder(journal.allRecords(false), 8 + 5 + 50);
+        assertRecordsInKeyOrder(journal.recordsNewerThan(firstRemoteTime, true, false), 5 + 50);
+        assertEquals(remoteRecords.get(0).getTimeBasedKey(),
+                     journal.recordsNewerThan(firstRemoteTime, true, false).iterator().next().getTimeBasedKey());
+
+        // and removing the old records removes the remote ones, even though they were appended after the local ones ...
+        segmentedJournal().removeRecordsOlderThan(afterRemoteChanges);
+        assertRecordsInKeyOrder(journal.allRecords(false), 50);
+        for (JournalRecord record : journal.allRecords(false)) {
+            assertEquals("j1", record.getJournalId());
+        }
+        assertEquals(newest.getTimeBasedKey(), journal.lastRecord().getTimeBasedKey());
+    }
+
+    @Test
+    public void shouldDiscardAllRecordsOfBatchThatCannotBeStored() throws Exception {
+        int recordCount = journal.allRecords(false).size();
+        JournalRecord lastRecord = journal.lastRecord();
+        int segmentCount = segmentedJournal().segmentCount();
+        int segmentFileCount = segmentFiles().length;
+
+        // enough records to fill more than a segment, followed by a record whose changes cannot be serialized ...
+        List<JournalRecord> records = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            records.add(new JournalRecord(TestChangeSet.create("j1", 10)).withTimeBasedKey(LocalJournal.TIME_BASED_KEYS.nextKey()));
+        }
+        Change unserializable = new Change() {
+            private static final long serialVersionUID = 1L;
+        };
+        ChangeSet invalid = TestChangeSet.create("j2", Collections.singletonList(unserializable));
+        records.add(new JournalRecord(invalid).withTimeBasedKey(LocalJournal.TIME_BASED_KEYS.nextKey()));
+        try {
+            segmentedJournal().storeRecords(records);
+            fail("The records should not have been stored");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(segmentCount, segmentedJournal().segmentCount());
+        assertEquals(segmentFileCount, segmentFiles().length);
+        assertEquals(recordCount, journal.allRecords(false).size());
+        assertEquals(lastRecord.getTimeBasedKey(), journal.lastRecord().getTimeBasedKey());
+
+        // the next records are appended where the discarded ones started, and none of the discarded ones are recovered ...
+        journal.notify(TestChangeSet.create("j3", 1));
+        journal.shutdown();
+        journal.start();
+        assertEquals(recordCount + 1, journal.allRecords(false).size());
+        assertEquals("j3", journal.lastRecord().getJournalId());
+        assertRecordsInKeyOrder(journal.allRecords(false), recordCount + 1);
+    }
+
+    private static File[] segmentFiles() {
+        return new File("target/local_journal", SegmentedJournal.SEGMENTS_FOLDER).listFiles();
+    }
+
+    private static void assertRecordsInKeyOrder( ChangeJournal.Records records,
+                                                 int expectedCount ) {
+        long previousKey = -1L;
+        int count = 0;
+        for (JournalRecord record : records) {
+            assertTrue(record.getTimeBasedKey() > previousKey);
+            previousKey = record.getTimeBasedKey();
+            ++count;
+        }
+        assertEquals(expectedCount, count);
+    }
+
+    private static long findLastNonZero( RandomAccessFile file ) throws Exception {
+        for (long position = file.length() - 1; position >= 0; --position) {
+            file.seek(position);
+            if (file.read() != 0) return position;
+        }
+        return -1;
+    }
+}
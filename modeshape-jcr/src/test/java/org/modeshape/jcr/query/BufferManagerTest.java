@@ -21,6 +21,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import org.junit.After;
 import org.junit.Before;
@@ -29,6 +30,8 @@ import org.mapdb.BTreeKeySerializer;
 import org.mapdb.Serializer;
 import org.modeshape.jcr.ExecutionContext;
 import org.modeshape.jcr.query.BufferManager.DistinctBuffer;
+import org.modeshape.jcr.query.BufferManager.MemoryBudget;
+import org.modeshape.jcr.query.BufferManager.QueueBuffer;
 import org.modeshape.jcr.query.BufferManager.SortingBuffer;
 import org.modeshape.jcr.query.model.TypeSystem;
 import org.modeshape.jcr.query.model.TypeSystem.TypeFactory;
@@ -194,4 +197,83 @@ public class BufferManagerTest {
             assertThat(iter.hasNext(), is(false));
         }
     }
+
+    @Test
+    public void shouldSpillDistinctBufferWhenMemoryBudgetIsExceeded() {
+        MemoryBudget repositoryBudget = new MemoryBudget(10, null);
+        try (BufferManager bounded = new BufferManager(context, new MemoryBudget(3, repositoryBudget));
+             DistinctBuffer<String> buffer = bounded.createDistinctBuffer(Serializer.STRING).useHeap(true).keepSize(true)
+                                                    .make()) {
+            assertTrue(buffer.addIfAbsent("first"));
+            assertTrue(buffer.addIfAbsent("second"));
+            assertTrue(buffer.addIfAbsent("third"));
+            assertFalse(buffer.addIfAbsent("first"));
+            assertThat(bounded.getSpilledBufferCount(), is(0L));
+            assertThat(repositoryBudget.getReservedEntries(), is(3L));
+            assertTrue(buffer.addIfAbsent("fourth"));
+            assertThat(bounded.getSpilledBufferCount(), is(1L));
+            assertThat(repositoryBudget.getReservedEntries(), is(0L));
+            assertTrue(buffer.addIfAbsent("fifth"));
+            assertFalse(buffer.addIfAbsent("first"));
+            assertFalse(buffer.addIfAbsent("fourth"));
+            assertThat(buffer.size(), is(5L));
+        }
+        assertThat(repositoryBudget.getReservedEntries(), is(0L));
+    }
+
+    @SuppressWarnings( "unchecked" )
+    @Test
+    public void shouldSpillSortWithDuplicateKeysBufferWhenMemoryBudgetIsExceeded() {
+        TypeFactory<String> stringType = types.getStringFactory();
+        Serializer<String> strSerializer = (Serializer<String>)mgr.serializerFor(stringType);
+        Comparator<String> keyComparator = stringType.getComparator();
+        try (BufferManager bounded = new BufferManager(context, new MemoryBudget(2, null));
+             SortingBuffer<String, String> buffer = bounded.createSortingWithDuplicatesBuffer(strSerializer, keyComparator,
+                                                                                              strSerializer).useHeap(false)
+                                                           .keepSize(true).make()) {
+            buffer.put("value2", "first");
+            buffer.put("value1", "first");
+            buffer.put("value2", "second");
+            buffer.put("value1", "second");
+            assertThat(bounded.getSpilledBufferCount(), is(1L));
+            assertThat(buffer.size(), is(4L));
+
+            Iterator<String> iter = buffer.getAll("value2");
+            assertThat(iter.next(), is("first"));
+            assertThat(iter.next(), is("second"));
+            assertThat(iter.hasNext(), is(false));
+        }
+    }
+
+    @Test
+    public void shouldReleaseMemoryBudgetWhenBufferIsClosed() {
+        MemoryBudget budget = new MemoryBudget(100, null);
+        try (BufferManager bounded = new BufferManager(context, budget)) {
+            try (QueueBuffer<String> buffer = bounded.createQueueBuffer(Serializer.STRING).useHeap(true).make()) {
+                buffer.append("first");
+                buffer.append("second");
+                assertThat(budget.getReservedEntries(), is(2L));
+                Iterator<String> iter = buffer.iterator();
+                assertThat(iter.next(), is("first"));
+                assertThat(iter.next(), is("second"));
+                assertThat(iter.hasNext(), is(false));
+            }
+            assertThat(budget.getReservedEntries(), is(0L));
+            assertThat(bounded.getSpilledBufferCount(), is(0L));
+        }
+    }
+
+    @Test( expected = ConcurrentModificationException.class )
+    public void shouldFailIteratorTakenBeforeBufferWasSpilled() {
+        try (BufferManager bounded = new BufferManager(context, new MemoryBudget(2, null));
+             QueueBuffer<String> buffer = bounded.createQueueBuffer(Serializer.STRING).useHeap(true).make()) {
+            buffer.append("first");
+            buffer.append("second");
+            Iterator<String> iter = buffer.iterator();
+            assertThat(iter.next(), is("first"));
+            buffer.append("third");
+            assertThat(bounded.getSpilledBufferCount(), is(1L));
+            iter.next();
+        }
+    }
 }
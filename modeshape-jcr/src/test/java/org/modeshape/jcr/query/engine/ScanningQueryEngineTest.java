@@ -0,0 +1,126 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.query.engine;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import org.junit.Test;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.SingleUseAbstractTest;
+import org.modeshape.jcr.api.query.qom.Operator;
+import org.modeshape.jcr.query.model.And;
+import org.modeshape.jcr.query.model.Comparison;
+import org.modeshape.jcr.query.model.Constraint;
+import org.modeshape.jcr.query.model.DescendantNode;
+import org.modeshape.jcr.query.model.FullTextSearch;
+import org.modeshape.jcr.query.model.Literal;
+import org.modeshape.jcr.query.model.Or;
+import org.modeshape.jcr.query.model.PropertyExistence;
+import org.modeshape.jcr.query.model.PropertyValue;
+import org.modeshape.jcr.query.model.SelectorName;
+import org.modeshape.jcr.query.optimize.RuleBasedOptimizer;
+import org.modeshape.jcr.query.plan.CanonicalPlanner;
+
+public class ScanningQueryEngineTest extends SingleUseAbstractTest {
+
+    private static final SelectorName SELECTOR = new SelectorName("node");
+
+    @Test
+    public void shouldMatchLikeExpressionsWithoutWildcardsAsEqualValues() throws Exception {
+        createNodes("alpha", "alphabet", "Alpha");
+        assertMatches("LIKE 'alpha'", "alpha");
+        assertMatches("LIKE 'Alpha'", "Alpha");
+        assertMatches("LIKE 'alp'");
+    }
+
+    @Test
+    public void shouldMatchLikeExpressionsWithOnlyTrailingWildcardAsPrefixes() throws Exception {
+        createNodes("alpha", "alphabet", "Alpha", "beta alpha");
+        assertMatches("LIKE 'alpha%'", "alpha", "alphabet");
+        assertMatches("LIKE 'alpha%' AND [value] LIKE '%bet'", "alphabet");
+        assertMatches("LIKE '%'", "alpha", "alphabet", "Alpha", "beta alpha");
+    }
+
+    @Test
+    public void shouldNotMatchValuesWithLineTerminatorsAfterPrefix() throws Exception {
+        createNodes("alpha", "alpha\nbeta", "alpha\r\nbeta", "alpha\u2028beta", "alpha beta");
+        // the '%' of a LIKE expression has never matched line terminators ...
+        assertMatches("LIKE 'alpha%'", "alpha", "alpha beta");
+        assertMatches("LIKE 'alpha\nbeta'", "alpha\nbeta");
+    }
+
+    @Test
+    public void shouldFlattenNestedConjunctionsAndDisjunctions() throws Exception {
+        Constraint a = new PropertyExistence(SELECTOR, "a");
+        Constraint b = new PropertyExistence(SELECTOR, "b");
+        Constraint c = new PropertyExistence(SELECTOR, "c");
+        Constraint d = new PropertyExistence(SELECTOR, "d");
+        Constraint or = new Or(c, d);
+        Constraint and = new And(a, new And(new And(b, or), c));
+        assertThat(ScanningQueryEngine.operandsOf(and, And.class), is(Arrays.asList(a, b, or, c)));
+        assertThat(ScanningQueryEngine.operandsOf(new Or(and, new Or(c, d)), Or.class), is(Arrays.asList(and, c, d)));
+        assertThat(ScanningQueryEngine.operandsOf(a, And.class), is(Arrays.asList(a)));
+    }
+
+    @Test
+    public void shouldOrderOperandsByEstimatedEvaluationCost() throws Exception {
+        Constraint fullText = new FullTextSearch(SELECTOR, null, "alpha", new Literal("alpha"));
+        Constraint descendant = new DescendantNode(SELECTOR, "/a");
+        Constraint like = new Comparison(new PropertyValue(SELECTOR, "p"), Operator.LIKE, new Literal("a%"));
+        Constraint equals = new Comparison(new PropertyValue(SELECTOR, "p"), Operator.EQUAL_TO, new Literal("a"));
+        Constraint exists = new PropertyExistence(SELECTOR, "p");
+        Constraint exists2 = new PropertyExistence(SELECTOR, "q");
+        ScanningQueryEngine engine = new ScanningQueryEngine(new ExecutionContext(), "repo", new CanonicalPlanner(),
+                                                             new RuleBasedOptimizer());
+        List<Constraint> ordered = engine.orderByEvaluationCost(Arrays.asList(fullText, exists, descendant, like, equals,
+                                                                              exists2));
+        // the sort is stable, so the two existence constraints keep their order ...
+        assertThat(ordered, is(Arrays.asList(exists, exists2, equals, like, descendant, fullText)));
+    }
+
+    private void createNodes( String... values ) throws Exception {
+        Session session = session();
+        Node parent = session.getRootNode().addNode("parent");
+        for (int i = 0; i != values.length; ++i) {
+            parent.addNode("node" + i).setProperty("value", values[i]);
+        }
+        session.save();
+    }
+
+    private void assertMatches( String constraint,
+                                String... expectedValues ) throws Exception {
+        String sql = "SELECT [value] FROM [nt:unstructured] AS node WHERE ISCHILDNODE(node, '/parent') AND [value] "
+                     + constraint;
+        Session session = session();
+        Query query = session.getWorkspace().getQueryManager().createQuery(sql, Query.JCR_SQL2);
+        List<String> actual = new ArrayList<>();
+        for (NodeIterator nodes = query.execute().getNodes(); nodes.hasNext();) {
+            actual.add(nodes.nextNode().getProperty("value").getString());
+        }
+        List<String> expected = new ArrayList<>(Arrays.asList(expectedValues));
+        Collections.sort(actual);
+        Collections.sort(expected);
+        assertThat(actual, is(expected));
+    }
+}
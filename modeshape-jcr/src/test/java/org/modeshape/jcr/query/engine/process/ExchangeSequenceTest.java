@@ -0,0 +1,130 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.query.engine.process;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.query.AbstractNodeSequenceTest;
+import org.modeshape.jcr.query.NodeSequence;
+import org.modeshape.jcr.query.NodeSequence.Batch;
+
+public class ExchangeSequenceTest extends AbstractNodeSequenceTest {
+
+    private ThreadPoolExecutor executor;
+
+    @Override
+    @Before
+    public void beforeEach() {
+        super.beforeEach();
+        this.executor = (ThreadPoolExecutor)Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldReturnSameRowsInSameOrderAsDelegate() {
+        List<NodeKey> expected = keysOf(allNodes());
+        NodeSequence exchange = ExchangeSequence.create(allNodes(), executor, 1);
+        assertThat(keysOf(exchange), is(expected));
+    }
+
+    @Test
+    public void shouldReturnSameRowsWhenAppendedToAnotherSequence() {
+        List<NodeKey> expected = keysOf(NodeSequence.append(allNodes(), allNodes()));
+        ExchangeSequence exchange = ExchangeSequence.create(allNodes(), executor, ExchangeSequence.DEFAULT_MAX_QUEUED_BATCHES);
+        assertThat(keysOf(exchange.startedBy(NodeSequence.append(allNodes(), exchange))), is(expected));
+    }
+
+    @Test
+    public void shouldNotStartProducerUntilRowsAreRead() {
+        ExchangeSequence exchange = ExchangeSequence.create(allNodes(), executor, 1);
+        NodeSequence consumer = exchange.startedBy(NodeSequence.append(allNodes(), exchange));
+        assertThat(executor.getTaskCount(), is(0L));
+        consumer.nextBatch();
+        assertThat(executor.getTaskCount(), is(1L));
+        consumer.close();
+    }
+
+    @Test
+    public void shouldNeverStartProducerWhenClosedBeforeRowsAreRead() {
+        ExchangeSequence exchange = ExchangeSequence.create(allNodes(), executor, 1);
+        exchange.close();
+        assertThat(executor.getTaskCount(), is(0L));
+    }
+
+    @Test
+    public void shouldPropagateFailureOfDelegateToConsumer() {
+        NodeSequence failing = new DelegatingSequence(allNodes()) {
+            @Override
+            public Batch nextBatch() {
+                throw new IllegalStateException("expected");
+            }
+        };
+        NodeSequence exchange = ExchangeSequence.create(failing, executor, 1);
+        try {
+            exchange.nextBatch();
+            fail("Should have failed");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Test
+    public void shouldEvaluateSeriallyWhenNoThreadIsAvailable() {
+        executor.shutdown();
+        List<NodeKey> expected = keysOf(allNodes());
+        assertThat(keysOf(ExchangeSequence.create(allNodes(), executor, 1)), is(expected));
+        assertThat(executor.getTaskCount(), is(0L));
+    }
+
+    @Test
+    public void shouldAllowClosingBeforeConsumingAllRows() {
+        NodeSequence exchange = ExchangeSequence.create(NodeSequence.append(allNodes(), allNodes()), executor, 1);
+        Batch batch = exchange.nextBatch();
+        assertThat(batch.hasNext(), is(true));
+        exchange.close();
+    }
+
+    protected List<NodeKey> keysOf( NodeSequence sequence ) {
+        List<NodeKey> keys = new ArrayList<>();
+        try {
+            Batch batch = null;
+            while ((batch = sequence.nextBatch()) != null) {
+                while (batch.hasNext()) {
+                    batch.nextRow();
+                    keys.add(batch.getNode().getKey());
+                }
+            }
+        } finally {
+            sequence.close();
+        }
+        return keys;
+    }
+}
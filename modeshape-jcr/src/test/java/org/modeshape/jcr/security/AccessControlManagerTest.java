@@ -18,6 +18,7 @@ package org.modeshape.jcr.security;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -41,6 +42,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.modeshape.common.FixFor;
+import org.modeshape.jcr.ModeShapePermissions;
 import org.modeshape.jcr.MultiUseAbstractTest;
 import org.modeshape.jcr.security.acl.Privileges;
 
@@ -434,6 +436,29 @@ public class AccessControlManagerTest extends MultiUseAbstractTest {
         }
     }
 
+    @Test
+    public void shouldReflectChangedAndMovedAccessControlListsInPermissions() throws Exception {
+        Node root = session.getRootNode();
+        root.addNode("gated").addNode("child");
+        root.addNode("readOnly");
+        session.save();
+        setPolicy("/gated", Privilege.JCR_READ, Privilege.JCR_READ_ACCESS_CONTROL, Privilege.JCR_MODIFY_ACCESS_CONTROL);
+        setPolicy("/readOnly", Privilege.JCR_READ, Privilege.JCR_ADD_CHILD_NODES);
+        assertTrue(session.hasPermission("/gated/child", ModeShapePermissions.READ));
+        assertFalse(session.hasPermission("/gated/child", ModeShapePermissions.SET_PROPERTY));
+
+        // Change the ACL that governs the child ...
+        setPolicy("/gated", Privilege.JCR_WRITE);
+        assertTrue(session.hasPermission("/gated/child", ModeShapePermissions.SET_PROPERTY));
+        assertTrue(session.hasPermission("/gated/child", ModeShapePermissions.READ + "," + ModeShapePermissions.REMOVE));
+
+        // Move the child under a different ACL ...
+        session.move("/gated/child", "/readOnly/child");
+        session.save();
+        assertTrue(session.hasPermission("/readOnly/child", ModeShapePermissions.READ));
+        assertFalse(session.hasPermission("/readOnly/child", ModeShapePermissions.SET_PROPERTY));
+    }
+
     private static void setPolicy( String path,
                                    String... privileges ) throws UnsupportedRepositoryOperationException, RepositoryException {
         AccessControlManager acm = session.getAccessControlManager();
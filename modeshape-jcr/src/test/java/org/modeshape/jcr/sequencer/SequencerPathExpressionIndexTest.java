@@ -0,0 +1,124 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.jcr.sequencer;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.Path;
+
+public class SequencerPathExpressionIndexTest {
+
+    private static final String[] EXPRESSIONS = {"/a/b/c[@something] => /x", "/a/b/c/@something", "/a/*/c[@something]",
+        "/a/*.txt[@something]", "//*.txt[*]/c[@something]", "/a//c[d/e/@something]", "/a/b[2,3]/c[@something]",
+        "/a/b[*]/c[]/d[@something]", "/a/(b|c)/d[@something] => /x/$1", "/a/(b|)/d[@something]", "/a(//c)[d/@something]",
+        "/a/(b/c)[(d|e)/@something]", "//(*.(jpeg|gif|png))[*]/jcr:content[@jcr:data] => /images/$1",
+        "/files(//)*.xsd[*]/jcr:content[@jcr:data] => /x/xsd/$1", "/files//jcr:content/[@jcr:data]", "//", "/a//",
+        "//(*)[@something]", "/A/B/C[@SOMETHING]", "/a/b/c[@*]", "default:/a/b/c[@something]", "/a/b|/c/d[@something]",
+        "/(*)[@something]", "/a/jcr:content[@jcr:mimeType]", "/a/unknown:content[@jcr:data]", "/a/b/c"};
+
+    private static final String[] PATHS = {"/", "/a", "/a/b", "/a/b/c", "/a/b[2]/c", "/a/b/c/d", "/a/b/c/d/e", "/a/x/c",
+        "/a/x.txt", "/a/b/x.txt/c", "/a/c/d", "/a/b/d", "/a/x/d", "/a/c", "/a/x/y/c", "/a/b/c[2]/d",
+        "/photos/x.png/jcr:content", "/files/x.xsd/jcr:content", "/files/y/z/x.xsd/jcr:content", "/files/x.xml/jcr:content",
+        "/a/jcr:content", "/a/nt:content", "/A/b/C", "/x", "/x/y/z"};
+
+    private static final String[] PROPERTIES = {"something", "SOMETHING", "other", "jcr:data", "jcr:mimeType"};
+
+    private ExecutionContext context;
+    private SequencerPathExpressionIndex<SequencerPathExpression> index;
+    private List<SequencerPathExpression> expressions;
+
+    @Before
+    public void beforeEach() throws Exception {
+        context = new ExecutionContext();
+        index = new SequencerPathExpressionIndex<>(context.getNamespaceRegistry());
+        expressions = new ArrayList<>();
+        for (String expression : EXPRESSIONS) {
+            SequencerPathExpression expr = SequencerPathExpression.compile(expression);
+            expressions.add(expr);
+            index.add(expr, expr);
+        }
+    }
+
+    @Test
+    public void shouldReturnAllExpressionsThatMatch() throws Exception {
+        for (String pathStr : PATHS) {
+            Path path = context.getValueFactories().getPathFactory().create(pathStr);
+            for (String propertyStr : PROPERTIES) {
+                Name property = context.getValueFactories().getNameFactory().create(propertyStr);
+                List<SequencerPathExpression> candidates = index.candidates(path, property);
+                String absolutePath = context.getValueFactories().getStringFactory().create(path) + "/@"
+                                      + context.getValueFactories().getStringFactory().create(property);
+                for (SequencerPathExpression expression : expressions) {
+                    if (expression.matcher(absolutePath).matches()) {
+                        assertTrue("Expected '" + expression + "' to be a candidate for '" + absolutePath + "'",
+                                   candidates.contains(expression));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotReturnExpressionsWhosePathCannotMatch() throws Exception {
+        // Groups spanning several segments and alternatives of whole paths are not understood, so they're always candidates ...
+        assertThat(candidatesFor("/x/y/z", "other"), is(expressions("/a(//c)[d/@something]",
+                                                                    "/files(//)*.xsd[*]/jcr:content[@jcr:data] => /x/xsd/$1",
+                                                                    "//", "/a/b|/c/d[@something]")));
+        assertThat(candidatesFor("/a/b/c", "something"), is(expressions("/a/b/c[@something] => /x", "/a/b/c/@something",
+                                                                        "/a/*/c[@something]", "//*.txt[*]/c[@something]",
+                                                                        "/a/b[2,3]/c[@something]", "/a/(b|)/d[@something]",
+                                                                        "/a(//c)[d/@something]", "/a/(b/c)[(d|e)/@something]",
+                                                                        "/files(//)*.xsd[*]/jcr:content[@jcr:data] => /x/xsd/$1",
+                                                                        "//", "/a//", "//(*)[@something]", "/A/B/C[@SOMETHING]",
+                                                                        "default:/a/b/c[@something]",
+                                                                        "/a/b|/c/d[@something]")));
+    }
+
+    @Test
+    public void shouldMatchAlternativesOfSingleSegment() throws Exception {
+        List<SequencerPathExpression> candidates = candidatesFor("/a/c/d", "something");
+        assertTrue(candidates.contains(SequencerPathExpression.compile("/a/(b|c)/d[@something] => /x/$1")));
+        candidates = candidatesFor("/a/e/d", "something");
+        assertTrue(!candidates.contains(SequencerPathExpression.compile("/a/(b|c)/d[@something] => /x/$1")));
+    }
+
+    @Test
+    public void shouldReturnNothingWhenIndexIsEmpty() throws Exception {
+        index = new SequencerPathExpressionIndex<>(context.getNamespaceRegistry());
+        assertTrue(candidatesFor("/a/b/c", "something").isEmpty());
+    }
+
+    protected List<SequencerPathExpression> candidatesFor( String path,
+                                                           String property ) {
+        return index.candidates(context.getValueFactories().getPathFactory().create(path),
+                                context.getValueFactories().getNameFactory().create(property));
+    }
+
+    protected List<SequencerPathExpression> expressions( String... expressions ) throws Exception {
+        List<SequencerPathExpression> result = new ArrayList<>();
+        for (String expression : expressions) {
+            result.add(SequencerPathExpression.compile(expression));
+        }
+        return result;
+    }
+}
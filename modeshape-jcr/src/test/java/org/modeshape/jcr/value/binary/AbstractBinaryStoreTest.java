@@ -30,11 +30,15 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.jcr.Binary;
 import javax.jcr.RepositoryException;
 import org.junit.Assert;
@@ -273,6 +277,60 @@ public abstract class AbstractBinaryStoreTest {
         }
     }
 
+    @Test
+    public void shouldExtractTextAsynchronouslyAndOnlyOnce() throws Exception {
+        CountingTextExtractor extractor = new CountingTextExtractor();
+        TextExtractors extractors = new TextExtractors(Executors.newSingleThreadExecutor(),
+                                                       new ArrayList<>(Arrays.asList(extractor)));
+        try {
+            BinaryStore binaryStore = getBinaryStore();
+            binaryStore.setTextExtractors(extractors);
+
+            // the text of small binaries is cached by content ...
+            BinaryValue inMemory = binaryStore.storeValue(new ByteArrayInputStream(IN_MEMORY_BINARY), false);
+            assertEquals(DummyTextExtractor.EXTRACTED_TEXT, binaryStore.getText(inMemory));
+            assertEquals(DummyTextExtractor.EXTRACTED_TEXT, binaryStore.getTextAsync(inMemory).get(10, TimeUnit.SECONDS));
+            assertEquals(1, extractor.count.get());
+
+            byte[] data = new byte[LARGE_BINARY_SIZE];
+            RANDOM.nextBytes(data);
+            BinaryValue stored = binaryStore.storeValue(new ByteArrayInputStream(data), false);
+            CompletableFuture<String> first = binaryStore.getTextAsync(stored);
+            CompletableFuture<String> second = binaryStore.getTextAsync(stored);
+            assertEquals(DummyTextExtractor.EXTRACTED_TEXT, first.get(10, TimeUnit.SECONDS));
+            assertEquals(DummyTextExtractor.EXTRACTED_TEXT, second.get(10, TimeUnit.SECONDS));
+            assertEquals(DummyTextExtractor.EXTRACTED_TEXT, binaryStore.getText(stored));
+            assertEquals(2, extractor.count.get());
+        } finally {
+            extractors.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldExtractAllQueuedTextWithSingleThread() throws Exception {
+        CountingTextExtractor extractor = new CountingTextExtractor();
+        // like the repository's pools, this one rejects work when its only thread is busy ...
+        ExecutorService pool = new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new SynchronousQueue<>());
+        TextExtractors extractors = new TextExtractors(pool, new ArrayList<>(Arrays.asList(extractor)));
+        try {
+            BinaryStore binaryStore = getBinaryStore();
+            binaryStore.setTextExtractors(extractors);
+
+            List<CompletableFuture<String>> texts = new ArrayList<>();
+            for (int i = 0; i != 3; ++i) {
+                byte[] data = new byte[LARGE_BINARY_SIZE];
+                RANDOM.nextBytes(data);
+                texts.add(binaryStore.getTextAsync(binaryStore.storeValue(new ByteArrayInputStream(data), false)));
+            }
+            for (CompletableFuture<String> text : texts) {
+                assertEquals(DummyTextExtractor.EXTRACTED_TEXT, text.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(3, extractor.count.get());
+        } finally {
+            extractors.shutdown();
+        }
+    }
+
     @Test
     @FixFor("MODE-2547")
     public void shouldStoreBinariesConcurrently() throws Exception {
@@ -321,6 +379,25 @@ public abstract class AbstractBinaryStoreTest {
         }
     }
 
+    protected static final class CountingTextExtractor extends TextExtractor {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void extractFrom( org.modeshape.jcr.api.Binary binary,
+                                 Output output,
+                                 Context context ) throws Exception {
+            count.incrementAndGet();
+            // give the other callers a chance to ask for the same text while it is being extracted ...
+            Thread.sleep(100);
+            output.recordText(DummyTextExtractor.EXTRACTED_TEXT);
+        }
+
+        @Override
+        public boolean supportsMimeType( String mimeType ) {
+            return true;
+        }
+    }
+
     protected static final class DummyTextExtractor extends TextExtractor {
         private static final String EXTRACTED_TEXT = "some text";
 
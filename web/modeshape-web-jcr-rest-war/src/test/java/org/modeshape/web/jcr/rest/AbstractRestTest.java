@@ -415,6 +415,10 @@ public abstract class AbstractRestTest {
             return hasCode(HttpURLConnection.HTTP_BAD_REQUEST);
         }
 
+        protected Response isGone() throws Exception {
+            return hasCode(HttpURLConnection.HTTP_GONE);
+        }
+
         protected Response isJSON() throws Exception {
             assertTrue(getContentTypeHeader().toLowerCase().contains(MediaType.APPLICATION_JSON.toLowerCase()));
             return this;
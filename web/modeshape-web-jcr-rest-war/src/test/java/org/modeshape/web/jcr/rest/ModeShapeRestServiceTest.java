@@ -333,6 +333,52 @@ public class ModeShapeRestServiceTest extends AbstractRestTest {
         jcrSQL2Query(query, queryUrl()).isOk().isJSON().isJSONObjectLikeFile("query/query_result_jcrSql2.json");
     }
 
+    @Test
+    public void shouldPageThroughQueryResultsUsingContinuationToken() throws Exception {
+        String queryNodeFile = "query/query_node.json";
+
+        doPost(queryNodeFile, itemsUrl(TEST_NODE)).isCreated();
+        for (int i = 0; i != 5; ++i) {
+            doPost(queryNodeFile, itemsUrl(TEST_NODE, "child")).isCreated();
+        }
+
+        String query = "SELECT * FROM [nt:unstructured] WHERE ISCHILDNODE('/" + TEST_NODE + "') ORDER BY [jcr:path]";
+        JSONArray allRows = jcrSQL2Query(query, queryUrl()).isOk().json().getJSONArray("rows");
+        assertEquals(5, allRows.length());
+
+        JSONArray pagedRows = new JSONArray();
+        String url = queryUrl() + "?limit=2";
+        int pages = 0;
+        while (url != null) {
+            JSONObject page = jcrSQL2Query(query, url).isOk().json();
+            JSONArray rows = page.getJSONArray("rows");
+            for (int i = 0; i != rows.length(); ++i) {
+                pagedRows.put(rows.get(i));
+            }
+            ++pages;
+            url = page.has("continuation") ? queryUrl() + "?limit=2&continuation=" + page.getString("continuation") : null;
+        }
+        assertEquals(3, pages);
+        assertJSON(allRows, pagedRows);
+    }
+
+    @Test
+    public void shouldRejectContinuationTokenThatWasAlreadyUsed() throws Exception {
+        String queryNodeFile = "query/query_node.json";
+
+        doPost(queryNodeFile, itemsUrl(TEST_NODE)).isCreated();
+        for (int i = 0; i != 5; ++i) {
+            doPost(queryNodeFile, itemsUrl(TEST_NODE, "child")).isCreated();
+        }
+
+        String query = "SELECT * FROM [nt:unstructured] WHERE ISCHILDNODE('/" + TEST_NODE + "') ORDER BY [jcr:path]";
+        String continuation = jcrSQL2Query(query, queryUrl() + "?limit=2").isOk().json().getString("continuation");
+        String url = queryUrl() + "?limit=2&continuation=" + continuation;
+        jcrSQL2Query(query, url).isOk();
+        // the cursor was taken by the previous request, so the query is not silently executed again ...
+        jcrSQL2Query(query, url).isGone();
+    }
+
     @Test
     public void shouldRetrieveBinaryPropertyValue() throws Exception {
         doPost("put/node_with_binary_property.json", itemsUrl(TEST_NODE)).isCreated();
@@ -32,6 +32,7 @@ import org.modeshape.jcr.api.Logger;
 import org.modeshape.web.jcr.NoSuchRepositoryException;
 import org.modeshape.web.jcr.WebLogger;
 import org.modeshape.web.jcr.rest.handler.AbstractHandler;
+import org.modeshape.web.jcr.rest.handler.CursorExpiredException;
 import org.modeshape.web.jcr.rest.model.RestException;
 
 /**
@@ -57,6 +58,10 @@ public class ModeShapeExceptionMapper implements ExceptionMapper<Throwable> {
             return exceptionResponse(throwable, Status.NOT_FOUND);
         }
 
+        if (throwable instanceof CursorExpiredException) {
+            return exceptionResponse(throwable, Status.GONE);
+        }
+
         if (throwable instanceof NotAuthorizedException) {
             return exceptionResponse(throwable, Status.FORBIDDEN);
         }
@@ -79,6 +84,10 @@ public class ModeShapeExceptionMapper implements ExceptionMapper<Throwable> {
                 LOGGER.debug(t, "Item not found");
                 break;
             }
+            case GONE: {
+                LOGGER.debug(t, "Query cursor expired");
+                break;
+            }
             default: {
                 LOGGER.error(t, "Server error");
                 break;
@@ -0,0 +1,43 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.web.jcr.rest;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import org.modeshape.web.jcr.rest.handler.RestQueryHandler;
+
+/**
+ * Servlet context listener that releases the resources held by the REST service when the web application is shut down or
+ * undeployed. In particular, the query cursors kept open for continuation tokens are closed, which logs out their sessions.
+ */
+public class ModeShapeRestDeployer implements ServletContextListener {
+
+    @Override
+    public void contextInitialized( ServletContextEvent event ) {
+        // nothing to do
+    }
+
+    /**
+     * Closes the query cursors kept open for continuation tokens.
+     *
+     * @param event the servlet context event
+     * @see RestQueryHandler#closeQueryCursors()
+     */
+    @Override
+    public void contextDestroyed( ServletContextEvent event ) {
+        RestQueryHandler.closeQueryCursors();
+    }
+}
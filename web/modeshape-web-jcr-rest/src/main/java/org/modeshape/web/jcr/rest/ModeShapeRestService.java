@@ -748,6 +748,8 @@ public final class ModeShapeRestService {
      * @param limit the maximum number of rows to be returned. If this value is greater than the size of the result set, the
      *        entire result set will be returned. If this value is less than zero, the entire result set will be returned. The
      *        results are counted from the record specified in the offset parameter.
+     * @param continuation the continuation token returned with the previous rows of the same query. When present, the rows
+     *        following those previous rows are returned and the offset is ignored.
      * @param uriInfo the information about the URI (from which the other query parameters will be obtained)
      * @param requestContent the query expression
      * @return a {@code non-null} {@link RestQueryResult} instance.
@@ -763,10 +765,11 @@ public final class ModeShapeRestService {
                                            @PathParam( "workspaceName" ) String rawWorkspaceName,
                                            @QueryParam( "offset" ) @DefaultValue( "-1" ) long offset,
                                            @QueryParam( "limit" ) @DefaultValue( "-1" ) long limit,
+                                           @QueryParam( "continuation" ) String continuation,
                                            @Context UriInfo uriInfo,
                                            String requestContent ) throws RepositoryException {
         return queryHandler.executeQuery(request, rawRepositoryName, rawWorkspaceName, Query.XPATH, requestContent, offset,
-                                         limit, uriInfo);
+                                         limit, continuation, uriInfo);
     }
 
     /**
@@ -784,6 +787,8 @@ public final class ModeShapeRestService {
      * @param limit the maximum number of rows to be returned. If this value is greater than the size of the result set, the
      *        entire result set will be returned. If this value is less than zero, the entire result set will be returned. The
      *        results are counted from the record specified in the offset parameter.
+     * @param continuation the continuation token returned with the previous rows of the same query. When present, the rows
+     *        following those previous rows are returned and the offset is ignored.
      * @param uriInfo the information about the URI (from which the other query parameters will be obtained)
      * @param requestContent the query expression
      * @return a {@code non-null} {@link RestQueryResult} instance.
@@ -799,10 +804,11 @@ public final class ModeShapeRestService {
                                             @PathParam( "workspaceName" ) String rawWorkspaceName,
                                             @QueryParam( "offset" ) @DefaultValue( "-1" ) long offset,
                                             @QueryParam( "limit" ) @DefaultValue( "-1" ) long limit,
+                                            @QueryParam( "continuation" ) String continuation,
                                             @Context UriInfo uriInfo,
                                             String requestContent ) throws RepositoryException {
         return queryHandler.executeQuery(request, rawRepositoryName, rawWorkspaceName, Query.SQL, requestContent, offset, limit,
-                                         uriInfo);
+                                         continuation, uriInfo);
     }
 
     /**
@@ -820,6 +826,8 @@ public final class ModeShapeRestService {
      * @param limit the maximum number of rows to be returned. If this value is greater than the size of the result set, the
      *        entire result set will be returned. If this value is less than zero, the entire result set will be returned. The
      *        results are counted from the record specified in the offset parameter.
+     * @param continuation the continuation token returned with the previous rows of the same query. When present, the rows
+     *        following those previous rows are returned and the offset is ignored.
      * @param uriInfo the information about the URI (from which the other query parameters will be obtained)
      * @param requestContent the query expression
      * @return a {@code non-null} {@link RestQueryResult} instance.
@@ -834,10 +842,11 @@ public final class ModeShapeRestService {
                                              @PathParam( "workspaceName" ) String rawWorkspaceName,
                                              @QueryParam( "offset" ) @DefaultValue( "-1" ) long offset,
                                              @QueryParam( "limit" ) @DefaultValue( "-1" ) long limit,
+                                             @QueryParam( "continuation" ) String continuation,
                                              @Context UriInfo uriInfo,
                                              String requestContent ) throws RepositoryException {
         return queryHandler.executeQuery(request, rawRepositoryName, rawWorkspaceName, Query.JCR_SQL2, requestContent, offset,
-                                         limit, uriInfo);
+                                         limit, continuation, uriInfo);
     }
 
     /**
@@ -855,6 +864,8 @@ public final class ModeShapeRestService {
      * @param limit the maximum number of rows to be returned. If this value is greater than the size of the result set, the
      *        entire result set will be returned. If this value is less than zero, the entire result set will be returned. The
      *        results are counted from the record specified in the offset parameter.
+     * @param continuation the continuation token returned with the previous rows of the same query. When present, the rows
+     *        following those previous rows are returned and the offset is ignored.
      * @param uriInfo the information about the URI (from which the other query parameters will be obtained)
      * @param requestContent the query expression
      * @return a {@code non-null} {@link RestQueryResult} instance.
@@ -869,11 +880,12 @@ public final class ModeShapeRestService {
                                                @PathParam( "workspaceName" ) String rawWorkspaceName,
                                                @QueryParam( "offset" ) @DefaultValue( "-1" ) long offset,
                                                @QueryParam( "limit" ) @DefaultValue( "-1" ) long limit,
+                                               @QueryParam( "continuation" ) String continuation,
                                                @Context UriInfo uriInfo,
                                                String requestContent ) throws RepositoryException {
         return queryHandler.executeQuery(request, rawRepositoryName, rawWorkspaceName,
                                          org.modeshape.jcr.api.query.Query.FULL_TEXT_SEARCH, requestContent, offset, limit,
-                                         uriInfo);
+                                         continuation, uriInfo);
     }
 
     /**
@@ -891,6 +903,8 @@ public final class ModeShapeRestService {
      * @param limit the maximum number of rows to be returned. If this value is greater than the size of the result set, the
      *        entire result set will be returned. If this value is less than zero, the entire result set will be returned. The
      *        results are counted from the record specified in the offset parameter.
+     * @param profile true if the query should be executed and each operator in the plan annotated with the number of rows it
+     *        produced and the time spent producing them, or false if only the plan is to be computed
      * @param uriInfo the information about the URI (from which the other query parameters will be obtained)
      * @param requestContent the query expression
      * @return a {@code non-null} response containing a string representation of the query plan
@@ -906,10 +920,11 @@ public final class ModeShapeRestService {
                                                    @PathParam( "workspaceName" ) String rawWorkspaceName,
                                                    @QueryParam( "offset" ) @DefaultValue( "-1" ) long offset,
                                                    @QueryParam( "limit" ) @DefaultValue( "-1" ) long limit,
+                                                   @QueryParam( "profile" ) @DefaultValue( "false" ) boolean profile,
                                                    @Context UriInfo uriInfo,
                                                    String requestContent ) throws RepositoryException {
         return queryHandler.planQuery(request, rawRepositoryName, rawWorkspaceName, Query.XPATH, requestContent, offset, limit,
-                                      uriInfo);
+                                      profile, uriInfo);
     }
 
     /**
@@ -927,6 +942,8 @@ public final class ModeShapeRestService {
      * @param limit the maximum number of rows to be returned. If this value is greater than the size of the result set, the
      *        entire result set will be returned. If this value is less than zero, the entire result set will be returned. The
      *        results are counted from the record specified in the offset parameter.
+     * @param profile true if the query should be executed and each operator in the plan annotated with the number of rows it
+     *        produced and the time spent producing them, or false if only the plan is to be computed
      * @param uriInfo the information about the URI (from which the other query parameters will be obtained)
      * @param requestContent the query expression
      * @return a {@code non-null} response containing a string representation of the query plan
@@ -942,10 +959,11 @@ public final class ModeShapeRestService {
                                                     @PathParam( "workspaceName" ) String rawWorkspaceName,
                                                     @QueryParam( "offset" ) @DefaultValue( "-1" ) long offset,
                                                     @QueryParam( "limit" ) @DefaultValue( "-1" ) long limit,
+                                                    @QueryParam( "profile" ) @DefaultValue( "false" ) boolean profile,
                                                     @Context UriInfo uriInfo,
                                                     String requestContent ) throws RepositoryException {
         return queryHandler.planQuery(request, rawRepositoryName, rawWorkspaceName, Query.SQL, requestContent, offset, limit,
-                                      uriInfo);
+                                      profile, uriInfo);
     }
 
     /**
@@ -963,6 +981,8 @@ public final class ModeShapeRestService {
      * @param limit the maximum number of rows to be returned. If this value is greater than the size of the result set, the
      *        entire result set will be returned. If this value is less than zero, the entire result set will be returned. The
      *        results are counted from the record specified in the offset parameter.
+     * @param profile true if the query should be executed and each operator in the plan annotated with the number of rows it
+     *        produced and the time spent producing them, or false if only the plan is to be computed
      * @param uriInfo the information about the URI (from which the other query parameters will be obtained)
      * @param requestContent the query expression
      * @return a {@code non-null} response containing a string representation of the query plan
@@ -977,10 +997,11 @@ public final class ModeShapeRestService {
                                                      @PathParam( "workspaceName" ) String rawWorkspaceName,
                                                      @QueryParam( "offset" ) @DefaultValue( "-1" ) long offset,
                                                      @QueryParam( "limit" ) @DefaultValue( "-1" ) long limit,
+                                                     @QueryParam( "profile" ) @DefaultValue( "false" ) boolean profile,
                                                      @Context UriInfo uriInfo,
                                                      String requestContent ) throws RepositoryException {
         return queryHandler.planQuery(request, rawRepositoryName, rawWorkspaceName, Query.JCR_SQL2, requestContent, offset,
-                                      limit, uriInfo);
+                                      limit, profile, uriInfo);
     }
 
     /**
@@ -998,6 +1019,8 @@ public final class ModeShapeRestService {
      * @param limit the maximum number of rows to be returned. If this value is greater than the size of the result set, the
      *        entire result set will be returned. If this value is less than zero, the entire result set will be returned. The
      *        results are counted from the record specified in the offset parameter.
+     * @param profile true if the query should be executed and each operator in the plan annotated with the number of rows it
+     *        produced and the time spent producing them, or false if only the plan is to be computed
      * @param uriInfo the information about the URI (from which the other query parameters will be obtained)
      * @param requestContent the query expression
      * @return a {@code non-null} response containing a string representation of the query plan
@@ -1012,10 +1035,11 @@ public final class ModeShapeRestService {
                                                        @PathParam( "workspaceName" ) String rawWorkspaceName,
                                                        @QueryParam( "offset" ) @DefaultValue( "-1" ) long offset,
                                                        @QueryParam( "limit" ) @DefaultValue( "-1" ) long limit,
+                                                       @QueryParam( "profile" ) @DefaultValue( "false" ) boolean profile,
                                                        @Context UriInfo uriInfo,
                                                        String requestContent ) throws RepositoryException {
         return queryHandler.planQuery(request, rawRepositoryName, rawWorkspaceName,
-                                      org.modeshape.jcr.api.query.Query.FULL_TEXT_SEARCH, requestContent, offset, limit, uriInfo);
+                                      org.modeshape.jcr.api.query.Query.FULL_TEXT_SEARCH, requestContent, offset, limit, profile, uriInfo);
     }
 
     /**
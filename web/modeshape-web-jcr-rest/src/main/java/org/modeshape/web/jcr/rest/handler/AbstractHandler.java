@@ -111,6 +111,18 @@ public abstract class AbstractHandler {
         }
     }
 
+    /**
+     * Removes the active session from the current request, so that it is not logged out when the request completes. The caller
+     * becomes responsible for logging out the session.
+     *
+     * @return the active session, or {@code null} if there is none
+     */
+    protected static Session detachActiveSession() {
+        Session session = AbstractHandler.ACTIVE_SESSION.get();
+        AbstractHandler.ACTIVE_SESSION.remove();
+        return session;
+    }
+
     private String workspaceNameFor( String rawWorkspaceName ) {
         String workspaceName = RestHelper.URL_ENCODER.decode(rawWorkspaceName);
 
@@ -0,0 +1,29 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.web.jcr.rest.handler;
+
+/**
+ * Exception thrown when a query continuation token refers to a cursor that has expired, was closed, or was already used to
+ * read the next rows. The query has to be executed again.
+ */
+public class CursorExpiredException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CursorExpiredException( String message ) {
+        super(message);
+    }
+}
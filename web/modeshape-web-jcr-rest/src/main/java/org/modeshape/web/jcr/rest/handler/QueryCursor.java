@@ -0,0 +1,290 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.web.jcr.rest.handler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+import org.modeshape.jcr.api.Logger;
+import org.modeshape.web.jcr.WebLogger;
+
+/**
+ * The position of a REST client within the rows of a query result. A cursor owns the session in which the query was executed,
+ * and after a page of rows has been returned it can be {@link #park() parked} so that the next page continues from the same
+ * {@link RowIterator} instead of executing the query again and skipping all of the rows that were already returned.
+ * <p>
+ * Parked cursors are only kept for a short time, and are closed by a background reaper once they expire (or sooner, when too
+ * many cursors are parked). A continuation token whose cursor is no longer available is rejected with a
+ * {@link CursorExpiredException}, so that the client can execute the query again rather than silently receiving rows that are
+ * skipped or repeated. All parked cursors are closed when the REST service is {@link #closeAll() stopped}.
+ * </p>
+ */
+final class QueryCursor implements AutoCloseable {
+
+    private static final Logger LOGGER = WebLogger.getLogger(QueryCursor.class);
+
+    /**
+     * The maximum number of cursors that are parked at the same time; the least recently used cursors are closed first.
+     */
+    static final int MAX_PARKED_CURSORS = 64;
+
+    /**
+     * The number of milliseconds after which a parked cursor is closed.
+     */
+    static final long MAX_PARKED_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    /**
+     * The number of milliseconds between two runs of the reaper which closes the expired cursors.
+     */
+    static final long REAPER_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(15);
+
+    private static final Map<String, QueryCursor> PARKED = new LinkedHashMap<>();
+    private static ScheduledExecutorService reaper;
+
+    /**
+     * Takes the parked cursor for the given continuation token, so that it is not used by any other request.
+     * 
+     * @param token the continuation token; may not be null
+     * @param user the name of the user making the request; may be null
+     * @return the cursor positioned after the rows that were returned with the token; never null
+     * @throws CursorExpiredException if that cursor is no longer available
+     */
+    static QueryCursor take( Token token,
+                             String user ) {
+        List<QueryCursor> expired = new ArrayList<>();
+        QueryCursor result = null;
+        synchronized (PARKED) {
+            removeExpired(expired);
+            QueryCursor cursor = PARKED.get(token.cursorId);
+            if (cursor != null && cursor.position == token.position && Objects.equals(cursor.user, user)) {
+                PARKED.remove(token.cursorId);
+                result = cursor;
+            }
+        }
+        expired.forEach(QueryCursor::close);
+        if (result == null) {
+            throw new CursorExpiredException("The query cursor for the continuation token has expired or was already used; "
+                                             + "execute the query again");
+        }
+        return result;
+    }
+
+    /**
+     * Closes all of the parked cursors and stops the reaper. Cursors parked afterwards restart the reaper.
+     */
+    static void closeAll() {
+        List<QueryCursor> parked;
+        synchronized (PARKED) {
+            parked = new ArrayList<>(PARKED.values());
+            PARKED.clear();
+            if (reaper != null) {
+                reaper.shutdownNow();
+                reaper = null;
+            }
+        }
+        parked.forEach(QueryCursor::close);
+    }
+
+    private static void reap() {
+        List<QueryCursor> expired = new ArrayList<>();
+        synchronized (PARKED) {
+            removeExpired(expired);
+        }
+        expired.forEach(QueryCursor::close);
+    }
+
+    private static void removeExpired( List<QueryCursor> expired ) {
+        long now = System.currentTimeMillis();
+        for (Iterator<QueryCursor> iter = PARKED.values().iterator(); iter.hasNext();) {
+            QueryCursor cursor = iter.next();
+            if (PARKED.size() <= MAX_PARKED_CURSORS && now - cursor.parkedAt < MAX_PARKED_MILLIS) {
+                // the cursors are in the order in which they were parked, so all remaining ones are newer
+                break;
+            }
+            iter.remove();
+            expired.add(cursor);
+        }
+    }
+
+    private static void startReaper() {
+        assert Thread.holdsLock(PARKED);
+        if (reaper != null) return;
+        reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "modeshape-rest-query-cursor-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleWithFixedDelay(QueryCursor::reap, REAPER_INTERVAL_MILLIS, REAPER_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String queryId;
+    private final String user;
+    private final Session session;
+    private final QueryResult result;
+    private final RowIterator rows;
+    private long position = 0L;
+    private long parkedAt;
+
+    /**
+     * Creates a cursor at the beginning of the given query result.
+     * 
+     * @param queryId the identifier of the query, which the continuation tokens must match; may not be null
+     * @param user the name of the user that executed the query; may be null
+     * @param session the session in which the query was executed, which will be logged out when the cursor is closed; may not be
+     *        null
+     * @param result the query result; may not be null
+     * @throws RepositoryException if the rows of the result cannot be obtained
+     */
+    QueryCursor( String queryId,
+                 String user,
+                 Session session,
+                 QueryResult result ) throws RepositoryException {
+        this.queryId = queryId;
+        this.user = user;
+        this.session = session;
+        this.result = result;
+        this.rows = result.getRows();
+    }
+
+    Session session() {
+        return session;
+    }
+
+    QueryResult result() {
+        return result;
+    }
+
+    boolean hasNext() {
+        return rows.hasNext();
+    }
+
+    Row next() {
+        Row row = rows.nextRow();
+        ++position;
+        return row;
+    }
+
+    /**
+     * Skips the given number of rows from the current position.
+     * 
+     * @param count the number of rows to skip
+     */
+    void skip( long count ) {
+        if (count <= 0) return;
+        try {
+            rows.skip(count);
+            position += count;
+        } catch (NoSuchElementException e) {
+            // there are fewer rows than that, so there are no rows left
+            position += count;
+        }
+    }
+
+    /**
+     * Returns the continuation token which can be used to obtain the rows after the current position.
+     * 
+     * @return the continuation token; never null
+     */
+    String token() {
+        return new Token(id, position, queryId).toString();
+    }
+
+    /**
+     * Keeps this cursor open so that the next request with its {@link #token() continuation token} can continue from the current
+     * position.
+     */
+    void park() {
+        List<QueryCursor> expired = new ArrayList<>();
+        synchronized (PARKED) {
+            parkedAt = System.currentTimeMillis();
+            PARKED.put(id, this);
+            removeExpired(expired);
+            startReaper();
+        }
+        expired.forEach(QueryCursor::close);
+    }
+
+    @Override
+    public void close() {
+        try {
+            session.logout();
+        } catch (Exception e) {
+            LOGGER.warn(e, "Error while trying to logout REST service session");
+        }
+    }
+
+    /**
+     * An opaque token which a client uses to continue reading the rows of a query result.
+     */
+    static final class Token {
+        private static final char SEPARATOR = '|';
+
+        final String cursorId;
+        final long position;
+        final String queryId;
+
+        private Token( String cursorId,
+                       long position,
+                       String queryId ) {
+            this.cursorId = cursorId;
+            this.position = position;
+            this.queryId = queryId;
+        }
+
+        /**
+         * Parses a continuation token.
+         * 
+         * @param token the string form of the token; may not be null
+         * @return the token; never null
+         * @throws IllegalArgumentException if the string is not a valid continuation token
+         */
+        static Token parse( String token ) {
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                String[] parts = value.split("\\" + SEPARATOR, 3);
+                if (parts.length == 3) {
+                    long position = Long.parseLong(parts[1]);
+                    if (position >= 0) return new Token(parts[0], position, parts[2]);
+                }
+            } catch (IllegalArgumentException e) {
+                // fall through (NumberFormatException is an IllegalArgumentException)
+            }
+            throw new IllegalArgumentException("Invalid continuation token: " + token);
+        }
+
+        @Override
+        public String toString() {
+            String value = cursorId + SEPARATOR + position + SEPARATOR + queryId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
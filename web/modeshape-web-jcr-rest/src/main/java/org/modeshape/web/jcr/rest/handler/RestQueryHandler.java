@@ -21,6 +21,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.jcr.Node;
@@ -36,9 +38,9 @@ import javax.jcr.query.Query;
 import javax.jcr.query.QueryManager;
 import javax.jcr.query.QueryResult;
 import javax.jcr.query.Row;
-import javax.jcr.query.RowIterator;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.UriInfo;
+import org.modeshape.common.util.SecureHash;
 import org.modeshape.common.util.StringUtil;
 import org.modeshape.web.jcr.rest.RestHelper;
 import org.modeshape.web.jcr.rest.model.RestQueryPlanResult;
@@ -53,7 +55,7 @@ public final class RestQueryHandler extends AbstractHandler {
 
     private static final String MODE_URI = "mode:uri";
     private static final String UNKNOWN_TYPE = "unknown-type";
-    private static final List<String> SKIP_QUERY_PARAMETERS = Arrays.asList("offset", "limit");
+    private static final List<String> SKIP_QUERY_PARAMETERS = Arrays.asList("offset", "limit", "continuation", "profile");
 
     /**
      * Executes a the given query string (based on the language information) against a JCR repository, returning a rest model
@@ -80,26 +82,92 @@ public final class RestQueryHandler extends AbstractHandler {
                                          long offset,
                                          long limit,
                                          UriInfo uriInfo ) throws RepositoryException {
+        return executeQuery(request, repositoryName, workspaceName, language, statement, offset, limit, null, uriInfo);
+    }
+
+    /**
+     * Executes a the given query string (based on the language information) against a JCR repository, returning a rest model
+     * based result. The rows of the result are only read when the result is written to the response.
+     * <p>
+     * When the number of rows is limited and there are more rows, the result contains a continuation token. Passing that token
+     * with the same query reads the next rows without executing the query again. Each token can only be used once, and only
+     * for a limited time.
+     * </p>
+     *
+     * @param request a non-null {@link HttpServletRequest}
+     * @param repositoryName a non-null, URL encoded {@link String} representing the name of a repository
+     * @param workspaceName a non-null, URL encoded {@link String} representing the name of a workspace
+     * @param language a non-null String which should be a valid query language, as recognized by the
+     *        {@link javax.jcr.query.QueryManager}
+     * @param statement a non-null String which should be a valid query string in the above language.
+     * @param offset a numeric value which indicates the index in the result set from where results should be returned; ignored
+     *        when a continuation token is given
+     * @param limit a numeric value indicating the maximum number of rows to return.
+     * @param continuation the continuation token returned with the previous rows of the same query, or {@code null} if the rows
+     *        should be read from the given offset
+     * @param uriInfo a non-null {@link UriInfo} object which is provided by RestEASY, allowing extra request parameters to be
+     *        retrieved.
+     * @return a {@link RestQueryHandler} instance
+     * @throws RepositoryException if any operation fails at the JCR level
+     * @throws IllegalArgumentException if the continuation token is not valid for the query
+     * @throws CursorExpiredException if the cursor of the continuation token has expired or was already used
+     */
+    public RestQueryResult executeQuery( HttpServletRequest request,
+                                         String repositoryName,
+                                         String workspaceName,
+                                         String language,
+                                         String statement,
+                                         long offset,
+                                         long limit,
+                                         String continuation,
+                                         UriInfo uriInfo ) throws RepositoryException {
         assert repositoryName != null;
         assert workspaceName != null;
         assert language != null;
         assert statement != null;
 
-        Session session = getSession(request, repositoryName, workspaceName);
-        Query query = createQuery(language, statement, session);
-        bindExtraVariables(uriInfo, session.getValueFactory(), query);
+        String queryId = queryId(repositoryName, workspaceName, language, statement, uriInfo);
+        QueryCursor cursor = null;
+        if (!StringUtil.isBlank(continuation)) {
+            QueryCursor.Token token = QueryCursor.Token.parse(continuation);
+            if (!token.queryId.equals(queryId)) {
+                throw new IllegalArgumentException("The continuation token was not issued for this query: " + continuation);
+            }
+            cursor = QueryCursor.take(token, request.getRemoteUser());
+        }
 
-        QueryResult result = query.execute();
-        RestQueryResult restQueryResult = new RestQueryResult();
+        if (cursor == null) {
+            Session session = getSession(request, repositoryName, workspaceName);
+            Query query = createQuery(language, statement, session);
+            bindExtraVariables(uriInfo, session.getValueFactory(), query);
 
-        String[] columnNames = result.getColumnNames();
-        setColumns(result, restQueryResult, columnNames);
+            QueryResult result = query.execute();
+            // The rows are read after the request has been processed, so the cursor has to own the session ...
+            cursor = new QueryCursor(queryId, request.getRemoteUser(), session, result);
+            detachActiveSession();
+            try {
+                cursor.skip(offset);
+            } catch (RuntimeException e) {
+                cursor.close();
+                throw e;
+            }
+        }
+
+        try {
+            RestQueryResult restQueryResult = new RestQueryResult();
 
-        String baseUrl = RestHelper.repositoryUrl(request);
+            String[] columnNames = cursor.result().getColumnNames();
+            setColumns(cursor.result(), restQueryResult, columnNames);
 
-        setRows(offset, limit, session, result, restQueryResult, columnNames, baseUrl);
+            String baseUrl = RestHelper.repositoryUrl(request);
 
-        return restQueryResult;
+            setRows(limit, cursor, restQueryResult, columnNames, baseUrl);
+
+            return restQueryResult;
+        } catch (RepositoryException | RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
     }
 
     /**
@@ -127,6 +195,37 @@ public final class RestQueryHandler extends AbstractHandler {
                                           long offset,
                                           long limit,
                                           UriInfo uriInfo ) throws RepositoryException {
+        return planQuery(request, repositoryName, workspaceName, language, statement, offset, limit, false, uriInfo);
+    }
+
+    /**
+     * Computes or profiles the plan of the given query string (based on the language information) against a JCR repository. When
+     * profiled, the query is executed (honoring the offset and limit) and each operator in the plan is annotated with the number
+     * of rows it produced and the time spent producing them.
+     * 
+     * @param request a non-null {@link HttpServletRequest}
+     * @param repositoryName a non-null, URL encoded {@link String} representing the name of a repository
+     * @param workspaceName a non-null, URL encoded {@link String} representing the name of a workspace
+     * @param language a non-null String which should be a valid query language, as recognized by the
+     *        {@link javax.jcr.query.QueryManager}
+     * @param statement a non-null String which should be a valid query string in the above language.
+     * @param offset a numeric value which indicates the index in the result set from where results should be returned.
+     * @param limit a numeric value indicating the maximum number of rows to return.
+     * @param profile true if the query is to be executed and profiled, or false if only the plan is to be computed
+     * @param uriInfo a non-null {@link UriInfo} object which is provided by RestEASY, allowing extra request parameters to be
+     *        retrieved.
+     * @return a response containing the string representation of the query plan
+     * @throws RepositoryException if any operation fails at the JCR level
+     */
+    public RestQueryPlanResult planQuery( HttpServletRequest request,
+                                          String repositoryName,
+                                          String workspaceName,
+                                          String language,
+                                          String statement,
+                                          long offset,
+                                          long limit,
+                                          boolean profile,
+                                          UriInfo uriInfo ) throws RepositoryException {
         assert repositoryName != null;
         assert workspaceName != null;
         assert language != null;
@@ -136,35 +235,84 @@ public final class RestQueryHandler extends AbstractHandler {
         org.modeshape.jcr.api.query.Query query = createQuery(language, statement, session);
         bindExtraVariables(uriInfo, session.getValueFactory(), query);
 
-        org.modeshape.jcr.api.query.QueryResult result = query.explain();
+        org.modeshape.jcr.api.query.QueryResult result = null;
+        if (profile) {
+            if (offset > 0) query.setOffset(offset);
+            if (limit >= 0) query.setLimit(limit);
+            result = query.profile();
+        } else {
+            result = query.explain();
+        }
         String plan = result.getPlan();
         return new RestQueryPlanResult(plan, statement, language, query.getAbstractQueryModelRepresentation());
     }
 
-    private void setRows( long offset,
-                          long limit,
-                          Session session,
-                          QueryResult result,
-                          RestQueryResult restQueryResult,
-                          String[] columnNames,
-                          String baseUrl ) throws RepositoryException {
-        RowIterator resultRows = result.getRows();
-        if (offset > 0) {
-            resultRows.skip(offset);
-        }
-        if (limit < 0) {
-            limit = Long.MAX_VALUE;
-        }
+    /**
+     * Closes all of the query cursors that are kept open for continuation tokens. This should be called when the REST service
+     * is stopped.
+     */
+    public static void closeQueryCursors() {
+        QueryCursor.closeAll();
+    }
 
-        while (resultRows.hasNext() && limit > 0) {
-            limit--;
-            Row resultRow = resultRows.nextRow();
+    private void setRows( final long limit,
+                          final QueryCursor cursor,
+                          final RestQueryResult restQueryResult,
+                          final String[] columnNames,
+                          final String baseUrl ) {
+        restQueryResult.setRowSource(new RestQueryResult.RowSource() {
+            private long remaining = limit < 0 ? Long.MAX_VALUE : limit;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0 && cursor.hasNext();
+            }
 
-            RestQueryResult.RestRow restRow = createRestRow(session, result, restQueryResult, columnNames, baseUrl, resultRow);
-            createLinksFromNodePaths(result, baseUrl, resultRow, restRow);
+            @Override
+            public RestQueryResult.RestRow next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                Row resultRow = cursor.next();
+                try {
+                    RestQueryResult.RestRow restRow = createRestRow(cursor.session(), cursor.result(), restQueryResult,
+                                                                    columnNames, baseUrl, resultRow);
+                    createLinksFromNodePaths(cursor.result(), baseUrl, resultRow, restRow);
+                    return restRow;
+                } catch (RepositoryException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public String complete( boolean successful ) {
+                if (successful && limit >= 0 && cursor.hasNext()) {
+                    // There are more rows, so keep the cursor for the next page ...
+                    String token = cursor.token();
+                    cursor.park();
+                    return token;
+                }
+                cursor.close();
+                return null;
+            }
+        });
+    }
 
-            restQueryResult.addRow(restRow);
+    private String queryId( String repositoryName,
+                            String workspaceName,
+                            String language,
+                            String statement,
+                            UriInfo uriInfo ) {
+        StringBuilder id = new StringBuilder();
+        id.append(repositoryName).append('\n').append(workspaceName).append('\n').append(language).append('\n').append(statement);
+        if (uriInfo != null) {
+            // the bound variables are part of the query ...
+            Map<String, List<String>> variables = new TreeMap<>(uriInfo.getQueryParameters());
+            variables.keySet().removeAll(SKIP_QUERY_PARAMETERS);
+            id.append('\n').append(variables);
         }
+        return SecureHash.sha1(id.toString());
     }
 
     private void createLinksFromNodePaths( QueryResult result,
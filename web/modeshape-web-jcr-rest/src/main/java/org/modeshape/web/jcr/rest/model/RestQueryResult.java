@@ -16,8 +16,11 @@
 
 package org.modeshape.web.jcr.rest.model;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,9 +34,26 @@ import org.modeshape.common.util.StringUtil;
  * 
  * @author Horia Chiorean (hchiorea@redhat.com)
  */
-public final class RestQueryResult implements JSONAble {
+public final class RestQueryResult implements StreamingJSONAble {
+
+    /**
+     * A source of rows that are only read when the result is written.
+     */
+    public interface RowSource extends Iterator<RestRow> {
+        /**
+         * Called exactly once, after all of the rows have been read or reading them has failed.
+         * 
+         * @param successful {@code true} if all of the rows were read, or {@code false} if reading them failed
+         * @return the token that can be used to obtain the next rows of the query result, or {@code null} if there are no more
+         *         rows
+         */
+        String complete( boolean successful );
+    }
+
     private final Map<String, String> columns;
     private final List<RestRow> rows;
+    private RowSource rowSource;
+    private String continuation;
 
     /**
      * Creates an empty instance
@@ -69,8 +89,32 @@ public final class RestQueryResult implements JSONAble {
         return this;
     }
 
+    /**
+     * Sets the source of the remaining rows of this result. These rows are read only when the result is written, so that they
+     * never have to be held in memory all at once when the result is {@link #writeJSON(Writer) streamed}.
+     * 
+     * @param rowSource a {@code non-null} {@link RowSource}
+     * @return this instance
+     */
+    public RestQueryResult setRowSource( RowSource rowSource ) {
+        this.rowSource = rowSource;
+        return this;
+    }
+
     @Override
     public JSONObject toJSON() throws JSONException {
+        // Read all of the remaining rows, since the whole object is needed ...
+        if (rowSource != null) {
+            boolean successful = false;
+            try {
+                while (rowSource.hasNext()) {
+                    rows.add(rowSource.next());
+                }
+                successful = true;
+            } finally {
+                continuation = complete(successful);
+            }
+        }
         JSONObject result = new JSONObject();
         if (!columns.isEmpty()) {
             result.put("columns", columns);
@@ -82,9 +126,69 @@ public final class RestQueryResult implements JSONAble {
             }
             result.put("rows", rows);
         }
+        if (continuation != null) {
+            result.put("continuation", continuation);
+        }
         return result;
     }
 
+    @Override
+    public void writeJSON( Writer writer ) throws IOException, JSONException {
+        writer.write('{');
+        boolean first = true;
+        if (!columns.isEmpty()) {
+            writer.write("\"columns\":");
+            writer.write(new JSONObject(columns).toString());
+            first = false;
+        }
+        boolean hasRows = false;
+        for (RestRow row : rows) {
+            first = writeRowSeparator(writer, first, hasRows);
+            hasRows = true;
+            writer.write(row.toJSON().toString());
+        }
+        if (rowSource != null) {
+            boolean successful = false;
+            try {
+                while (rowSource.hasNext()) {
+                    first = writeRowSeparator(writer, first, hasRows);
+                    hasRows = true;
+                    writer.write(rowSource.next().toJSON().toString());
+                }
+                successful = true;
+            } finally {
+                continuation = complete(successful);
+            }
+        }
+        if (hasRows) {
+            writer.write(']');
+        }
+        if (continuation != null) {
+            if (!first) writer.write(',');
+            writer.write("\"continuation\":");
+            writer.write(JSONObject.quote(continuation));
+        }
+        writer.write('}');
+    }
+
+    private boolean writeRowSeparator( Writer writer,
+                                       boolean first,
+                                       boolean hasRows ) throws IOException {
+        if (hasRows) {
+            writer.write(',');
+        } else {
+            if (!first) writer.write(',');
+            writer.write("\"rows\":[");
+        }
+        return false;
+    }
+
+    private String complete( boolean successful ) {
+        RowSource rowSource = this.rowSource;
+        this.rowSource = null;
+        return rowSource.complete(successful);
+    }
+
     public class RestRow implements JSONAble {
         private final Map<String, Object> values;
 
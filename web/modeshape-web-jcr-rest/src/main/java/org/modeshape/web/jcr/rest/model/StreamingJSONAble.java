@@ -0,0 +1,37 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.modeshape.web.jcr.rest.model;
+
+import java.io.IOException;
+import java.io.Writer;
+import org.codehaus.jettison.json.JSONException;
+
+/**
+ * A {@link JSONAble} which can also write its JSON representation incrementally, without first building the entire
+ * {@link org.codehaus.jettison.json.JSONObject} in memory.
+ */
+public interface StreamingJSONAble extends JSONAble {
+
+    /**
+     * Writes the JSON representation of this object to the given writer. The output is the same as the string form of
+     * {@link #toJSON()}, although the order of the fields may differ.
+     * 
+     * @param writer a {@code non-null} {@link Writer}
+     * @throws IOException if the writer fails
+     * @throws JSONException if conversion to JSON is not possible.
+     */
+    public void writeJSON( Writer writer ) throws IOException, JSONException;
+}
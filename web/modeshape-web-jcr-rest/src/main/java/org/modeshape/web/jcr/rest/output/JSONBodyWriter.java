@@ -17,11 +17,16 @@
 package org.modeshape.web.jcr.rest.output;
 
 import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
@@ -34,6 +39,7 @@ import org.codehaus.jettison.json.JSONException;
 import org.jboss.resteasy.spi.WriterException;
 import org.jboss.resteasy.util.Types;
 import org.modeshape.web.jcr.rest.model.JSONAble;
+import org.modeshape.web.jcr.rest.model.StreamingJSONAble;
 
 /**
  * Implementation of {@link MessageBodyWriter} which writes a {@link JSONAble} or a {@link Collection Collection<JSONAble>} instances to
@@ -53,6 +59,10 @@ public class JSONBodyWriter implements MessageBodyWriter<Object> {
                          Annotation[] annotations,
                          MediaType mediaType ) {
         try {
+            if (object instanceof StreamingJSONAble && supportsStreaming()) {
+                // the size isn't known until the whole object has been written
+                return -1;
+            }
             if (isJSONAble(type)) {
                 return getString((JSONAble)object).getBytes().length;
             } else if (isJSONAbleCollection(type, genericType)) {
@@ -94,6 +104,10 @@ public class JSONBodyWriter implements MessageBodyWriter<Object> {
                          MediaType mediaType,
                          MultivaluedMap<String, Object> httpHeaders,
                          OutputStream entityStream ) throws WebApplicationException {
+        if (object instanceof StreamingJSONAble && supportsStreaming()) {
+            writeStreaming((StreamingJSONAble)object, mediaType, httpHeaders, entityStream);
+            return;
+        }
         String content;
         try {
             if (isJSONAble(type)) {
@@ -117,6 +131,31 @@ public class JSONBodyWriter implements MessageBodyWriter<Object> {
         }
     }
 
+    private void writeStreaming( StreamingJSONAble jsonAble,
+                                 MediaType mediaType,
+                                 MultivaluedMap<String, Object> httpHeaders,
+                                 OutputStream entityStream ) {
+        String contentTypeHeader = mediaType.toString() + ";charset=utf-8";
+        httpHeaders.putSingle("Content-Type", contentTypeHeader);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(entityStream, StandardCharsets.UTF_8));
+            jsonAble.writeJSON(writer);
+            writer.flush();
+        } catch (JSONException | IOException e) {
+            throw new WriterException(e);
+        }
+    }
+
+    /**
+     * Returns whether {@link StreamingJSONAble} instances should be written incrementally, rather than first being converted
+     * into a string.
+     * 
+     * @return {@code true} if the instances are streamed
+     */
+    protected boolean supportsStreaming() {
+        return true;
+    }
+
     protected String getString( JSONAble jsonAble ) throws JSONException {
         return jsonAble.toJSON().toString();
     }